@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the save and open throughput of the chunked format of
+ * {@code ij.chunk()} with TIFF via {@code ij.scifio().datasetIO()}. The
+ * images hold noisy, moderately compressible pixels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChunkedIOBenchmark {
+
+	@Param({ "1024" })
+	public int size;
+
+	@Param({ "0", "1", "6" })
+	public int level;
+
+	private ImageJ ij;
+	private Dataset dataset;
+	private File dir;
+	private File chunks;
+	private String tiff;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ij = new ImageJ();
+		ij.chunk().setCompressionLevel(level);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		dataset = ij.dataset().create(new UnsignedShortType(), new long[] { size,
+			size, 16 }, "bench", axes);
+		final Random random = new Random(42);
+		for (final RealType<?> t : dataset) {
+			t.setReal(1000 + random.nextInt(64));
+		}
+		dir = Files.createTempDirectory("imagej-bench").toFile();
+		chunks = new File(dir, "bench.chunks");
+		tiff = new File(dir, "bench.tif").getPath();
+		ij.chunk().save(dataset, chunks);
+		ij.scifio().datasetIO().save(dataset, tiff);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		ij.getContext().dispose();
+		Files.walk(dir.toPath()).sorted((a, b) -> b.compareTo(a)).forEach(p -> p
+			.toFile().delete());
+	}
+
+	@Benchmark
+	public Object saveChunked() throws IOException {
+		ij.chunk().save(dataset, chunks);
+		return chunks;
+	}
+
+	@Benchmark
+	public Object saveTIFF() throws IOException {
+		new File(tiff).delete();
+		return ij.scifio().datasetIO().save(dataset, tiff);
+	}
+
+	@Benchmark
+	public double readChunked() throws IOException {
+		ij.tile().getCache().invalidateAll();
+		return sum(ij.chunk().open(chunks));
+	}
+
+	@Benchmark
+	public double readTIFF() throws IOException {
+		return sum(ij.scifio().datasetIO().open(tiff));
+	}
+
+	private static double sum(final Dataset d) {
+		double sum = 0;
+		for (final RealType<?> t : d) {
+			sum += t.getRealDouble();
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.ImageJ;
+import net.imagej.frame.FrameRenderer;
+import net.imglib2.Cursor;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures scrubbing through the time points of a two-channel 16-bit series
+ * with {@code ij.frameRender()}, against a fresh buffer and per-pixel color
+ * table lookups per frame. Run with {@code -prof gc}: the
+ * {@code gc.alloc.rate.norm} of {@link #pooled} should be close to zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FrameRenderBenchmark {
+
+	@Param({ "512" })
+	public int size;
+
+	private static final int FRAMES = 20;
+
+	private ImageJ ij;
+	private Img<UnsignedShortType> img;
+	private FrameRenderer renderer;
+	private final ColorTable8 lut = new ColorTable8();
+	private final long[] pos = new long[4];
+	private int frame;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ij = new ImageJ();
+		img = PlanarImgs.unsignedShorts(size, size, 2, FRAMES);
+		int v = 0;
+		for (final UnsignedShortType t : img) {
+			t.set(v++ % 4096);
+		}
+		renderer = ij.frameRender().createRenderer(img, 2);
+		renderer.setChannel(0, lut, 0, 4095);
+		renderer.setChannel(1, lut, 0, 4095);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Benchmark
+	public int pooled() {
+		pos[3] = frame++ % FRAMES;
+		final int[] argb = renderer.render(pos);
+		final int first = argb[0];
+		renderer.release(argb);
+		return first;
+	}
+
+	@Benchmark
+	public int allocating() {
+		final long t = frame++ % FRAMES;
+		final int[] argb = new int[size * size];
+		for (int c = 0; c < 2; c++) {
+			final Cursor<UnsignedShortType> cursor = Views.flatIterable(Views
+				.hyperSlice(Views.hyperSlice(img, 3, t), 2, c)).cursor();
+			int i = 0;
+			while (cursor.hasNext()) {
+				final int value = lut.lookupARGB(0, 4095, cursor.next().get());
+				argb[i] = c == 0 ? value : argb[i] | value;
+				i++;
+			}
+		}
+		return argb[0];
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.HeadlessComputeGateway;
+import net.imagej.IOGateway;
+import net.imagej.ImageJ;
+import net.imagej.startup.CachingPluginFinder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.plugin.PluginIndex;
+
+/**
+ * Benchmarks construction of the {@link ImageJ} gateway.
+ * <p>
+ * The cold benchmarks build a whole new context per invocation, for the full
+ * gateway and the reduced {@link HeadlessComputeGateway} and {@link IOGateway}
+ * profiles, and for the full gateway with a warm plugin index cache (see
+ * {@link CachingPluginFinder}); the warm benchmark wraps an existing context,
+ * as done when ImageJ is embedded. Run with {@code -prof gc} to also record
+ * the heap allocated per gateway ({@code gc.alloc.rate.norm}).
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class GatewayBenchmark {
+
+	private ImageJ ij;
+	private Context context;
+	private File cacheFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		context = new ImageJ().getContext();
+		cacheFile = File.createTempFile("plugins", ".cache");
+		cacheFile.delete();
+		new PluginIndex(new CachingPluginFinder(cacheFile)).discover();
+	}
+
+	@TearDown(Level.Invocation)
+	public void disposeGateway() {
+		if (ij != null && ij.getContext() != context) ij.getContext().dispose();
+		ij = null;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.dispose();
+		cacheFile.delete();
+	}
+
+	@Benchmark
+	public ImageJ cold() {
+		ij = new ImageJ();
+		return ij;
+	}
+
+	@Benchmark
+	public ImageJ coldCachedPlugins() {
+		System.setProperty(CachingPluginFinder.CACHE_PROPERTY, cacheFile
+			.getPath());
+		try {
+			ij = new ImageJ();
+		}
+		finally {
+			System.clearProperty(CachingPluginFinder.CACHE_PROPERTY);
+		}
+		return ij;
+	}
+
+	@Benchmark
+	public ImageJ coldLazy() {
+		ij = new ImageJ(true);
+		return ij;
+	}
+
+	@Benchmark
+	public ImageJ coldHeadlessCompute() {
+		ij = new HeadlessComputeGateway();
+		return ij;
+	}
+
+	@Benchmark
+	public ImageJ coldIO() {
+		ij = new IOGateway();
+		return ij;
+	}
+
+	@Benchmark
+	public ImageJ warm() {
+		ij = new ImageJ(context);
+		return ij;
+	}
+
+}
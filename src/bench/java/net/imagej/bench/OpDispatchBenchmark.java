@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.ImageJ;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the overhead of dispatching common ops via
+ * {@code ij.op().run(...)}, and via {@code ij.opDispatch().run(...)}, which
+ * caches op resolutions. The inputs are tiny, so that matching dominates.
+ * The {@code *Miss} benchmarks clear the cache before each call, and should
+ * cost no more than the uncached calls, since a miss resolves only once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OpDispatchBenchmark {
+
+	private ImageJ ij;
+	private Img<UnsignedByteType> img;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ij = new ImageJ();
+		img = ArrayImgs.unsignedBytes(4, 4);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Benchmark
+	public Object addNumbers() {
+		return ij.op().run("math.add", 2, 3);
+	}
+
+	@Benchmark
+	public Object mean() {
+		return ij.op().run("stats.mean", img);
+	}
+
+	@Benchmark
+	public Object minMax() {
+		return ij.op().run("stats.minMax", img);
+	}
+
+	@Benchmark
+	public Object addNumbersCached() {
+		return ij.opDispatch().run("math.add", 2, 3);
+	}
+
+	@Benchmark
+	public Object meanCached() {
+		return ij.opDispatch().run("stats.mean", img);
+	}
+
+	@Benchmark
+	public Object minMaxCached() {
+		return ij.opDispatch().run("stats.minMax", img);
+	}
+
+	@Benchmark
+	public Object addNumbersMiss() {
+		ij.opDispatch().clear();
+		return ij.opDispatch().run("math.add", 2, 3);
+	}
+
+	@Benchmark
+	public Object meanMiss() {
+		ij.opDispatch().clear();
+		return ij.opDispatch().run("stats.mean", img);
+	}
+
+}
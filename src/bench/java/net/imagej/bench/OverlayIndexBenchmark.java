@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.ImageJ;
+import net.imagej.overlay.Overlay;
+import net.imagej.overlay.RectangleOverlay;
+import net.imagej.spatial.OverlayIndexService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures viewport queries, hit-tests and moves against
+ * {@code ij.overlayIndex()} with up to a million small rectangle overlays
+ * scattered over a 100,000 x 100,000 pixel image, against linear scans over
+ * the overlays' bounds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OverlayIndexBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int count;
+
+	private static final double SIZE = 100000;
+
+	private ImageJ ij;
+	private OverlayIndexService index;
+	private List<Overlay> overlays;
+	private final Random random = new Random(1);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ij = new ImageJ();
+		index = ij.overlayIndex();
+		overlays = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final RectangleOverlay overlay = new RectangleOverlay(ij.getContext());
+			overlay.setOrigin(random.nextDouble() * SIZE, 0);
+			overlay.setOrigin(random.nextDouble() * SIZE, 1);
+			overlay.setExtent(5 + random.nextDouble() * 30, 0);
+			overlay.setExtent(5 + random.nextDouble() * 30, 1);
+			index.update(overlay);
+			overlays.add(overlay);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Benchmark
+	public int viewportIndexed() {
+		final double x = random.nextDouble() * (SIZE - 1000);
+		final double y = random.nextDouble() * (SIZE - 1000);
+		return index.query(x, y, x + 1000, y + 1000).size();
+	}
+
+	@Benchmark
+	public int viewportLinear() {
+		final double x = random.nextDouble() * (SIZE - 1000);
+		final double y = random.nextDouble() * (SIZE - 1000);
+		int hits = 0;
+		for (final Overlay o : overlays) {
+			if (o.realMin(0) <= x + 1000 && x <= o.realMax(0) && o.realMin(
+				1) <= y + 1000 && y <= o.realMax(1)) hits++;
+		}
+		return hits;
+	}
+
+	@Benchmark
+	public int hitTestIndexed() {
+		return index.hitTest(random.nextDouble() * SIZE, random.nextDouble() *
+			SIZE).size();
+	}
+
+	@Benchmark
+	public int hitTestLinear() {
+		final double[] p = { random.nextDouble() * SIZE, random.nextDouble() *
+			SIZE };
+		int hits = 0;
+		for (final Overlay o : overlays) {
+			if (o.realMin(0) <= p[0] && p[0] <= o.realMax(0) && o.realMin(1) <=
+				p[1] && p[1] <= o.realMax(1) && o.getRegionOfInterest().contains(p))
+			{
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	@Benchmark
+	public int move() {
+		final Overlay overlay = overlays.get(random.nextInt(count));
+		((RectangleOverlay) overlay).setOrigin(random.nextDouble() * SIZE, 0);
+		index.update(overlay);
+		return index.size();
+	}
+
+}
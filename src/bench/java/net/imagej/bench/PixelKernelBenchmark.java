@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.ImageJ;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the primitive kernels of {@code ij.pixelKernel()} against the
+ * equivalent {@code ij.op()} calls and against the kernels' own generic path,
+ * on array images of each supported pixel type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PixelKernelBenchmark {
+
+	@Param({ "uint8", "uint16", "float32", "float64" })
+	public String type;
+
+	@Param({ "1024" })
+	public int size;
+
+	private ImageJ ij;
+	private Img<? extends RealType<?>> in;
+	private Img<? extends RealType<?>> out;
+	private Img<? extends RealType<?>> cellIn;
+	private Img<? extends RealType<?>> cellOut;
+	private RealType<?> value;
+	private final double[] kernel = { 0.0625, 0.25, 0.375, 0.25, 0.0625 };
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ij = new ImageJ();
+		switch (type) {
+			case "uint8":
+				in = ArrayImgs.unsignedBytes(size, size);
+				out = ArrayImgs.unsignedBytes(size, size);
+				cellIn = cells(new UnsignedByteType());
+				cellOut = cells(new UnsignedByteType());
+				break;
+			case "uint16":
+				in = ArrayImgs.unsignedShorts(size, size);
+				out = ArrayImgs.unsignedShorts(size, size);
+				cellIn = cells(new UnsignedShortType());
+				cellOut = cells(new UnsignedShortType());
+				break;
+			case "float32":
+				in = ArrayImgs.floats(size, size);
+				out = ArrayImgs.floats(size, size);
+				cellIn = cells(new FloatType());
+				cellOut = cells(new FloatType());
+				break;
+			default:
+				in = ArrayImgs.doubles(size, size);
+				out = ArrayImgs.doubles(size, size);
+				cellIn = cells(new DoubleType());
+				cellOut = cells(new DoubleType());
+		}
+		int v = 0;
+		for (final RealType<?> t : in) {
+			t.setReal(v++ % 200);
+		}
+		value = in.firstElement().createVariable();
+		value.setReal(3);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Benchmark
+	public Object addOp() {
+		return ij.op().run("math.add", out, in, value);
+	}
+
+	@Benchmark
+	public Object addKernel() {
+		ij.pixelKernel().add(in, 3, out);
+		return out;
+	}
+
+	@Benchmark
+	public Object addGeneric() {
+		ij.pixelKernel().add(cellIn, 3, cellOut);
+		return cellOut;
+	}
+
+	@Benchmark
+	public Object meanOp() {
+		return ij.op().run("stats.mean", in);
+	}
+
+	@Benchmark
+	public Object statisticsKernel() {
+		return ij.pixelKernel().statistics(in);
+	}
+
+	@Benchmark
+	public Object statisticsGeneric() {
+		return ij.pixelKernel().statistics(cellIn);
+	}
+
+	@Benchmark
+	public Object convolveKernel() {
+		ij.pixelKernel().convolve(in, kernel, 1, out);
+		return out;
+	}
+
+	@Benchmark
+	public Object convolveGeneric() {
+		ij.pixelKernel().convolve(cellIn, kernel, 1, cellOut);
+		return cellOut;
+	}
+
+	// -- Helper methods --
+
+	private <T extends NativeType<T>> Img<T> cells(final T t) {
+		return new CellImgFactory<>(t, 256, 256).create(size, size);
+	}
+
+}
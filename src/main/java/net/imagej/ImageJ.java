@@ -34,25 +34,52 @@
 import io.scif.SCIFIO;
 import io.scif.SCIFIOService;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import net.imagej.animation.AnimationService;
 import net.imagej.app.ImageJApp;
+import net.imagej.chunk.ChunkService;
+import net.imagej.dispatch.OpDispatchService;
 import net.imagej.display.ImageDisplayService;
 import net.imagej.display.OverlayService;
 import net.imagej.display.ScreenCaptureService;
 import net.imagej.display.WindowService;
+import net.imagej.frame.FrameRenderService;
+import net.imagej.kernel.PixelKernelService;
 import net.imagej.lut.LUTService;
+import net.imagej.memo.MemoService;
+import net.imagej.metrics.MeteredOpService;
+import net.imagej.metrics.MetricsService;
+import net.imagej.mmap.MappedDatasetService;
 import net.imagej.notebook.NotebookService;
 import net.imagej.ops.OpService;
+import net.imagej.parallel.ParallelOpService;
+import net.imagej.pipeline.PipelineBuilder;
 import net.imagej.render.RenderingService;
+import net.imagej.pool.ChildContext;
+import net.imagej.profiler.OpProfiler;
+import net.imagej.pyramid.PyramidService;
 import net.imagej.sampler.SamplerService;
+import net.imagej.spatial.OverlayIndexService;
+import net.imagej.startup.CachingPluginFinder;
+import net.imagej.startup.ParallelServiceInitializer;
+import net.imagej.stats.StreamingStatsService;
+import net.imagej.thread.VirtualThreads;
+import net.imagej.tile.TileService;
 import net.imagej.updater.UpdateService;
 import net.imagej.updater.UploaderService;
 
 import org.scijava.AbstractGateway;
 import org.scijava.Context;
 import org.scijava.Gateway;
+import org.scijava.event.EventService;
 import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginIndex;
 import org.scijava.service.SciJavaService;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceHelper;
 
 /**
  * Main entry point into ImageJ. This class enables working with ImageJ services
@@ -67,6 +94,12 @@ public class ImageJ extends AbstractGateway {
 	/** SCIFIO gateway instance, for access to SCIFIO services. */
 	private SCIFIO scifio;
 
+	/** Whether this gateway creates its services on demand. */
+	private final boolean lazy;
+
+	/** The profiler of this gateway's ops, or null if not profiling. */
+	private OpProfiler profiler;
+
 	// -- Constructors --
 
 	/**
@@ -74,8 +107,25 @@ public class ImageJ extends AbstractGateway {
 	 * SciJava services.
 	 */
 	public ImageJ() {
-		this(new Context(SciJavaService.class, SCIFIOService.class,
-			ImageJService.class));
+		this(false);
+	}
+
+	/**
+	 * Creates a new ImageJ application context.
+	 * 
+	 * @param lazy If true, services are not created up front, but rather on
+	 *          demand, the first time they are requested via {@link #get} or
+	 *          one of the accessors such as {@link #op()}, {@link #dataset()}
+	 *          or {@link #scifio()}, or injected into an op or other plugin.
+	 *          Dependencies of a requested service are created along with it.
+	 *          If false, all ImageJ, SCIFIO and SciJava services are created
+	 *          immediately.
+	 * @see VirtualThreads
+	 */
+	public ImageJ(final boolean lazy) {
+		this(createContext(lazy), lazy);
+		if (VirtualThreads.isRequested()) VirtualThreads.install(thread());
+		if (OpProfiler.isEnabled()) startProfiler();
 	}
 
 	/**
@@ -85,10 +135,87 @@ public ImageJ() {
 	 * @see Context
 	 */
 	public ImageJ(final Context context) {
+		this(context, false);
+	}
+
+	private ImageJ(final Context context, final boolean lazy) {
 		super(ImageJApp.NAME, context);
+		this.lazy = lazy;
 		scifio = new SCIFIO(context);
 	}
 
+	// -- ImageJ methods --
+
+	/**
+	 * Gets whether this gateway creates its services on demand.
+	 * 
+	 * @see #ImageJ(boolean)
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Starts profiling the ops and I/O calls of this gateway, unless already
+	 * profiling. If the gateway's op service is a {@link MeteredOpService}, as
+	 * for gateways created with the {@value OpProfiler#PROPERTY} system
+	 * property set, each op invocation is measured as well.
+	 * 
+	 * @return The running profiler.
+	 * @see OpProfiler
+	 */
+	public synchronized OpProfiler startProfiler() {
+		if (profiler == null) {
+			profiler = new OpProfiler();
+			final OpService ops = op();
+			if (ops instanceof MeteredOpService) {
+				((MeteredOpService) ops).setProfiler(profiler);
+			}
+		}
+		profiler.start();
+		return profiler;
+	}
+
+	/**
+	 * Stops profiling the ops and I/O calls of this gateway.
+	 * 
+	 * @return The stopped profiler, with its results, or null if this gateway
+	 *         was not profiling.
+	 */
+	public synchronized OpProfiler stopProfiler() {
+		final OpProfiler stopped = profiler;
+		if (stopped == null) return null;
+		profiler = null;
+		final OpService ops = op();
+		if (ops instanceof MeteredOpService) {
+			((MeteredOpService) ops).setProfiler(null);
+		}
+		stopped.stop();
+		return stopped;
+	}
+
+	/** Gets the profiler of this gateway's ops, or null if not profiling. */
+	public synchronized OpProfiler profiler() {
+		return profiler;
+	}
+
+	/**
+	 * Creates a lightweight gateway over a {@link ChildContext} of this one,
+	 * sharing this gateway's plugin index and format registry, but with its own
+	 * ops, displays, objects and other mutable state.
+	 */
+	public ImageJ createChild() {
+		return new ImageJ(new ChildContext(getContext()));
+	}
+
+	/**
+	 * Starts building a batch {@link net.imagej.pipeline.Pipeline} which opens,
+	 * processes and saves many images with this gateway's services.
+	 */
+	public PipelineBuilder pipeline() {
+		return new PipelineBuilder(this);
+	}
+
 	// -- ImageJ methods - gateways --
 
 	public SCIFIO scifio() {
@@ -106,6 +233,15 @@ public AnimationService animation() {
 		return get(AnimationService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link ChunkService}.
+	 *
+	 * @return The {@link ChunkService} of this application context.
+	 */
+	public ChunkService chunk() {
+		return get(ChunkService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link DatasetService}.
 	 *
@@ -115,6 +251,15 @@ public DatasetService dataset() {
 		return get(DatasetService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link FrameRenderService}.
+	 *
+	 * @return The {@link FrameRenderService} of this application context.
+	 */
+	public FrameRenderService frameRender() {
+		return get(FrameRenderService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link ImageDisplayService}.
 	 *
@@ -133,6 +278,33 @@ public LUTService lut() {
 		return get(LUTService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link MappedDatasetService}.
+	 *
+	 * @return The {@link MappedDatasetService} of this application context.
+	 */
+	public MappedDatasetService mappedDataset() {
+		return get(MappedDatasetService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link MemoService}.
+	 *
+	 * @return The {@link MemoService} of this application context.
+	 */
+	public MemoService memo() {
+		return get(MemoService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link MetricsService}.
+	 *
+	 * @return The {@link MetricsService} of this application context.
+	 */
+	public MetricsService metrics() {
+		return get(MetricsService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link NotebookService}.
 	 *
@@ -151,6 +323,15 @@ public OpService op() {
 		return get(OpService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link OpDispatchService}.
+	 *
+	 * @return The {@link OpDispatchService} of this application context.
+	 */
+	public OpDispatchService opDispatch() {
+		return get(OpDispatchService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link OverlayService}.
 	 *
@@ -160,6 +341,42 @@ public OverlayService overlay() {
 		return get(OverlayService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link OverlayIndexService}.
+	 *
+	 * @return The {@link OverlayIndexService} of this application context.
+	 */
+	public OverlayIndexService overlayIndex() {
+		return get(OverlayIndexService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link ParallelOpService}.
+	 *
+	 * @return The {@link ParallelOpService} of this application context.
+	 */
+	public ParallelOpService parallelOp() {
+		return get(ParallelOpService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link PixelKernelService}.
+	 *
+	 * @return The {@link PixelKernelService} of this application context.
+	 */
+	public PixelKernelService pixelKernel() {
+		return get(PixelKernelService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link PyramidService}.
+	 *
+	 * @return The {@link PyramidService} of this application context.
+	 */
+	public PyramidService pyramid() {
+		return get(PyramidService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link RenderingService}.
 	 *
@@ -187,6 +404,24 @@ public ScreenCaptureService screenCapture() {
 		return get(ScreenCaptureService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link StreamingStatsService}.
+	 *
+	 * @return The {@link StreamingStatsService} of this application context.
+	 */
+	public StreamingStatsService streamingStats() {
+		return get(StreamingStatsService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link TileService}.
+	 *
+	 * @return The {@link TileService} of this application context.
+	 */
+	public TileService tile() {
+		return get(TileService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link UpdateService}.
 	 *
@@ -220,4 +455,66 @@ public WindowService window() {
 	public String getShortName() {
 		return "ij";
 	}
+
+	// -- Helper methods --
+
+	/**
+	 * Creates the context for a new gateway, reading the plugin index from the
+	 * cache named by the {@value CachingPluginFinder#CACHE_PROPERTY} system
+	 * property, if any, and initializing services in parallel if the
+	 * {@value ParallelServiceInitializer#PARALLEL_PROPERTY} system property asks
+	 * for it. Ops are metered if the {@value MeteredOpService#PROPERTY} or
+	 * {@value OpProfiler#PROPERTY} system property is set.
+	 */
+	private static Context createContext(final boolean lazy) {
+		final PluginIndex pluginIndex = CachingPluginFinder.createPluginIndex();
+		if (MeteredOpService.isRequested() || OpProfiler.isEnabled()) {
+			MeteredOpService.register(pluginIndex);
+		}
+		if (lazy) return new LazyContext(pluginIndex);
+		final List<Class<? extends Service>> serviceClasses = Arrays.asList(
+			SciJavaService.class, SCIFIOService.class, ImageJService.class);
+		final int threads = ParallelServiceInitializer.threadsFromProperty();
+		if (threads == 0) return new Context(serviceClasses, pluginIndex);
+		return ParallelServiceInitializer.createContext(serviceClasses,
+			pluginIndex, threads);
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A context which creates its services the first time they are needed.
+	 * <p>
+	 * Every service lookup goes through {@link #getService(Class)}, including
+	 * the injection of {@code @Parameter} services into ops, commands and other
+	 * plugins, so such objects work against a lazy context just as they do
+	 * against an eager one.
+	 * </p>
+	 */
+	private static class LazyContext extends Context {
+
+		/** False while the superclass constructor creates the initial services. */
+		private boolean ready;
+
+		private ServiceHelper serviceHelper;
+
+		public LazyContext(final PluginIndex pluginIndex) {
+			super(Collections.<Class<? extends Service>> singletonList(
+				EventService.class), pluginIndex);
+			ready = true;
+		}
+
+		@Override
+		public <S extends Service> S getService(final Class<S> c) {
+			final S existing = super.getService(c);
+			if (existing != null || !ready) return existing;
+
+			// NB: The ServiceHelper is not thread-safe, and two threads racing to
+			// create the same service would otherwise yield two instances.
+			synchronized (this) {
+				if (serviceHelper == null) serviceHelper = new ServiceHelper(this);
+				return serviceHelper.loadService(c);
+			}
+		}
+	}
 }
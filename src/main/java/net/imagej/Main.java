@@ -31,6 +31,17 @@
 
 package net.imagej;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imagej.cluster.ClusterWorker;
+import net.imagej.cluster.Coordinator;
+import net.imagej.profiler.OpProfiler;
+import net.imagej.profiler.StartupProfiler;
+import net.imagej.server.ImageJServer;
+import net.imagej.thread.VirtualThreads;
+
 /**
  * Launches ImageJ.
  * 
@@ -51,8 +62,34 @@ public static ImageJ launch(final String... args) {
 	}
 
 	public static void main(final String... args) {
+		final List<String> argList = new ArrayList<>(Arrays.asList(args));
+		if (argList.remove(VirtualThreads.FLAG)) {
+			System.setProperty(VirtualThreads.PROPERTY, "true");
+		}
+		final String[] launchArgs = argList.toArray(new String[argList.size()]);
+
+		if (StartupProfiler.isRequested(launchArgs)) {
+			StartupProfiler.launch(launchArgs);
+			return;
+		}
+		if (OpProfiler.isRequested(launchArgs)) {
+			OpProfiler.launch(launchArgs);
+			return;
+		}
+		if (ClusterWorker.isRequested(launchArgs)) {
+			ClusterWorker.launch(launchArgs);
+			return;
+		}
+		if (Coordinator.isRequested(launchArgs)) {
+			Coordinator.launch(launchArgs);
+			return;
+		}
+		if (ImageJServer.isRequested(launchArgs)) {
+			ImageJServer.launch(launchArgs);
+			return;
+		}
 		final ImageJ ij = new ImageJ();
-		ij.launch(args);
+		ij.launch(launchArgs);
 	}
 
 }
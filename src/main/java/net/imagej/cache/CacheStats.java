@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cache;
+
+/**
+ * A snapshot of the counters of an {@link LRUCache}.
+ */
+public class CacheStats {
+
+	private final long hits;
+	private final long misses;
+	private final long loads;
+	private final long loadFailures;
+	private final long loadNanos;
+	private final long evictions;
+	private final int size;
+	private final long weight;
+	private final long maxWeight;
+
+	public CacheStats(final long hits, final long misses, final long loads,
+		final long loadFailures, final long loadNanos, final long evictions,
+		final int size, final long weight, final long maxWeight)
+	{
+		this.hits = hits;
+		this.misses = misses;
+		this.loads = loads;
+		this.loadFailures = loadFailures;
+		this.loadNanos = loadNanos;
+		this.evictions = evictions;
+		this.size = size;
+		this.weight = weight;
+		this.maxWeight = maxWeight;
+	}
+
+	/** Gets the number of requests answered from the cache. */
+	public long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of requests not answered from the cache. */
+	public long getMisses() {
+		return misses;
+	}
+
+	/** Gets the fraction of requests answered from the cache. */
+	public double getHitRate() {
+		final long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/** Gets the number of values loaded successfully. */
+	public long getLoads() {
+		return loads;
+	}
+
+	/** Gets the number of loads which failed. */
+	public long getLoadFailures() {
+		return loadFailures;
+	}
+
+	/** Gets the total time spent loading values, in nanoseconds. */
+	public long getLoadNanos() {
+		return loadNanos;
+	}
+
+	/** Gets the number of entries evicted to make room for others. */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/** Gets the number of entries. */
+	public int getSize() {
+		return size;
+	}
+
+	/** Gets the total weight of the entries. */
+	public long getWeight() {
+		return weight;
+	}
+
+	/** Gets the maximum total weight of the entries. */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", loads=" + loads +
+			", loadFailures=" + loadFailures + ", loadMillis=" + loadNanos /
+				1000000 + ", evictions=" + evictions + ", size=" + size + ", weight=" +
+			weight + "/" + maxWeight;
+	}
+
+}
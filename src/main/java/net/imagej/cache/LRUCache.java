@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe cache bounded by the total weight of its entries, e.g. their
+ * size in bytes, which evicts the least recently used entries first.
+ * <p>
+ * Values missing from the cache are computed by a {@link Loader}, outside the
+ * cache's lock; concurrent requests for the same key wait for a single load
+ * rather than repeating it. Hits, misses, loads and evictions are counted, and
+ * reported by {@link #getStats()}.
+ * </p>
+ */
+public class LRUCache<K, V> {
+
+	/** Computes the value of a key missing from the cache. */
+	public interface Loader<K, V> {
+
+		V load(K key) throws Exception;
+	}
+
+	/** Computes the weight of an entry. */
+	public interface Weigher<K, V> {
+
+		long weigh(K key, V value);
+	}
+
+	/** Gives each entry a weight of 1, bounding the number of entries. */
+	public static final Weigher<Object, Object> COUNT = (key, value) -> 1;
+
+	private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f,
+		true);
+	private final Map<K, FutureTask<V>> loading = new HashMap<>();
+	private final Weigher<? super K, ? super V> weigher;
+
+	private long maxWeight;
+	private long weight;
+	private long hits;
+	private long misses;
+	private long loads;
+	private long loadFailures;
+	private long loadNanos;
+	private long evictions;
+
+	/** Creates a cache holding at most the given number of entries. */
+	public LRUCache(final long maxSize) {
+		this(maxSize, COUNT);
+	}
+
+	/** Creates a cache holding entries of at most the given total weight. */
+	public LRUCache(final long maxWeight,
+		final Weigher<? super K, ? super V> weigher)
+	{
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("Invalid maximum: " + maxWeight);
+		}
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	// -- LRUCache methods --
+
+	/**
+	 * Gets the value of the given key, loading it if it is not cached.
+	 * 
+	 * @throws ExecutionException If the loader failed; its exception is the
+	 *           cause. Failed loads are not cached.
+	 */
+	public V get(final K key, final Loader<? super K, ? extends V> loader)
+		throws ExecutionException
+	{
+		final FutureTask<V> task;
+		boolean owner = false;
+		synchronized (this) {
+			final V value = map.get(key);
+			if (value != null) {
+				hits++;
+				return value;
+			}
+			misses++;
+			final FutureTask<V> pending = loading.get(key);
+			if (pending != null) task = pending;
+			else {
+				task = new FutureTask<>(() -> loader.load(key));
+				loading.put(key, task);
+				owner = true;
+			}
+		}
+		if (owner) {
+			final long start = System.nanoTime();
+			task.run();
+			final long elapsed = System.nanoTime() - start;
+			synchronized (this) {
+				loading.remove(key);
+				loadNanos += elapsed;
+				try {
+					final V value = task.get();
+					loads++;
+					if (value != null) insert(key, value);
+				}
+				catch (final ExecutionException | InterruptedException exc) {
+					loadFailures++;
+				}
+			}
+		}
+		try {
+			return task.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while loading " + key);
+		}
+	}
+
+	/** Gets the value of the given key, or null if it is not cached. */
+	public synchronized V getIfPresent(final K key) {
+		final V value = map.get(key);
+		if (value == null) misses++;
+		else hits++;
+		return value;
+	}
+
+	/** Gets whether the given key is cached, without touching its entry. */
+	public synchronized boolean containsKey(final K key) {
+		return map.containsKey(key);
+	}
+
+	/** Gets whether the given key is currently being loaded. */
+	public synchronized boolean isLoading(final K key) {
+		return loading.containsKey(key);
+	}
+
+	/** Adds an entry, replacing any previous value of the key. */
+	public synchronized void put(final K key, final V value) {
+		if (value == null) throw new NullPointerException("Null value");
+		insert(key, value);
+	}
+
+	/** Removes the given key from the cache. */
+	public synchronized void invalidate(final K key) {
+		final V value = map.remove(key);
+		if (value != null) weight -= weigher.weigh(key, value);
+	}
+
+	/** Removes all keys matching the given predicate from the cache. */
+	public synchronized void invalidateIf(final Predicate<? super K> predicate) {
+		final Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<K, V> entry = it.next();
+			if (!predicate.test(entry.getKey())) continue;
+			weight -= weigher.weigh(entry.getKey(), entry.getValue());
+			it.remove();
+		}
+	}
+
+	/** Removes all entries. */
+	public synchronized void invalidateAll() {
+		map.clear();
+		weight = 0;
+	}
+
+	/** Gets the number of entries. */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/** Gets the total weight of the entries. */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/** Gets the maximum total weight of the entries. */
+	public synchronized long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Sets the maximum total weight of the entries, evicting entries if the
+	 * cache is now too heavy.
+	 */
+	public synchronized void setMaxWeight(final long maxWeight) {
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("Invalid maximum: " + maxWeight);
+		}
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	/** Gets a snapshot of the cache's counters. */
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, loads, loadFailures, loadNanos,
+			evictions, map.size(), weight, maxWeight);
+	}
+
+	/** Resets the cache's counters, keeping its entries. */
+	public synchronized void resetStats() {
+		hits = misses = loads = loadFailures = loadNanos = evictions = 0;
+	}
+
+	// -- Helper methods --
+
+	private void insert(final K key, final V value) {
+		final V old = map.put(key, value);
+		if (old != null) weight -= weigher.weigh(key, old);
+		weight += weigher.weigh(key, value);
+		evict();
+	}
+
+	/** Evicts least recently used entries until the cache is light enough. */
+	private void evict() {
+		final Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			final Map.Entry<K, V> eldest = it.next();
+			weight -= weigher.weigh(eldest.getKey(), eldest.getValue());
+			it.remove();
+			evictions++;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+
+/**
+ * Saves and opens images in a chunked, compressed format on local disk, in
+ * the spirit of N5 and Zarr. Each chunk is compressed on its own, in parallel
+ * on all cores when saving, and read independently of the others when
+ * opening: images are opened lazily, reading only the chunks whose pixels are
+ * accessed.
+ * 
+ * @see ChunkedMetadata
+ */
+public interface ChunkService extends ImageJService {
+
+	/** Saves a dataset to a directory, with default chunk sizes. */
+	void save(Dataset dataset, File dir) throws IOException;
+
+	/** Saves a dataset to a directory, with the given chunk sizes. */
+	void save(Dataset dataset, File dir, int[] chunkSize) throws IOException;
+
+	/** Opens the chunked image in the given directory. */
+	Dataset open(File dir) throws IOException;
+
+	/**
+	 * Gets the default chunk sizes for an image of the given dimensions: up to
+	 * 256 in X and Y, 16 in the third dimension, and 1 in the others.
+	 */
+	default int[] getDefaultChunkSize(final long[] dims) {
+		final int[] chunkSize = new int[dims.length];
+		for (int d = 0; d < dims.length; d++) {
+			final int max = d < 2 ? 256 : d == 2 ? 16 : 1;
+			chunkSize[d] = (int) Math.min(max, dims[d]);
+		}
+		return chunkSize;
+	}
+
+	/**
+	 * Gets the compression level for saving, from 0 (no compression) to 9;
+	 * defaults to 1, the fastest.
+	 */
+	int getCompressionLevel();
+
+	/** Sets the compression level for saving. */
+	void setCompressionLevel(int level);
+
+	/** Gets the number of threads compressing chunks when saving. */
+	int getThreads();
+
+	/** Sets the number of threads compressing chunks when saving. */
+	void setThreads(int threads);
+
+}
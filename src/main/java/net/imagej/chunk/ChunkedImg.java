@@ -0,0 +1,257 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.imagej.cache.LRUCache;
+import net.imagej.metrics.Counter;
+import net.imagej.tile.TileKey;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * An image in the chunked format, read lazily chunk by chunk. Chunks are kept
+ * in a shared tile cache, bounded in bytes; changes to pixels are not written
+ * back, and are lost when their chunk is evicted.
+ * 
+ * @see ChunkedMetadata
+ */
+public class ChunkedImg<T extends RealType<T> & NativeType<T>> extends
+	LazyCellImg<T, ArrayDataAccess<?>>
+{
+
+	private final ChunkLoader loader;
+	private final T type;
+
+	private ChunkedImg(final ChunkLoader loader, final T type) {
+		super(loader.grid, type, loader);
+		this.loader = loader;
+		this.type = type;
+	}
+
+	// -- ChunkedImg methods --
+
+	/**
+	 * Opens the chunked image in the given directory.
+	 * 
+	 * @param dir The image's directory.
+	 * @param cache The cache holding the chunks.
+	 */
+	public static ChunkedImg<?> open(final File dir,
+		final LRUCache<TileKey, Cell<?>> cache) throws IOException
+	{
+		return open(dir, cache, null);
+	}
+
+	/**
+	 * Opens the chunked image in the given directory.
+	 * 
+	 * @param dir The image's directory.
+	 * @param cache The cache holding the chunks.
+	 * @param bytesRead The counter of the bytes read from chunk files, or null
+	 *          for none.
+	 */
+	public static ChunkedImg<?> open(final File dir,
+		final LRUCache<TileKey, Cell<?>> cache, final Counter bytesRead)
+		throws IOException
+	{
+		final ChunkedMetadata meta = ChunkedMetadata.read(dir);
+		return create(new ChunkLoader(dir, meta, cache, bytesRead), meta
+			.getDataType());
+	}
+
+	/** Gets the directory of this image. */
+	public File getDirectory() {
+		return loader.dir;
+	}
+
+	/** Gets the attributes of this image. */
+	public ChunkedMetadata getMetadata() {
+		return loader.meta;
+	}
+
+	/** Drops this image's chunks from the cache. */
+	public void invalidate() {
+		final long id = loader.id;
+		loader.cache.invalidateIf(key -> key.getOwner() == id);
+	}
+
+	// -- Img methods --
+
+	/** Gets a factory for in-memory images with the same chunking. */
+	@Override
+	public CellImgFactory<T> factory() {
+		return new CellImgFactory<>(type.createVariable(), loader.meta
+			.getChunkSize());
+	}
+
+	/** Reads the whole image into an in-memory copy with the same chunking. */
+	@Override
+	public Img<T> copy() {
+		final Img<T> copy = factory().create(loader.meta.getDimensions());
+		// NB: Same cell grid, hence the same iteration order.
+		final Cursor<T> in = cursor();
+		final Cursor<T> out = copy.cursor();
+		while (in.hasNext()) {
+			out.next().set(in.next());
+		}
+		return copy;
+	}
+
+	// -- Helper methods --
+
+	private static <T extends RealType<T> & NativeType<T>> ChunkedImg<T> create(
+		final ChunkLoader loader, final DataType dataType)
+	{
+		final T type = dataType.createType();
+		return new ChunkedImg<>(loader, type);
+	}
+
+	// -- Helper classes --
+
+	/** Reads chunks from their files, via the cache. */
+	private static class ChunkLoader implements
+		LazyCellImg.Get<Cell<ArrayDataAccess<?>>>
+	{
+
+		private final long id = TileKey.nextOwner();
+		private final File dir;
+		private final ChunkedMetadata meta;
+		private final CellGrid grid;
+		private final LRUCache<TileKey, Cell<?>> cache;
+		private final Counter bytesRead;
+
+		public ChunkLoader(final File dir, final ChunkedMetadata meta,
+			final LRUCache<TileKey, Cell<?>> cache, final Counter bytesRead)
+		{
+			this.dir = dir;
+			this.meta = meta;
+			this.cache = cache;
+			this.bytesRead = bytesRead;
+			grid = meta.getGrid();
+		}
+
+		@Override
+		public Cell<ArrayDataAccess<?>> get(final long index) {
+			final int n = grid.numDimensions();
+			final long[] min = new long[n];
+			final int[] dims = new int[n];
+			grid.getCellDimensions(index, min, dims);
+			long count = 1;
+			for (final int d : dims) {
+				count *= d;
+			}
+			final TileKey key = new TileKey(id, index, count * meta.getDataType()
+				.getBytes());
+			try {
+				@SuppressWarnings("unchecked")
+				final Cell<ArrayDataAccess<?>> cell = (Cell<ArrayDataAccess<?>>) cache
+					.get(key, k -> read(min, dims, (int) k.getBytes()));
+				return cell;
+			}
+			catch (final ExecutionException exc) {
+				final Throwable cause = exc.getCause();
+				if (cause instanceof IOException) {
+					throw new UncheckedIOException((IOException) cause);
+				}
+				throw new IllegalStateException("Cannot read chunk " + index +
+					" of " + dir, cause);
+			}
+		}
+
+		private Cell<ArrayDataAccess<?>> read(final long[] min, final int[] dims,
+			final int bytes) throws IOException, DataFormatException
+		{
+			final int[] chunkSize = meta.getChunkSize();
+			final long[] gridPosition = new long[min.length];
+			for (int d = 0; d < min.length; d++) {
+				gridPosition[d] = min[d] / chunkSize[d];
+			}
+			final File file = meta.getChunkFile(dir, gridPosition);
+			final byte[] data = new byte[bytes];
+			if (file.exists()) {
+				final byte[] stored = Files.readAllBytes(file.toPath());
+				if (bytesRead != null) bytesRead.add(stored.length);
+				if (!meta.isCompressed()) {
+					if (stored.length != bytes) {
+						throw new IOException("Chunk " + file + " has " + stored.length +
+							" bytes, expected " + bytes);
+					}
+					System.arraycopy(stored, 0, data, 0, bytes);
+				}
+				else {
+					final Inflater inflater = new Inflater();
+					try {
+						inflater.setInput(stored);
+						int offset = 0;
+						while (offset < bytes && !inflater.finished()) {
+							final int read = inflater.inflate(data, offset, bytes - offset);
+							if (read == 0 && (inflater.needsInput() || inflater
+								.needsDictionary())) break;
+							offset += read;
+						}
+						if (offset == bytes && !inflater.finished()) {
+							// NB: The end of the stream may follow the last byte of output;
+							// anything more than that means the chunk is too long.
+							if (inflater.inflate(new byte[1]) > 0) offset++;
+						}
+						if (offset != bytes || !inflater.finished()) {
+							throw new IOException("Chunk " + file +
+								" is truncated or corrupt, expected " + bytes + " bytes");
+						}
+					}
+					finally {
+						inflater.end();
+					}
+				}
+			}
+			return new Cell<>(dims, min, meta.getDataType().decode(ByteBuffer.wrap(
+				data), bytes / meta.getDataType().getBytes()));
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * The attributes of a chunked image: its dimensions, chunk size, pixel type,
+ * compression and axes. They are stored in the {@value #ATTRIBUTES_FILE} file
+ * at the root of the image's directory.
+ * <p>
+ * Each chunk is stored in its own file, at a path given by its position in
+ * the chunk grid (e.g. {@code 3/1/0} for the chunk at X=3, Y=1, Z=0, as in
+ * N5), holding the chunk's pixels in row-major order as big-endian bytes,
+ * deflated unless the compression is {@code raw}. Chunks at the far borders
+ * are cropped to the image. Missing chunks read as zeros.
+ * </p>
+ */
+public class ChunkedMetadata {
+
+	/** The name of the attributes file. */
+	public static final String ATTRIBUTES_FILE = "attributes.properties";
+
+	/** Compression with {@link java.util.zip.Deflater}. */
+	public static final String DEFLATE = "deflate";
+
+	/** No compression. */
+	public static final String RAW = "raw";
+
+	private final long[] dims;
+	private final int[] chunkSize;
+	private final DataType dataType;
+	private final String compression;
+	private String name;
+	private CalibratedAxis[] axes;
+
+	public ChunkedMetadata(final long[] dims, final int[] chunkSize,
+		final DataType dataType, final String compression)
+	{
+		if (dims.length != chunkSize.length) {
+			throw new IllegalArgumentException("Chunk size " + chunkSize.length +
+				"D for " + dims.length + "D image");
+		}
+		if (!DEFLATE.equals(compression) && !RAW.equals(compression)) {
+			throw new IllegalArgumentException("Unknown compression: " +
+				compression);
+		}
+		this.dims = dims.clone();
+		this.chunkSize = chunkSize.clone();
+		this.dataType = dataType;
+		this.compression = compression;
+	}
+
+	// -- ChunkedMetadata methods --
+
+	public long[] getDimensions() {
+		return dims.clone();
+	}
+
+	public int[] getChunkSize() {
+		return chunkSize.clone();
+	}
+
+	public DataType getDataType() {
+		return dataType;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public boolean isCompressed() {
+		return DEFLATE.equals(compression);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(final String name) {
+		this.name = name;
+	}
+
+	/** Gets the axes, or null if they are unknown. */
+	public CalibratedAxis[] getAxes() {
+		return axes;
+	}
+
+	public void setAxes(final CalibratedAxis[] axes) {
+		this.axes = axes;
+	}
+
+	/** Gets the grid of chunks. */
+	public CellGrid getGrid() {
+		return new CellGrid(dims, chunkSize);
+	}
+
+	/** Gets the file of the chunk at the given grid position. */
+	public File getChunkFile(final File dir, final long[] gridPosition) {
+		File file = dir;
+		for (final long p : gridPosition) {
+			file = new File(file, Long.toString(p));
+		}
+		return file;
+	}
+
+	/** Reads the attributes of the chunked image in the given directory. */
+	public static ChunkedMetadata read(final File dir) throws IOException {
+		final Properties props = new Properties();
+		try (final InputStream in = new FileInputStream(new File(dir,
+			ATTRIBUTES_FILE)))
+		{
+			props.load(in);
+		}
+		try {
+			final long[] dims = parseLongs(props.getProperty("dimensions"));
+			final long[] size = parseLongs(props.getProperty("chunkSize"));
+			final int[] chunkSize = new int[size.length];
+			for (int d = 0; d < size.length; d++) {
+				chunkSize[d] = (int) size[d];
+			}
+			final ChunkedMetadata meta = new ChunkedMetadata(dims, chunkSize,
+				DataType.fromLabel(props.getProperty("dataType")), props.getProperty(
+					"compression", DEFLATE));
+			meta.setName(props.getProperty("name"));
+			if (props.getProperty("axis.0") != null) {
+				final CalibratedAxis[] axes = new CalibratedAxis[dims.length];
+				for (int d = 0; d < axes.length; d++) {
+					final AxisType type = Axes.get(props.getProperty("axis." + d));
+					final double scale = Double.parseDouble(props.getProperty("scale." +
+						d, "1"));
+					axes[d] = new DefaultLinearAxis(type, props.getProperty("unit." + d),
+						scale);
+				}
+				meta.setAxes(axes);
+			}
+			return meta;
+		}
+		catch (final RuntimeException exc) {
+			throw new IOException("Invalid attributes in " + dir, exc);
+		}
+	}
+
+	/** Writes the attributes to the given directory. */
+	public void write(final File dir) throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("dimensions", join(dims));
+		final long[] size = new long[chunkSize.length];
+		for (int d = 0; d < size.length; d++) {
+			size[d] = chunkSize[d];
+		}
+		props.setProperty("chunkSize", join(size));
+		props.setProperty("dataType", dataType.getLabel());
+		props.setProperty("compression", compression);
+		if (name != null) props.setProperty("name", name);
+		if (axes != null) {
+			for (int d = 0; d < axes.length; d++) {
+				props.setProperty("axis." + d, axes[d].type().getLabel());
+				props.setProperty("scale." + d, Double.toString(axes[d].averageScale(
+					0, 1)));
+				if (axes[d].unit() != null) {
+					props.setProperty("unit." + d, axes[d].unit());
+				}
+			}
+		}
+		try (final OutputStream out = new FileOutputStream(new File(dir,
+			ATTRIBUTES_FILE)))
+		{
+			props.store(out, "chunked image");
+		}
+	}
+
+	// -- Helper methods --
+
+	private static String join(final long[] values) {
+		final StringBuilder sb = new StringBuilder();
+		for (final long v : values) {
+			if (sb.length() > 0) sb.append(",");
+			sb.append(v);
+		}
+		return sb.toString();
+	}
+
+	private static long[] parseLongs(final String s) {
+		final String[] tokens = s.split(",");
+		final long[] values = new long[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			values[i] = Long.parseLong(tokens[i].trim());
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import net.imagej.metrics.Counter;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Writes images in the chunked format described by {@link ChunkedMetadata},
+ * encoding and compressing chunks in parallel.
+ */
+public class ChunkedWriter {
+
+	private final ExecutorService executor;
+	private final int level;
+	private final Counter bytesWritten;
+
+	/**
+	 * @param executor The executor running the chunk writing tasks.
+	 * @param level The compression level, from {@link Deflater#BEST_SPEED} to
+	 *          {@link Deflater#BEST_COMPRESSION}.
+	 */
+	public ChunkedWriter(final ExecutorService executor, final int level) {
+		this(executor, level, null);
+	}
+
+	/**
+	 * @param executor The executor running the chunk writing tasks.
+	 * @param level The compression level, from {@link Deflater#BEST_SPEED} to
+	 *          {@link Deflater#BEST_COMPRESSION}.
+	 * @param bytesWritten The counter of the bytes written to chunk files, or
+	 *          null for none.
+	 */
+	public ChunkedWriter(final ExecutorService executor, final int level,
+		final Counter bytesWritten)
+	{
+		this.executor = executor;
+		this.level = level;
+		this.bytesWritten = bytesWritten;
+	}
+
+	// -- ChunkedWriter methods --
+
+	/**
+	 * Writes an image to the given directory, replacing any chunks of a
+	 * previous image there; chunk files outside the new image's grid are
+	 * deleted. Chunks whose pixels are all zero are not written.
+	 */
+	public void write(final RandomAccessibleInterval<? extends RealType<?>> image,
+		final ChunkedMetadata meta, final File dir) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		meta.write(dir);
+
+		final RandomAccessibleInterval<? extends RealType<?>> zeroMin = Views
+			.zeroMin(image);
+		final CellGrid grid = meta.getGrid();
+		deleteStale(dir, grid.getGridDimensions(), 0);
+		final List<Future<?>> futures = new ArrayList<>();
+		for (long i = 0; i < grid.getNumCells(); i++) {
+			final long index = i;
+			futures.add(executor.submit(() -> {
+				writeChunk(zeroMin, meta, dir, grid, index);
+				return null;
+			}));
+		}
+		try {
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new IOException("Cannot write " + dir, cause);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing " + dir, exc);
+		}
+		finally {
+			for (final Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private void writeChunk(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final ChunkedMetadata meta, final File dir, final CellGrid grid,
+		final long index) throws IOException
+	{
+		final int n = grid.numDimensions();
+		final long[] min = new long[n];
+		final int[] dims = new int[n];
+		grid.getCellDimensions(index, min, dims);
+		final int[] chunkSize = meta.getChunkSize();
+		final long[] max = new long[n];
+		final long[] gridPosition = new long[n];
+		long count = 1;
+		for (int d = 0; d < n; d++) {
+			max[d] = min[d] + dims[d] - 1;
+			gridPosition[d] = min[d] / chunkSize[d];
+			count *= dims[d];
+		}
+
+		final DataType dataType = meta.getDataType();
+		final ByteBuffer buffer = ByteBuffer.allocate((int) (count * dataType
+			.getBytes()));
+		dataType.encode(Views.flatIterable(Views.interval(image, min, max))
+			.cursor(), buffer);
+
+		final File file = meta.getChunkFile(dir, gridPosition);
+		if (isZero(buffer.array())) {
+			// NB: Missing chunks read as zeros.
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Cannot delete " + file);
+			}
+			return;
+		}
+		final File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Cannot create " + parent);
+		}
+		if (meta.isCompressed()) {
+			final Deflater deflater = new Deflater(level);
+			try (final OutputStream out = new DeflaterOutputStream(
+				new FileOutputStream(file), deflater, 65536))
+			{
+				out.write(buffer.array());
+			}
+			finally {
+				deflater.end();
+			}
+		}
+		else {
+			try (final OutputStream out = new FileOutputStream(file)) {
+				out.write(buffer.array());
+			}
+		}
+		if (bytesWritten != null) bytesWritten.add(file.length());
+	}
+
+	/**
+	 * Deletes the chunk files and directories below the given one, at the given
+	 * dimension, which do not belong to the grid.
+	 */
+	private static void deleteStale(final File dir, final long[] gridDims,
+		final int d) throws IOException
+	{
+		final File[] children = dir.listFiles();
+		if (children == null) return;
+		final boolean last = d == gridDims.length - 1;
+		for (final File child : children) {
+			final long p = chunkIndex(child.getName());
+			if (p < 0) continue; // not a chunk, e.g. the attributes file
+			if (p >= gridDims[d] || child.isFile() != last) delete(child);
+			else if (!last) deleteStale(child, gridDims, d + 1);
+		}
+	}
+
+	/** Parses a chunk file name, returning -1 if it is not a grid index. */
+	private static long chunkIndex(final String name) {
+		if (name.isEmpty() || name.length() > 18) return -1;
+		for (int i = 0; i < name.length(); i++) {
+			if (!Character.isDigit(name.charAt(i))) return -1;
+		}
+		return Long.parseLong(name);
+	}
+
+	private static void delete(final File file) throws IOException {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		if (!file.delete()) throw new IOException("Cannot delete " + file);
+	}
+
+	private static boolean isZero(final byte[] bytes) {
+		for (final byte b : bytes) {
+			if (b != 0) return false;
+		}
+		return true;
+	}
+
+}
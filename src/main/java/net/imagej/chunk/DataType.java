@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.nio.ByteBuffer;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * The pixel types of the chunked format, with their (N5-style) names and
+ * conversions between pixels and the big-endian bytes of a chunk.
+ */
+public enum DataType {
+
+	INT8("int8", 1), //
+	UINT8("uint8", 1), //
+	INT16("int16", 2), //
+	UINT16("uint16", 2), //
+	INT32("int32", 4), //
+	UINT32("uint32", 4), //
+	INT64("int64", 8), //
+	FLOAT32("float32", 4), //
+	FLOAT64("float64", 8);
+
+	private final String label;
+	private final int bytes;
+
+	private DataType(final String label, final int bytes) {
+		this.label = label;
+		this.bytes = bytes;
+	}
+
+	/** Gets the name of this type in the format's attributes. */
+	public String getLabel() {
+		return label;
+	}
+
+	/** Gets the size of a pixel, in bytes. */
+	public int getBytes() {
+		return bytes;
+	}
+
+	/** Creates a pixel of this type. */
+	@SuppressWarnings("unchecked")
+	public <T extends RealType<T> & NativeType<T>> T createType() {
+		switch (this) {
+			case INT8:
+				return (T) new ByteType();
+			case UINT8:
+				return (T) new UnsignedByteType();
+			case INT16:
+				return (T) new ShortType();
+			case UINT16:
+				return (T) new UnsignedShortType();
+			case INT32:
+				return (T) new IntType();
+			case UINT32:
+				return (T) new UnsignedIntType();
+			case INT64:
+				return (T) new LongType();
+			case FLOAT32:
+				return (T) new FloatType();
+			default:
+				return (T) new DoubleType();
+		}
+	}
+
+	/** Writes the pixels of a cursor to a buffer, until the cursor ends. */
+	public void encode(final Cursor<? extends RealType<?>> cursor,
+		final ByteBuffer buffer)
+	{
+		switch (this) {
+			case INT8:
+			case UINT8:
+				while (cursor.hasNext()) {
+					buffer.put(((GenericByteType<?>) cursor.next()).getByte());
+				}
+				break;
+			case INT16:
+			case UINT16:
+				while (cursor.hasNext()) {
+					buffer.putShort(((GenericShortType<?>) cursor.next()).getShort());
+				}
+				break;
+			case INT32:
+			case UINT32:
+				while (cursor.hasNext()) {
+					buffer.putInt(((GenericIntType<?>) cursor.next()).getInt());
+				}
+				break;
+			case INT64:
+				while (cursor.hasNext()) {
+					buffer.putLong(((LongType) cursor.next()).get());
+				}
+				break;
+			case FLOAT32:
+				while (cursor.hasNext()) {
+					buffer.putFloat(cursor.next().getRealFloat());
+				}
+				break;
+			default:
+				while (cursor.hasNext()) {
+					buffer.putDouble(cursor.next().getRealDouble());
+				}
+		}
+	}
+
+	/** Reads the given number of pixels from a buffer into a new array. */
+	public ArrayDataAccess<?> decode(final ByteBuffer buffer, final int count) {
+		switch (this) {
+			case INT8:
+			case UINT8: {
+				final byte[] array = new byte[count];
+				buffer.get(array);
+				return new ByteArray(array);
+			}
+			case INT16:
+			case UINT16: {
+				final short[] array = new short[count];
+				buffer.asShortBuffer().get(array);
+				return new ShortArray(array);
+			}
+			case INT32:
+			case UINT32: {
+				final int[] array = new int[count];
+				buffer.asIntBuffer().get(array);
+				return new IntArray(array);
+			}
+			case INT64: {
+				final long[] array = new long[count];
+				buffer.asLongBuffer().get(array);
+				return new LongArray(array);
+			}
+			case FLOAT32: {
+				final float[] array = new float[count];
+				buffer.asFloatBuffer().get(array);
+				return new FloatArray(array);
+			}
+			default: {
+				final double[] array = new double[count];
+				buffer.asDoubleBuffer().get(array);
+				return new DoubleArray(array);
+			}
+		}
+	}
+
+	/** Gets the data type of the given pixel type. */
+	public static DataType of(final RealType<?> type) {
+		if (type instanceof ByteType) return INT8;
+		if (type instanceof UnsignedByteType) return UINT8;
+		if (type instanceof ShortType) return INT16;
+		if (type instanceof UnsignedShortType) return UINT16;
+		if (type instanceof IntType) return INT32;
+		if (type instanceof UnsignedIntType) return UINT32;
+		if (type instanceof LongType) return INT64;
+		if (type instanceof FloatType) return FLOAT32;
+		if (type instanceof DoubleType) return FLOAT64;
+		throw new IllegalArgumentException("Unsupported pixel type: " + type
+			.getClass().getName());
+	}
+
+	/** Gets the data type with the given label. */
+	public static DataType fromLabel(final String label) {
+		for (final DataType type : values()) {
+			if (type.label.equals(label)) return type;
+		}
+		throw new IllegalArgumentException("Unknown data type: " + label);
+	}
+
+}
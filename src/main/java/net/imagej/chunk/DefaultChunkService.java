@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.metrics.Counter;
+import net.imagej.metrics.MetricsService;
+import net.imagej.tile.TileService;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link ChunkService}. Opened images keep their
+ * chunks in the {@link TileService}'s cache.
+ */
+@Plugin(type = Service.class)
+public class DefaultChunkService extends AbstractService implements
+	ChunkService
+{
+
+	@Parameter
+	private DatasetService datasetService;
+
+	@Parameter
+	private TileService tileService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	private int level = Deflater.BEST_SPEED;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor;
+	private Counter bytesRead;
+	private Counter bytesWritten;
+
+	// -- ChunkService methods --
+
+	@Override
+	public void save(final Dataset dataset, final File dir) throws IOException {
+		final long[] dims = new long[dataset.numDimensions()];
+		dataset.dimensions(dims);
+		save(dataset, dir, getDefaultChunkSize(dims));
+	}
+
+	@Override
+	public void save(final Dataset dataset, final File dir,
+		final int[] chunkSize) throws IOException
+	{
+		final long[] dims = new long[dataset.numDimensions()];
+		dataset.dimensions(dims);
+		final ChunkedMetadata meta = new ChunkedMetadata(dims, chunkSize, DataType
+			.of(dataset.getType()), level == 0 ? ChunkedMetadata.RAW
+				: ChunkedMetadata.DEFLATE);
+		meta.setName(dataset.getName());
+		final CalibratedAxis[] axes = new CalibratedAxis[dims.length];
+		dataset.axes(axes);
+		meta.setAxes(axes);
+		new ChunkedWriter(executor(), level, bytesWritten).write(dataset, meta,
+			dir);
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Dataset open(final File dir) throws IOException {
+		final ChunkedImg<?> img = ChunkedImg.open(dir, tileService.getCache(),
+			bytesRead);
+		final ChunkedMetadata meta = img.getMetadata();
+		final String name = meta.getName() == null ? dir.getName() : meta
+			.getName();
+		final ImgPlus imgPlus = meta.getAxes() == null ? new ImgPlus(img, name)
+			: new ImgPlus(img, name, meta.getAxes());
+		return datasetService.create(imgPlus);
+	}
+
+	@Override
+	public int getCompressionLevel() {
+		return level;
+	}
+
+	@Override
+	public void setCompressionLevel(final int level) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+		this.level = level;
+	}
+
+	@Override
+	public int getThreads() {
+		return threads;
+	}
+
+	@Override
+	public synchronized void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid thread count: " + threads);
+		}
+		this.threads = threads;
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		if (metricsService == null) return;
+		bytesRead = metricsService.counter("chunk.bytesRead");
+		bytesWritten = metricsService.counter("chunk.bytesWritten");
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+	}
+
+	// -- Helper methods --
+
+	private synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				final Thread t = threadService.newThread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return executor;
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import net.imagej.ImageJ;
+import net.imagej.server.ImageJServer;
+
+/**
+ * Runs ImageJ as a headless worker process of a {@link Coordinator}.
+ * <p>
+ * The worker speaks the {@link ImageJServer} protocol over its standard
+ * streams: it announces itself with a {@value #READY} line once its context is
+ * up, then answers one request per line until its input ends or it is asked
+ * for {@code SHUTDOWN}. Anything else written to {@link System#out} is
+ * diverted to {@link System#err}, so that it cannot corrupt the protocol.
+ * {@link net.imagej.Main} starts a worker for the {@value #FLAG} flag.
+ * </p>
+ */
+public final class ClusterWorker {
+
+	/** Command line flag which starts ImageJ as a worker process. */
+	public static final String FLAG = "--worker";
+
+	/** Line with which a worker announces that it is ready for requests. */
+	public static final String READY = "READY";
+
+	private ClusterWorker() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets whether the given arguments ask for worker mode.
+	 */
+	public static boolean isRequested(final String... args) {
+		for (final String arg : args) {
+			if (arg.equals(FLAG)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Serves requests from standard input until it ends or a
+	 * {@code SHUTDOWN} is requested, then disposes the context.
+	 */
+	public static void launch(final String... args) {
+		final PrintStream protocol = System.out;
+		System.setOut(System.err);
+		final ImageJ ij = new ImageJ();
+		ij.ui().setHeadless(true);
+		try {
+			final PrintWriter out = new PrintWriter(new OutputStreamWriter(protocol,
+				StandardCharsets.UTF_8), true);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+				System.in, StandardCharsets.UTF_8));
+			final ImageJServer server = new ImageJServer(ij, 0, 1);
+			out.println(READY);
+			server.serve(in, out);
+		}
+		catch (final IOException exc) {
+			ij.log().error(exc);
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+}
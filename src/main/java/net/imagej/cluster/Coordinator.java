@@ -0,0 +1,357 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.imagej.Main;
+
+/**
+ * Runs batch jobs across a pool of local {@link ClusterWorker} processes.
+ * <p>
+ * Each worker is a headless JVM forked from the same installation (the same
+ * Java runtime and class path) as the coordinator, and is kept warm across
+ * calls to {@link #run}. Tasks are pulled from a shared queue, so faster
+ * workers take on more of them, and results are gathered in task order.
+ * </p>
+ * <p>
+ * A worker which dies, stops responding or exceeds the
+ * {@link #setTaskTimeout task timeout} is killed and replaced, and the task
+ * it was running is queued again, up to {@link #getMaxAttempts()} attempts in
+ * all. A task which fails by itself (answering {@code ERR}) is not retried.
+ * </p>
+ * <p>
+ * {@link net.imagej.Main} runs a script over a list of files for the
+ * {@value #FLAG} flag, optionally followed by {@code =<workers>}.
+ * </p>
+ */
+public class Coordinator implements AutoCloseable {
+
+	/** Command line flag which runs a batch job across worker processes. */
+	public static final String FLAG = "--cluster";
+
+	/** Default number of attempts per task. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/** Default number of milliseconds to wait for a worker to start. */
+	public static final long DEFAULT_START_TIMEOUT = 120000;
+
+	/** Name of the script input which holds the file of a task. */
+	public static final String FILE_INPUT = "input";
+
+	private final AtomicReferenceArray<WorkerProcess> workers;
+	private final List<String> jvmArgs = new ArrayList<>();
+	private final AtomicInteger starts = new AtomicInteger();
+	private final ScheduledExecutorService watchdog;
+
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long startTimeout = DEFAULT_START_TIMEOUT;
+	private long taskTimeout;
+	private volatile boolean closed;
+
+	// -- Constructors --
+
+	/**
+	 * Creates a coordinator for the given number of workers. Workers are
+	 * started when first needed.
+	 */
+	public Coordinator(final int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid worker count: " + workers);
+		}
+		this.workers = new AtomicReferenceArray<>(workers);
+		watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "Coordinator-watchdog");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	// -- Coordinator methods --
+
+	/** Gets the number of workers. */
+	public int getWorkerCount() {
+		return workers.length();
+	}
+
+	/** Gets the number of worker processes started so far, restarts included. */
+	public int getStartCount() {
+		return starts.get();
+	}
+
+	/** Gets the number of times a task is attempted before it is given up. */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/** Sets the number of times a task is attempted before it is given up. */
+	public void setMaxAttempts(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Invalid attempts: " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/** Gets the milliseconds after which a task's worker is killed, or 0. */
+	public long getTaskTimeout() {
+		return taskTimeout;
+	}
+
+	/**
+	 * Sets the milliseconds after which the worker running a task is killed,
+	 * and the task attempted again; 0 (the default) waits indefinitely.
+	 */
+	public void setTaskTimeout(final long taskTimeout) {
+		this.taskTimeout = Math.max(0, taskTimeout);
+	}
+
+	/** Sets the milliseconds to wait for a worker to start. */
+	public void setStartTimeout(final long startTimeout) {
+		this.startTimeout = Math.max(0, startTimeout);
+	}
+
+	/**
+	 * Sets extra JVM arguments for the workers, such as {@code -Xmx2g}.
+	 * Applies to workers started from now on.
+	 */
+	public void setJvmArgs(final String... args) {
+		synchronized (jvmArgs) {
+			jvmArgs.clear();
+			jvmArgs.addAll(Arrays.asList(args));
+		}
+	}
+
+	/** Gets the command line which starts a worker. */
+	public List<String> getWorkerCommand() {
+		final List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+			"java").getPath());
+		command.add("-Djava.awt.headless=true");
+		synchronized (jvmArgs) {
+			command.addAll(jvmArgs);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Main.class.getName());
+		command.add(ClusterWorker.FLAG);
+		return command;
+	}
+
+	/**
+	 * Runs the given tasks across the workers, and waits for them all to
+	 * finish.
+	 * 
+	 * @return The result of each task, in task order.
+	 */
+	public synchronized List<TaskResult> run(final List<Task> tasks)
+		throws InterruptedException
+	{
+		if (closed) throw new IllegalStateException("Coordinator is closed");
+		final TaskResult[] results = new TaskResult[tasks.size()];
+		if (tasks.isEmpty()) return Collections.emptyList();
+
+		final int[] attempts = new int[tasks.size()];
+		final BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+		for (int i = 0; i < tasks.size(); i++) {
+			queue.add(i);
+		}
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+		final ExecutorService executor = Executors.newFixedThreadPool(workers
+			.length(), r -> {
+				final Thread t = new Thread(r, "Coordinator-worker");
+				t.setDaemon(true);
+				return t;
+			});
+		try {
+			for (int w = 0; w < workers.length(); w++) {
+				final int worker = w;
+				executor.execute(() -> drain(worker, tasks, queue, attempts, results,
+					done));
+			}
+			done.await();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Gets whether the given arguments ask for a batch job across worker
+	 * processes.
+	 */
+	public static boolean isRequested(final String... args) {
+		for (final String arg : args) {
+			if (arg.equals(FLAG) || arg.startsWith(FLAG + "=")) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the script given after the {@value #FLAG} flag once for each of the
+	 * files which follow it, passing the file as the {@value #FILE_INPUT}
+	 * input, and prints each file's outputs.
+	 */
+	public static void launch(final String... args) {
+		int count = Runtime.getRuntime().availableProcessors();
+		final List<String> paths = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.startsWith(FLAG + "=")) {
+				count = Integer.parseInt(arg.substring(FLAG.length() + 1));
+			}
+			else if (!arg.equals(FLAG)) paths.add(arg);
+		}
+		if (paths.isEmpty()) {
+			System.err.println("Usage: " + FLAG + "[=<workers>] <script> <files...>");
+			return;
+		}
+		final File scriptFile = new File(paths.get(0));
+		final String name = scriptFile.getName();
+		final String extension = name.substring(name.lastIndexOf('.') + 1);
+		final List<File> files = new ArrayList<>();
+		for (final String path : paths.subList(1, paths.size())) {
+			files.add(new File(path));
+		}
+		try (final Coordinator coordinator = new Coordinator(Math.max(1, Math.min(
+			count, files.size()))))
+		{
+			final String script = new String(Files.readAllBytes(scriptFile
+				.toPath()), StandardCharsets.UTF_8);
+			final List<TaskResult> results = coordinator.run(Task.forFiles(
+				extension, script, FILE_INPUT, files));
+			for (int i = 0; i < results.size(); i++) {
+				final TaskResult result = results.get(i);
+				if (result.isSuccess()) {
+					System.out.println(files.get(i) + ": " + result.getOutput());
+				}
+				else {
+					System.err.println(files.get(i) + " failed: " + result.getError());
+				}
+			}
+		}
+		catch (final IOException exc) {
+			System.err.println("Cannot read script: " + exc.getMessage());
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// -- AutoCloseable methods --
+
+	/** Shuts all workers down. */
+	@Override
+	public void close() {
+		closed = true;
+		for (int w = 0; w < workers.length(); w++) {
+			final WorkerProcess worker = workers.getAndSet(w, null);
+			if (worker != null) worker.close();
+		}
+		watchdog.shutdownNow();
+	}
+
+	// -- Helper methods --
+
+	/** Feeds tasks from the queue to one worker until all tasks are done. */
+	private void drain(final int worker, final List<Task> tasks,
+		final BlockingQueue<Integer> queue, final int[] attempts,
+		final TaskResult[] results, final CountDownLatch done)
+	{
+		while (done.getCount() > 0) {
+			final Integer index;
+			try {
+				index = queue.poll(100, TimeUnit.MILLISECONDS);
+			}
+			catch (final InterruptedException exc) {
+				return;
+			}
+			if (index == null) continue;
+			final Task task = tasks.get(index);
+			attempts[index]++;
+			try {
+				final String response = worker(worker).request(task.getRequest(),
+					taskTimeout);
+				results[index] = TaskResult.fromResponse(task, response,
+					attempts[index], worker);
+				done.countDown();
+			}
+			catch (final IOException exc) {
+				discard(worker);
+				if (attempts[index] < maxAttempts) queue.add(index);
+				else {
+					results[index] = new TaskResult(task, false, "Worker failed: " + exc
+						.getMessage(), attempts[index], worker);
+					done.countDown();
+				}
+			}
+		}
+	}
+
+	/** Gets the given worker, starting it if it is not running. */
+	private WorkerProcess worker(final int w) throws IOException {
+		final WorkerProcess current = workers.get(w);
+		if (current != null && current.isAlive()) return current;
+		if (current != null) discard(w);
+		if (closed) throw new IOException("Coordinator is closed");
+		starts.incrementAndGet();
+		final WorkerProcess started = new WorkerProcess(getWorkerCommand(),
+			watchdog, startTimeout);
+		workers.set(w, started);
+		if (closed) {
+			discard(w);
+			throw new IOException("Coordinator is closed");
+		}
+		return started;
+	}
+
+	private void discard(final int w) {
+		final WorkerProcess worker = workers.getAndSet(w, null);
+		if (worker != null) worker.destroy();
+	}
+
+}
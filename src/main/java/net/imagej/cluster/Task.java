@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A unit of work which a {@link Coordinator} hands to one of its workers.
+ * <p>
+ * A task is a single request of the {@link net.imagej.server.ImageJServer}
+ * protocol. The factory methods shard a batch job into such requests, by file
+ * or by tile.
+ * </p>
+ */
+public final class Task {
+
+	private final String request;
+	private final String description;
+
+	private Task(final String request, final String description) {
+		this.request = request;
+		this.description = description;
+	}
+
+	// -- Task methods --
+
+	/** Gets the protocol request which runs this task. */
+	public String getRequest() {
+		return request;
+	}
+
+	/** Gets a short human-readable description of this task. */
+	public String getDescription() {
+		return description;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	// -- Utility methods --
+
+	/** Creates a task which runs the named op with the given arguments. */
+	public static Task op(final String name, final Object... args) {
+		final StringBuilder sb = new StringBuilder("OP ").append(token(name));
+		for (final Object arg : args) {
+			sb.append(" ").append(token(arg));
+		}
+		return new Task(sb.toString(), name);
+	}
+
+	/**
+	 * Creates a task which runs a script.
+	 * 
+	 * @param extension The file extension which identifies the script
+	 *          language.
+	 * @param script The script source.
+	 * @param inputs The values of the script's inputs, by name.
+	 */
+	public static Task script(final String extension, final String script,
+		final Map<String, ?> inputs)
+	{
+		final String[] lines = script.split("\r?\n");
+		final StringBuilder sb = new StringBuilder("SCRIPT ");
+		sb.append(token(extension)).append(" ").append(lines.length);
+		final StringBuilder description = new StringBuilder("script");
+		for (final Map.Entry<String, ?> input : inputs.entrySet()) {
+			final String pair = input.getKey() + "=" + input.getValue();
+			sb.append(" ").append(token(pair));
+			description.append(" ").append(pair);
+		}
+		for (final String line : lines) {
+			sb.append("\n").append(line);
+		}
+		return new Task(sb.toString(), description.toString());
+	}
+
+	/**
+	 * Shards a batch job by file: one task per file, each running the script
+	 * with the file's path as the given input.
+	 */
+	public static List<Task> forFiles(final String extension,
+		final String script, final String input, final List<File> files)
+	{
+		final List<Task> tasks = new ArrayList<>(files.size());
+		for (final File file : files) {
+			tasks.add(script(extension, script, Collections.singletonMap(input,
+				file.getPath())));
+		}
+		return tasks;
+	}
+
+	/**
+	 * Shards a batch job by tile: one task per tile of a {@code width} x
+	 * {@code height} plane, each running the script with the tile's
+	 * {@code x}, {@code y}, {@code width} and {@code height} as inputs. Tiles
+	 * at the right and bottom edges are cropped to the plane.
+	 */
+	public static List<Task> forTiles(final String extension,
+		final String script, final long width, final long height,
+		final long tileWidth, final long tileHeight)
+	{
+		if (tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Invalid tile size: " + tileWidth +
+				"x" + tileHeight);
+		}
+		final List<Task> tasks = new ArrayList<>();
+		for (long y = 0; y < height; y += tileHeight) {
+			for (long x = 0; x < width; x += tileWidth) {
+				final Map<String, Object> inputs = new LinkedHashMap<>();
+				inputs.put("x", x);
+				inputs.put("y", y);
+				inputs.put("width", Math.min(tileWidth, width - x));
+				inputs.put("height", Math.min(tileHeight, height - y));
+				tasks.add(script(extension, script, inputs));
+			}
+		}
+		return tasks;
+	}
+
+	// -- Helper methods --
+
+	private static String token(final Object value) {
+		final String s = String.valueOf(value);
+		if (s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Unsupported argument: " + s);
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.isWhitespace(s.charAt(i))) return "\"" + s + "\"";
+		}
+		return s.isEmpty() ? "\"\"" : s;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+/**
+ * The outcome of a {@link Task} run by a {@link Coordinator}.
+ */
+public final class TaskResult {
+
+	private final Task task;
+	private final boolean success;
+	private final String message;
+	private final int attempts;
+	private final int worker;
+
+	TaskResult(final Task task, final boolean success, final String message,
+		final int attempts, final int worker)
+	{
+		this.task = task;
+		this.success = success;
+		this.message = message;
+		this.attempts = attempts;
+		this.worker = worker;
+	}
+
+	// -- TaskResult methods --
+
+	/** Gets the task this is the outcome of. */
+	public Task getTask() {
+		return task;
+	}
+
+	/** Gets whether the task ran to completion. */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/** Gets the task's output, or null if it failed. */
+	public String getOutput() {
+		return success ? message : null;
+	}
+
+	/** Gets the reason the task failed, or null if it succeeded. */
+	public String getError() {
+		return success ? null : message;
+	}
+
+	/**
+	 * Gets how many times the task was started; more than once if a worker
+	 * failed while running it.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/** Gets the index of the worker which ran the task's last attempt. */
+	public int getWorker() {
+		return worker;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return task + (success ? ": " + message : " failed: " + message);
+	}
+
+	// -- Helper methods --
+
+	/** Interprets a response line of the server protocol. */
+	static TaskResult fromResponse(final Task task, final String response,
+		final int attempts, final int worker)
+	{
+		if (response.startsWith("OK ")) {
+			return new TaskResult(task, true, unescape(response.substring(3)),
+				attempts, worker);
+		}
+		if (response.startsWith("ERR ")) {
+			return new TaskResult(task, false, unescape(response.substring(4)),
+				attempts, worker);
+		}
+		return new TaskResult(task, false, "Unexpected response: " + response,
+			attempts, worker);
+	}
+
+	private static String unescape(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c != '\\' || i + 1 == s.length()) {
+				sb.append(c);
+				continue;
+			}
+			final char next = s.charAt(++i);
+			sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+		}
+		return sb.toString();
+	}
+
+}
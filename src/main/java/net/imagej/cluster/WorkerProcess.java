@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link ClusterWorker} process, as seen by its {@link Coordinator}.
+ * <p>
+ * Any {@link IOException} means that the process is gone (or was killed for
+ * exceeding its time limit) and that the worker must be discarded.
+ * </p>
+ */
+final class WorkerProcess implements AutoCloseable {
+
+	private final Process process;
+	private final BufferedReader in;
+	private final PrintWriter out;
+	private final ScheduledExecutorService watchdog;
+
+	/**
+	 * Starts a worker process and waits until it is ready for requests.
+	 * 
+	 * @param command The command line which starts the worker.
+	 * @param watchdog Scheduler for killing workers which exceed a timeout.
+	 * @param startTimeout Milliseconds to wait for the worker to become ready.
+	 */
+	WorkerProcess(final List<String> command,
+		final ScheduledExecutorService watchdog, final long startTimeout)
+		throws IOException
+	{
+		this.watchdog = watchdog;
+		process = new ProcessBuilder(command).redirectError(
+			ProcessBuilder.Redirect.INHERIT).start();
+		in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+			StandardCharsets.UTF_8));
+		out = new PrintWriter(new OutputStreamWriter(process.getOutputStream(),
+			StandardCharsets.UTF_8), true);
+		final ScheduledFuture<?> kill = schedule(startTimeout);
+		try {
+			String line;
+			do {
+				line = readLine();
+			}
+			while (!line.equals(ClusterWorker.READY));
+		}
+		catch (final IOException exc) {
+			process.destroyForcibly();
+			throw exc;
+		}
+		finally {
+			if (kill != null) kill.cancel(false);
+		}
+	}
+
+	/**
+	 * Sends a request and waits for its response line.
+	 * 
+	 * @param request The request, which may span several lines.
+	 * @param timeout Milliseconds after which the worker is killed, or 0 to
+	 *          wait indefinitely.
+	 */
+	String request(final String request, final long timeout)
+		throws IOException
+	{
+		final ScheduledFuture<?> kill = schedule(timeout);
+		try {
+			out.println(request);
+			if (out.checkError()) throw new IOException("Cannot reach worker");
+			return readLine();
+		}
+		finally {
+			if (kill != null) kill.cancel(false);
+		}
+	}
+
+	boolean isAlive() {
+		return process.isAlive();
+	}
+
+	// -- AutoCloseable methods --
+
+	/** Asks the worker to shut down, and kills it if it does not. */
+	@Override
+	public void close() {
+		if (process.isAlive()) {
+			out.println("SHUTDOWN");
+			try {
+				if (!process.waitFor(5, TimeUnit.SECONDS)) process.destroyForcibly();
+			}
+			catch (final InterruptedException exc) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+		out.close();
+	}
+
+	/** Kills the worker without further ado. */
+	void destroy() {
+		process.destroyForcibly();
+		out.close();
+	}
+
+	// -- Helper methods --
+
+	private String readLine() throws IOException {
+		final String line = in.readLine();
+		if (line != null) return line;
+		String status = "";
+		try {
+			if (process.waitFor(1, TimeUnit.SECONDS)) {
+				status = " with status " + process.exitValue();
+			}
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		throw new IOException("Worker exited" + status);
+	}
+
+	private ScheduledFuture<?> schedule(final long timeout) {
+		if (timeout <= 0) return null;
+		return watchdog.schedule(() -> {
+			process.destroyForcibly();
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,302 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import net.imagej.cache.CacheStats;
+import net.imagej.cache.LRUCache;
+import net.imagej.metrics.MetricsService;
+import net.imagej.ops.Contingent;
+import net.imagej.ops.Op;
+import net.imagej.ops.OpService;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+
+import org.scijava.Context;
+import org.scijava.InstantiableException;
+import org.scijava.command.CommandInfo;
+import org.scijava.event.EventHandler;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleItem;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.event.PluginsAddedEvent;
+import org.scijava.plugin.event.PluginsRemovedEvent;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link OpDispatchService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultOpDispatchService extends AbstractService implements
+	OpDispatchService
+{
+
+	@Parameter
+	private OpService opService;
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	private final LRUCache<Signature, Match> cache = new LRUCache<>(
+		MAX_ENTRIES);
+
+	// -- OpDispatchService methods --
+
+	@Override
+	public Object run(final String name, final Object... args) {
+		return opService.run(module(name, args));
+	}
+
+	@Override
+	public Object run(final Module module) {
+		return opService.run(module);
+	}
+
+	@Override
+	public Module module(final String name, final Object... args) {
+		final Signature signature = Signature.of(name, args);
+		if (signature == null) return opService.module(name, args);
+
+		final Match cached = cache.getIfPresent(signature);
+		if (cached != null) {
+			// NB: Wrapping an op instance only injects it and assigns the inputs,
+			// one argument per input; unlike resolving by name or class, it does
+			// not match again, so omitted optional inputs are padded here.
+			final Op op;
+			try {
+				op = (Op) cached.info.createInstance();
+			}
+			catch (final InstantiableException exc) {
+				throw new IllegalStateException("Cannot create op " + cached.info
+					.getClassName(), exc);
+			}
+			return opService.module(op, cached.pad(args));
+		}
+
+		// resolve once, and hand out the very module the match produced
+		final Module module = opService.module(name, args);
+		final Object op = module.getDelegateObject();
+		if (op instanceof Op && !(op instanceof Contingent) && module
+			.getInfo() instanceof CommandInfo)
+		{
+			final Match match = Match.of((CommandInfo) module.getInfo(), module,
+				args);
+			if (match != null) cache.put(signature, match);
+		}
+		return module;
+	}
+
+	@Override
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		if (metricsService == null) return;
+		metricsService.cacheGauges("ops.dispatch.cache", this::getStats);
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final PluginsAddedEvent evt) {
+		clear();
+	}
+
+	@EventHandler
+	protected void onEvent(final PluginsRemovedEvent evt) {
+		clear();
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A resolved op, and where the arguments of a call go among its inputs.
+	 * Optional inputs the call leaves out are padded with null, the same way
+	 * the op matcher pads them.
+	 */
+	private static final class Match {
+
+		private final CommandInfo info;
+
+		/** Index of the argument for each input, or -1 for a padded input. */
+		private final int[] layout;
+
+		private Match(final CommandInfo info, final int[] layout) {
+			this.info = info;
+			this.layout = layout;
+		}
+
+		/**
+		 * Gets the match of a resolved module, or null if its inputs do not hold
+		 * the arguments as the padding would place them.
+		 */
+		public static Match of(final CommandInfo info, final Module module,
+			final Object[] args)
+		{
+			final List<ModuleItem<?>> inputs = inputs(info);
+			final int[] layout = layout(inputs, args.length);
+			if (layout == null) return null;
+			for (int i = 0; i < layout.length; i++) {
+				final Object expected = layout[i] < 0 ? null : args[layout[i]];
+				final Object actual = module.getInput(inputs.get(i).getName());
+				if (expected != actual && !Objects.equals(expected, actual)) {
+					return null;
+				}
+			}
+			return new Match(info, layout);
+		}
+
+		/** Spreads the arguments of a call over the inputs of the op. */
+		public Object[] pad(final Object[] args) {
+			final Object[] padded = new Object[layout.length];
+			for (int i = 0; i < layout.length; i++) {
+				padded[i] = layout[i] < 0 ? null : args[layout[i]];
+			}
+			return padded;
+		}
+
+		/** Gets the op inputs, excluding services and the context. */
+		private static List<ModuleItem<?>> inputs(final CommandInfo info) {
+			final List<ModuleItem<?>> inputs = new ArrayList<>();
+			for (final ModuleItem<?> item : info.inputs()) {
+				final Class<?> type = item.getType();
+				if (Service.class.isAssignableFrom(type)) continue;
+				if (Context.class.isAssignableFrom(type)) continue;
+				inputs.add(item);
+			}
+			return inputs;
+		}
+
+		/**
+		 * Places the given number of arguments among the inputs, filling the
+		 * leading optional inputs and leaving the rest out.
+		 */
+		private static int[] layout(final List<ModuleItem<?>> inputs,
+			final int argCount)
+		{
+			int required = 0;
+			for (final ModuleItem<?> item : inputs) {
+				if (item.isRequired()) required++;
+			}
+			if (argCount < required || argCount > inputs.size()) return null;
+			final int optionalsToFill = argCount - required;
+			final int[] layout = new int[inputs.size()];
+			int arg = 0, optional = 0;
+			for (int i = 0; i < layout.length; i++) {
+				final boolean skip = !inputs.get(i).isRequired() &&
+					optional++ >= optionalsToFill;
+				layout[i] = skip ? -1 : arg++;
+			}
+			return layout;
+		}
+	}
+
+	/**
+	 * An op name and the types of the arguments it is called with. For images,
+	 * the element type is part of the signature, since ops are often specific
+	 * to it while the image classes are not.
+	 */
+	private static final class Signature {
+
+		private final String name;
+		private final Class<?>[] types;
+		private final int hash;
+
+		private Signature(final String name, final Class<?>[] types) {
+			this.name = name;
+			this.types = types;
+			hash = name.hashCode() * 31 + Arrays.hashCode(types);
+		}
+
+		/** Gets the signature of a call, or null if an argument is null. */
+		public static Signature of(final String name, final Object[] args) {
+			final Class<?>[] types = new Class<?>[2 * args.length];
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] == null) return null;
+				types[2 * i] = args[i].getClass();
+				types[2 * i + 1] = elementType(args[i]);
+			}
+			return new Signature(name, types);
+		}
+
+		/** Gets the class of an image's elements, or null if not an image. */
+		private static Class<?> elementType(final Object arg) {
+			if (arg instanceof IterableInterval) {
+				final IterableInterval<?> ii = (IterableInterval<?>) arg;
+				return ii.size() == 0 ? null : ii.firstElement().getClass();
+			}
+			if (arg instanceof RandomAccessibleInterval) {
+				final RandomAccessibleInterval<?> rai =
+					(RandomAccessibleInterval<?>) arg;
+				final long[] min = new long[rai.numDimensions()];
+				for (int d = 0; d < min.length; d++) {
+					if (rai.dimension(d) <= 0) return null;
+					min[d] = rai.min(d);
+				}
+				final RandomAccess<?> ra = rai.randomAccess();
+				ra.setPosition(min);
+				return ra.get().getClass();
+			}
+			return null;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Signature)) return false;
+			final Signature other = (Signature) o;
+			return hash == other.hash && name.equals(other.name) && Arrays.equals(
+				types, other.types);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+}
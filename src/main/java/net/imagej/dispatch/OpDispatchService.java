@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.dispatch;
+
+import net.imagej.ImageJService;
+import net.imagej.cache.CacheStats;
+import net.imagej.ops.OpService;
+
+import org.scijava.module.Module;
+
+/**
+ * Runs ops by name like {@link OpService#run(String, Object...)}, but
+ * remembers which op each name and argument type signature resolved to, so
+ * that later calls with arguments of the same types, and images of the same
+ * element types, create that op directly instead of matching the name against
+ * all op plugins.
+ * <p>
+ * The remembered resolutions are dropped whenever plugins are added or
+ * removed. Ops whose applicability depends on argument values rather than
+ * types ({@link net.imagej.ops.Contingent} ops) are always resolved anew, as
+ * are calls with null arguments.
+ * </p>
+ */
+public interface OpDispatchService extends ImageJService {
+
+	/** Maximum number of remembered resolutions. */
+	int MAX_ENTRIES = 4096;
+
+	/**
+	 * Runs the named op, resolving it from the cache when possible.
+	 * 
+	 * @see OpService#run(String, Object...)
+	 */
+	Object run(String name, Object... args);
+
+	/**
+	 * Runs an op module, e.g. one obtained from {@link #module}.
+	 * 
+	 * @see OpService#run(Module)
+	 */
+	Object run(Module module);
+
+	/**
+	 * Resolves the named op into a module with the given inputs, without
+	 * running it, using the cache when possible.
+	 * 
+	 * @see OpService#module(String, Object...)
+	 */
+	Module module(String name, Object... args);
+
+	/** Drops all remembered resolutions. */
+	void clear();
+
+	/** Gets a snapshot of the resolution cache's counters. */
+	CacheStats getStats();
+
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+/**
+ * A pool of reusable {@code int[]} ARGB buffers, keyed by length.
+ * <p>
+ * Acquiring and releasing buffers allocates nothing once the pool holds a
+ * buffer of the requested length, so rendering into pooled buffers creates
+ * no garbage in steady state. Buffers of a handful of distinct lengths are
+ * expected, e.g. one per frame and thumbnail size; they are looked up by a
+ * linear scan.
+ * </p>
+ */
+public class ArgbBufferPool {
+
+	private final int maxPerSize;
+	private Slot[] slots = new Slot[0];
+	private long allocations;
+	private long reuses;
+
+	/**
+	 * Creates a pool.
+	 * 
+	 * @param maxPerSize The maximum number of idle buffers kept per length;
+	 *          further released buffers are dropped.
+	 */
+	public ArgbBufferPool(final int maxPerSize) {
+		this.maxPerSize = maxPerSize;
+	}
+
+	// -- ArgbBufferPool methods --
+
+	/**
+	 * Gets a buffer of the given length, reusing a released one if possible.
+	 * Its contents are undefined.
+	 */
+	public synchronized int[] acquire(final int length) {
+		final Slot slot = slot(length, false);
+		if (slot != null && slot.count > 0) {
+			reuses++;
+			final int[] buffer = slot.buffers[--slot.count];
+			slot.buffers[slot.count] = null;
+			return buffer;
+		}
+		allocations++;
+		return new int[length];
+	}
+
+	/** Returns a buffer to the pool. It must not be used afterwards. */
+	public synchronized void release(final int[] buffer) {
+		final Slot slot = slot(buffer.length, true);
+		if (slot.count < slot.buffers.length) slot.buffers[slot.count++] = buffer;
+	}
+
+	/** Drops all idle buffers. */
+	public synchronized void clear() {
+		slots = new Slot[0];
+	}
+
+	/** Gets the number of buffers allocated because none was idle. */
+	public synchronized long getAllocations() {
+		return allocations;
+	}
+
+	/** Gets the number of buffers acquired from the pool. */
+	public synchronized long getReuses() {
+		return reuses;
+	}
+
+	// -- Helper methods --
+
+	private Slot slot(final int length, final boolean create) {
+		for (final Slot slot : slots) {
+			if (slot.length == length) return slot;
+		}
+		if (!create) return null;
+		final Slot slot = new Slot(length, maxPerSize);
+		final Slot[] grown = new Slot[slots.length + 1];
+		System.arraycopy(slots, 0, grown, 0, slots.length);
+		grown[slots.length] = slot;
+		slots = grown;
+		return slot;
+	}
+
+	// -- Helper classes --
+
+	/** The idle buffers of one length. */
+	private static class Slot {
+
+		private final int length;
+		private final int[][] buffers;
+		private int count;
+
+		public Slot(final int length, final int capacity) {
+			this.length = length;
+			buffers = new int[capacity][];
+		}
+	}
+
+}
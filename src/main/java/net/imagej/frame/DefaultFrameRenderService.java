@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+import java.util.concurrent.ExecutionException;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.cache.LRUCache;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.ColorTable;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link FrameRenderService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultFrameRenderService extends AbstractService implements
+	FrameRenderService
+{
+
+	private final LRUCache<TableKey, LutTable> tables = new LRUCache<>(
+		MAX_TABLES);
+
+	private final ArgbBufferPool pool = new ArgbBufferPool(MAX_POOLED_BUFFERS);
+
+	// -- FrameRenderService methods --
+
+	@Override
+	public FrameRenderer createRenderer(final RandomAccessibleInterval<?> image) {
+		int channelAxis = -1;
+		if (image instanceof Dataset) {
+			channelAxis = ((Dataset) image).dimensionIndex(Axes.CHANNEL);
+		}
+		else if (image instanceof ImgPlus) {
+			channelAxis = ((ImgPlus<?>) image).dimensionIndex(Axes.CHANNEL);
+		}
+		return createRenderer(image, channelAxis);
+	}
+
+	@Override
+	public FrameRenderer createRenderer(final RandomAccessibleInterval<?> image,
+		final int channelAxis)
+	{
+		return new FrameRenderer(this, image, channelAxis);
+	}
+
+	@Override
+	public LutTable getTable(final ColorTable lut, final double min,
+		final double max, final int size)
+	{
+		try {
+			return tables.get(new TableKey(lut, min, max, size), key -> size > 0
+				? LutTable.direct(lut, min, max, size) : LutTable.scaled(lut, min,
+					max));
+		}
+		catch (final ExecutionException exc) {
+			throw new IllegalStateException(exc.getCause());
+		}
+	}
+
+	@Override
+	public ArgbBufferPool getBufferPool() {
+		return pool;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		tables.invalidateAll();
+		pool.clear();
+	}
+
+	// -- Helper classes --
+
+	/** Identifies a lookup table. */
+	private static class TableKey {
+
+		private final ColorTable lut;
+		private final double min;
+		private final double max;
+		private final int size;
+
+		public TableKey(final ColorTable lut, final double min, final double max,
+			final int size)
+		{
+			this.lut = lut;
+			this.min = min;
+			this.max = max;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TableKey)) return false;
+			final TableKey other = (TableKey) o;
+			return lut == other.lut && Double.compare(min, other.min) == 0 && Double
+				.compare(max, other.max) == 0 && size == other.size;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(lut);
+			hash = 31 * hash + Double.hashCode(min);
+			hash = 31 * hash + Double.hashCode(max);
+			return 31 * hash + size;
+		}
+	}
+
+}
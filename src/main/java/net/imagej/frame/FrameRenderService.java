@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.ColorTable;
+
+/**
+ * Renders image planes to ARGB without per-frame allocation, for scrubbing
+ * through time series and rendering thumbnails in bulk.
+ * <p>
+ * A {@link FrameRenderer} is created once per image and then renders any
+ * number of frames into buffers from a shared {@link ArgbBufferPool}. Lookup
+ * tables, precomputed per color table, display range and pixel type, are
+ * cached and shared between renderers.
+ * </p>
+ */
+public interface FrameRenderService extends ImageJService {
+
+	/** Maximum number of idle buffers pooled per buffer length. */
+	int MAX_POOLED_BUFFERS = 8;
+
+	/** Maximum number of cached lookup tables. */
+	int MAX_TABLES = 256;
+
+	/**
+	 * Creates a renderer for an image whose first two dimensions are X and Y.
+	 * The channels of {@link net.imagej.Dataset}s and
+	 * {@link net.imagej.ImgPlus}es with a {@link net.imagej.axis.Axes#CHANNEL}
+	 * axis are composited; other images are rendered as a single channel.
+	 */
+	FrameRenderer createRenderer(RandomAccessibleInterval<?> image);
+
+	/**
+	 * Creates a renderer compositing the channels along the given dimension,
+	 * or a single channel if it is negative.
+	 */
+	FrameRenderer createRenderer(RandomAccessibleInterval<?> image,
+		int channelAxis);
+
+	/**
+	 * Gets the lookup table for a color table and display range, computing it
+	 * if it is not cached. Color tables are compared by identity.
+	 * 
+	 * @param size The number of entries of a {@link LutTable#direct direct}
+	 *          table, or 0 for a {@link LutTable#scaled scaled} one.
+	 */
+	LutTable getTable(ColorTable lut, double min, double max, int size);
+
+	/** Gets the pool of ARGB frame buffers. */
+	ArgbBufferPool getBufferPool();
+
+}
@@ -0,0 +1,335 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.ColorTable;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Renders XY planes of an image into ARGB buffers, compositing its channels
+ * additively, each through its own {@link LutTable}.
+ * <p>
+ * Everything a frame needs is set up when the renderer is created or a
+ * channel is configured, so rendering a frame allocates nothing. Planes of
+ * {@link ArrayImg}s and {@link PlanarImg}s of 8-bit unsigned, 16-bit
+ * unsigned, 32-bit float and 64-bit double pixels are read directly from
+ * their arrays; other images are read through a reused
+ * {@link RandomAccess}. Renderers are not thread-safe; create one per
+ * thread.
+ * </p>
+ */
+public class FrameRenderer {
+
+	/** The pixel types with direct array access. */
+	private enum Kind {
+		U8, U16, F32, F64
+	}
+
+	/**
+	 * The default gray LUT, shared so that the service's table cache, which
+	 * compares LUTs by identity, reuses its tables across renderers.
+	 */
+	private static final ColorTable GRAY = new ColorTable8();
+
+	private final FrameRenderService service;
+	private final RandomAccessibleInterval<? extends RealType<?>> image;
+	private final int channelAxis;
+	private final int channels;
+	private final int width;
+	private final int height;
+	private final LutTable[] tables;
+	private final long[] dims;
+	private final long[] position;
+
+	/** Number of entries of direct lookup tables, or 0 for scaled ones. */
+	private final int tableSize;
+
+	/** Pixel type for direct access, or null. */
+	private final Kind kind;
+
+	/** Plane arrays of a {@link PlanarImg}, or the array of an ArrayImg. */
+	private final Object[] arrays;
+
+	private final RandomAccess<? extends RealType<?>> access;
+
+	FrameRenderer(final FrameRenderService service,
+		final RandomAccessibleInterval<?> image, final int channelAxis)
+	{
+		if (image.numDimensions() < 2) {
+			throw new IllegalArgumentException("Image has no XY planes");
+		}
+		if (channelAxis == 0 || channelAxis == 1 || channelAxis >= image
+			.numDimensions())
+		{
+			throw new IllegalArgumentException("Invalid channel axis: " +
+				channelAxis);
+		}
+		final Object first = image.randomAccess().get();
+		if (!(first instanceof RealType)) {
+			throw new IllegalArgumentException("Not a real-valued image");
+		}
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<? extends RealType<?>> real =
+			(RandomAccessibleInterval<? extends RealType<?>>) image;
+		this.service = service;
+		this.image = real;
+		this.channelAxis = channelAxis;
+		channels = channelAxis < 0 ? 1 : (int) image.dimension(channelAxis);
+		width = (int) image.dimension(0);
+		height = (int) image.dimension(1);
+		dims = Intervals.dimensionsAsLongArray(image);
+		position = new long[image.numDimensions()];
+		access = real.randomAccess();
+
+		Object img = image;
+		if (img instanceof Dataset) img = ((Dataset) img).getImgPlus();
+		if (img instanceof ImgPlus) img = ((ImgPlus<?>) img).getImg();
+		Object[] a = null;
+		if (img instanceof PlanarImg) {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+			a = new Object[planar.numSlices()];
+			for (int i = 0; i < a.length; i++) {
+				final Object plane = planar.getPlane(i);
+				if (!(plane instanceof ArrayDataAccess)) {
+					a = null;
+					break;
+				}
+				a[i] = ((ArrayDataAccess<?>) plane).getCurrentStorageArray();
+			}
+		}
+		else if (img instanceof ArrayImg) {
+			final Object data = ((ArrayImg<?, ?>) img).update(null);
+			if (data instanceof ArrayDataAccess) {
+				a = new Object[] { ((ArrayDataAccess<?>) data)
+					.getCurrentStorageArray() };
+			}
+		}
+		Kind k = null;
+		if (a != null) {
+			if (first instanceof UnsignedByteType) k = Kind.U8;
+			else if (first instanceof UnsignedShortType) k = Kind.U16;
+			else if (first instanceof FloatType) k = Kind.F32;
+			else if (first instanceof DoubleType) k = Kind.F64;
+		}
+		kind = k;
+		arrays = k == null ? null : a;
+		tableSize = first instanceof UnsignedByteType ? 256
+			: first instanceof UnsignedShortType ? 65536 : 0;
+
+		tables = new LutTable[channels];
+		final RealType<?> type = (RealType<?>) first;
+		final boolean integer = type instanceof IntegerType;
+		final double min = integer ? type.getMinValue() : 0;
+		final double max = integer ? type.getMaxValue() : 1;
+		for (int c = 0; c < channels; c++) {
+			setChannel(c, GRAY, min, max);
+		}
+	}
+
+	// -- FrameRenderer methods --
+
+	/** Gets the width of rendered frames. */
+	public int getWidth() {
+		return width;
+	}
+
+	/** Gets the height of rendered frames. */
+	public int getHeight() {
+		return height;
+	}
+
+	/** Gets the number of composited channels. */
+	public int getChannelCount() {
+		return channels;
+	}
+
+	/** Gets whether planes are read directly from primitive arrays. */
+	public boolean isDirect() {
+		return kind != null;
+	}
+
+	/**
+	 * Sets the color table and display range of a channel. Its lookup table
+	 * comes from {@link FrameRenderService#getTable}, shared with other
+	 * renderers using the same settings.
+	 */
+	public void setChannel(final int channel, final ColorTable lut,
+		final double min, final double max)
+	{
+		tables[channel] = service.getTable(lut, min, max, tableSize);
+	}
+
+	/** Gets the lookup table of a channel. */
+	LutTable getTable(final int channel) {
+		return tables[channel];
+	}
+
+	/**
+	 * Renders a frame into a buffer from the {@link ArgbBufferPool}. Release
+	 * it with {@link #release} when done.
+	 * 
+	 * @param pos The position of the plane; its X, Y and channel coordinates
+	 *          are ignored.
+	 */
+	public int[] render(final long... pos) {
+		final int[] target = service.getBufferPool().acquire(width * height);
+		render(pos, target);
+		return target;
+	}
+
+	/** Returns a rendered frame's buffer to the {@link ArgbBufferPool}. */
+	public void release(final int[] frame) {
+		service.getBufferPool().release(frame);
+	}
+
+	/**
+	 * Renders a frame into the given buffer, row by row.
+	 * 
+	 * @param pos The position of the plane; its X, Y and channel coordinates
+	 *          are ignored.
+	 * @param target A buffer of at least {@code width * height} elements.
+	 */
+	public void render(final long[] pos, final int[] target) {
+		if (target.length < width * height) {
+			throw new IllegalArgumentException("Buffer too small: " +
+				target.length);
+		}
+		for (int d = 0; d < position.length; d++) {
+			position[d] = d < 2 ? 0 : pos[d];
+		}
+		for (int c = 0; c < channels; c++) {
+			if (channelAxis >= 0) position[channelAxis] = c;
+			if (kind != null) renderDirect(tables[c], target, c == 0);
+			else renderGeneric(tables[c], target, c == 0);
+		}
+	}
+
+	// -- Helper methods --
+
+	private void renderDirect(final LutTable table, final int[] target,
+		final boolean first)
+	{
+		// index of the plane among all XY planes
+		long plane = 0, stride = 1;
+		for (int d = 2; d < dims.length; d++) {
+			plane += position[d] * stride;
+			stride *= dims[d];
+		}
+		final Object array;
+		final int offset;
+		if (arrays.length > 1 || dims.length == 2) {
+			array = arrays[(int) plane];
+			offset = 0;
+		}
+		else {
+			array = arrays[0];
+			offset = (int) (plane * width * height);
+		}
+		final int[] entries = table.getEntries();
+		final int n = width * height;
+		switch (kind) {
+			case U8: {
+				final byte[] a = (byte[]) array;
+				for (int i = 0; i < n; i++) {
+					final int argb = entries[a[offset + i] & 0xff];
+					target[i] = first ? argb : add(target[i], argb);
+				}
+				break;
+			}
+			case U16: {
+				final short[] a = (short[]) array;
+				for (int i = 0; i < n; i++) {
+					final int argb = entries[a[offset + i] & 0xffff];
+					target[i] = first ? argb : add(target[i], argb);
+				}
+				break;
+			}
+			case F32: {
+				final float[] a = (float[]) array;
+				for (int i = 0; i < n; i++) {
+					final int argb = table.lookup(a[offset + i]);
+					target[i] = first ? argb : add(target[i], argb);
+				}
+				break;
+			}
+			default: {
+				final double[] a = (double[]) array;
+				for (int i = 0; i < n; i++) {
+					final int argb = table.lookup(a[offset + i]);
+					target[i] = first ? argb : add(target[i], argb);
+				}
+			}
+		}
+	}
+
+	private void renderGeneric(final LutTable table, final int[] target,
+		final boolean first)
+	{
+		for (int d = 0; d < position.length; d++) {
+			access.setPosition(image.min(d) + position[d], d);
+		}
+		int i = 0;
+		for (int y = 0; y < height; y++) {
+			access.setPosition(image.min(1) + y, 1);
+			access.setPosition(image.min(0), 0);
+			for (int x = 0; x < width; x++) {
+				final int argb = table.lookup(access.get().getRealDouble());
+				target[i] = first ? argb : add(target[i], argb);
+				access.fwd(0);
+				i++;
+			}
+		}
+	}
+
+	/** Adds two ARGB colors, saturating each component. */
+	private static int add(final int a, final int b) {
+		final int r = Math.min(255, (a >> 16 & 0xff) + (b >> 16 & 0xff));
+		final int g = Math.min(255, (a >> 8 & 0xff) + (b >> 8 & 0xff));
+		final int bl = Math.min(255, (a & 0xff) + (b & 0xff));
+		return 0xff000000 | r << 16 | g << 8 | bl;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+import net.imglib2.display.ColorTable;
+
+/**
+ * A lookup table mapping pixel values straight to ARGB colors, precomputed
+ * from a {@link ColorTable} and a display range.
+ * <p>
+ * Tables for 8-bit and 16-bit unsigned pixels have one entry per possible
+ * value, so rendering needs one array read per pixel. Tables for other types
+ * sample the display range at {@link #SCALED_ENTRIES} points.
+ * </p>
+ */
+public final class LutTable {
+
+	/** Number of entries of tables for types other than 8/16-bit unsigned. */
+	public static final int SCALED_ENTRIES = 4096;
+
+	private final int[] argb;
+	private final double min;
+	private final double scale;
+
+	private LutTable(final int[] argb, final double min, final double scale) {
+		this.argb = argb;
+		this.min = min;
+		this.scale = scale;
+	}
+
+	/**
+	 * Creates a table with one entry per integer value from 0 to
+	 * {@code size - 1}, e.g. 256 for 8-bit unsigned pixels.
+	 */
+	public static LutTable direct(final ColorTable lut, final double min,
+		final double max, final int size)
+	{
+		final int[] argb = new int[size];
+		for (int v = 0; v < size; v++) {
+			argb[v] = lut.lookupARGB(min, max, v);
+		}
+		return new LutTable(argb, 0, 1);
+	}
+
+	/** Creates a table sampling the display range. */
+	public static LutTable scaled(final ColorTable lut, final double min,
+		final double max)
+	{
+		final int[] argb = new int[SCALED_ENTRIES];
+		final double step = (max - min) / (SCALED_ENTRIES - 1);
+		for (int i = 0; i < SCALED_ENTRIES; i++) {
+			argb[i] = lut.lookupARGB(min, max, min + i * step);
+		}
+		final double scale = max > min ? (SCALED_ENTRIES - 1) / (max - min) : 0;
+		return new LutTable(argb, min, scale);
+	}
+
+	// -- LutTable methods --
+
+	/** Gets the entries, indexed by value for direct tables. */
+	public int[] getEntries() {
+		return argb;
+	}
+
+	/** Gets the color of a value; NaN maps to the first entry. */
+	public int lookup(final double value) {
+		final double i = (value - min) * scale + 0.5;
+		if (!(i > 0)) return argb[0];
+		if (i >= argb.length) return argb[argb.length - 1];
+		return argb[(int) i];
+	}
+
+}
@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.kernel;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link PixelKernelService}. Array-backed images
+ * are processed in blocks of {@link #BLOCK_SIZE} values, which are read into
+ * a {@code double[]}, computed on and written back by {@link PrimitiveImage}.
+ */
+@Plugin(type = Service.class)
+public class DefaultPixelKernelService extends AbstractService implements
+	PixelKernelService
+{
+
+	/** Number of values processed per block. */
+	static final int BLOCK_SIZE = 4096;
+
+	// -- PixelKernelService methods --
+
+	@Override
+	public void arithmetic(final Arithmetic op,
+		final RandomAccessibleInterval<?> in, final double value,
+		final RandomAccessibleInterval<?> out)
+	{
+		checkShape(in, out);
+		final PrimitiveImage src = PrimitiveImage.of(in);
+		final PrimitiveImage dst = src == null ? null : PrimitiveImage.of(out);
+		if (dst != null) {
+			final double[] buf = new double[BLOCK_SIZE];
+			for (long i = 0; i < src.size(); i += BLOCK_SIZE) {
+				final int len = (int) Math.min(BLOCK_SIZE, src.size() - i);
+				src.read(i, 1, buf, len);
+				for (int j = 0; j < len; j++) {
+					buf[j] = op.apply(buf[j], value);
+				}
+				dst.write(i, 1, buf, len);
+			}
+			return;
+		}
+		final Cursor<? extends RealType<?>> cIn = cursor(in);
+		final Cursor<? extends RealType<?>> cOut = cursor(out);
+		while (cIn.hasNext()) {
+			final double v = op.apply(cIn.next().getRealDouble(), value);
+			store(cOut.next(), v);
+		}
+	}
+
+	@Override
+	public void convert(final RandomAccessibleInterval<?> in,
+		final RandomAccessibleInterval<?> out)
+	{
+		checkShape(in, out);
+		final PrimitiveImage src = PrimitiveImage.of(in);
+		final PrimitiveImage dst = src == null ? null : PrimitiveImage.of(out);
+		if (dst != null) {
+			final double[] buf = new double[BLOCK_SIZE];
+			for (long i = 0; i < src.size(); i += BLOCK_SIZE) {
+				final int len = (int) Math.min(BLOCK_SIZE, src.size() - i);
+				src.read(i, 1, buf, len);
+				dst.write(i, 1, buf, len);
+			}
+			return;
+		}
+		final Cursor<? extends RealType<?>> cIn = cursor(in);
+		final Cursor<? extends RealType<?>> cOut = cursor(out);
+		while (cIn.hasNext()) {
+			store(cOut.next(), cIn.next().getRealDouble());
+		}
+	}
+
+	@Override
+	public PixelStatistics statistics(final RandomAccessibleInterval<?> in) {
+		final PrimitiveImage src = PrimitiveImage.of(in);
+		long count = 0;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		if (src != null) {
+			final double[] buf = new double[BLOCK_SIZE];
+			for (long i = 0; i < src.size(); i += BLOCK_SIZE) {
+				final int len = (int) Math.min(BLOCK_SIZE, src.size() - i);
+				src.read(i, 1, buf, len);
+				for (int j = 0; j < len; j++) {
+					final double v = buf[j];
+					if (v < min) min = v;
+					if (v > max) max = v;
+					sum += v;
+				}
+				count += len;
+			}
+		}
+		else {
+			final Cursor<? extends RealType<?>> c = cursor(in);
+			while (c.hasNext()) {
+				final double v = c.next().getRealDouble();
+				if (v < min) min = v;
+				if (v > max) max = v;
+				sum += v;
+				count++;
+			}
+		}
+		if (count == 0) {
+			return new PixelStatistics(0, Double.NaN, Double.NaN, 0, Double.NaN);
+		}
+
+		// second pass, for a variance free of cancellation errors
+		final double mean = sum / count;
+		double squares = 0;
+		if (src != null) {
+			final double[] buf = new double[BLOCK_SIZE];
+			for (long i = 0; i < src.size(); i += BLOCK_SIZE) {
+				final int len = (int) Math.min(BLOCK_SIZE, src.size() - i);
+				src.read(i, 1, buf, len);
+				for (int j = 0; j < len; j++) {
+					final double d = buf[j] - mean;
+					squares += d * d;
+				}
+			}
+		}
+		else {
+			final Cursor<? extends RealType<?>> c = cursor(in);
+			while (c.hasNext()) {
+				final double d = c.next().getRealDouble() - mean;
+				squares += d * d;
+			}
+		}
+		final double variance = count < 2 ? Double.NaN : squares / (count - 1);
+		return new PixelStatistics(count, min, max, sum, variance);
+	}
+
+	@Override
+	public void convolve(final RandomAccessibleInterval<?> in,
+		final double[] kernel, final int dimension,
+		final RandomAccessibleInterval<?> out)
+	{
+		checkShape(in, out);
+		if (kernel.length % 2 == 0) {
+			throw new IllegalArgumentException("Kernel length is even: " +
+				kernel.length);
+		}
+		if (dimension < 0 || dimension >= in.numDimensions()) {
+			throw new IllegalArgumentException("Invalid dimension: " + dimension);
+		}
+		final int radius = kernel.length / 2;
+		final PrimitiveImage src = PrimitiveImage.of(in);
+		final PrimitiveImage dst = src == null ? null : PrimitiveImage.of(out);
+		if (dst != null) {
+			final long[] dims = src.getDimensions();
+			final int n = (int) dims[dimension];
+			long stride = 1;
+			for (int d = 0; d < dimension; d++) {
+				stride *= dims[d];
+			}
+			final long lines = src.size() / n;
+			final double[] line = new double[n];
+			final double[] result = new double[n];
+			for (long l = 0; l < lines; l++) {
+				// index of the line's first pixel
+				final long base = l / stride * stride * n + l % stride;
+				src.read(base, stride, line, n);
+				for (int x = 0; x < n; x++) {
+					double sum = 0;
+					for (int k = 0; k < kernel.length; k++) {
+						final int p = Math.min(Math.max(x + k - radius, 0), n - 1);
+						sum += kernel[k] * line[p];
+					}
+					result[x] = sum;
+				}
+				dst.write(base, stride, result, n);
+			}
+			return;
+		}
+		final RandomAccess<? extends RealType<?>> ra = Views.extendBorder(real(
+			Views.zeroMin(in))).randomAccess();
+		final Cursor<? extends RealType<?>> c = cursor(Views.zeroMin(out));
+		while (c.hasNext()) {
+			final RealType<?> t = c.next();
+			ra.setPosition(c);
+			ra.move(-radius, dimension);
+			double sum = 0;
+			for (int k = 0; k < kernel.length; k++) {
+				sum += kernel[k] * ra.get().getRealDouble();
+				ra.fwd(dimension);
+			}
+			store(t, sum);
+		}
+	}
+
+	@Override
+	public boolean isAccelerated(final RandomAccessibleInterval<?> image) {
+		return PrimitiveImage.of(image) != null;
+	}
+
+	// -- Helper methods --
+
+	private static void checkShape(final RandomAccessibleInterval<?> in,
+		final RandomAccessibleInterval<?> out)
+	{
+		if (!Intervals.equalDimensions(in, out)) {
+			throw new IllegalArgumentException("Image dimensions differ");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static RandomAccessibleInterval<? extends RealType<?>> real(
+		final RandomAccessibleInterval<?> image)
+	{
+		if (!(Views.iterable(image).firstElement() instanceof RealType)) {
+			throw new IllegalArgumentException("Not a real-valued image");
+		}
+		return (RandomAccessibleInterval<? extends RealType<?>>) image;
+	}
+
+	private static Cursor<? extends RealType<?>> cursor(
+		final RandomAccessibleInterval<?> image)
+	{
+		return Views.flatIterable(real(image)).cursor();
+	}
+
+	/**
+	 * Writes a value, with the same rounding and clamping as
+	 * {@link PrimitiveImage#write}.
+	 */
+	private static void store(final RealType<?> t, final double value) {
+		if (!(t instanceof IntegerType)) {
+			t.setReal(value);
+			return;
+		}
+		final double min = t.getMinValue(), max = t.getMaxValue();
+		if (!(value > min)) t.setReal(min);
+		else if (value >= max) t.setReal(max);
+		else t.setReal((double) Math.round(value));
+	}
+
+}
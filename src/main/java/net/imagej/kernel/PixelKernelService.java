@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.kernel;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Common pixel operations with kernels specialized for primitive arrays.
+ * <p>
+ * When an image is an {@link net.imglib2.img.array.ArrayImg} or a
+ * {@link net.imglib2.img.planar.PlanarImg} (directly, or inside a
+ * {@link net.imagej.Dataset} or {@link net.imagej.ImgPlus}) of 8-bit
+ * unsigned, 16-bit unsigned, 32-bit float or 64-bit double pixels, its arrays
+ * are processed directly in tight loops, without going through a
+ * {@link net.imglib2.type.numeric.RealType} per pixel. All other images,
+ * including views, go through a generic path, which gives identical results.
+ * </p>
+ * <p>
+ * Values are computed in double precision. When written to an integer image
+ * they are rounded half up and clamped to the range of its type, and NaN
+ * becomes the minimum of the range.
+ * </p>
+ */
+public interface PixelKernelService extends ImageJService {
+
+	/** Arithmetic operations with a constant. */
+	enum Arithmetic {
+		ADD, SUBTRACT, MULTIPLY, DIVIDE;
+
+		/** Applies the operation to a value. */
+		public double apply(final double a, final double b) {
+			switch (this) {
+				case ADD:
+					return a + b;
+				case SUBTRACT:
+					return a - b;
+				case MULTIPLY:
+					return a * b;
+				default:
+					return a / b;
+			}
+		}
+	}
+
+	/**
+	 * Computes {@code out = in <op> value} pixel by pixel. The output may be
+	 * the input itself.
+	 * 
+	 * @throws IllegalArgumentException if the images differ in shape.
+	 */
+	void arithmetic(Arithmetic op, RandomAccessibleInterval<?> in, double value,
+		RandomAccessibleInterval<?> out);
+
+	/** Computes {@code out = in + value}. */
+	default void add(final RandomAccessibleInterval<?> in, final double value,
+		final RandomAccessibleInterval<?> out)
+	{
+		arithmetic(Arithmetic.ADD, in, value, out);
+	}
+
+	/** Computes {@code out = in - value}. */
+	default void subtract(final RandomAccessibleInterval<?> in,
+		final double value, final RandomAccessibleInterval<?> out)
+	{
+		arithmetic(Arithmetic.SUBTRACT, in, value, out);
+	}
+
+	/** Computes {@code out = in * value}. */
+	default void multiply(final RandomAccessibleInterval<?> in,
+		final double value, final RandomAccessibleInterval<?> out)
+	{
+		arithmetic(Arithmetic.MULTIPLY, in, value, out);
+	}
+
+	/** Computes {@code out = in / value}. */
+	default void divide(final RandomAccessibleInterval<?> in, final double value,
+		final RandomAccessibleInterval<?> out)
+	{
+		arithmetic(Arithmetic.DIVIDE, in, value, out);
+	}
+
+	/**
+	 * Copies the values of one image into another of a possibly different
+	 * type, clamping them to its range.
+	 * 
+	 * @throws IllegalArgumentException if the images differ in shape.
+	 */
+	void convert(RandomAccessibleInterval<?> in, RandomAccessibleInterval<?> out);
+
+	/** Computes the minimum, maximum, sum, mean and variance of an image. */
+	PixelStatistics statistics(RandomAccessibleInterval<?> in);
+
+	/**
+	 * Convolves an image along one dimension with a kernel, centered on its
+	 * middle element, repeating the border pixels outside the image. Apply it
+	 * once per dimension for separable filters such as Gaussians.
+	 * 
+	 * @param in The input image.
+	 * @param kernel The kernel, of odd length.
+	 * @param dimension The dimension to convolve along.
+	 * @param out The output image; must not be the input.
+	 * @throws IllegalArgumentException if the images differ in shape or the
+	 *           kernel has even length.
+	 */
+	void convolve(RandomAccessibleInterval<?> in, double[] kernel,
+		int dimension, RandomAccessibleInterval<?> out);
+
+	/**
+	 * Gets whether an image is processed by the primitive kernels, rather than
+	 * the generic path.
+	 */
+	boolean isAccelerated(RandomAccessibleInterval<?> image);
+
+}
@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.kernel;
+
+/**
+ * Summary statistics of an image's pixel values, as computed by
+ * {@link PixelKernelService#statistics}.
+ */
+public class PixelStatistics {
+
+	private final long count;
+	private final double min;
+	private final double max;
+	private final double sum;
+	private final double variance;
+
+	public PixelStatistics(final long count, final double min,
+		final double max, final double sum, final double variance)
+	{
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.variance = variance;
+	}
+
+	/** Gets the number of pixels. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Gets the smallest value, or NaN if there are no pixels. */
+	public double getMin() {
+		return min;
+	}
+
+	/** Gets the largest value, or NaN if there are no pixels. */
+	public double getMax() {
+		return max;
+	}
+
+	/** Gets the sum of the values. */
+	public double getSum() {
+		return sum;
+	}
+
+	/** Gets the mean value, or NaN if there are no pixels. */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	/** Gets the sample variance, or NaN if there are fewer than two pixels. */
+	public double getVariance() {
+		return variance;
+	}
+
+	/** Gets the sample standard deviation. */
+	public double getStdDev() {
+		return Math.sqrt(variance);
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", min=" + min + ", max=" + max + ", mean=" +
+			getMean() + ", stdDev=" + getStdDev();
+	}
+
+}
@@ -0,0 +1,280 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Direct access to the primitive arrays behind an {@link ArrayImg} or
+ * {@link PlanarImg} of 8-bit unsigned, 16-bit unsigned, 32-bit float or 64-bit
+ * double pixels, in flat iteration order (X fastest).
+ * <p>
+ * Values are read and written as doubles, in bulk. Writing rounds and clamps
+ * integer values to the range of the pixel type.
+ * </p>
+ */
+final class PrimitiveImage {
+
+	/** The supported pixel types. */
+	enum Type {
+		U8, U16, F32, F64
+	}
+
+	private final Type type;
+	private final Object[] arrays;
+	private final int chunkSize;
+	private final long size;
+	private final long[] dims;
+
+	private PrimitiveImage(final Type type, final Object[] arrays,
+		final int chunkSize, final long[] dims)
+	{
+		this.type = type;
+		this.arrays = arrays;
+		this.chunkSize = chunkSize;
+		this.dims = dims;
+		size = Intervals.numElements(dims);
+	}
+
+	/**
+	 * Wraps the arrays behind the given image, unwrapping datasets and
+	 * {@link ImgPlus}es, or returns null if the image is not backed by arrays
+	 * of a supported type.
+	 */
+	public static PrimitiveImage of(final RandomAccessibleInterval<?> image) {
+		Object img = image;
+		if (img instanceof Dataset) img = ((Dataset) img).getImgPlus();
+		if (img instanceof ImgPlus) img = ((ImgPlus<?>) img).getImg();
+		final long[] dims = Intervals.dimensionsAsLongArray(image);
+
+		final List<Object> arrays = new ArrayList<>();
+		final Object element;
+		if (img instanceof ArrayImg) {
+			final ArrayImg<?, ?> arrayImg = (ArrayImg<?, ?>) img;
+			final Object access = arrayImg.update(null);
+			if (!(access instanceof ArrayDataAccess)) return null;
+			arrays.add(((ArrayDataAccess<?>) access).getCurrentStorageArray());
+			element = arrayImg.firstElement();
+		}
+		else if (img instanceof PlanarImg) {
+			final PlanarImg<?, ?> planarImg = (PlanarImg<?, ?>) img;
+			for (int i = 0; i < planarImg.numSlices(); i++) {
+				final Object access = planarImg.getPlane(i);
+				if (!(access instanceof ArrayDataAccess)) return null;
+				arrays.add(((ArrayDataAccess<?>) access).getCurrentStorageArray());
+			}
+			element = planarImg.firstElement();
+		}
+		else return null;
+
+		final Type type;
+		if (element instanceof UnsignedByteType) type = Type.U8;
+		else if (element instanceof UnsignedShortType) type = Type.U16;
+		else if (element instanceof FloatType) type = Type.F32;
+		else if (element instanceof DoubleType) type = Type.F64;
+		else return null;
+
+		final long size = Intervals.numElements(dims);
+		final int chunkSize = (int) (arrays.size() == 1 ? size : size / arrays
+			.size());
+		return new PrimitiveImage(type, arrays.toArray(), chunkSize, dims);
+	}
+
+	// -- PrimitiveImage methods --
+
+	public Type getType() {
+		return type;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public long[] getDimensions() {
+		return dims.clone();
+	}
+
+	/** Gets whether all pixels are in a single array. */
+	public boolean isContiguous() {
+		return arrays.length == 1;
+	}
+
+	/**
+	 * Reads {@code len} values, starting at the flat index {@code index} and
+	 * advancing by {@code stride}.
+	 */
+	public void read(final long index, final long stride, final double[] buf,
+		final int len)
+	{
+		if (arrays.length > 1) {
+			for (int j = 0; j < len; j++) {
+				buf[j] = get(index + j * stride);
+			}
+			return;
+		}
+		final int start = (int) index;
+		final int step = (int) stride;
+		switch (type) {
+			case U8: {
+				final byte[] a = (byte[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					buf[j] = a[i] & 0xff;
+				}
+				break;
+			}
+			case U16: {
+				final short[] a = (short[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					buf[j] = a[i] & 0xffff;
+				}
+				break;
+			}
+			case F32: {
+				final float[] a = (float[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					buf[j] = a[i];
+				}
+				break;
+			}
+			default: {
+				final double[] a = (double[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					buf[j] = a[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes {@code len} values, starting at the flat index {@code index} and
+	 * advancing by {@code stride}.
+	 */
+	public void write(final long index, final long stride, final double[] buf,
+		final int len)
+	{
+		if (arrays.length > 1) {
+			for (int j = 0; j < len; j++) {
+				set(index + j * stride, buf[j]);
+			}
+			return;
+		}
+		final int start = (int) index;
+		final int step = (int) stride;
+		switch (type) {
+			case U8: {
+				final byte[] a = (byte[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					a[i] = (byte) clampRound(buf[j], 255);
+				}
+				break;
+			}
+			case U16: {
+				final short[] a = (short[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					a[i] = (short) clampRound(buf[j], 65535);
+				}
+				break;
+			}
+			case F32: {
+				final float[] a = (float[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					a[i] = (float) buf[j];
+				}
+				break;
+			}
+			default: {
+				final double[] a = (double[]) arrays[0];
+				for (int j = 0, i = start; j < len; j++, i += step) {
+					a[i] = buf[j];
+				}
+			}
+		}
+	}
+
+	/** Gets the value at the given flat index. */
+	public double get(final long index) {
+		final Object array = arrays[(int) (index / chunkSize)];
+		final int i = (int) (index % chunkSize);
+		switch (type) {
+			case U8:
+				return ((byte[]) array)[i] & 0xff;
+			case U16:
+				return ((short[]) array)[i] & 0xffff;
+			case F32:
+				return ((float[]) array)[i];
+			default:
+				return ((double[]) array)[i];
+		}
+	}
+
+	/** Sets the value at the given flat index. */
+	public void set(final long index, final double value) {
+		final Object array = arrays[(int) (index / chunkSize)];
+		final int i = (int) (index % chunkSize);
+		switch (type) {
+			case U8:
+				((byte[]) array)[i] = (byte) clampRound(value, 255);
+				break;
+			case U16:
+				((short[]) array)[i] = (short) clampRound(value, 65535);
+				break;
+			case F32:
+				((float[]) array)[i] = (float) value;
+				break;
+			default:
+				((double[]) array)[i] = value;
+		}
+	}
+
+	/**
+	 * Rounds a value half up and clamps it to {@code [0, max]}; NaN becomes 0.
+	 */
+	static long clampRound(final double value, final long max) {
+		if (!(value > 0)) return 0;
+		if (value >= max) return max;
+		return Math.round(value);
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.memo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import net.imagej.Dataset;
+import net.imagej.cache.CacheStats;
+import net.imagej.cache.LRUCache;
+import net.imagej.dispatch.OpDispatchService;
+import net.imagej.event.DatasetUpdatedEvent;
+import net.imagej.metrics.MetricsService;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.event.EventHandler;
+import org.scijava.module.Module;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MemoService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultMemoService extends AbstractService implements
+	MemoService
+{
+
+	/** Estimated size of a result other than an image, in bytes. */
+	private static final long OBJECT_BYTES = 64;
+
+	@Parameter
+	private OpDispatchService dispatchService;
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	private final LRUCache<MemoKey, Object> cache = new LRUCache<>(
+		sizeFromProperty(), (key, result) -> weigh(result));
+
+	/**
+	 * The ID and version of each object keyed by identity. The keys are
+	 * {@link IdentityRef}s, so that objects which are equal but distinct, such
+	 * as two images of the same size, get IDs of their own, and are not kept
+	 * alive by the map.
+	 */
+	private final Map<IdentityRef, long[]> identities = new HashMap<>();
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+	private long nextId;
+
+	private volatile boolean enabled = true;
+
+	// -- MemoService methods --
+
+	@Override
+	public Object run(final String name, final Object... args) {
+		if (!enabled) return dispatchService.run(name, args);
+		final Object[] tokens = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			tokens[i] = token(args[i]);
+		}
+		// NB: The op is part of the key, since a name may resolve to another op
+		// once plugins change.
+		final Module module = dispatchService.module(name, args);
+		final Class<?> op = module.getDelegateObject().getClass();
+		try {
+			return cache.get(new MemoKey(name, op, tokens), key -> dispatchService
+				.run(module));
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@Override
+	public void touch(final Object input) {
+		synchronized (identities) {
+			final long[] identity = identities.get(new IdentityRef(input, null));
+			if (identity != null) identity[1]++;
+		}
+	}
+
+	@Override
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+
+	@Override
+	public void setMaxBytes(final long bytes) {
+		cache.setMaxWeight(bytes);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		if (metricsService != null) {
+			metricsService.cacheGauges("memo.cache", this::getStats);
+		}
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		touch(evt.getObject());
+	}
+
+	// -- Helper methods --
+
+	private Object token(final Object arg) {
+		if (arg == null || arg instanceof Number || arg instanceof String ||
+			arg instanceof Boolean || arg instanceof Character ||
+			arg instanceof Enum || arg instanceof Class)
+		{
+			return arg;
+		}
+		if (arg.getClass().isArray() && arg.getClass().getComponentType()
+			.isPrimitive())
+		{
+			return Arrays.deepToString(new Object[] { arg });
+		}
+		if (!(arg instanceof Dataset) && arg instanceof RandomAccessibleInterval) {
+			final Object content = content((RandomAccessibleInterval<?>) arg);
+			if (content != null) return content;
+		}
+		return identity(arg);
+	}
+
+	private MemoKey.Identity identity(final Object arg) {
+		synchronized (identities) {
+			// forget the objects which have been garbage collected
+			Reference<?> ref;
+			while ((ref = collected.poll()) != null) {
+				identities.remove(ref);
+			}
+			long[] identity = identities.get(new IdentityRef(arg, null));
+			if (identity == null) {
+				identity = new long[] { nextId++, 0 };
+				identities.put(new IdentityRef(arg, collected), identity);
+			}
+			return new MemoKey.Identity(identity[0], identity[1]);
+		}
+	}
+
+	/**
+	 * Hashes the pixels of an image of real or complex values, or returns null
+	 * for other images.
+	 */
+	private static MemoKey.Content content(
+		final RandomAccessibleInterval<?> image)
+	{
+		final IterableInterval<?> pixels = Views.flatIterable(image);
+		final long[] dims = new long[image.numDimensions()];
+		image.dimensions(dims);
+		if (pixels.size() == 0) return new MemoKey.Content(dims, Object.class, 0);
+		final Object first = pixels.firstElement();
+		if (!(first instanceof ComplexType)) return null;
+
+		long hash = 1125899906842597L;
+		if (first instanceof RealType) {
+			for (final Object t : pixels) {
+				hash = mix(hash, Double.doubleToLongBits(((RealType<?>) t)
+					.getRealDouble()));
+			}
+		}
+		else {
+			for (final Object t : pixels) {
+				final ComplexType<?> c = (ComplexType<?>) t;
+				hash = mix(hash, Double.doubleToLongBits(c.getRealDouble()));
+				hash = mix(hash, Double.doubleToLongBits(c.getImaginaryDouble()));
+			}
+		}
+		return new MemoKey.Content(dims, first.getClass(), hash);
+	}
+
+	private static long mix(final long hash, final long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long weigh(final Object result) {
+		if (!(result instanceof Interval)) return OBJECT_BYTES;
+		final long size = Intervals.numElements((Interval) result);
+		if (size == 0) return OBJECT_BYTES;
+		final Object first = result instanceof IterableInterval ? //
+			((IterableInterval<?>) result).firstElement() : null;
+		final long bytes = first instanceof RealType ? //
+			Math.max(1, ((RealType<?>) first).getBitsPerPixel() / 8) : 8;
+		return OBJECT_BYTES + size * bytes;
+	}
+
+	private static long sizeFromProperty() {
+		final String mb = System.getProperty(SIZE_PROPERTY);
+		if (mb != null) {
+			try {
+				return Long.parseLong(mb) << 20;
+			}
+			catch (final NumberFormatException exc) {
+				// fall back to the default
+			}
+		}
+		return DEFAULT_SIZE_MB << 20;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A weak reference which is equal to another only if both refer to the same
+	 * object, or are the same reference.
+	 */
+	private static final class IdentityRef extends WeakReference<Object> {
+
+		private final int hash;
+
+		public IdentityRef(final Object referent,
+			final ReferenceQueue<Object> queue)
+		{
+			super(referent, queue);
+			hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (o == this) return true;
+			if (!(o instanceof IdentityRef)) return false;
+			final Object referent = get();
+			return referent != null && referent == ((IdentityRef) o).get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.memo;
+
+import java.util.Arrays;
+
+/**
+ * The cache key of a memoized op call: the op name, the class of the op it
+ * resolved to, and one token per argument.
+ */
+final class MemoKey {
+
+	private final String name;
+	private final Class<?> op;
+	private final Object[] tokens;
+	private final int hash;
+
+	public MemoKey(final String name, final Class<?> op, final Object[] tokens) {
+		this.name = name;
+		this.op = op;
+		this.tokens = tokens;
+		hash = (name.hashCode() * 31 + op.hashCode()) * 31 + Arrays.hashCode(
+			tokens);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof MemoKey)) return false;
+		final MemoKey other = (MemoKey) o;
+		return hash == other.hash && name.equals(other.name) && op == other.op &&
+			Arrays.equals(tokens, other.tokens);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return name + "[" + op.getSimpleName() + "]" + Arrays.toString(tokens);
+	}
+
+	// -- Helper classes --
+
+	/** Identifies an object by an ID, and optionally a version. */
+	static final class Identity {
+
+		private final long id;
+		private final long version;
+
+		public Identity(final long id, final long version) {
+			this.id = id;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Identity)) return false;
+			final Identity other = (Identity) o;
+			return id == other.id && version == other.version;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(id) * 31 + Long.hashCode(version);
+		}
+
+		@Override
+		public String toString() {
+			return "#" + id + "v" + version;
+		}
+	}
+
+	/** Identifies an image by its dimensions, pixel type and pixel hash. */
+	static final class Content {
+
+		private final long[] dims;
+		private final Class<?> type;
+		private final long hash;
+
+		public Content(final long[] dims, final Class<?> type, final long hash) {
+			this.dims = dims;
+			this.type = type;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Content)) return false;
+			final Content other = (Content) o;
+			return hash == other.hash && type == other.type && Arrays.equals(dims,
+				other.dims);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(hash);
+		}
+
+		@Override
+		public String toString() {
+			return type.getSimpleName() + Arrays.toString(dims) + "@" + Long
+				.toHexString(hash);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.memo;
+
+import net.imagej.ImageJService;
+import net.imagej.cache.CacheStats;
+import net.imagej.ops.OpService;
+
+/**
+ * Memoizes op results: running an op again with the same parameters on
+ * unchanged inputs returns the earlier result instead of recomputing it.
+ * Memoization is opt-in: only ops run through this service are memoized, not
+ * those run through {@link OpService} directly.
+ * <p>
+ * Results are keyed on the op name and a token per argument:
+ * </p>
+ * <ul>
+ * <li>numbers, strings, booleans, enums, classes and primitive arrays by
+ * value;</li>
+ * <li>{@link net.imagej.Dataset}s by identity and version, where the version
+ * changes whenever the dataset publishes a
+ * {@link net.imagej.event.DatasetUpdatedEvent} (e.g. via
+ * {@link net.imagej.Dataset#update()}) or is passed to {@link #touch};</li>
+ * <li>other images by a hash of their pixels, computed on every call;</li>
+ * <li>all other objects by identity.</li>
+ * </ul>
+ * <p>
+ * Cached results are shared between callers and must not be modified; copy
+ * them first. Ops which modify their arguments in place must not be run
+ * through this service.
+ * </p>
+ */
+public interface MemoService extends ImageJService {
+
+	/** System property setting the initial cache size, in megabytes. */
+	String SIZE_PROPERTY = "imagej.memo.size";
+
+	/** Default cache size, in megabytes. */
+	long DEFAULT_SIZE_MB = 512;
+
+	/**
+	 * Runs the named op, or returns its cached result for equal arguments.
+	 * Ops are run via the {@link net.imagej.dispatch.OpDispatchService}.
+	 * 
+	 * @see OpService#run(String, Object...)
+	 */
+	Object run(String name, Object... args);
+
+	/** Marks an input as changed, so results computed from it are not reused. */
+	void touch(Object input);
+
+	/** Drops all cached results. */
+	void clear();
+
+	/** Gets a snapshot of the cache's counters, including its hit rate. */
+	CacheStats getStats();
+
+	/** Sets the maximum estimated size of the cached results, in bytes. */
+	void setMaxBytes(long bytes);
+
+	/** Gets whether results are memoized. */
+	boolean isEnabled();
+
+	/** Sets whether results are memoized; if not, ops are always run. */
+	void setEnabled(boolean enabled);
+
+}
@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MetricsService}.
+ * <p>
+ * Besides what other services publish, it reports the number and total size
+ * of the open datasets ({@code datasets.count}, {@code datasets.bytes}) and
+ * the JVM heap ({@code jvm.heap.used}, {@code jvm.heap.max}).
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultMetricsService extends AbstractService implements
+	MetricsService
+{
+
+	private static final Pattern NAME = Pattern.compile(
+		"[A-Za-z_][A-Za-z0-9_.]*");
+
+	/** Distinguishes the MBeans of several contexts in one JVM. */
+	private static final AtomicInteger CONTEXTS = new AtomicInteger();
+
+	@Parameter(required = false)
+	private DatasetService datasetService;
+
+	@Parameter
+	private LogService log;
+
+	/** Each metric by name: a Counter, LatencyHistogram or DoubleSupplier. */
+	private final ConcurrentMap<String, Object> metrics =
+		new ConcurrentHashMap<>();
+
+	private ObjectName objectName;
+	private HttpServer server;
+
+	// -- MetricsService methods --
+
+	@Override
+	public Counter counter(final String name) {
+		return register(name, Counter.class, Counter::new);
+	}
+
+	@Override
+	public LatencyHistogram histogram(final String name) {
+		return register(name, LatencyHistogram.class, LatencyHistogram::new);
+	}
+
+	@Override
+	public void gauge(final String name, final DoubleSupplier gauge) {
+		checkName(name);
+		metrics.compute(name, (k, existing) -> {
+			if (existing != null && !(existing instanceof DoubleSupplier)) {
+				throw new IllegalArgumentException("Metric " + name +
+					" is not a gauge");
+			}
+			return gauge;
+		});
+	}
+
+	@Override
+	public boolean remove(final String name) {
+		return metrics.remove(name) != null;
+	}
+
+	@Override
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(metrics.keySet()));
+	}
+
+	@Override
+	public Map<String, Double> snapshot() {
+		final Map<String, Double> values = new TreeMap<>();
+		for (final Map.Entry<String, Object> entry : metrics.entrySet()) {
+			final String name = entry.getKey();
+			final Object metric = entry.getValue();
+			if (metric instanceof Counter) {
+				values.put(name, (double) ((Counter) metric).get());
+			}
+			else if (metric instanceof LatencyHistogram) {
+				final LatencyHistogram h = (LatencyHistogram) metric;
+				values.put(name + ".count", (double) h.getCount());
+				values.put(name + ".mean", h.getMean());
+				values.put(name + ".max", (double) h.getMax());
+				for (final double p : PERCENTILES) {
+					values.put(name + ".p" + (int) p, (double) h.getPercentile(p));
+				}
+			}
+			else values.put(name, sample((DoubleSupplier) metric));
+		}
+		return values;
+	}
+
+	@Override
+	public String format() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Object> entry : new TreeMap<>(metrics)
+			.entrySet())
+		{
+			final String name = "imagej_" + entry.getKey().replace('.', '_');
+			final Object metric = entry.getValue();
+			if (metric instanceof Counter) {
+				sb.append("# TYPE ").append(name).append(" counter\n");
+				sb.append(name).append(" ").append(((Counter) metric).get()).append(
+					"\n");
+			}
+			else if (metric instanceof LatencyHistogram) {
+				final LatencyHistogram h = (LatencyHistogram) metric;
+				sb.append("# TYPE ").append(name).append(" summary\n");
+				for (final double p : PERCENTILES) {
+					sb.append(name).append("{quantile=\"").append(p / 100).append(
+						"\"} ").append(h.getPercentile(p)).append("\n");
+				}
+				sb.append(name).append("_sum ").append(h.getSum()).append("\n");
+				sb.append(name).append("_count ").append(h.getCount()).append("\n");
+			}
+			else {
+				sb.append("# TYPE ").append(name).append(" gauge\n");
+				sb.append(name).append(" ").append(sample((DoubleSupplier) metric))
+					.append("\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public synchronized int startEndpoint(final int port) throws IOException {
+		if (server != null) return getEndpointPort();
+		final HttpServer s = HttpServer.create(new InetSocketAddress(InetAddress
+			.getLoopbackAddress(), port), 0);
+		s.createContext(ENDPOINT_PATH, exchange -> {
+			try {
+				final byte[] body = format().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type",
+					"text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (final OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			finally {
+				exchange.close();
+			}
+		});
+		s.start();
+		server = s;
+		return getEndpointPort();
+	}
+
+	@Override
+	public synchronized void stopEndpoint() {
+		if (server == null) return;
+		server.stop(0);
+		server = null;
+	}
+
+	@Override
+	public synchronized int getEndpointPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		gauge("jvm.heap.used", () -> memory.getHeapMemoryUsage().getUsed());
+		gauge("jvm.heap.max", () -> memory.getHeapMemoryUsage().getMax());
+		if (datasetService != null) {
+			gauge("datasets.count", () -> datasetService.getDatasets().size());
+			gauge("datasets.bytes", () -> {
+				long bytes = 0;
+				for (final Dataset dataset : datasetService.getDatasets()) {
+					bytes += dataset.getBytesOfInfo();
+				}
+				return bytes;
+			});
+		}
+
+		try {
+			final ObjectName name = new ObjectName("net.imagej:type=Metrics," +
+				"context=" + CONTEXTS.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+				new MetricsMBean(this), name);
+			objectName = name;
+		}
+		catch (final JMException | SecurityException exc) {
+			log.warn("Cannot export metrics via JMX", exc);
+		}
+
+		final String port = System.getProperty(PORT_PROPERTY);
+		if (port != null) {
+			try {
+				startEndpoint(Integer.parseInt(port));
+			}
+			catch (final IOException | NumberFormatException exc) {
+				log.warn("Cannot serve metrics on port " + port, exc);
+			}
+		}
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		stopEndpoint();
+		if (objectName != null) {
+			final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+			try {
+				mbeans.unregisterMBean(objectName);
+			}
+			catch (final JMException exc) {
+				log.debug(exc);
+			}
+			objectName = null;
+		}
+	}
+
+	// -- Helper methods --
+
+	private <M> M register(final String name, final Class<M> kind,
+		final Supplier<M> factory)
+	{
+		Object registered = metrics.get(name);
+		if (registered == null) {
+			checkName(name);
+			registered = metrics.computeIfAbsent(name, k -> factory.get());
+		}
+		if (!kind.isInstance(registered)) {
+			throw new IllegalArgumentException("Metric " + name + " is not a " +
+				kind.getSimpleName());
+		}
+		return kind.cast(registered);
+	}
+
+	private void checkName(final String name) {
+		if (name == null || !NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid metric name: " + name);
+		}
+	}
+
+	private double sample(final DoubleSupplier gauge) {
+		try {
+			return gauge.getAsDouble();
+		}
+		catch (final RuntimeException exc) {
+			log.debug(exc);
+			return Double.NaN;
+		}
+	}
+
+}
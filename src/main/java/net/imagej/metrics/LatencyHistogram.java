@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of non-negative values, typically durations in nanoseconds,
+ * which many threads may record into at once without taking a lock.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so that percentiles are accurate to within
+ * 12.5% of the value whatever its magnitude, and the histogram takes a fixed
+ * 4 KiB however many values it records.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+	/** Number of buckets into which each power of two is split. */
+	public static final int SUB_BUCKETS = 8;
+
+	private static final int SUB_BITS = 3;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	// -- LatencyHistogram methods --
+
+	/** Records a value; negative values are recorded as zero. */
+	public void record(final long value) {
+		final long v = Math.max(0, value);
+		counts.incrementAndGet(bucket(v));
+		count.increment();
+		sum.add(v);
+		max.accumulate(v);
+	}
+
+	/** Records the time elapsed since the given {@link System#nanoTime()}. */
+	public void recordSince(final long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/** Gets the number of values recorded. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** Gets the sum of the values recorded. */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/** Gets the mean of the values recorded, or 0 if there are none. */
+	public double getMean() {
+		final long n = getCount();
+		return n == 0 ? 0 : (double) getSum() / n;
+	}
+
+	/** Gets the largest value recorded, or 0 if there are none. */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the given percentile of the values recorded, as the upper bound of
+	 * the bucket it falls in; or 0 if there are none.
+	 * 
+	 * @param percentile The percentile, from 0 to 100.
+	 */
+	public long getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Invalid percentile: " + percentile);
+		}
+		final long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) return Math.min(upperBound(i), getMax());
+		}
+		return getMax();
+	}
+
+	/** Forgets all values recorded. */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + getMean() + ", p50=" +
+			getPercentile(50) + ", p99=" + getPercentile(99) + ", max=" + getMax();
+	}
+
+	// -- Helper methods --
+
+	/** Gets the index of the bucket holding the given non-negative value. */
+	static int bucket(final long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		final int octave = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (octave - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (octave - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** Gets the largest value held by the given bucket. */
+	static long upperBound(final int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+}
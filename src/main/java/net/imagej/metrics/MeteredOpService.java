@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import net.imagej.ops.DefaultOpService;
+import net.imagej.ops.OpService;
+import net.imagej.profiler.OpProfiler;
+
+import org.scijava.Priority;
+import org.scijava.module.Module;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.Service;
+
+/**
+ * An {@link OpService} which publishes the latency of the ops it runs into
+ * the {@link MetricsService}, as {@code ops.latency}, and the number of ops
+ * which failed, as {@code ops.failures}.
+ * <p>
+ * Metering is opt-in: this service is not a discoverable plugin, and only
+ * replaces the default op service of gateways created while the
+ * {@value #PROPERTY} or {@value OpProfiler#PROPERTY} system property is
+ * {@code true}, or of contexts whose plugin index it was
+ * {@link #register registered} with.
+ * </p>
+ * <p>
+ * All ways of running an op by name, class or instance end up in
+ * {@link #run(Module)}, so ops run via {@code ij.op()} and via other services
+ * are counted. Only top-level runs are recorded: an op run by another op on
+ * the same thread is part of the outer op's latency, and is not recorded on
+ * its own, so that no time is counted twice. Ops created via {@code op(...)}
+ * and then called directly, e.g. as computers, bypass the service and are not
+ * counted either.
+ * </p>
+ * <p>
+ * Each op run, nested or not, is also reported to the attached
+ * {@link OpProfiler}, if any, which measures every invocation.
+ * </p>
+ */
+public class MeteredOpService extends DefaultOpService {
+
+	/** System property enabling op metering for new gateways. */
+	public static final String PROPERTY = "imagej.metrics.ops";
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	private LatencyHistogram latency;
+	private Counter failures;
+
+	/** Number of op runs in progress on each thread. */
+	private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(
+		() -> new int[1]);
+
+	private volatile OpProfiler profiler;
+
+	// -- MeteredOpService methods --
+
+	/** Gets whether the {@value #PROPERTY} system property is set. */
+	public static boolean isRequested() {
+		return Boolean.getBoolean(PROPERTY);
+	}
+
+	/**
+	 * Adds this service to the given plugin index, at a priority above the
+	 * default op service, so that contexts created with the index use it.
+	 */
+	public static void register(final PluginIndex pluginIndex) {
+		final PluginInfo<Service> info = new PluginInfo<>(MeteredOpService.class,
+			Service.class);
+		info.setPriority(Priority.HIGH);
+		pluginIndex.add(info);
+	}
+
+	/** Gets the profiler which measures each op run, or null. */
+	public OpProfiler getProfiler() {
+		return profiler;
+	}
+
+	/** Sets the profiler which measures each op run, or null for none. */
+	public void setProfiler(final OpProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	// -- OpEnvironment methods --
+
+	@Override
+	public Object run(final Module module) {
+		final OpProfiler p = profiler;
+		if (p == null) return meter(module);
+		return p.invoke(module.getDelegateObject(), () -> meter(module));
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		super.initialize();
+		if (metricsService == null) return;
+		failures = metricsService.counter("ops.failures");
+		latency = metricsService.histogram("ops.latency");
+	}
+
+	// -- Helper methods --
+
+	/** Runs an op, recording its latency if it is not nested in another. */
+	private Object meter(final Module module) {
+		if (latency == null) return super.run(module);
+		final int[] runs = depth.get();
+		if (runs[0] > 0) {
+			// nested in another op, whose latency includes this one
+			runs[0]++;
+			try {
+				return super.run(module);
+			}
+			finally {
+				runs[0]--;
+			}
+		}
+		runs[0]++;
+		final long start = System.nanoTime();
+		try {
+			return super.run(module);
+		}
+		catch (final RuntimeException | Error exc) {
+			failures.increment();
+			throw exc;
+		}
+		finally {
+			runs[0]--;
+			latency.recordSince(start);
+		}
+	}
+
+}
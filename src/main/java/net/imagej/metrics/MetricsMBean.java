@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exports the metrics of a {@link MetricsService} as read-only MBean
+ * attributes, one per value of its {@link MetricsService#snapshot()
+ * snapshot}. The attributes follow the metrics registered at any time.
+ */
+class MetricsMBean implements DynamicMBean {
+
+	private final MetricsService metrics;
+
+	MetricsMBean(final MetricsService metrics) {
+		this.metrics = metrics;
+	}
+
+	// -- DynamicMBean methods --
+
+	@Override
+	public Object getAttribute(final String attribute)
+		throws AttributeNotFoundException
+	{
+		final Double value = metrics.snapshot().get(attribute);
+		if (value == null) throw new AttributeNotFoundException(attribute);
+		return value;
+	}
+
+	@Override
+	public void setAttribute(final Attribute attribute)
+		throws AttributeNotFoundException
+	{
+		throw new AttributeNotFoundException("Metrics are read-only: " +
+			attribute.getName());
+	}
+
+	@Override
+	public AttributeList getAttributes(final String[] attributes) {
+		final Map<String, Double> snapshot = metrics.snapshot();
+		final AttributeList list = new AttributeList();
+		for (final String attribute : attributes) {
+			final Double value = snapshot.get(attribute);
+			if (value != null) list.add(new Attribute(attribute, value));
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(final String actionName, final Object[] params,
+		final String[] signature) throws ReflectionException
+	{
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		final List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (final String name : metrics.snapshot().keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, Double.class.getName(),
+				name, true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), "ImageJ runtime metrics",
+			attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+			new MBeanOperationInfo[0], null);
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import javax.management.ObjectName;
+
+import net.imagej.ImageJService;
+import net.imagej.cache.CacheStats;
+
+/**
+ * Collects runtime metrics of the gateway, such as op latencies, the bytes
+ * read and written by the tile and chunk services, and cache hit rates, which
+ * other services publish into it. Images read and written through SCIFIO
+ * directly are not counted, and op latencies only if ops are metered by a
+ * {@link MeteredOpService}.
+ * <p>
+ * There are three kinds of metric, registered by dotted name (e.g.
+ * {@code ops.latency}):
+ * </p>
+ * <ul>
+ * <li>{@link Counter}s, which count events;</li>
+ * <li>{@link LatencyHistogram}s, which track distributions such as
+ * durations in nanoseconds;</li>
+ * <li>gauges, which are sampled when the metrics are read.</li>
+ * </ul>
+ * <p>
+ * Counters and histograms are lock-free, so that publishing into them is
+ * cheap enough for hot paths. Rates, such as ops per second, are left to
+ * whoever reads the metrics, from the difference of two readings.
+ * </p>
+ * <p>
+ * The metrics are exported as attributes of a JMX MBean, and as text in the
+ * Prometheus exposition format by a local HTTP endpoint at
+ * {@value #ENDPOINT_PATH}. The endpoint is started by
+ * {@link #startEndpoint(int)}, or on initialization if the
+ * {@value #PORT_PROPERTY} system property gives a port.
+ * </p>
+ */
+public interface MetricsService extends ImageJService {
+
+	/** System property giving the port of the text endpoint. */
+	String PORT_PROPERTY = "imagej.metrics.port";
+
+	/** Path at which the text endpoint serves the metrics. */
+	String ENDPOINT_PATH = "/metrics";
+
+	/** Percentiles reported for each histogram. */
+	double[] PERCENTILES = { 50, 90, 99 };
+
+	/**
+	 * Gets the counter of the given name, registering it if there is none.
+	 * 
+	 * @throws IllegalArgumentException if the name is taken by another kind of
+	 *           metric.
+	 */
+	Counter counter(String name);
+
+	/**
+	 * Gets the histogram of the given name, registering it if there is none.
+	 * 
+	 * @throws IllegalArgumentException if the name is taken by another kind of
+	 *           metric.
+	 */
+	LatencyHistogram histogram(String name);
+
+	/**
+	 * Registers a gauge, replacing any gauge of the same name. The gauge is
+	 * called whenever the metrics are read, from any thread.
+	 * 
+	 * @throws IllegalArgumentException if the name is taken by another kind of
+	 *           metric.
+	 */
+	void gauge(String name, DoubleSupplier gauge);
+
+	/**
+	 * Registers gauges for the counters of a cache: {@code <prefix>.hits},
+	 * {@code .misses}, {@code .hitRate}, {@code .evictions}, {@code .size} and
+	 * {@code .weight}.
+	 */
+	default void cacheGauges(final String prefix,
+		final Supplier<CacheStats> stats)
+	{
+		gauge(prefix + ".hits", () -> stats.get().getHits());
+		gauge(prefix + ".misses", () -> stats.get().getMisses());
+		gauge(prefix + ".hitRate", () -> stats.get().getHitRate());
+		gauge(prefix + ".evictions", () -> stats.get().getEvictions());
+		gauge(prefix + ".size", () -> stats.get().getSize());
+		gauge(prefix + ".weight", () -> stats.get().getWeight());
+	}
+
+	/** Unregisters the metric of the given name, if any. */
+	boolean remove(String name);
+
+	/** Gets the names of the registered metrics. */
+	Set<String> getNames();
+
+	/**
+	 * Reads all metrics. Counters and gauges appear under their own names;
+	 * each histogram {@code h} as {@code h.count}, {@code h.mean},
+	 * {@code h.max} and one {@code h.p<n>} per {@link #PERCENTILES
+	 * percentile}.
+	 * 
+	 * @return The values by name, sorted by name.
+	 */
+	Map<String, Double> snapshot();
+
+	/** Formats all metrics in the Prometheus text exposition format. */
+	String format();
+
+	/**
+	 * Starts serving the metrics over HTTP on the loopback interface, unless
+	 * already serving them.
+	 * 
+	 * @param port The port on which to listen, or 0 for any free port.
+	 * @return The port on which the metrics are served.
+	 */
+	int startEndpoint(int port) throws IOException;
+
+	/** Stops serving the metrics over HTTP. */
+	void stopEndpoint();
+
+	/** Gets the port on which the metrics are served, or -1 if they are not. */
+	int getEndpointPort();
+
+	/** Gets the name of the MBean exporting the metrics, or null if none. */
+	ObjectName getObjectName();
+
+}
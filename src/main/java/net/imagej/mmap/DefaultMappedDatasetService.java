@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MappedDatasetService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultMappedDatasetService extends AbstractService implements
+	MappedDatasetService
+{
+
+	@Parameter
+	private DatasetService datasetService;
+
+	private File directory;
+	private long cellBytes = MappedCellImg.DEFAULT_CELL_BYTES;
+
+	// -- MappedDatasetService methods --
+
+	@Override
+	public <T extends RealType<T> & NativeType<T>> Dataset create(final T type,
+		final long[] dims, final String name, final AxisType[] axes)
+		throws IOException
+	{
+		return wrap(factory(type).create(dims), name, axes);
+	}
+
+	@Override
+	public <T extends RealType<T> & NativeType<T>> Dataset create(
+		final File file, final T type, final long[] dims, final String name,
+		final AxisType[] axes) throws IOException
+	{
+		return wrap(MappedCellImg.map(file, type, dims, ByteOrder.nativeOrder(),
+			cellBytes, true), name, axes);
+	}
+
+	@Override
+	public <T extends RealType<T> & NativeType<T>> Dataset open(final File file,
+		final T type, final long[] dims, final String name,
+		final AxisType[] axes) throws IOException
+	{
+		return wrap(MappedCellImg.map(file, type, dims, ByteOrder.nativeOrder(),
+			cellBytes, false), name, axes);
+	}
+
+	@Override
+	public <T extends NativeType<T>> MappedImgFactory<T> factory(final T type) {
+		return new MappedImgFactory<>(type, getDirectory(), ByteOrder
+			.nativeOrder(), cellBytes);
+	}
+
+	@Override
+	public File getDirectory() {
+		if (directory != null) return directory;
+		final String dir = System.getProperty(DIRECTORY_PROPERTY);
+		return dir == null ? null : new File(dir);
+	}
+
+	@Override
+	public void setDirectory(final File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public long getCellBytes() {
+		return cellBytes;
+	}
+
+	@Override
+	public void setCellBytes(final long cellBytes) {
+		if (cellBytes <= 0) {
+			throw new IllegalArgumentException("Invalid cell size: " + cellBytes);
+		}
+		this.cellBytes = cellBytes;
+	}
+
+	// -- Helper methods --
+
+	private <T extends RealType<T> & NativeType<T>> Dataset wrap(
+		final MappedCellImg<T> img, final String name, final AxisType[] axes)
+	{
+		return datasetService.create(new ImgPlus<>(img, name, axes));
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+import net.imglib2.type.PrimitiveType;
+
+/**
+ * Pixel storage of one cell of a {@link MappedCellImg}, reading and writing
+ * through a {@link ByteBuffer} rather than a Java array. Each subclass
+ * implements the imglib2 access interface of one primitive type.
+ */
+public abstract class MappedAccess {
+
+	private final ByteBuffer buffer;
+
+	protected MappedAccess(final ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/** Gets the underlying buffer. */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/** Writes pending changes to the backing file, if the buffer is mapped. */
+	public void force() {
+		if (buffer instanceof MappedByteBuffer) ((MappedByteBuffer) buffer).force();
+	}
+
+	/** Gets the size in bytes of one element of the given primitive type. */
+	public static int bytesPerElement(final PrimitiveType primitive) {
+		switch (primitive) {
+			case BYTE:
+				return 1;
+			case SHORT:
+				return 2;
+			case INT:
+			case FLOAT:
+				return 4;
+			case LONG:
+			case DOUBLE:
+				return 8;
+			default:
+				throw new IllegalArgumentException("Unsupported primitive type: " +
+					primitive);
+		}
+	}
+
+	/** Creates an access of the given primitive type over a buffer. */
+	public static MappedAccess create(final PrimitiveType primitive,
+		final ByteBuffer buffer)
+	{
+		switch (primitive) {
+			case BYTE:
+				return new Bytes(buffer);
+			case SHORT:
+				return new Shorts(buffer);
+			case INT:
+				return new Ints(buffer);
+			case LONG:
+				return new Longs(buffer);
+			case FLOAT:
+				return new Floats(buffer);
+			case DOUBLE:
+				return new Doubles(buffer);
+			default:
+				throw new IllegalArgumentException("Unsupported primitive type: " +
+					primitive);
+		}
+	}
+
+	// -- Helper classes --
+
+	public static final class Bytes extends MappedAccess implements ByteAccess {
+
+		public Bytes(final ByteBuffer buffer) {
+			super(buffer);
+		}
+
+		@Override
+		public byte getValue(final int index) {
+			return getBuffer().get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final byte value) {
+			getBuffer().put(index, value);
+		}
+	}
+
+	public static final class Shorts extends MappedAccess implements
+		ShortAccess
+	{
+
+		private final ShortBuffer view;
+
+		public Shorts(final ByteBuffer buffer) {
+			super(buffer);
+			view = buffer.asShortBuffer();
+		}
+
+		@Override
+		public short getValue(final int index) {
+			return view.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final short value) {
+			view.put(index, value);
+		}
+	}
+
+	public static final class Ints extends MappedAccess implements IntAccess {
+
+		private final IntBuffer view;
+
+		public Ints(final ByteBuffer buffer) {
+			super(buffer);
+			view = buffer.asIntBuffer();
+		}
+
+		@Override
+		public int getValue(final int index) {
+			return view.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final int value) {
+			view.put(index, value);
+		}
+	}
+
+	public static final class Longs extends MappedAccess implements LongAccess {
+
+		private final LongBuffer view;
+
+		public Longs(final ByteBuffer buffer) {
+			super(buffer);
+			view = buffer.asLongBuffer();
+		}
+
+		@Override
+		public long getValue(final int index) {
+			return view.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final long value) {
+			view.put(index, value);
+		}
+	}
+
+	public static final class Floats extends MappedAccess implements
+		FloatAccess
+	{
+
+		private final FloatBuffer view;
+
+		public Floats(final ByteBuffer buffer) {
+			super(buffer);
+			view = buffer.asFloatBuffer();
+		}
+
+		@Override
+		public float getValue(final int index) {
+			return view.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			view.put(index, value);
+		}
+	}
+
+	public static final class Doubles extends MappedAccess implements
+		DoubleAccess
+	{
+
+		private final DoubleBuffer view;
+
+		public Doubles(final ByteBuffer buffer) {
+			super(buffer);
+			view = buffer.asDoubleBuffer();
+		}
+
+		@Override
+		public double getValue(final int index) {
+			return view.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			view.put(index, value);
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.PrimitiveType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * An image whose pixels live in a memory-mapped file instead of on the Java
+ * heap, so it can be much larger than the heap. Pages of the file are read in
+ * by the operating system when pixels are accessed, and evicted again under
+ * memory pressure.
+ * <p>
+ * The file holds the raw pixels in row-major order (X fastest) with the given
+ * byte order and no header, which any raw importer can read. The image is
+ * divided into cells of consecutive rows, planes or blocks of planes, each of
+ * which is a contiguous region of the file mapped on its own; cells are
+ * limited in size since a single mapping cannot exceed 2 GB.
+ * </p>
+ */
+public class MappedCellImg<T extends NativeType<T>> extends
+	LazyCellImg<T, MappedAccess>
+{
+
+	/** Default size of a cell, in bytes. */
+	public static final long DEFAULT_CELL_BYTES = 64L << 20;
+
+	private final File file;
+	private final T type;
+	private final ByteOrder byteOrder;
+	private final long cellBytes;
+	private final MappedAccess[] accesses;
+
+	private MappedCellImg(final File file, final CellGrid grid, final T type,
+		final ByteOrder byteOrder, final long cellBytes,
+		final Cell<MappedAccess>[] cells, final MappedAccess[] accesses)
+	{
+		super(grid, type, index -> cells[(int) index]);
+		this.file = file;
+		this.type = type;
+		this.byteOrder = byteOrder;
+		this.cellBytes = cellBytes;
+		this.accesses = accesses;
+	}
+
+	// -- MappedCellImg methods --
+
+	/**
+	 * Maps an image onto the given file.
+	 * 
+	 * @param file The backing file.
+	 * @param type The pixel type; its entities must be of one primitive type
+	 *          and an integral number per pixel.
+	 * @param dims The dimensions of the image.
+	 * @param byteOrder The byte order of the pixels in the file.
+	 * @param cellBytes The target size of a cell, in bytes.
+	 * @param create If true, the file is created or resized to fit the image,
+	 *          with zeroed pixels; if false, it must exist with the exact size
+	 *          of the image.
+	 */
+	public static <T extends NativeType<T>> MappedCellImg<T> map(
+		final File file, final T type, final long[] dims,
+		final ByteOrder byteOrder, final long cellBytes, final boolean create)
+		throws IOException
+	{
+		final PrimitiveType primitive = type.getNativeTypeFactory()
+			.getPrimitiveType();
+		final Fraction epp = type.getEntitiesPerPixel();
+		if (epp.getNumerator() % epp.getDenominator() != 0) {
+			throw new IllegalArgumentException("Unsupported type: " + type
+				.getClass().getName());
+		}
+		final int pixelBytes = (int) (epp.getNumerator() / epp.getDenominator()) *
+			MappedAccess.bytesPerElement(primitive);
+
+		final CellGrid grid = new CellGrid(dims, cellDimensions(dims,
+			maxCellPixels(cellBytes, pixelBytes)));
+		final long expected = pixelBytes * count(dims);
+
+		final long cellCount = grid.getNumCells();
+		if (cellCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many cells: " + cellCount);
+		}
+		@SuppressWarnings("unchecked")
+		final Cell<MappedAccess>[] cells = new Cell[(int) cellCount];
+		final MappedAccess[] accesses = new MappedAccess[cells.length];
+
+		if (!create && !file.isFile()) {
+			throw new IOException("No such file: " + file);
+		}
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			if (create) raf.setLength(expected);
+			else if (raf.length() != expected) {
+				throw new IOException("Expected " + expected + " bytes but " + file +
+					" has " + raf.length());
+			}
+			// NB: Mappings stay valid after the channel is closed.
+			final FileChannel channel = raf.getChannel();
+			final long[] cellMin = new long[dims.length];
+			final int[] cellDims = new int[dims.length];
+			for (int i = 0; i < cells.length; i++) {
+				grid.getCellDimensions(i, cellMin, cellDims);
+				final long offset = pixelBytes * IntervalIndexer.positionToIndex(
+					cellMin, dims);
+				final MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE,
+					offset, pixelBytes * count(cellDims));
+				buffer.order(byteOrder);
+				accesses[i] = MappedAccess.create(primitive, buffer);
+				cells[i] = new Cell<>(cellDims.clone(), cellMin.clone(), accesses[i]);
+			}
+		}
+		return new MappedCellImg<>(file, grid, type.createVariable(), byteOrder,
+			cellBytes, cells, accesses);
+	}
+
+	/** Gets the file backing this image. */
+	public File getFile() {
+		return file;
+	}
+
+	/** Gets the byte order of the pixels in the backing file. */
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	/** Writes all changed pixels to the backing file. */
+	public void flush() {
+		for (final MappedAccess access : accesses) {
+			access.force();
+		}
+	}
+
+	// -- Img methods --
+
+	@Override
+	public MappedImgFactory<T> factory() {
+		return new MappedImgFactory<>(type.createVariable(), file.getParentFile(),
+			byteOrder, cellBytes);
+	}
+
+	@Override
+	public MappedCellImg<T> copy() {
+		final MappedCellImg<T> copy = factory().create(dimensionsAsLongArray());
+		// NB: Same dimensions and cell size, hence the same iteration order.
+		final Cursor<T> in = cursor();
+		final Cursor<T> out = copy.cursor();
+		while (in.hasNext()) {
+			out.next().set(in.next());
+		}
+		return copy;
+	}
+
+	// -- Helper methods --
+
+	private long[] dimensionsAsLongArray() {
+		final long[] dims = new long[numDimensions()];
+		dimensions(dims);
+		return dims;
+	}
+
+	/**
+	 * Gets the number of pixels a cell may hold, such that it fits the target
+	 * size, and a single mapping of at most 2 GB.
+	 */
+	static long maxCellPixels(final long cellBytes, final int pixelBytes) {
+		return Math.max(1, Math.min(cellBytes, Integer.MAX_VALUE) / pixelBytes);
+	}
+
+	/**
+	 * Chooses cell dimensions such that each cell is a contiguous region of
+	 * the row-major file: the full extent of the first dimensions, a block of
+	 * the next one, and 1 in all others.
+	 */
+	static int[] cellDimensions(final long[] dims, final long maxPixels) {
+		final long limit = Math.min(maxPixels, Integer.MAX_VALUE);
+		final int[] cellDims = new int[dims.length];
+		Arrays.fill(cellDims, 1);
+		long pixels = 1;
+		for (int d = 0; d < dims.length; d++) {
+			if (dims[d] <= limit / pixels) {
+				cellDims[d] = (int) dims[d];
+				pixels *= dims[d];
+			}
+			else {
+				cellDims[d] = (int) Math.max(1, limit / pixels);
+				break;
+			}
+		}
+		return cellDims;
+	}
+
+	private static long count(final long[] dims) {
+		long count = 1;
+		for (final long dim : dims) {
+			count *= dim;
+		}
+		return count;
+	}
+
+	private static long count(final int[] dims) {
+		long count = 1;
+		for (final int dim : dims) {
+			count *= dim;
+		}
+		return count;
+	}
+
+}
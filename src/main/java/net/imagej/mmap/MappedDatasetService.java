@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Creates {@link Dataset}s whose pixels are stored in memory-mapped files
+ * rather than on the Java heap, for images too large for the heap. Such
+ * datasets work like any other, including as inputs of ops.
+ * 
+ * @see MappedCellImg
+ */
+public interface MappedDatasetService extends ImageJService {
+
+	/** System property naming the directory for temporary backing files. */
+	String DIRECTORY_PROPERTY = "imagej.mmap.dir";
+
+	/**
+	 * Creates a dataset backed by a temporary file in the
+	 * {@link #getDirectory() scratch directory}, with all pixels zero.
+	 */
+	<T extends RealType<T> & NativeType<T>> Dataset create(T type, long[] dims,
+		String name, AxisType[] axes) throws IOException;
+
+	/**
+	 * Creates a dataset backed by the given file, which is created or resized
+	 * to hold the raw pixels in native byte order, with all pixels zero.
+	 */
+	<T extends RealType<T> & NativeType<T>> Dataset create(File file, T type,
+		long[] dims, String name, AxisType[] axes) throws IOException;
+
+	/**
+	 * Opens a dataset over an existing file of raw pixels in native byte
+	 * order, without reading it: pixels are paged in as they are accessed, and
+	 * changes are written back to the file.
+	 */
+	<T extends RealType<T> & NativeType<T>> Dataset open(File file, T type,
+		long[] dims, String name, AxisType[] axes) throws IOException;
+
+	/** Gets a factory for mapped images in the scratch directory. */
+	<T extends NativeType<T>> MappedImgFactory<T> factory(T type);
+
+	/** Gets the directory for temporary backing files. */
+	File getDirectory();
+
+	/** Sets the directory for temporary backing files. */
+	void setDirectory(File directory);
+
+	/** Gets the target size of the mapped cells, in bytes. */
+	long getCellBytes();
+
+	/** Sets the target size of the mapped cells, in bytes. */
+	void setCellBytes(long cellBytes);
+
+}
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.NativeImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates {@link MappedCellImg}s backed by temporary files, which are deleted
+ * when the JVM exits. Ops which create their output images via the factory of
+ * an input image thus keep their outputs off the heap as well.
+ */
+public class MappedImgFactory<T extends NativeType<T>> extends
+	NativeImgFactory<T>
+{
+
+	private final File directory;
+	private final ByteOrder byteOrder;
+	private final long cellBytes;
+
+	/**
+	 * @param type The pixel type.
+	 * @param directory The directory for the backing files, or null for the
+	 *          system's temporary directory.
+	 * @param byteOrder The byte order of the backing files.
+	 * @param cellBytes The target size of a cell, in bytes.
+	 */
+	public MappedImgFactory(final T type, final File directory,
+		final ByteOrder byteOrder, final long cellBytes)
+	{
+		super(type);
+		this.directory = directory;
+		this.byteOrder = byteOrder;
+		this.cellBytes = cellBytes;
+	}
+
+	// -- MappedImgFactory methods --
+
+	/** Gets the directory for the backing files. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	// -- ImgFactory methods --
+
+	@Override
+	public MappedCellImg<T> create(final long... dimensions) {
+		try {
+			final File file = File.createTempFile("imagej-", ".raw", directory);
+			file.deleteOnExit();
+			return MappedCellImg.map(file, type().createVariable(), dimensions,
+				byteOrder, cellBytes, true);
+		}
+		catch (final IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public <S> ImgFactory<S> imgFactory(final S type)
+		throws IncompatibleTypeException
+	{
+		if (!(type instanceof NativeType)) {
+			throw new IncompatibleTypeException(this, type.getClass()
+				.getCanonicalName() + " does not implement NativeType.");
+		}
+		return new MappedImgFactory((NativeType) type, directory, byteOrder,
+			cellBytes);
+	}
+
+	@Deprecated
+	@Override
+	public MappedCellImg<T> create(final long[] dim, final T type) {
+		return new MappedImgFactory<>(type, directory, byteOrder, cellBytes)
+			.create(dim);
+	}
+
+}
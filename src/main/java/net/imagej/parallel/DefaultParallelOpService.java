@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.parallel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.imagej.Dataset;
+import net.imagej.dispatch.OpDispatchService;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link ParallelOpService}. Ops are run through
+ * the {@link OpDispatchService}, so the op is resolved only once for all
+ * chunks.
+ */
+@Plugin(type = Service.class)
+public class DefaultParallelOpService extends AbstractService implements
+	ParallelOpService
+{
+
+	@Parameter
+	private OpDispatchService dispatchService;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private long grainSize;
+	private ForkJoinPool pool;
+
+	// -- ParallelOpService methods --
+
+	@Override
+	public void compute(final String name, final RandomAccessibleInterval<?> out,
+		final RandomAccessibleInterval<?> in, final Object... args)
+	{
+		if (!isPixelWise(name)) {
+			throw new IllegalArgumentException("Not a pixel-wise op: " + name);
+		}
+		if (!sameInterval(out, in)) {
+			throw new IllegalArgumentException("Input and output intervals differ");
+		}
+		for (final Object arg : args) {
+			if (arg instanceof RandomAccessibleInterval && !sameInterval(
+				(RandomAccessibleInterval<?>) arg, in))
+			{
+				throw new IllegalArgumentException(
+					"Input and argument image intervals differ");
+			}
+		}
+		final long grain = grain(in);
+		pool().invoke(new ChunkTask(in, grain, chunk -> {
+			final Object[] opArgs = new Object[args.length + 2];
+			opArgs[0] = Views.interval(out, chunk);
+			opArgs[1] = Views.interval(in, chunk);
+			for (int i = 0; i < args.length; i++) {
+				// NB: Further images are split along with the input.
+				opArgs[i + 2] = args[i] instanceof RandomAccessibleInterval ? Views
+					.interval((RandomAccessibleInterval<?>) args[i], chunk) : args[i];
+			}
+			dispatchService.run(name, opArgs);
+		}));
+	}
+
+	@Override
+	public Dataset compute(final String name, final Dataset in,
+		final Object... args)
+	{
+		final Dataset out = in.duplicateBlank();
+		compute(name, out.getImgPlus(), in.getImgPlus(), args);
+		return out;
+	}
+
+	@Override
+	public List<Interval> split(final Interval interval) {
+		final List<Interval> chunks = Collections.synchronizedList(
+			new ArrayList<Interval>());
+		pool().invoke(new ChunkTask(interval, grain(interval), chunks::add));
+		return new ArrayList<>(chunks);
+	}
+
+	@Override
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public synchronized void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.parallelism = parallelism;
+		if (pool != null) pool.shutdown();
+		pool = null;
+	}
+
+	@Override
+	public long getGrainSize() {
+		return grainSize;
+	}
+
+	@Override
+	public void setGrainSize(final long grainSize) {
+		if (grainSize < 0) {
+			throw new IllegalArgumentException("Invalid grain size: " + grainSize);
+		}
+		this.grainSize = grainSize;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	// -- Helper methods --
+
+	private synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+
+	private long grain(final Interval interval) {
+		if (grainSize > 0) return grainSize;
+		final long size = Intervals.numElements(interval);
+		return Math.max(MIN_AUTO_GRAIN, size / (8L * getParallelism()));
+	}
+
+	private static boolean sameInterval(final Interval a, final Interval b) {
+		if (a.numDimensions() != b.numDimensions()) return false;
+		for (int d = 0; d < a.numDimensions(); d++) {
+			if (a.min(d) != b.min(d) || a.max(d) != b.max(d)) return false;
+		}
+		return true;
+	}
+
+	// -- Helper classes --
+
+	/** Processes one chunk. */
+	private interface ChunkAction {
+
+		void apply(Interval chunk);
+	}
+
+	/** Halves an interval along its largest dimension until it is small. */
+	private static class ChunkTask extends RecursiveAction {
+
+		private final Interval interval;
+		private final long grain;
+		private final ChunkAction action;
+
+		public ChunkTask(final Interval interval, final long grain,
+			final ChunkAction action)
+		{
+			this.interval = interval;
+			this.grain = grain;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			int largest = 0;
+			for (int d = 1; d < interval.numDimensions(); d++) {
+				if (interval.dimension(d) > interval.dimension(largest)) largest = d;
+			}
+			if (Intervals.numElements(interval) <= grain || interval.dimension(
+				largest) < 2)
+			{
+				action.apply(interval);
+				return;
+			}
+			final long[] min = Intervals.minAsLongArray(interval);
+			final long[] max = Intervals.maxAsLongArray(interval);
+			final long middle = min[largest] + interval.dimension(largest) / 2;
+			final long[] leftMax = max.clone();
+			leftMax[largest] = middle - 1;
+			final long[] rightMin = min.clone();
+			rightMin[largest] = middle;
+			invokeAll(new ChunkTask(new FinalInterval(min, leftMax), grain, action),
+				new ChunkTask(new FinalInterval(rightMin, max), grain, action));
+		}
+	}
+
+}
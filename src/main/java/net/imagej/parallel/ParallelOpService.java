@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.parallel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+import net.imagej.ops.OpService;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Runs pixel-wise ops in parallel, by splitting images into chunks and
+ * running the op on each chunk on a fork-join pool.
+ * <p>
+ * Images are halved along their largest dimension, recursively, until chunks
+ * hold no more than the {@link #getGrainSize() grain size} of pixels. Since a
+ * pixel-wise op computes each output pixel from the input pixel at the same
+ * position only, the result is identical to running the op once on the whole
+ * image. Ops reading neighborhoods, such as filters, or depending on the whole
+ * image, such as normalization, cannot be run this way: they would treat chunk
+ * borders as image borders, or each chunk as an image of its own. Only ops
+ * which are known to be pixel-wise (see {@link #isPixelWise}) are accepted.
+ * </p>
+ */
+public interface ParallelOpService extends ImageJService {
+
+	/** Minimum chunk size of automatic sizing, in pixels. */
+	long MIN_AUTO_GRAIN = 16384;
+
+	/** Namespaces whose ops are all pixel-wise, save for the exceptions. */
+	List<String> PIXEL_WISE_NAMESPACES = Collections.unmodifiableList(Arrays
+		.asList("math", "logic", "convert"));
+
+	/** Further pixel-wise ops outside of {@link #PIXEL_WISE_NAMESPACES}. */
+	List<String> PIXEL_WISE_OPS = Collections.unmodifiableList(Arrays.asList(
+		"threshold.apply"));
+
+	/**
+	 * Ops within {@link #PIXEL_WISE_NAMESPACES} which are not pixel-wise. The
+	 * seeded random ops draw their values in iteration order, so each chunk
+	 * would repeat the values of the first one.
+	 */
+	List<String> NOT_PIXEL_WISE_OPS = Collections.unmodifiableList(Arrays
+		.asList("convert.normalizeScale", "math.randomUniform",
+			"math.randomGaussian"));
+
+	/**
+	 * Runs the named computer op on corresponding chunks of the input and the
+	 * output, i.e. {@code ij.op().run(name, outChunk, inChunk, args...)}, in
+	 * parallel.
+	 * 
+	 * @param name The name of a pixel-wise computer op (e.g.
+	 *          {@code math.add}, {@code convert.clip} or
+	 *          {@code threshold.apply}).
+	 * @param out The output image.
+	 * @param in The input image, with the same interval as the output.
+	 * @param args The further arguments of the op. Images among them must have
+	 *          the same interval as the input, and are split into the same
+	 *          chunks; other arguments are shared by all chunks.
+	 * @throws IllegalArgumentException if the op is not known to be pixel-wise,
+	 *           or the intervals of the images differ.
+	 * @see OpService#run(String, Object...)
+	 */
+	void compute(String name, RandomAccessibleInterval<?> out,
+		RandomAccessibleInterval<?> in, Object... args);
+
+	/**
+	 * Runs the named pixel-wise computer op on a dataset in parallel, into a
+	 * new dataset of the same type and shape.
+	 */
+	Dataset compute(String name, Dataset in, Object... args);
+
+	/**
+	 * Tells whether the named op computes each output pixel from the input
+	 * pixel at the same position only, so that it can be run in chunks.
+	 */
+	default boolean isPixelWise(final String name) {
+		if (NOT_PIXEL_WISE_OPS.contains(name)) return false;
+		if (PIXEL_WISE_OPS.contains(name)) return true;
+		final int dot = name.indexOf('.');
+		return dot > 0 && PIXEL_WISE_NAMESPACES.contains(name.substring(0, dot));
+	}
+
+	/**
+	 * Splits the given interval into the chunks which would be processed in
+	 * parallel, in no particular order.
+	 */
+	List<Interval> split(Interval interval);
+
+	/** Gets the number of threads of the fork-join pool. */
+	int getParallelism();
+
+	/** Sets the number of threads of the fork-join pool. */
+	void setParallelism(int parallelism);
+
+	/**
+	 * Gets the maximum number of pixels in a chunk, or 0 for automatic sizing,
+	 * which aims for eight chunks per thread, of at least
+	 * {@value ParallelOpService#MIN_AUTO_GRAIN} pixels.
+	 */
+	long getGrainSize();
+
+	/** Sets the maximum number of pixels in a chunk, or 0 for automatic. */
+	void setGrainSize(long grainSize);
+
+}
@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imagej.ImageJ;
+import net.imagej.pipeline.Stage.Item;
+
+/**
+ * A batch pipeline of stages which open, process and save images, built via
+ * {@link PipelineBuilder}. A pipeline can be run more than once.
+ */
+public class Pipeline {
+
+	/** Marks the end of the input in a queue. */
+	private static final Item END = new Item(null);
+
+	private final ImageJ ij;
+	private final List<File> files;
+	private final List<Stage> stages;
+	private final int queueCapacity;
+
+	Pipeline(final ImageJ ij, final List<File> files, final List<Stage> stages,
+		final int queueCapacity)
+	{
+		this.ij = ij;
+		this.files = files;
+		this.stages = stages;
+		this.queueCapacity = queueCapacity;
+	}
+
+	// -- Pipeline methods --
+
+	/** Gets the input files. */
+	public List<File> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+
+	/** Gets the names of the stages, in order. */
+	public List<String> getStageNames() {
+		final List<String> names = new ArrayList<>();
+		for (final Stage stage : stages) {
+			names.add(stage.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Runs all input files through the pipeline, blocking until all are done.
+	 * An image which fails in some stage is recorded in the result and skips
+	 * the remaining stages.
+	 */
+	public PipelineResult run() throws InterruptedException {
+		final long start = System.nanoTime();
+		final int stageCount = stages.size();
+
+		// queues.get(i) is the input of stage i
+		final List<BlockingQueue<Item>> queues = new ArrayList<>();
+		int threads = 1;
+		for (final Stage stage : stages) {
+			queues.add(new ArrayBlockingQueue<Item>(queueCapacity));
+			threads += stage.getParallelism();
+		}
+
+		final List<File> outputs = //
+			Collections.synchronizedList(new ArrayList<File>());
+		final List<PipelineResult.Failure> failures = //
+			Collections.synchronizedList(new ArrayList<PipelineResult.Failure>());
+		final Map<String, AtomicLong> busy = new LinkedHashMap<>();
+		final AtomicInteger completed = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads, ij
+			.thread());
+		try {
+			pool.execute(() -> {
+				try {
+					for (final File file : files) {
+						queues.get(0).put(new Item(file));
+					}
+					queues.get(0).put(END);
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			for (int s = 0; s < stageCount; s++) {
+				final Stage stage = stages.get(s);
+				final BlockingQueue<Item> in = queues.get(s);
+				final BlockingQueue<Item> out = s + 1 < stageCount ? //
+					queues.get(s + 1) : null;
+				final AtomicInteger workers = //
+					new AtomicInteger(stage.getParallelism());
+				final AtomicLong stageBusy = new AtomicLong();
+				busy.put(stageKey(s), stageBusy);
+
+				for (int w = 0; w < stage.getParallelism(); w++) {
+					pool.execute(() -> {
+						try {
+							while (true) {
+								final Item item = in.take();
+								if (item == END) {
+									// let sibling workers see the end, too
+									in.put(END);
+									return;
+								}
+								final long t = System.nanoTime();
+								Item result = null;
+								try {
+									result = stage.getTask().process(item);
+								}
+								catch (final Exception | LinkageError exc) {
+									failures.add(new PipelineResult.Failure(item.getSource(),
+										stage.getName(), exc));
+								}
+								catch (final Error err) {
+									// record the image, but let the worker die
+									failures.add(new PipelineResult.Failure(item.getSource(),
+										stage.getName(), err));
+									throw err;
+								}
+								finally {
+									stageBusy.addAndGet(System.nanoTime() - t);
+								}
+								if (result == null) continue;
+								if (out != null) out.put(result);
+								else {
+									completed.incrementAndGet();
+									if (result.getOutput() != null) {
+										outputs.add(result.getOutput());
+									}
+								}
+							}
+						}
+						catch (final InterruptedException exc) {
+							Thread.currentThread().interrupt();
+						}
+						finally {
+							// NB: However a worker ends, the last one to do so must pass
+							// the end on, or the pipeline never finishes.
+							if (workers.decrementAndGet() == 0) end(out, done);
+						}
+					});
+				}
+			}
+
+			done.await();
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		final Map<String, Long> stageNanos = new LinkedHashMap<>();
+		for (final Map.Entry<String, AtomicLong> entry : busy.entrySet()) {
+			stageNanos.put(entry.getKey(), entry.getValue().get());
+		}
+		return new PipelineResult(files.size(), completed.get(), outputs,
+			failures, stageNanos, System.nanoTime() - start);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the key of a stage in the stage times: its name, or, if several
+	 * stages share the name, its name and index as {@code name#index}.
+	 */
+	private String stageKey(final int index) {
+		final String name = stages.get(index).getName();
+		for (int s = 0; s < stages.size(); s++) {
+			if (s != index && stages.get(s).getName().equals(name)) {
+				return name + "#" + index;
+			}
+		}
+		return name;
+	}
+
+	/** Signals the end of the items to the next stage, or the caller. */
+	private static void end(final BlockingQueue<Item> out,
+		final CountDownLatch done)
+	{
+		if (out == null) {
+			done.countDown();
+			return;
+		}
+		try {
+			out.put(END);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
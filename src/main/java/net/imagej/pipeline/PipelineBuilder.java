@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Builds a {@link Pipeline} which opens images, processes them and saves the
+ * results. Obtain one via {@link ImageJ#pipeline()}.
+ * <p>
+ * Example:
+ * </p>
+ * 
+ * <pre>
+ * PipelineResult result = ij.pipeline() //
+ * 	.directory(new File("/data/plate1"), "*.tif") //
+ * 	.open(2) //
+ * 	.op("filter.gauss", 2.0) //
+ * 	.save(new File("/data/plate1-smoothed"), 2) //
+ * 	.build().run();
+ * </pre>
+ * <p>
+ * Each stage runs on its own threads, with the number given as its
+ * parallelism, and passes images to the next stage through a bounded queue.
+ * When a stage falls behind, the queue before it fills up and the earlier
+ * stages block, so no more than a few images per stage are in memory at once.
+ * </p>
+ */
+public class PipelineBuilder {
+
+	/** Default capacity of the queues between stages. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+	private final ImageJ ij;
+	private final List<File> files = new ArrayList<>();
+	private final List<Stage> stages = new ArrayList<>();
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private boolean opened;
+
+	public PipelineBuilder(final ImageJ ij) {
+		this.ij = ij;
+	}
+
+	// -- PipelineBuilder methods - sources --
+
+	/** Adds the given files to the input of the pipeline. */
+	public PipelineBuilder files(final Collection<File> sources) {
+		files.addAll(sources);
+		return this;
+	}
+
+	/** Adds the given files to the input of the pipeline. */
+	public PipelineBuilder files(final File... sources) {
+		return files(Arrays.asList(sources));
+	}
+
+	/**
+	 * Adds the files of a directory matching the given glob pattern (e.g.
+	 * {@code *.tif}) to the input of the pipeline, in alphabetical order.
+	 */
+	public PipelineBuilder directory(final File dir, final String glob)
+		throws IOException
+	{
+		final List<File> matches = new ArrayList<>();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(dir
+			.toPath(), glob))
+		{
+			for (final Path p : stream) {
+				if (Files.isRegularFile(p)) matches.add(p.toFile());
+			}
+		}
+		Collections.sort(matches);
+		return files(matches);
+	}
+
+	// -- PipelineBuilder methods - stages --
+
+	/**
+	 * Opens each input file via {@code ij.scifio().datasetIO()}. This must be
+	 * the first stage.
+	 * 
+	 * @param parallelism The number of images to open concurrently.
+	 */
+	public PipelineBuilder open(final int parallelism) {
+		if (!stages.isEmpty()) {
+			throw new IllegalStateException("Opening must be the first stage");
+		}
+		opened = true;
+		return stage("open", parallelism, item -> {
+			item.setDataset(ij.scifio().datasetIO().open(item.getSource()
+				.getPath()));
+			return item;
+		});
+	}
+
+	/** Runs the named op on each image, with a single thread. */
+	public PipelineBuilder op(final String name, final Object... args) {
+		return op(1, name, args);
+	}
+
+	/**
+	 * Runs the named op on each image, via {@code ij.op().run(name, image,
+	 * args...)}. The op must return an image.
+	 * 
+	 * @param parallelism The number of images to process concurrently.
+	 */
+	public PipelineBuilder op(final int parallelism, final String name,
+		final Object... args)
+	{
+		return map(name, parallelism, dataset -> {
+			final Object[] opArgs = new Object[args.length + 1];
+			opArgs[0] = dataset;
+			System.arraycopy(args, 0, opArgs, 1, args.length);
+			final Dataset result = toDataset(ij.op().run(name, opArgs), name);
+			result.setName(dataset.getName());
+			return result;
+		});
+	}
+
+	/**
+	 * Applies the given function to each image.
+	 * 
+	 * @param name The name of the stage, used when reporting failures.
+	 * @param parallelism The number of images to process concurrently.
+	 */
+	public PipelineBuilder map(final String name, final int parallelism,
+		final DatasetFunction function)
+	{
+		requireOpened();
+		return stage(name, parallelism, item -> {
+			item.setDataset(function.apply(item.getDataset()));
+			return item;
+		});
+	}
+
+	/**
+	 * Saves each image to the given directory under the name of its input
+	 * file.
+	 * 
+	 * @param parallelism The number of images to save concurrently.
+	 */
+	public PipelineBuilder save(final File dir, final int parallelism) {
+		return save(dir, null, parallelism);
+	}
+
+	/**
+	 * Saves each image to the given directory under the name of its input file,
+	 * with its extension replaced by the given one (e.g. {@code ome.tif}),
+	 * which selects the output format.
+	 * 
+	 * @param parallelism The number of images to save concurrently.
+	 */
+	public PipelineBuilder save(final File dir, final String extension,
+		final int parallelism)
+	{
+		requireOpened();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create " + dir);
+		}
+		return stage("save", parallelism, item -> {
+			final File output = new File(dir, outputName(item.getSource(),
+				extension));
+			ij.scifio().datasetIO().save(item.getDataset(), output.getPath());
+			item.setOutput(output);
+			return item;
+		});
+	}
+
+	// -- PipelineBuilder methods - configuration --
+
+	/** Sets the capacity of the queues between stages. */
+	public PipelineBuilder queueCapacity(final int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Invalid capacity");
+		queueCapacity = capacity;
+		return this;
+	}
+
+	/** Creates the pipeline. */
+	public Pipeline build() {
+		requireOpened();
+		return new Pipeline(ij, new ArrayList<>(files), new ArrayList<>(stages),
+			queueCapacity);
+	}
+
+	// -- Helper methods --
+
+	private PipelineBuilder stage(final String name, final int parallelism,
+		final Stage.Task task)
+	{
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		stages.add(new Stage(name, parallelism, task));
+		return this;
+	}
+
+	private void requireOpened() {
+		if (!opened) throw new IllegalStateException("No open stage");
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Dataset toDataset(final Object result, final String name) {
+		if (result instanceof Dataset) return (Dataset) result;
+		if (result instanceof ImgPlus) {
+			return ij.dataset().create((ImgPlus) result);
+		}
+		if (result instanceof RandomAccessibleInterval) {
+			return ij.dataset().create((RandomAccessibleInterval) result);
+		}
+		throw new IllegalArgumentException("Op " + name +
+			" did not return an image: " + result);
+	}
+
+	private static String outputName(final File source, final String extension) {
+		final String name = source.getName();
+		if (extension == null) return name;
+		final int dot = name.lastIndexOf('.');
+		return (dot <= 0 ? name : name.substring(0, dot)) + "." + extension;
+	}
+
+	// -- Helper classes --
+
+	/** A processing step applied to each image of a pipeline. */
+	public interface DatasetFunction {
+
+		Dataset apply(Dataset dataset) throws Exception;
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The outcome of a {@link Pipeline} run. */
+public class PipelineResult {
+
+	private final int inputCount;
+	private final int completedCount;
+	private final List<File> outputs;
+	private final List<Failure> failures;
+	private final Map<String, Long> stageNanos;
+	private final long elapsedNanos;
+
+	public PipelineResult(final int inputCount, final int completedCount,
+		final List<File> outputs, final List<Failure> failures,
+		final Map<String, Long> stageNanos, final long elapsedNanos)
+	{
+		this.inputCount = inputCount;
+		this.completedCount = completedCount;
+		this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+		this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+		this.stageNanos = Collections.unmodifiableMap(stageNanos);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/** Gets the number of input files. */
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	/** Gets the number of images which passed all stages. */
+	public int getCompletedCount() {
+		return completedCount;
+	}
+
+	/** Gets the files written by the save stage, if any. */
+	public List<File> getOutputs() {
+		return outputs;
+	}
+
+	/** Gets the images which failed, and where. */
+	public List<Failure> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Gets the time spent in each stage, summed over its workers, in
+	 * nanoseconds, by stage name, in stage order. Stages which share a name,
+	 * such as two {@code math.add} op stages, are keyed {@code name#index}
+	 * instead, with the index of the stage in the pipeline. The stage with the
+	 * highest time per worker is the bottleneck, and may deserve more
+	 * parallelism.
+	 */
+	public Map<String, Long> getStageNanos() {
+		return stageNanos;
+	}
+
+	/** Gets the wall time of the whole run, in nanoseconds. */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return completedCount + "/" + inputCount + " images completed, " +
+			failures.size() + " failed, in " + elapsedNanos / 1000000 + " ms";
+	}
+
+	// -- Helper classes --
+
+	/** An image which could not be processed. */
+	public static class Failure {
+
+		private final File source;
+		private final String stage;
+		private final Throwable error;
+
+		public Failure(final File source, final String stage,
+			final Throwable error)
+		{
+			this.source = source;
+			this.stage = stage;
+			this.error = error;
+		}
+
+		public File getSource() {
+			return source;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		public Throwable getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return source + " failed in " + stage + ": " + error;
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+
+import net.imagej.Dataset;
+
+/** One step of a {@link Pipeline}, run by one or more worker threads. */
+class Stage {
+
+	/** Processes one image. */
+	interface Task {
+
+		Item process(Item item) throws Exception;
+	}
+
+	private final String name;
+	private final int parallelism;
+	private final Task task;
+
+	public Stage(final String name, final int parallelism, final Task task) {
+		this.name = name;
+		this.parallelism = parallelism;
+		this.task = task;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public Task getTask() {
+		return task;
+	}
+
+	/** An image travelling through the pipeline. */
+	static class Item {
+
+		private final File source;
+		private Dataset dataset;
+		private File output;
+
+		public Item(final File source) {
+			this.source = source;
+		}
+
+		public File getSource() {
+			return source;
+		}
+
+		public Dataset getDataset() {
+			return dataset;
+		}
+
+		public void setDataset(final Dataset dataset) {
+			this.dataset = dataset;
+		}
+
+		public File getOutput() {
+			return output;
+		}
+
+		public void setOutput(final File output) {
+			this.output = output;
+		}
+	}
+
+}
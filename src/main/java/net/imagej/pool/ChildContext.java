@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pool;
+
+import io.scif.SCIFIOService;
+import io.scif.services.FormatService;
+import io.scif.services.TranslatorService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.ImageJService;
+
+import org.scijava.Context;
+import org.scijava.service.SciJavaService;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceHelper;
+
+/**
+ * A context derived from a parent context, which is much cheaper to create.
+ * <p>
+ * A child context shares the parent's plugin index, so plugin discovery is not
+ * repeated, and the parent's instances of the services listed in
+ * {@link #SHARED_SERVICES}: the SCIFIO format and translator registries. All
+ * other services are created anew for the child, including the op services, so
+ * that ops run via a child are created within the child and injected with its
+ * object, dataset, display and other stateful services.
+ * </p>
+ * <p>
+ * Shared services still belong to the parent. In particular, the formats and
+ * translators, and the readers and writers they create, live in the parent
+ * context. Disposing a child leaves the shared services intact; disposing the
+ * parent while children are alive makes them unusable.
+ * </p>
+ */
+public class ChildContext extends Context {
+
+	/** Services which child contexts share with their parent. */
+	public static final List<Class<? extends Service>> SHARED_SERVICES =
+		Collections.unmodifiableList(Arrays.<Class<? extends Service>> asList(
+			FormatService.class, TranslatorService.class));
+
+	private final Context parent;
+	private final List<Service> shared = new ArrayList<>();
+
+	/**
+	 * Creates a child context with all ImageJ, SCIFIO and SciJava services.
+	 */
+	public ChildContext(final Context parent) {
+		this(parent, Arrays.<Class<? extends Service>> asList(SciJavaService.class,
+			SCIFIOService.class, ImageJService.class));
+	}
+
+	/** Creates a child context with the given services. */
+	public ChildContext(final Context parent,
+		final Collection<Class<? extends Service>> serviceClasses)
+	{
+		super(Collections.<Class<? extends Service>> emptyList(), parent
+			.getPluginIndex());
+		this.parent = parent;
+		for (final Class<? extends Service> c : SHARED_SERVICES) {
+			final Service service = parent.getService(c);
+			if (service == null) continue;
+			getServiceIndex().add(service);
+			shared.add(service);
+		}
+		// NB: Compatible services already in the index, i.e. the shared ones,
+		// are not created again.
+		new ServiceHelper(this, serviceClasses).loadServices();
+	}
+
+	// -- ChildContext methods --
+
+	/** Gets the context from which this one was derived. */
+	public Context getParent() {
+		return parent;
+	}
+
+	/** Gets the services shared with the parent context. */
+	public List<Service> getSharedServices() {
+		return Collections.unmodifiableList(shared);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		// NB: The shared services belong to the parent; do not dispose them.
+		for (final Service service : shared) {
+			getServiceIndex().remove(service);
+		}
+		shared.clear();
+		super.dispose();
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import net.imagej.ImageJ;
+
+/**
+ * A bounded pool of pre-initialized ImageJ gateways.
+ * <p>
+ * Each gateway is borrowed by one user at a time, e.g. one request of a web
+ * service, and returned to the pool afterwards for reuse. Gateways are created
+ * up to the maximum size as needed; once all are in use, borrowers wait until
+ * a gateway is released or invalidated, or the pool is closed. The pool keeps
+ * counters for sizing: how many gateways were created, how many are in use,
+ * how often borrowers had to wait and for how long.
+ * </p>
+ * <p>
+ * Gateways are reused as they are; state left behind by one borrower (e.g.
+ * open datasets in the object service) is seen by the next. Borrowers who
+ * cannot clean up after themselves should {@link #invalidate} the gateway
+ * rather than {@link #release} it.
+ * </p>
+ */
+public class GatewayPool implements AutoCloseable {
+
+	private final Supplier<ImageJ> factory;
+	private final int maxSize;
+
+	/** Guards the idle and borrowed gateways, the size and the closed flag. */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signalled whenever a gateway or room for a new one becomes available. */
+	private final Condition available = lock.newCondition();
+
+	private final Deque<ImageJ> idle = new ArrayDeque<>();
+	private final Set<ImageJ> borrowed = Collections.newSetFromMap(
+		new IdentityHashMap<>());
+
+	/** Number of gateways in the pool, including those being created. */
+	private int size;
+	private boolean closed;
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	// -- Constructors --
+
+	/**
+	 * Creates a pool of gateways.
+	 * 
+	 * @param factory Creates new gateways for the pool.
+	 * @param minIdle The number of gateways to create up front.
+	 * @param maxSize The maximum number of gateways in the pool.
+	 */
+	public GatewayPool(final Supplier<ImageJ> factory, final int minIdle,
+		final int maxSize)
+	{
+		if (maxSize < 1) throw new IllegalArgumentException("Invalid maximum size");
+		this.factory = factory;
+		this.maxSize = maxSize;
+		try {
+			for (int i = 0; i < Math.min(minIdle, maxSize); i++) {
+				idle.add(create());
+				size++;
+			}
+		}
+		catch (final RuntimeException | Error exc) {
+			// NB: Nobody can close a pool whose constructor failed.
+			for (final ImageJ ij : idle) {
+				ij.getContext().dispose();
+			}
+			throw exc;
+		}
+	}
+
+	// -- GatewayPool methods --
+
+	/**
+	 * Creates a pool of gateways over {@link ChildContext}s of the given
+	 * parent, which must outlive the pool.
+	 */
+	public static GatewayPool children(final ImageJ parent, final int minIdle,
+		final int maxSize)
+	{
+		return new GatewayPool(parent::createChild, minIdle, maxSize);
+	}
+
+	/** Borrows a gateway, waiting as long as it takes for one to be free. */
+	public ImageJ borrow() throws InterruptedException {
+		return borrow(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Borrows a gateway, waiting up to the given time for one to be free.
+	 * 
+	 * @return The gateway, or null if none became free in time.
+	 * @throws IllegalStateException if the pool is or becomes closed.
+	 */
+	public ImageJ borrow(final long timeout, final TimeUnit unit)
+		throws InterruptedException
+	{
+		long remaining = unit.toNanos(timeout);
+		long start = 0;
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				if (closed) throw new IllegalStateException("Pool is closed");
+				final ImageJ ij = idle.poll();
+				if (ij != null) return lend(ij);
+				if (size < maxSize) break;
+				if (start == 0) {
+					waits.incrementAndGet();
+					start = System.nanoTime();
+				}
+				if (remaining <= 0) return null;
+				remaining = available.awaitNanos(remaining);
+			}
+			// reserve room for a new gateway, then create it outside the lock
+			size++;
+		}
+		finally {
+			if (start != 0) waitNanos.addAndGet(System.nanoTime() - start);
+			lock.unlock();
+		}
+
+		final ImageJ ij;
+		try {
+			ij = create();
+		}
+		catch (final RuntimeException | Error exc) {
+			lock.lock();
+			try {
+				size--;
+				available.signal();
+			}
+			finally {
+				lock.unlock();
+			}
+			throw exc;
+		}
+		lock.lock();
+		try {
+			if (!closed) return lend(ij);
+			size--;
+		}
+		finally {
+			lock.unlock();
+		}
+		ij.getContext().dispose();
+		throw new IllegalStateException("Pool is closed");
+	}
+
+	/**
+	 * Returns a borrowed gateway to the pool.
+	 * 
+	 * @throws IllegalArgumentException if the gateway is not currently borrowed
+	 *           from this pool.
+	 */
+	public void release(final ImageJ ij) {
+		lock.lock();
+		try {
+			giveBack(ij);
+			if (!closed) {
+				idle.add(ij);
+				available.signal();
+				return;
+			}
+			size--;
+		}
+		finally {
+			lock.unlock();
+		}
+		ij.getContext().dispose();
+	}
+
+	/**
+	 * Disposes a borrowed gateway instead of returning it to the pool, making
+	 * room for a fresh one.
+	 * 
+	 * @throws IllegalArgumentException if the gateway is not currently borrowed
+	 *           from this pool.
+	 */
+	public void invalidate(final ImageJ ij) {
+		lock.lock();
+		try {
+			giveBack(ij);
+			size--;
+			available.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+		ij.getContext().dispose();
+	}
+
+	/** Gets the maximum number of gateways in the pool. */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** Gets the number of gateways currently in the pool, borrowed or not. */
+	public int getSize() {
+		lock.lock();
+		try {
+			return size;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Gets the number of gateways currently borrowed. */
+	public int getActiveCount() {
+		lock.lock();
+		try {
+			return borrowed.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Gets the number of gateways currently free. */
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			return idle.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Gets the number of gateways created over the pool's lifetime. */
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	/** Gets the number of successful borrows. */
+	public long getBorrowCount() {
+		return borrows.get();
+	}
+
+	/** Gets the number of borrows which had to wait for a free gateway. */
+	public long getWaitCount() {
+		return waits.get();
+	}
+
+	/** Gets the total time borrowers spent waiting, in nanoseconds. */
+	public long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+	// -- AutoCloseable methods --
+
+	/**
+	 * Closes the pool, disposing all free gateways. Borrowed gateways are
+	 * disposed when released; borrowers still waiting fail with an
+	 * {@link IllegalStateException}.
+	 */
+	@Override
+	public void close() {
+		final List<ImageJ> free;
+		lock.lock();
+		try {
+			closed = true;
+			free = new ArrayList<>(idle);
+			idle.clear();
+			size -= free.size();
+			available.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		for (final ImageJ ij : free) {
+			ij.getContext().dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Marks a gateway as borrowed. The lock must be held. */
+	private ImageJ lend(final ImageJ ij) {
+		borrowed.add(ij);
+		borrows.incrementAndGet();
+		return ij;
+	}
+
+	/** Takes a gateway back from its borrower. The lock must be held. */
+	private void giveBack(final ImageJ ij) {
+		if (!borrowed.remove(ij)) {
+			throw new IllegalArgumentException(
+				"Gateway is not borrowed from this pool");
+		}
+	}
+
+	private ImageJ create() {
+		final ImageJ ij = factory.get();
+		created.incrementAndGet();
+		return ij;
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits JDK Flight Recorder events describing timed work.
+ * <p>
+ * ImageJ still runs on Java 8, where the {@code jdk.jfr} API does not exist,
+ * so the event type is defined reflectively via {@code jdk.jfr.EventFactory}.
+ * On JVMs without JFR, committing events does nothing. As with any JFR event,
+ * events are only recorded while a recording is running.
+ * </p>
+ */
+final class JFREvents {
+
+	private final Object factory;
+	private final Method newEvent;
+	private final Method set;
+	private final Method commit;
+
+	/**
+	 * Defines a new event type.
+	 * 
+	 * @param name The fully qualified name of the event type.
+	 * @param label The human-readable label of the event type.
+	 */
+	public JFREvents(final String name, final String label) {
+		Object f = null;
+		Method n = null, s = null, c = null;
+		try {
+			final Class<?> elementClass = Class.forName("jdk.jfr.AnnotationElement");
+			final Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+			final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+			final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			final Constructor<?> element = elementClass.getConstructor(Class.class,
+				Object.class);
+			final Constructor<?> descriptor = descriptorClass.getConstructor(
+				Class.class, String.class, List.class);
+
+			final List<Object> annotations = new ArrayList<>();
+			annotations.add(element.newInstance(annotation("jdk.jfr.Name"), name));
+			annotations.add(element.newInstance(annotation("jdk.jfr.Label"), label));
+			annotations.add(element.newInstance(annotation("jdk.jfr.Category"),
+				new String[] { "ImageJ" }));
+
+			final List<Object> none = Collections.emptyList();
+			final List<Object> fields = new ArrayList<>();
+			fields.add(descriptor.newInstance(String.class, "category", none));
+			fields.add(descriptor.newInstance(String.class, "name", none));
+			fields.add(descriptor.newInstance(long.class, "wallTime", Arrays.asList(
+				element.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS"))));
+			fields.add(descriptor.newInstance(long.class, "cpuTime", Arrays.asList(
+				element.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS"))));
+			fields.add(descriptor.newInstance(long.class, "allocated", Arrays.asList(
+				element.newInstance(annotation("jdk.jfr.DataAmount"), "BYTES"))));
+
+			f = factoryClass.getMethod("create", List.class, List.class).invoke(null,
+				annotations, fields);
+			n = factoryClass.getMethod("newEvent");
+			s = eventClass.getMethod("set", int.class, Object.class);
+			c = eventClass.getMethod("commit");
+		}
+		catch (final ReflectiveOperationException | RuntimeException exc) {
+			// NB: No JFR on this JVM.
+			f = null;
+		}
+		factory = f;
+		newEvent = n;
+		set = s;
+		commit = c;
+	}
+
+	/** Gets whether JFR is available on this JVM. */
+	public boolean isAvailable() {
+		return factory != null;
+	}
+
+	/** Commits an event; does nothing if JFR is not available. */
+	public void commit(final String category, final String name,
+		final long wallNanos, final long cpuNanos, final long allocatedBytes)
+	{
+		if (factory == null) return;
+		try {
+			final Object event = newEvent.invoke(factory);
+			set.invoke(event, 0, category);
+			set.invoke(event, 1, name);
+			set.invoke(event, 2, wallNanos);
+			set.invoke(event, 3, cpuNanos);
+			set.invoke(event, 4, allocatedBytes);
+			commit.invoke(event);
+		}
+		catch (final ReflectiveOperationException exc) {
+			// NB: Recording is best effort.
+		}
+	}
+
+	// -- Helper methods --
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Annotation> annotation(final String className)
+		throws ClassNotFoundException
+	{
+		return (Class<? extends Annotation>) Class.forName(className);
+	}
+
+}
@@ -0,0 +1,684 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import io.scif.Reader;
+import io.scif.img.ImgOpener;
+import io.scif.img.ImgSaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import net.imagej.ImageJ;
+import net.imagej.chunk.ChunkedImg;
+import net.imagej.chunk.ChunkedWriter;
+import net.imagej.metrics.MeteredOpService;
+import net.imagej.ops.Op;
+
+import org.scijava.log.LogService;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Attributes wall time, CPU time and heap allocation to ops and I/O calls by
+ * sampling the stacks of all threads at a fixed interval.
+ * <p>
+ * Each sampled stack is reduced to its op and I/O frames, outermost first, so
+ * that nested op calls show up as nested frames wherever they run:
+ * </p>
+ * <ul>
+ * <li>{@code op:<name>[<class>]} for each {@link Op}, whether run through
+ * {@code ij.op()} or from within another op;</li>
+ * <li>{@code io:read <format>} and {@code io:write <format>} for SCIFIO
+ * readers and writers, {@code io:open} and {@code io:save} for
+ * {@link ImgOpener} and {@link ImgSaver}, and {@code io:read chunked} and
+ * {@code io:write chunked} for the chunked format.</li>
+ * </ul>
+ * <p>
+ * Threads outside any op or I/O call are not recorded. Each sample charges the
+ * time since the previous sample to every recorded thread's stack, along with
+ * the CPU time and bytes the thread used since then. The results are
+ * statistical: calls much shorter than the interval are seen in proportion to
+ * how often they run. Per-frame totals are given by {@link #getEntries()}, and
+ * the full stacks in the collapsed format of flame graph tools by
+ * {@link #toCollapsed(Metric)}.
+ * </p>
+ * <p>
+ * Ops run through a {@link MeteredOpService} this profiler is attached to are
+ * also measured exactly, one invocation at a time, via {@link #invoke}: the
+ * wall time, CPU time and allocation of each invocation are read from its
+ * thread before and after it runs. Per-op totals of these measurements, with
+ * nested invocations, are given by {@link #getInvocations()}.
+ * </p>
+ * <p>
+ * Sampling runs on its own thread, but reading the stacks of all threads
+ * stops them at a safepoint until the stacks are read. The time spent reading
+ * stacks, and hence the share of time the profiled threads were held up, is
+ * reported by {@link #getPause()}; the share of one core taken by the
+ * sampling thread itself by {@link #getOverhead()}. Both grow with the number
+ * of threads and the depth of their stacks, and shrink with a longer
+ * interval.
+ * </p>
+ * <p>
+ * A gateway profiles its ops when created with the {@value #PROPERTY} system
+ * property set to {@code true}, or from {@link ImageJ#startProfiler()} on.
+ * {@link net.imagej.Main} profiles a whole session for the {@value #FLAG}
+ * flag, optionally followed by {@code =<file>} naming the collapsed wall time
+ * report, which is written when the JVM exits.
+ * </p>
+ */
+public class OpProfiler implements AutoCloseable {
+
+	/** System property enabling op profiling for new gateways. */
+	public static final String PROPERTY = "imagej.ops.profile";
+
+	/** Command line flag which enables op profiling. */
+	public static final String FLAG = "--profile-ops";
+
+	/** Default file name of the collapsed stack report. */
+	public static final String DEFAULT_REPORT = "imagej-ops.collapsed";
+
+	/** Default sampling interval, in microseconds. */
+	public static final long DEFAULT_INTERVAL = 10000;
+
+	/** The measurements which can be attributed to frames. */
+	public enum Metric {
+		/** Wall time, in microseconds. */
+		WALL,
+		/** CPU time, in microseconds. */
+		CPU,
+		/** Heap allocation, in bytes. */
+		ALLOCATION
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory
+		.getThreadMXBean();
+
+	private static final String CHUNKED_IMG = ChunkedImg.class.getName();
+	private static final String CHUNKED_WRITER = ChunkedWriter.class.getName();
+
+	/** Label of each class seen in a stack; empty for unlabeled classes. */
+	private final Map<String, String> labels = new ConcurrentHashMap<>();
+
+	/** Sample count, wall, CPU and allocation of each recorded stack. */
+	private final Map<List<String>, long[]> stacks = new HashMap<>();
+
+	/** CPU time and allocation of each recorded thread at its last sample. */
+	private final Map<Long, long[]> threadStats = new HashMap<>();
+
+	/** Measured totals of each invoked op. */
+	private final Map<String, Entry> invocations = new HashMap<>();
+
+	/** Frames and nested wall time of the invocations on each thread. */
+	private final ThreadLocal<Deque<Invocation>> invoking = ThreadLocal
+		.withInitial(ArrayDeque::new);
+
+	private final long intervalNanos;
+
+	private Thread sampler;
+	private volatile boolean running;
+	private long lastSample;
+	private long startTime;
+	private long elapsedNanos;
+	private long samplingNanos;
+	private long pauseNanos;
+
+	// -- Constructors --
+
+	/** Creates a profiler sampling at the {@link #DEFAULT_INTERVAL}. */
+	public OpProfiler() {
+		this(DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Creates a profiler sampling at the given interval.
+	 * 
+	 * @param intervalMicros The sampling interval, in microseconds.
+	 */
+	public OpProfiler(final long intervalMicros) {
+		if (intervalMicros <= 0) {
+			throw new IllegalArgumentException("Invalid interval: " +
+				intervalMicros);
+		}
+		intervalNanos = intervalMicros * 1000;
+	}
+
+	// -- OpProfiler methods --
+
+	/** Starts sampling, unless already started. */
+	public synchronized void start() {
+		if (running) return;
+		running = true;
+		startTime = lastSample = System.nanoTime();
+		sampler = new Thread(this::sampleLoop, "OpProfiler");
+		sampler.setDaemon(true);
+		sampler.start();
+	}
+
+	/** Stops sampling; the results recorded so far are kept. */
+	public void stop() {
+		final Thread thread;
+		synchronized (this) {
+			if (!running) return;
+			running = false;
+			thread = sampler;
+			sampler = null;
+		}
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			elapsedNanos += System.nanoTime() - startTime;
+		}
+	}
+
+	/** Gets whether the profiler is sampling. */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/** Discards the results recorded so far. */
+	public synchronized void reset() {
+		stacks.clear();
+		threadStats.clear();
+		invocations.clear();
+		elapsedNanos = samplingNanos = pauseNanos = 0;
+		startTime = System.nanoTime();
+	}
+
+	/** Gets the sampling interval, in microseconds. */
+	public long getInterval() {
+		return intervalNanos / 1000;
+	}
+
+	/**
+	 * Gets the fraction of the profiled time which was spent sampling, i.e.
+	 * the share of one core taken by the profiler.
+	 */
+	public synchronized double getOverhead() {
+		return fraction(samplingNanos);
+	}
+
+	/**
+	 * Gets the fraction of the profiled time which was spent reading the
+	 * stacks of all threads, during which the profiled threads are stopped.
+	 */
+	public synchronized double getPause() {
+		return fraction(pauseNanos);
+	}
+
+	/**
+	 * Runs one invocation of an op, measuring its wall time, CPU time and
+	 * allocation on the current thread, if the profiler is running.
+	 * 
+	 * @param op The op being run.
+	 * @param invocation Runs the op.
+	 * @return The result of the invocation.
+	 */
+	public <T> T invoke(final Object op, final Supplier<T> invocation) {
+		if (!running) return invocation.get();
+		final String frame = label(op.getClass().getName());
+		if (frame.isEmpty()) return invocation.get();
+
+		final Deque<Invocation> stack = invoking.get();
+		final Invocation current = new Invocation(frame);
+		stack.push(current);
+		final long wall = System.nanoTime();
+		final long cpu = ThreadStats.cpuTime();
+		final long alloc = ThreadStats.allocatedBytes();
+		try {
+			return invocation.get();
+		}
+		finally {
+			final long wallNanos = System.nanoTime() - wall;
+			final long cpuNanos = ThreadStats.cpuTime() - cpu;
+			final long allocated = ThreadStats.allocatedBytes() - alloc;
+			stack.pop();
+			final Invocation parent = stack.peek();
+			if (parent != null) parent.nestedWallNanos += wallNanos;
+			// NB: Count recursive invocations once, at the outermost one.
+			boolean recursive = false;
+			for (final Invocation outer : stack) {
+				if (outer.frame.equals(frame)) recursive = true;
+			}
+			synchronized (this) {
+				final Entry entry = invocations.computeIfAbsent(frame, Entry::new);
+				entry.invocations++;
+				entry.selfWallNanos += wallNanos - current.nestedWallNanos;
+				if (!recursive) {
+					entry.wallNanos += wallNanos;
+					entry.cpuNanos += cpuNanos;
+					entry.allocatedBytes += allocated;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the totals of each op and I/O frame, sorted by decreasing wall time.
+	 * A frame's totals include the frames nested in it.
+	 */
+	public List<Entry> getEntries() {
+		final Map<String, Entry> entries = new HashMap<>();
+		synchronized (this) {
+			for (final Map.Entry<List<String>, long[]> stack : stacks.entrySet()) {
+				final List<String> frames = stack.getKey();
+				final long[] v = stack.getValue();
+				// NB: Count recursive frames once per stack.
+				final Set<String> seen = new HashSet<>();
+				for (final String frame : frames) {
+					if (!seen.add(frame)) continue;
+					final Entry entry = entries.computeIfAbsent(frame, Entry::new);
+					entry.samples += v[0];
+					entry.wallNanos += v[1];
+					entry.cpuNanos += v[2];
+					entry.allocatedBytes += v[3];
+				}
+				entries.get(frames.get(frames.size() - 1)).selfWallNanos += v[1];
+			}
+		}
+		final List<Entry> list = new ArrayList<>(entries.values());
+		Collections.sort(list, (e1, e2) -> Long.compare(e2.wallNanos,
+			e1.wallNanos));
+		return list;
+	}
+
+	/**
+	 * Gets the measured totals of each op invoked via {@link #invoke}, sorted
+	 * by decreasing wall time. An op's totals include the ops it invoked.
+	 */
+	public List<Entry> getInvocations() {
+		final List<Entry> list;
+		synchronized (this) {
+			list = new ArrayList<>(invocations.values());
+		}
+		Collections.sort(list, (e1, e2) -> Long.compare(e2.wallNanos,
+			e1.wallNanos));
+		return list;
+	}
+
+	/**
+	 * Exports the recorded stacks in the collapsed format read by flame graph
+	 * tools: one line per stack, with its frames separated by semicolons,
+	 * outermost first, followed by the given metric.
+	 */
+	public String toCollapsed(final Metric metric) {
+		final Map<String, Long> lines = new TreeMap<>();
+		synchronized (this) {
+			for (final Map.Entry<List<String>, long[]> stack : stacks.entrySet()) {
+				final long[] v = stack.getValue();
+				final long value = metric == Metric.WALL ? v[1] / 1000 : //
+					metric == Metric.CPU ? v[2] / 1000 : v[3];
+				if (value > 0) lines.merge(String.join(";", stack.getKey()), value,
+					Long::sum);
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Long> line : lines.entrySet()) {
+			sb.append(line.getKey()).append(" ").append(line.getValue()).append(
+				"\n");
+		}
+		return sb.toString();
+	}
+
+	/** Writes the recorded stacks in the collapsed format to the given file. */
+	public void writeCollapsed(final File file, final Metric metric)
+		throws IOException
+	{
+		try (final Writer out = new OutputStreamWriter(Files
+			.newOutputStream(file.toPath()), StandardCharsets.UTF_8))
+		{
+			out.write(toCollapsed(metric));
+		}
+	}
+
+	/**
+	 * Launches ImageJ as {@link net.imagej.Main} does, profiling ops and I/O
+	 * until the JVM exits. The {@value #FLAG} flag is removed from the
+	 * arguments. The wall time report is written to the given file, with the
+	 * CPU time and allocation reports alongside it ({@code .cpu} and
+	 * {@code .alloc} appended to its name).
+	 */
+	public static ImageJ launch(final String... args) {
+		File report = new File(DEFAULT_REPORT);
+		final List<String> launchArgs = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.equals(FLAG)) continue;
+			if (arg.startsWith(FLAG + "=")) {
+				report = new File(arg.substring(FLAG.length() + 1));
+				continue;
+			}
+			launchArgs.add(arg);
+		}
+
+		System.setProperty(PROPERTY, "true");
+		final ImageJ ij = new ImageJ();
+		final OpProfiler profiler = ij.startProfiler();
+
+		final File wallReport = report;
+		final LogService log = ij.log();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			profiler.stop();
+			try {
+				profiler.writeCollapsed(wallReport, Metric.WALL);
+				profiler.writeCollapsed(new File(wallReport.getPath() + ".cpu"),
+					Metric.CPU);
+				profiler.writeCollapsed(new File(wallReport.getPath() + ".alloc"),
+					Metric.ALLOCATION);
+				log.info("Op profile written to " + wallReport);
+			}
+			catch (final IOException exc) {
+				log.error("Cannot write op profile", exc);
+			}
+		}, "OpProfiler-report"));
+
+		ij.launch(launchArgs.toArray(new String[launchArgs.size()]));
+		return ij;
+	}
+
+	/** Gets whether the {@value #PROPERTY} system property is set. */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(PROPERTY);
+	}
+
+	/** Gets whether the given arguments ask for op profiling. */
+	public static boolean isRequested(final String... args) {
+		for (final String arg : args) {
+			if (arg.equals(FLAG) || arg.startsWith(FLAG + "=")) return true;
+		}
+		return false;
+	}
+
+	// -- AutoCloseable methods --
+
+	/** Stops sampling. */
+	@Override
+	public void close() {
+		stop();
+	}
+
+	// -- Helper methods --
+
+	private void sampleLoop() {
+		while (running) {
+			LockSupport.parkNanos(intervalNanos);
+			if (!running) break;
+			sample();
+		}
+	}
+
+	/** Samples the stacks of all threads now. */
+	void sample() {
+		final long start = System.nanoTime();
+		final ThreadInfo[] infos = THREADS.dumpAllThreads(false, false);
+		final long pause = System.nanoTime() - start;
+		final long self = Thread.currentThread().getId();
+		final List<List<String>> paths = new ArrayList<>();
+		final List<Long> ids = new ArrayList<>();
+		for (final ThreadInfo info : infos) {
+			if (info == null || info.getThreadId() == self) continue;
+			final List<String> frames = frames(info.getStackTrace());
+			if (frames.isEmpty()) continue;
+			paths.add(frames);
+			ids.add(info.getThreadId());
+		}
+		final long[] idArray = new long[ids.size()];
+		for (int i = 0; i < idArray.length; i++) {
+			idArray[i] = ids.get(i);
+		}
+		final long[] cpu = ThreadStats.cpuTimes(idArray);
+		final long[] alloc = ThreadStats.allocatedBytes(idArray);
+
+		synchronized (this) {
+			final long now = System.nanoTime();
+			final long wall = now - lastSample;
+			lastSample = now;
+			final Map<Long, long[]> previous = new HashMap<>(threadStats);
+			threadStats.clear();
+			for (int i = 0; i < idArray.length; i++) {
+				final long[] last = previous.get(idArray[i]);
+				final long[] v = stacks.computeIfAbsent(paths.get(i), k -> new long[4]);
+				v[0]++;
+				v[1] += wall;
+				// NB: A thread's first sample in an op sets its baseline.
+				if (last != null && cpu[i] >= 0) v[2] += cpu[i] - last[0];
+				if (last != null && alloc[i] >= 0) v[3] += alloc[i] - last[1];
+				threadStats.put(idArray[i], new long[] { cpu[i], alloc[i] });
+			}
+			samplingNanos += System.nanoTime() - start;
+			pauseNanos += pause;
+		}
+	}
+
+	/** Gets the given time as a fraction of the profiled time. */
+	private double fraction(final long nanos) {
+		final long elapsed = elapsedNanos + (running ? System.nanoTime() -
+			startTime : 0);
+		return elapsed == 0 ? 0 : (double) nanos / elapsed;
+	}
+
+	/** Reduces a stack trace to its labeled frames, outermost first. */
+	private List<String> frames(final StackTraceElement[] trace) {
+		final List<String> frames = new ArrayList<>();
+		String previous = null;
+		for (int i = trace.length - 1; i >= 0; i--) {
+			final String label = label(trace[i].getClassName());
+			if (label.isEmpty() || label.equals(previous)) continue;
+			frames.add(label);
+			previous = label;
+		}
+		return frames;
+	}
+
+	private String label(final String className) {
+		final String label = labels.get(className);
+		if (label != null) return label;
+		final String computed = classify(className);
+		labels.put(className, computed);
+		return computed;
+	}
+
+	private String classify(final String className) {
+		if (className.startsWith("java.") || className.startsWith("javax.") ||
+			className.startsWith("jdk.") || className.startsWith("sun.") ||
+			className.contains("$$Lambda"))
+		{
+			return "";
+		}
+		if (className.startsWith(CHUNKED_IMG)) return "io:read chunked";
+		if (className.equals(CHUNKED_WRITER)) return "io:write chunked";
+		final Class<?> c = load(className);
+		// NB: Default methods and abstract bases run on behalf of the concrete
+		// class, which is in the stack as well.
+		if (c == null || c.isInterface() || Modifier.isAbstract(c
+			.getModifiers()))
+		{
+			return "";
+		}
+		if (Op.class.isAssignableFrom(c)) {
+			return "op:" + opName(c) + "[" + shortName(c) + "]";
+		}
+		if (Reader.class.isAssignableFrom(c)) return "io:read " + formatName(c);
+		if (io.scif.Writer.class.isAssignableFrom(c)) {
+			return "io:write " + formatName(c);
+		}
+		if (ImgOpener.class.isAssignableFrom(c)) return "io:open";
+		if (ImgSaver.class.isAssignableFrom(c)) return "io:save";
+		return "";
+	}
+
+	private static Class<?> load(final String className) {
+		final ClassLoader[] loaders = { OpProfiler.class.getClassLoader(),
+			Thread.currentThread().getContextClassLoader() };
+		for (final ClassLoader loader : loaders) {
+			try {
+				return Class.forName(className, false, loader);
+			}
+			catch (final ClassNotFoundException | LinkageError exc) {
+				// try the next loader
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the name of an op: the name given by its plugin annotation, else
+	 * the {@code NAME} constant of its op type, else its class name.
+	 */
+	private static String opName(final Class<?> c) {
+		final Plugin plugin = c.getAnnotation(Plugin.class);
+		if (plugin != null && !plugin.name().isEmpty()) return plugin.name();
+		try {
+			final Field field = c.getField("NAME");
+			if (Modifier.isStatic(field.getModifiers()) && field
+				.getType() == String.class)
+			{
+				return (String) field.get(null);
+			}
+		}
+		catch (final ReflectiveOperationException | SecurityException exc) {
+			// no op type constant
+		}
+		return shortName(c);
+	}
+
+	/** Gets the format of a nested reader or writer class. */
+	private static String formatName(final Class<?> c) {
+		final Class<?> enclosing = c.getEnclosingClass();
+		return (enclosing == null ? c : enclosing).getSimpleName();
+	}
+
+	/** Gets a class name without its package. */
+	private static String shortName(final Class<?> c) {
+		final String name = c.getName();
+		return name.substring(name.lastIndexOf('.') + 1).replace(';', ':');
+	}
+
+	// -- Helper classes --
+
+	/** An op invocation in progress. */
+	private static class Invocation {
+
+		private final String frame;
+		private long nestedWallNanos;
+
+		public Invocation(final String frame) {
+			this.frame = frame;
+		}
+	}
+
+	/** The totals of one op or I/O frame. */
+	public static class Entry {
+
+		private final String name;
+		private long samples;
+		private long invocations;
+		private long wallNanos;
+		private long selfWallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+
+		private Entry(final String name) {
+			this.name = name;
+		}
+
+		/** Gets the frame's label. */
+		public String getName() {
+			return name;
+		}
+
+		/** Gets the number of samples of threads within the frame. */
+		public long getSamples() {
+			return samples;
+		}
+
+		/** Gets the number of measured invocations of the frame's op. */
+		public long getInvocations() {
+			return invocations;
+		}
+
+		/** Gets the wall time within the frame, nested frames included. */
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		/** Gets the wall time within the frame, nested frames excluded. */
+		public long getSelfWallNanos() {
+			return selfWallNanos;
+		}
+
+		/** Gets the CPU time within the frame, nested frames included. */
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		/** Gets the bytes allocated within the frame, nested frames included. */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": samples=" + samples + ", invocations=" +
+				invocations + ", wallMillis=" + wallNanos /
+				1000000 + ", selfWallMillis=" + selfWallNanos / 1000000 +
+				", cpuMillis=" + cpuNanos / 1000000 + ", allocatedBytes=" +
+				allocatedBytes;
+		}
+	}
+
+}
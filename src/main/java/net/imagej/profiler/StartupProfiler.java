@@ -0,0 +1,485 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import io.scif.SCIFIOService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.imagej.ImageJ;
+import net.imagej.ImageJService;
+import net.imagej.startup.CachingPluginFinder;
+import net.imagej.startup.ParallelServiceInitializer;
+import net.imagej.thread.VirtualThreads;
+
+import org.scijava.Context;
+import org.scijava.log.LogService;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.service.SciJavaService;
+import org.scijava.service.Service;
+
+/**
+ * Records where the time goes while ImageJ starts up.
+ * <p>
+ * Each startup phase (plugin discovery, service creation, resolving the
+ * application version, launching the user interface) and each service's
+ * {@link Service#initialize()} is recorded with its wall time, CPU time and
+ * heap allocation. The results can be exported as JSON, and as JDK Flight
+ * Recorder events of type {@value #JFR_EVENT}.
+ * </p>
+ * <p>
+ * Services are created along the same path as {@link ImageJ#ImageJ()} takes:
+ * by the {@link ParallelServiceInitializer} if parallel initialization is
+ * enabled, which reports each service exactly; otherwise by the regular
+ * {@link Context} constructor, whose service initializations are measured by
+ * sampling the stack of the starting thread every
+ * {@value #SAMPLE_INTERVAL_MICROS} microseconds, and are thus estimates.
+ * </p>
+ * <p>
+ * {@link net.imagej.Main} enables the profiler via the {@value #FLAG} flag,
+ * optionally followed by {@code =<file>} naming the JSON report.
+ * </p>
+ */
+public class StartupProfiler {
+
+	/** Command line flag which enables startup profiling. */
+	public static final String FLAG = "--profile-startup";
+
+	/** Default file name of the JSON report. */
+	public static final String DEFAULT_REPORT = "imagej-startup.json";
+
+	/** Name of the JFR event type for recorded phases and services. */
+	public static final String JFR_EVENT = "net.imagej.Startup";
+
+	/** Category of startup phases. */
+	public static final String PHASE = "phase";
+
+	/** Category of service initializations. */
+	public static final String SERVICE = "service";
+
+	/** Sampling interval for services created by the regular constructor. */
+	public static final long SAMPLE_INTERVAL_MICROS = 500;
+
+	private final long origin = System.nanoTime();
+	private final List<Record> records = //
+		Collections.synchronizedList(new ArrayList<Record>());
+
+	// -- StartupProfiler methods --
+
+	/**
+	 * Starts timing a phase. The phase ends when the returned timer is closed.
+	 */
+	public Timer phase(final String name) {
+		return new Timer(PHASE, name);
+	}
+
+	/**
+	 * Creates a context with the given services, recording plugin discovery and
+	 * service creation as phases, and each service's initialization separately.
+	 * 
+	 * @param threads The number of threads with which to initialize services;
+	 *          see {@link ParallelServiceInitializer}. With 0, the services are
+	 *          created by the {@link Context#Context(Collection, PluginIndex)}
+	 *          constructor, as for a gateway without parallel initialization.
+	 */
+	public Context createContext(
+		final Collection<Class<? extends Service>> serviceClasses,
+		final int threads)
+	{
+		final PluginIndex pluginIndex;
+		try (final Timer t = phase("plugin-discovery")) {
+			pluginIndex = CachingPluginFinder.createPluginIndex();
+			pluginIndex.discover();
+		}
+		if (threads == 0) {
+			final InitializeSampler sampler = new InitializeSampler(Thread
+				.currentThread());
+			try (final Timer t = phase("services")) {
+				sampler.start();
+				try {
+					return new Context(serviceClasses, pluginIndex);
+				}
+				finally {
+					sampler.stop();
+				}
+			}
+		}
+		try (final Timer t = phase("services")) {
+			final Context context = new Context(Collections
+				.<Class<? extends Service>> emptyList(), pluginIndex);
+			new ParallelServiceInitializer(context, threads) {
+
+				@Override
+				protected void initializeService(final Service service) {
+					try (final Timer st = new Timer(SERVICE, service.getClass()
+						.getName()))
+					{
+						super.initializeService(service);
+					}
+				}
+			}.initialize(serviceClasses);
+			return context;
+		}
+	}
+
+	/** Gets the recorded phases and services, in the order they finished. */
+	public List<Record> getRecords() {
+		synchronized (records) {
+			return new ArrayList<>(records);
+		}
+	}
+
+	/** Gets the recorded entries of the given category. */
+	public List<Record> getRecords(final String category) {
+		final List<Record> result = new ArrayList<>();
+		for (final Record r : getRecords()) {
+			if (r.getCategory().equals(category)) result.add(r);
+		}
+		return result;
+	}
+
+	/** Exports the recorded entries as a JSON document. */
+	public String toJSON() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"totalNanos\": ").append(System.nanoTime() - origin);
+		sb.append(",\n");
+		appendRecords(sb, "phases", getRecords(PHASE));
+		sb.append(",\n");
+		appendRecords(sb, "services", getRecords(SERVICE));
+		sb.append("\n}\n");
+		return sb.toString();
+	}
+
+	/** Writes the JSON report to the given file. */
+	public void writeJSON(final File file) throws IOException {
+		try (final Writer out = new OutputStreamWriter(Files.newOutputStream(file
+			.toPath()), StandardCharsets.UTF_8))
+		{
+			out.write(toJSON());
+		}
+	}
+
+	/**
+	 * Commits one JFR event per recorded entry.
+	 * 
+	 * @return False if JFR is not available on this JVM.
+	 */
+	public boolean emitJFR() {
+		final JFREvents events = new JFREvents(JFR_EVENT, "ImageJ Startup");
+		if (!events.isAvailable()) return false;
+		for (final Record r : getRecords()) {
+			events.commit(r.getCategory(), r.getName(), r.getWallNanos(), r
+				.getCpuNanos(), r.getAllocatedBytes());
+		}
+		return true;
+	}
+
+	/**
+	 * Launches ImageJ as {@link net.imagej.Main} does, profiling each phase of
+	 * startup. The {@value #FLAG} flag is removed from the arguments, and the
+	 * report is written when launching completes.
+	 */
+	public static ImageJ launch(final String... args) {
+		final StartupProfiler profiler = new StartupProfiler();
+		File report = new File(DEFAULT_REPORT);
+		final List<String> launchArgs = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.equals(FLAG)) continue;
+			if (arg.startsWith(FLAG + "=")) {
+				report = new File(arg.substring(FLAG.length() + 1));
+				continue;
+			}
+			launchArgs.add(arg);
+		}
+
+		final List<Class<? extends Service>> serviceClasses = Arrays.asList(
+			SciJavaService.class, SCIFIOService.class, ImageJService.class);
+		final int threads = ParallelServiceInitializer.threadsFromProperty();
+		final Context context = profiler.createContext(serviceClasses, threads);
+
+		final ImageJ ij;
+		try (final Timer t = profiler.phase("gateway")) {
+			ij = new ImageJ(context);
+			if (VirtualThreads.isRequested()) VirtualThreads.install(ij.thread());
+		}
+		try (final Timer t = profiler.phase("app-version")) {
+			ij.app().getApp().getVersion();
+		}
+		try (final Timer t = profiler.phase("launch")) {
+			ij.launch(launchArgs.toArray(new String[launchArgs.size()]));
+		}
+
+		final LogService log = ij.log();
+		try {
+			profiler.writeJSON(report);
+			log.info("Startup profile written to " + report);
+		}
+		catch (final IOException exc) {
+			log.error("Cannot write startup profile", exc);
+		}
+		profiler.emitJFR();
+		return ij;
+	}
+
+	/** Gets whether the given arguments ask for startup profiling. */
+	public static boolean isRequested(final String... args) {
+		for (final String arg : args) {
+			if (arg.equals(FLAG) || arg.startsWith(FLAG + "=")) return true;
+		}
+		return false;
+	}
+
+	// -- Helper methods --
+
+	private void appendRecords(final StringBuilder sb, final String key,
+		final List<Record> list)
+	{
+		sb.append("  \"").append(key).append("\": [");
+		for (int i = 0; i < list.size(); i++) {
+			final Record r = list.get(i);
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    {\"name\": \"").append(escape(r.getName()));
+			sb.append("\", \"thread\": \"").append(escape(r.getThread()));
+			sb.append("\", \"startNanos\": ").append(r.getStartNanos());
+			sb.append(", \"wallNanos\": ").append(r.getWallNanos());
+			sb.append(", \"cpuNanos\": ").append(r.getCpuNanos());
+			sb.append(", \"allocatedBytes\": ").append(r.getAllocatedBytes());
+			sb.append("}");
+		}
+		sb.append(list.isEmpty() ? "]" : "\n  ]");
+	}
+
+	private static String escape(final String s) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') sb.append('\\').append(c);
+			else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	// -- Helper classes --
+
+	/** Measures one phase or service, recording it when closed. */
+	public class Timer implements AutoCloseable {
+
+		private final String category;
+		private final String name;
+		private final long start = System.nanoTime();
+		private final long cpuStart = ThreadStats.cpuTime();
+		private final long allocStart = ThreadStats.allocatedBytes();
+
+		private Timer(final String category, final String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		@Override
+		public void close() {
+			final long wall = System.nanoTime() - start;
+			final long cpu = ThreadStats.cpuTime() - cpuStart;
+			final long alloc = ThreadStats.allocatedBytes() - allocStart;
+			records.add(new Record(category, name, Thread.currentThread().getName(),
+				start - origin, wall, cpu, alloc));
+		}
+	}
+
+	/**
+	 * Samples the stack of a thread creating services via the
+	 * {@link org.scijava.service.ServiceHelper}, attributing the time, CPU time
+	 * and allocation between samples to the service being initialized.
+	 */
+	private class InitializeSampler implements Runnable {
+
+		private static final String HELPER = "org.scijava.service.ServiceHelper";
+
+		private final Thread target;
+		private final long[] ids;
+		private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		/** Start, wall, CPU and allocation of each service seen. */
+		private final Map<String, long[]> services = new LinkedHashMap<>();
+
+		private volatile boolean running;
+		private Thread thread;
+
+		public InitializeSampler(final Thread target) {
+			this.target = target;
+			ids = new long[] { target.getId() };
+		}
+
+		public void start() {
+			running = true;
+			thread = new Thread(this, "StartupProfiler-sampler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void stop() {
+			running = false;
+			try {
+				thread.join();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			for (final Map.Entry<String, long[]> entry : services.entrySet()) {
+				final long[] s = entry.getValue();
+				records.add(new Record(SERVICE, entry.getKey(), target.getName(),
+					s[0] - origin, s[1], s[2], s[3]));
+			}
+		}
+
+		@Override
+		public void run() {
+			long time = System.nanoTime();
+			long cpu = ThreadStats.cpuTimes(ids)[0];
+			long alloc = ThreadStats.allocatedBytes(ids)[0];
+			while (running) {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(
+					SAMPLE_INTERVAL_MICROS));
+				final ThreadInfo info = threads.getThreadInfo(ids[0],
+					Integer.MAX_VALUE);
+				final long now = System.nanoTime();
+				final long nowCpu = ThreadStats.cpuTimes(ids)[0];
+				final long nowAlloc = ThreadStats.allocatedBytes(ids)[0];
+				final String service = info == null ? null : initializing(info
+					.getStackTrace());
+				if (service != null) {
+					final long[] s = services.computeIfAbsent(service,
+						k -> new long[] { now, 0, 0, 0 });
+					s[1] += now - time;
+					s[2] += Math.max(0, nowCpu - cpu);
+					s[3] += Math.max(0, nowAlloc - alloc);
+				}
+				time = now;
+				cpu = nowCpu;
+				alloc = nowAlloc;
+			}
+		}
+
+		/**
+		 * Gets the class of the service whose {@code initialize()} method is on
+		 * the stack, called by the service helper, or null if none is.
+		 */
+		private String initializing(final StackTraceElement[] stack) {
+			for (int i = 0; i < stack.length - 1; i++) {
+				if (stack[i].getMethodName().equals("initialize") && stack[i + 1]
+					.getClassName().equals(HELPER))
+				{
+					return stack[i].getClassName();
+				}
+			}
+			return null;
+		}
+	}
+
+	/** A recorded phase or service initialization. */
+	public static class Record {
+
+		private final String category;
+		private final String name;
+		private final String thread;
+		private final long startNanos;
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		public Record(final String category, final String name,
+			final String thread, final long startNanos, final long wallNanos,
+			final long cpuNanos, final long allocatedBytes)
+		{
+			this.category = category;
+			this.name = name;
+			this.thread = thread;
+			this.startNanos = startNanos;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getThread() {
+			return thread;
+		}
+
+		/** Gets the start time, relative to the creation of the profiler. */
+		public long getStartNanos() {
+			return startNanos;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return category + " " + name + ": " + wallNanos / 1000000 + " ms";
+		}
+	}
+
+}
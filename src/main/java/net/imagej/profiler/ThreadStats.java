@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Utility methods for measuring the CPU time and heap allocation of the current
+ * thread, or of several threads at once. Where the JVM does not support a
+ * measurement, it reads as zero.
+ */
+public final class ThreadStats {
+
+	private static final ThreadMXBean THREADS = ManagementFactory
+		.getThreadMXBean();
+
+	private static final boolean CPU_SUPPORTED = cpuSupported();
+
+	private static final com.sun.management.ThreadMXBean ALLOC = allocBean();
+
+	private ThreadStats() {
+		// prevent instantiation of utility class
+	}
+
+	/** Gets whether per-thread allocation can be measured. */
+	public static boolean isAllocationSupported() {
+		return ALLOC != null;
+	}
+
+	/** Gets the CPU time of the current thread, in nanoseconds. */
+	public static long cpuTime() {
+		return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/** Gets the bytes allocated so far by the current thread. */
+	public static long allocatedBytes() {
+		if (ALLOC == null) return 0;
+		return ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Gets the CPU time of each of the given threads, in nanoseconds; -1 for
+	 * threads which are no longer alive.
+	 */
+	public static long[] cpuTimes(final long[] ids) {
+		if (!CPU_SUPPORTED) return new long[ids.length];
+		if (ALLOC != null) return ALLOC.getThreadCpuTime(ids);
+		final long[] times = new long[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			times[i] = THREADS.getThreadCpuTime(ids[i]);
+		}
+		return times;
+	}
+
+	/**
+	 * Gets the bytes allocated so far by each of the given threads; -1 for
+	 * threads which are no longer alive.
+	 */
+	public static long[] allocatedBytes(final long[] ids) {
+		if (ALLOC == null) return new long[ids.length];
+		return ALLOC.getThreadAllocatedBytes(ids);
+	}
+
+	// -- Helper methods --
+
+	private static boolean cpuSupported() {
+		try {
+			if (!THREADS.isCurrentThreadCpuTimeSupported()) return false;
+			if (!THREADS.isThreadCpuTimeEnabled()) THREADS.setThreadCpuTimeEnabled(
+				true);
+			return true;
+		}
+		catch (final UnsupportedOperationException | SecurityException exc) {
+			return false;
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocBean() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return null;
+		final com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean) THREADS;
+		try {
+			if (!bean.isThreadAllocatedMemorySupported()) return null;
+			if (!bean.isThreadAllocatedMemoryEnabled()) {
+				bean.setThreadAllocatedMemoryEnabled(true);
+			}
+			return bean;
+		}
+		catch (final UnsupportedOperationException | SecurityException exc) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,333 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pyramid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imagej.Dataset;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imagej.chunk.ChunkService;
+import net.imagej.chunk.ChunkedMetadata;
+import net.imagej.chunk.ChunkedWriter;
+import net.imagej.chunk.DataType;
+import net.imagej.frame.FrameRenderService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Intervals;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link PyramidService}. Pyramid directories hold
+ * a {@value #PROPERTIES_FILE} file, written once all levels are complete; the
+ * levels of a build which fails are deleted again. Each build writes its
+ * chunks with its own executor, so changing the thread count never disturbs
+ * a build in progress.
+ */
+@Plugin(type = Service.class)
+public class DefaultPyramidService extends AbstractService implements
+	PyramidService
+{
+
+	/** Name of the file describing a pyramid. */
+	public static final String PROPERTIES_FILE = "pyramid.properties";
+
+	@Parameter
+	private ChunkService chunkService;
+
+	@Parameter
+	private FrameRenderService frameRenderService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	private final Map<Dataset, Pyramid> pyramids = Collections
+		.synchronizedMap(new WeakHashMap<Dataset, Pyramid>());
+
+	private volatile int threads = Runtime.getRuntime().availableProcessors();
+
+	/** Executors of the builds in progress. */
+	private final Set<ExecutorService> executors = Collections.synchronizedSet(
+		new HashSet<ExecutorService>());
+
+	// -- PyramidService methods --
+
+	@Override
+	public Future<Pyramid> build(final Dataset source) {
+		return build(source, getDirectory(sourceFile(source, true)));
+	}
+
+	@Override
+	public Future<Pyramid> build(final Dataset source, final File dir) {
+		if (source.numDimensions() < 2) {
+			throw new IllegalArgumentException("Dataset has no XY planes");
+		}
+		return threadService.run(() -> {
+			final Pyramid pyramid = write(source, dir);
+			pyramids.put(source, pyramid);
+			return pyramid;
+		});
+	}
+
+	@Override
+	public Pyramid open(final Dataset source) throws IOException {
+		final File file = sourceFile(source, false);
+		return file == null ? null : open(source, getDirectory(file));
+	}
+
+	@Override
+	public Pyramid open(final Dataset source, final File dir)
+		throws IOException
+	{
+		final File propsFile = new File(dir, PROPERTIES_FILE);
+		if (!propsFile.exists()) return null;
+		final Properties props = new Properties();
+		try (final InputStream in = new FileInputStream(propsFile)) {
+			props.load(in);
+		}
+		final File file = sourceFile(source, false);
+		if (file != null && props.getProperty("source.length") != null) {
+			if (!Long.toString(file.length()).equals(props.getProperty(
+				"source.length")) || !Long.toString(file.lastModified()).equals(props
+					.getProperty("source.modified")))
+			{
+				// the source has changed since the pyramid was built
+				return null;
+			}
+		}
+		final int count;
+		try {
+			count = Integer.parseInt(props.getProperty("levels"));
+		}
+		catch (final NumberFormatException exc) {
+			throw new IOException("Invalid pyramid in " + dir, exc);
+		}
+		final List<Dataset> levels = new ArrayList<>();
+		levels.add(source);
+		for (int level = 1; level < count; level++) {
+			levels.add(chunkService.open(new File(dir, Integer.toString(level))));
+		}
+		final Pyramid pyramid = new Pyramid(dir, levels, frameRenderService);
+		pyramids.put(source, pyramid);
+		return pyramid;
+	}
+
+	@Override
+	public Pyramid getPyramid(final Dataset source) {
+		return pyramids.get(source);
+	}
+
+	@Override
+	public int getThreads() {
+		return threads;
+	}
+
+	@Override
+	public void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid thread count: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		synchronized (executors) {
+			for (final ExecutorService executor : executors) {
+				executor.shutdownNow();
+			}
+			executors.clear();
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Writes all levels above level 0, each computed from the previous one.
+	 * If anything fails, the levels written so far are deleted, along with the
+	 * directory itself if it did not exist before.
+	 */
+	private Pyramid write(final Dataset source, final File dir)
+		throws IOException
+	{
+		final boolean created = !dir.isDirectory();
+		if (created && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		final File propsFile = new File(dir, PROPERTIES_FILE);
+		if (propsFile.exists() && !propsFile.delete()) {
+			throw new IOException("Cannot replace " + propsFile);
+		}
+
+		final ExecutorService executor = newExecutor();
+		final List<File> levelDirs = new ArrayList<>();
+		boolean complete = false;
+		try {
+			final Pyramid pyramid = write(source, dir, executor, levelDirs);
+			complete = true;
+			return pyramid;
+		}
+		finally {
+			executors.remove(executor);
+			executor.shutdown();
+			if (!complete) {
+				for (final File levelDir : levelDirs) {
+					delete(levelDir);
+				}
+				propsFile.delete();
+				if (created) dir.delete();
+			}
+		}
+	}
+
+	/** Writes the levels with the given executor, recording their folders. */
+	private Pyramid write(final Dataset source, final File dir,
+		final ExecutorService executor, final List<File> levelDirs)
+		throws IOException
+	{
+
+		final DataType dataType = DataType.of(source.getType());
+		final int compression = chunkService.getCompressionLevel();
+		final List<Dataset> levels = new ArrayList<>();
+		levels.add(source);
+		RandomAccessibleInterval<?> current = source.getImgPlus();
+		long[] dims = Intervals.dimensionsAsLongArray(current);
+		while (dims[0] > MIN_LEVEL_SIZE || dims[1] > MIN_LEVEL_SIZE) {
+			final int level = levels.size();
+			final Downsampled<?> next = downsample(current);
+			dims = Intervals.dimensionsAsLongArray(next);
+			final ChunkedMetadata meta = new ChunkedMetadata(dims, chunkService
+				.getDefaultChunkSize(dims), dataType, compression == 0
+					? ChunkedMetadata.RAW : ChunkedMetadata.DEFLATE);
+			meta.setName(source.getName() + " (level " + level + ")");
+			meta.setAxes(axes(source, level));
+			final File levelDir = new File(dir, Integer.toString(level));
+			levelDirs.add(levelDir);
+			new ChunkedWriter(executor, compression).write(next, meta, levelDir);
+
+			final Dataset written = chunkService.open(levelDir);
+			levels.add(written);
+			current = written.getImgPlus();
+		}
+
+		final Properties props = new Properties();
+		props.setProperty("levels", Integer.toString(levels.size()));
+		final File file = sourceFile(source, false);
+		if (file != null) {
+			props.setProperty("source.length", Long.toString(file.length()));
+			props.setProperty("source.modified", Long.toString(file
+				.lastModified()));
+		}
+		final File propsFile = new File(dir, PROPERTIES_FILE);
+		try (final OutputStream out = new FileOutputStream(propsFile)) {
+			props.store(out, "image pyramid");
+		}
+		return new Pyramid(dir, levels, frameRenderService);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Downsampled<?> downsample(
+		final RandomAccessibleInterval<?> image)
+	{
+		return new Downsampled((RandomAccessibleInterval) image);
+	}
+
+	/** Gets the axes of a level, calibrated for its coarser X and Y. */
+	private static CalibratedAxis[] axes(final Dataset source, final int level) {
+		final CalibratedAxis[] axes = new CalibratedAxis[source.numDimensions()];
+		for (int d = 0; d < axes.length; d++) {
+			final CalibratedAxis axis = source.axis(d);
+			final double scale = axis.averageScale(0, 1) * (d < 2 ? Pyramid
+				.getScale(level) : 1);
+			axes[d] = new DefaultLinearAxis(axis.type(), axis.unit(), scale);
+		}
+		return axes;
+	}
+
+	/** Gets the existing source file of a dataset. */
+	private static File sourceFile(final Dataset source, final boolean required) {
+		final String path = source.getSource();
+		final File file = path == null || path.isEmpty() ? null : new File(path);
+		if (file != null && file.isFile()) return file;
+		if (required) {
+			throw new IllegalArgumentException("Dataset has no source file: " +
+				source.getName());
+		}
+		return null;
+	}
+
+	/** Deletes a file, or a directory and everything in it, if possible. */
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/** Creates the executor of one build, with the current thread count. */
+	private ExecutorService newExecutor() {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+			r -> {
+				final Thread t = threadService.newThread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		executors.add(executor);
+		return executor;
+	}
+
+}
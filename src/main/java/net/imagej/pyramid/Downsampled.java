@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pyramid;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * A view of an image at half its resolution in X and Y (its first two
+ * dimensions), each pixel the mean of a 2x2 block of source pixels. Blocks at
+ * odd borders average the pixels inside the image only.
+ */
+class Downsampled<T extends RealType<T>> extends AbstractInterval implements
+	RandomAccessibleInterval<T>
+{
+
+	private final RandomAccessibleInterval<T> source;
+
+	public Downsampled(final RandomAccessibleInterval<T> source) {
+		super(halve(Intervals.dimensionsAsLongArray(source)));
+		if (source.numDimensions() < 2) {
+			throw new IllegalArgumentException("Image has no XY planes");
+		}
+		this.source = Views.zeroMin(source);
+	}
+
+	/** Gets the dimensions of an image at half the resolution in X and Y. */
+	public static long[] halve(final long[] dims) {
+		final long[] halved = dims.clone();
+		for (int d = 0; d < Math.min(2, dims.length); d++) {
+			halved[d] = (dims[d] + 1) / 2;
+		}
+		return halved;
+	}
+
+	// -- RandomAccessible methods --
+
+	@Override
+	public RandomAccess<T> randomAccess() {
+		return new Access();
+	}
+
+	@Override
+	public RandomAccess<T> randomAccess(final Interval interval) {
+		return randomAccess();
+	}
+
+	// -- Helper classes --
+
+	private class Access extends Point implements RandomAccess<T> {
+
+		private final RandomAccess<T> in = source.randomAccess();
+		private final T value = Util.getTypeFromInterval(source).createVariable();
+
+		public Access() {
+			super(source.numDimensions());
+		}
+
+		@Override
+		public T get() {
+			for (int d = 2; d < n; d++) {
+				in.setPosition(position[d], d);
+			}
+			double sum = 0;
+			int count = 0;
+			for (int dy = 0; dy < 2; dy++) {
+				final long y = 2 * position[1] + dy;
+				if (y > source.max(1)) break;
+				in.setPosition(y, 1);
+				for (int dx = 0; dx < 2; dx++) {
+					final long x = 2 * position[0] + dx;
+					if (x > source.max(0)) break;
+					in.setPosition(x, 0);
+					sum += in.get().getRealDouble();
+					count++;
+				}
+			}
+			value.setReal(sum / count);
+			return value;
+		}
+
+		@Override
+		public Access copy() {
+			final Access copy = new Access();
+			copy.setPosition(this);
+			return copy;
+		}
+
+		@Override
+		public Access copyRandomAccess() {
+			return copy();
+		}
+	}
+
+}
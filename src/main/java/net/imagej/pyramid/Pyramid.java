@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pyramid;
+
+import java.io.File;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.display.ImageDisplay;
+import net.imagej.frame.FrameRenderService;
+import net.imagej.frame.FrameRenderer;
+
+/**
+ * The resolution levels of an image. Level 0 is the image itself; level
+ * {@code k} has {@code 2^k} times fewer pixels in X and Y, and is read
+ * lazily from a chunked image in the pyramid's directory.
+ * <p>
+ * When zoomed out, displays should render the lowest resolution level which
+ * still has at least one pixel per screen pixel, as given by
+ * {@link #levelFor(double)}, so that they never touch more pixels than they
+ * show.
+ * </p>
+ * 
+ * @see PyramidService
+ */
+public class Pyramid {
+
+	private final File dir;
+	private final List<Dataset> levels;
+	private final FrameRenderService renderService;
+	private final FrameRenderer[] renderers;
+
+	Pyramid(final File dir, final List<Dataset> levels,
+		final FrameRenderService renderService)
+	{
+		this.dir = dir;
+		this.levels = levels;
+		this.renderService = renderService;
+		renderers = new FrameRenderer[levels.size()];
+	}
+
+	// -- Pyramid methods --
+
+	/** Gets the directory holding the levels above level 0. */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/** Gets the number of levels, including the full resolution image. */
+	public int getLevelCount() {
+		return levels.size();
+	}
+
+	/** Gets a level; level 0 is the full resolution image. */
+	public Dataset getLevel(final int level) {
+		return levels.get(level);
+	}
+
+	/** Gets the number of full resolution pixels per pixel of a level. */
+	public static long getScale(final int level) {
+		return 1L << level;
+	}
+
+	/**
+	 * Gets the lowest resolution level with at least one pixel per screen
+	 * pixel.
+	 * 
+	 * @param zoom The zoom factor: screen pixels per full resolution pixel,
+	 *          e.g. 0.25 when zoomed out four times.
+	 */
+	public int levelFor(final double zoom) {
+		if (!(zoom > 0) || zoom >= 1) return 0;
+		final int level = (int) Math.floor(Math.log(1 / zoom) / Math.log(2) +
+			1e-9);
+		return Math.min(level, levels.size() - 1);
+	}
+
+	/** Gets the level to render for a display's current zoom factor. */
+	public int levelFor(final ImageDisplay display) {
+		return levelFor(display.getCanvas().getZoomFactor());
+	}
+
+	/**
+	 * Gets the renderer of a level, created on first use by the
+	 * {@link FrameRenderService}. Like all renderers, it is not thread-safe.
+	 */
+	public synchronized FrameRenderer getRenderer(final int level) {
+		if (renderers[level] == null) {
+			renderers[level] = renderService.createRenderer(levels.get(level));
+		}
+		return renderers[level];
+	}
+
+	/** Gets the renderer of the level to render at a zoom factor. */
+	public FrameRenderer getRenderer(final double zoom) {
+		return getRenderer(levelFor(zoom));
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pyramid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+
+/**
+ * Builds and opens multi-resolution pyramids of large images, so that
+ * displays zoomed out over gigapixel images read only a fraction of their
+ * pixels.
+ * <p>
+ * Each level halves the resolution of the previous one in X and Y, down to
+ * the first level no larger than {@link #MIN_LEVEL_SIZE} in both. Levels are
+ * stored in the chunked format of the {@link net.imagej.chunk.ChunkService},
+ * in subdirectories {@code 1}, {@code 2}, ... of the pyramid directory, which
+ * by default sits next to the source file, named after it with the suffix
+ * {@value #SUFFIX}. The size and modification time of the source file are
+ * recorded, so pyramids of changed files are not reused.
+ * </p>
+ */
+public interface PyramidService extends ImageJService {
+
+	/** Suffix of pyramid directories next to their source files. */
+	String SUFFIX = ".pyramid";
+
+	/** Size in X and Y below which no further levels are built. */
+	int MIN_LEVEL_SIZE = 256;
+
+	/** Gets the default pyramid directory of a source file. */
+	default File getDirectory(final File source) {
+		return new File(source.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Builds the pyramid of a dataset in the background, next to its source
+	 * file.
+	 * 
+	 * @throws IllegalArgumentException if the dataset has no source file.
+	 */
+	Future<Pyramid> build(Dataset source);
+
+	/**
+	 * Builds the pyramid of a dataset in the background, in the given
+	 * directory. Each level is computed from the previous one as it is
+	 * written, one chunk per task, in parallel on {@link #getThreads()}
+	 * threads. Once built, the pyramid is {@link #getPyramid registered} for
+	 * the dataset.
+	 */
+	Future<Pyramid> build(Dataset source, File dir);
+
+	/**
+	 * Opens the pyramid next to a dataset's source file and registers it, or
+	 * returns null if there is none, or it is out of date.
+	 */
+	Pyramid open(Dataset source) throws IOException;
+
+	/**
+	 * Opens the pyramid of a dataset in the given directory and registers it,
+	 * or returns null if there is none, or it is out of date.
+	 */
+	Pyramid open(Dataset source, File dir) throws IOException;
+
+	/** Gets the registered pyramid of a dataset, or null. */
+	Pyramid getPyramid(Dataset source);
+
+	/** Gets the number of threads writing pyramid chunks. */
+	int getThreads();
+
+	/**
+	 * Sets the number of threads writing pyramid chunks. Builds already in
+	 * progress keep the thread count they started with.
+	 */
+	void setThreads(int threads);
+
+}
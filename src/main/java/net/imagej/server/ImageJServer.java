@@ -0,0 +1,488 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imagej.ImageJ;
+
+import org.scijava.script.ScriptModule;
+
+/**
+ * Keeps one warm ImageJ gateway resident and runs jobs against it on behalf
+ * of local clients, so that each job is spared the cost of starting ImageJ.
+ * <p>
+ * The server listens on the loopback interface only. Clients speak a simple
+ * line-based protocol in UTF-8; each request yields a single response line,
+ * starting with {@code OK} or {@code ERR}. Each connection must first prove
+ * that it may run code as the user who started the server, by sending the
+ * server's random {@link #getToken() token}, which {@link #launch} writes to
+ * a file only that user can read; any other first line closes the
+ * connection:
+ * </p>
+ * <dl>
+ * <dt>{@code AUTH <token>}</dt>
+ * <dd>Answers {@code OK authenticated}.</dd>
+ * <dt>{@code PING}</dt>
+ * <dd>Answers {@code OK pong}.</dd>
+ * <dt>{@code OP <name> <args...>}</dt>
+ * <dd>Runs the named op via {@code ij.op().run}. Arguments are integers,
+ * decimals, {@code true}/{@code false} or (optionally quoted) strings.</dd>
+ * <dt>{@code SCRIPT <extension> <lines> [name=value...]}</dt>
+ * <dd>Runs the script given on the following lines, in the language of the
+ * given file extension, with the given inputs (parsed like op arguments);
+ * answers with its outputs as {@code name=value} pairs. Unless the gateway is
+ * headless, the script runs without pre- and postprocessing, so that it can
+ * neither prompt for missing inputs nor display its outputs.</dd>
+ * <dt>{@code SHUTDOWN}</dt>
+ * <dd>Stops the server.</dd>
+ * </dl>
+ * <p>
+ * Connections are served concurrently by a bounded pool, all sharing the
+ * gateway's services. {@link net.imagej.Main} starts a headless server for
+ * the {@value #FLAG} flag, optionally followed by {@code =<port>}, and writes
+ * its token to {@link #tokenFile(int)}.
+ * </p>
+ */
+public class ImageJServer implements AutoCloseable {
+
+	/** Command line flag which starts ImageJ in server mode. */
+	public static final String FLAG = "--server";
+
+	/** Port used when the {@value #FLAG} flag does not give one. */
+	public static final int DEFAULT_PORT = 7878;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final ImageJ ij;
+	private final int requestedPort;
+	private final int threads;
+	private final String token;
+
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private final AtomicLong jobs = new AtomicLong();
+
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+
+	// -- Constructors --
+
+	/**
+	 * Creates a server for the given gateway.
+	 * 
+	 * @param port The port on which to listen, or 0 for any free port.
+	 * @param threads The maximum number of connections served concurrently.
+	 */
+	public ImageJServer(final ImageJ ij, final int port, final int threads) {
+		this.ij = ij;
+		requestedPort = port;
+		this.threads = Math.max(1, threads);
+		final byte[] bytes = new byte[32];
+		RANDOM.nextBytes(bytes);
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		token = sb.toString();
+	}
+
+	// -- ImageJServer methods --
+
+	/** Starts listening; returns immediately. */
+	public synchronized void start() throws IOException {
+		if (serverSocket != null) throw new IllegalStateException("Already started");
+		serverSocket = new ServerSocket(requestedPort, 50, InetAddress
+			.getLoopbackAddress());
+		executor = Executors.newFixedThreadPool(threads, ij.thread());
+		final Thread acceptor = new Thread(this::acceptConnections,
+			"ImageJServer-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/** Gets the port on which the server is listening. */
+	public int getPort() {
+		return serverSocket == null ? -1 : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Gets the secret with which clients authenticate. It is random for each
+	 * server.
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * Writes the {@link #getToken() token} to the given file, readable and
+	 * writable by the current user only, replacing any previous file.
+	 */
+	public void writeToken(final File file) throws IOException {
+		final Path path = file.toPath();
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Cannot create " + parent);
+		}
+		Files.deleteIfExists(path);
+		final byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains(
+			"posix"))
+		{
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(
+				PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(path);
+			if (!file.setReadable(false, false) || !file.setReadable(true, true) ||
+				!file.setWritable(false, false) || !file.setWritable(true, true))
+			{
+				Files.delete(path);
+				throw new IOException("Cannot restrict access to " + file);
+			}
+		}
+		Files.write(path, bytes);
+	}
+
+	/** Gets the file to which {@link #launch} writes the token. */
+	public static File tokenFile(final int port) {
+		return new File(new File(System.getProperty("user.home"), ".imagej"),
+			"server-" + port + ".token");
+	}
+
+	/** Gets the number of jobs run so far. */
+	public long getJobCount() {
+		return jobs.get();
+	}
+
+	/** Blocks until the server is stopped. */
+	public void awaitShutdown() throws InterruptedException {
+		stopped.await();
+	}
+
+	/**
+	 * Answers requests read from the given stream until it ends or a client
+	 * asks for {@code SHUTDOWN}. This is how each connection is served once it
+	 * has authenticated, and lets the protocol be spoken over other trusted
+	 * channels too, such as the standard streams of a worker process; no
+	 * token is asked for here.
+	 */
+	public void serve(final BufferedReader in, final PrintWriter out)
+		throws IOException
+	{
+		while (true) {
+			final String line = in.readLine();
+			if (line == null) break;
+			if (line.trim().isEmpty()) continue;
+			if (line.trim().equals("SHUTDOWN")) {
+				out.println("OK bye");
+				close();
+				break;
+			}
+			String response;
+			try {
+				response = "OK " + escape(handle(line.trim(), in));
+			}
+			catch (final ProtocolException exc) {
+				// NB: The rest of the request cannot be told from the next one.
+				out.println("ERR " + escape(exc.getMessage()));
+				break;
+			}
+			catch (final Exception exc) {
+				ij.log().debug(exc);
+				response = "ERR " + escape(String.valueOf(exc.getMessage()));
+			}
+			out.println(response);
+		}
+	}
+
+	/**
+	 * Gets whether the given arguments ask for server mode.
+	 */
+	public static boolean isRequested(final String... args) {
+		for (final String arg : args) {
+			if (arg.equals(FLAG) || arg.startsWith(FLAG + "=")) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs ImageJ in server mode until a client asks it to shut down, then
+	 * disposes the context.
+	 */
+	public static void launch(final String... args) {
+		int port = DEFAULT_PORT;
+		for (final String arg : args) {
+			if (arg.startsWith(FLAG + "=")) {
+				final String value = arg.substring(FLAG.length() + 1);
+				try {
+					port = Integer.parseInt(value);
+				}
+				catch (final NumberFormatException exc) {
+					System.err.println("[ERROR] Invalid server port: " + value);
+					return;
+				}
+			}
+		}
+		System.setProperty("java.awt.headless", "true");
+		final ImageJ ij = new ImageJ();
+		ij.ui().setHeadless(true);
+		File tokenFile = null;
+		try (final ImageJServer server = new ImageJServer(ij, port, Runtime
+			.getRuntime().availableProcessors()))
+		{
+			server.start();
+			tokenFile = tokenFile(server.getPort());
+			server.writeToken(tokenFile);
+			ij.log().info("ImageJ server listening on " + //
+				InetAddress.getLoopbackAddress().getHostAddress() + ":" + //
+				server.getPort() + "; token in " + tokenFile);
+			server.awaitShutdown();
+		}
+		catch (final IOException exc) {
+			ij.log().error("Cannot start ImageJ server", exc);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			if (tokenFile != null && !tokenFile.delete()) tokenFile.deleteOnExit();
+			ij.getContext().dispose();
+		}
+	}
+
+	// -- AutoCloseable methods --
+
+	/** Stops the server. The gateway is left as it is. */
+	@Override
+	public synchronized void close() {
+		if (serverSocket != null) {
+			try {
+				serverSocket.close();
+			}
+			catch (final IOException exc) {
+				ij.log().debug(exc);
+			}
+		}
+		if (executor != null) executor.shutdownNow();
+		stopped.countDown();
+	}
+
+	// -- Helper methods --
+
+	private void acceptConnections() {
+		try {
+			while (!serverSocket.isClosed()) {
+				final Socket socket = serverSocket.accept();
+				executor.execute(() -> serve(socket));
+			}
+		}
+		catch (final SocketException exc) {
+			// NB: The server socket was closed.
+		}
+		catch (final IOException exc) {
+			ij.log().error(exc);
+		}
+		finally {
+			close();
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try (final Socket s = socket;
+				final BufferedReader in = new BufferedReader(new InputStreamReader(s
+					.getInputStream(), StandardCharsets.UTF_8));
+				final PrintWriter out = new PrintWriter(new OutputStreamWriter(s
+					.getOutputStream(), StandardCharsets.UTF_8), true))
+		{
+			if (authenticate(in.readLine())) {
+				out.println("OK authenticated");
+				serve(in, out);
+			}
+			else out.println("ERR Not authenticated");
+		}
+		catch (final IOException exc) {
+			ij.log().debug(exc);
+		}
+	}
+
+	/** Checks the first line of a connection, in constant time. */
+	private boolean authenticate(final String line) {
+		if (line == null || !line.startsWith("AUTH ")) return false;
+		return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), line
+			.substring(5).trim().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String handle(final String line, final BufferedReader in)
+		throws Exception
+	{
+		final List<String> tokens = tokenize(line);
+		final String command = tokens.get(0);
+		if (command.equals("PING")) return "pong";
+		if (command.equals("OP")) {
+			if (tokens.size() < 2) throw new IllegalArgumentException("No op name");
+			final Object[] opArgs = new Object[tokens.size() - 2];
+			for (int i = 0; i < opArgs.length; i++) {
+				opArgs[i] = parse(tokens.get(i + 2));
+			}
+			jobs.incrementAndGet();
+			return String.valueOf(ij.op().run(tokens.get(1), opArgs));
+		}
+		if (command.equals("SCRIPT")) {
+			if (tokens.size() < 3) {
+				throw new IllegalArgumentException(
+					"Usage: SCRIPT <extension> <lines> [name=value...]");
+			}
+			final int count;
+			try {
+				count = Integer.parseInt(tokens.get(2));
+			}
+			catch (final NumberFormatException exc) {
+				throw new ProtocolException("Invalid line count: " + tokens.get(2));
+			}
+			if (count < 0) {
+				throw new ProtocolException("Invalid line count: " + count);
+			}
+			final StringBuilder script = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				final String scriptLine = in.readLine();
+				if (scriptLine == null) throw new IOException("Truncated script");
+				script.append(scriptLine).append("\n");
+			}
+			final Map<String, Object> inputs = new LinkedHashMap<>();
+			for (final String input : tokens.subList(3, tokens.size())) {
+				final int eq = input.indexOf('=');
+				if (eq <= 0) throw new IllegalArgumentException("Bad input: " + input);
+				inputs.put(input.substring(0, eq), parse(input.substring(eq + 1)));
+			}
+			jobs.incrementAndGet();
+			return runScript(tokens.get(1), script.toString(), inputs);
+		}
+		throw new IllegalArgumentException("Unknown command: " + command);
+	}
+
+	private String runScript(final String extension, final String script,
+		final Map<String, Object> inputs) throws Exception
+	{
+		final ScriptModule module;
+		try {
+			// NB: Pre- and postprocessing could open UI, unless headless.
+			module = ij.script().run("script." + extension, script, ij.ui()
+				.isHeadless(), inputs).get();
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			throw cause instanceof Exception ? (Exception) cause : exc;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Object> output : module.getOutputs()
+			.entrySet())
+		{
+			if (sb.length() > 0) sb.append("; ");
+			sb.append(output.getKey()).append("=").append(output.getValue());
+		}
+		return sb.toString();
+	}
+
+	private static List<String> tokenize(final String line) {
+		final List<String> tokens = new ArrayList<>();
+		final StringBuilder token = new StringBuilder();
+		boolean quoted = false, inToken = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				inToken = true;
+			}
+			else if (Character.isWhitespace(c) && !quoted) {
+				if (inToken) tokens.add(token.toString());
+				token.setLength(0);
+				inToken = false;
+			}
+			else {
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) tokens.add(token.toString());
+		return tokens;
+	}
+
+	private static Object parse(final String token) {
+		if (token.equals("true") || token.equals("false")) {
+			return Boolean.valueOf(token);
+		}
+		try {
+			return Integer.valueOf(token);
+		}
+		catch (final NumberFormatException exc) {
+			// not an integer
+		}
+		try {
+			return Double.valueOf(token);
+		}
+		catch (final NumberFormatException exc) {
+			// not a number
+		}
+		return token;
+	}
+
+	private static String escape(final String s) {
+		return s.replace("\\", "\\\\").replace("\r", "\\r").replace("\n", "\\n");
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.spatial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.event.OverlayRestructuredEvent;
+import net.imagej.event.OverlayUpdatedEvent;
+import net.imagej.overlay.Overlay;
+import net.imglib2.roi.RegionOfInterest;
+
+import org.scijava.event.EventHandler;
+import org.scijava.object.ObjectService;
+import org.scijava.object.event.ObjectCreatedEvent;
+import org.scijava.object.event.ObjectDeletedEvent;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link OverlayIndexService}. On initialization,
+ * it indexes the overlays already known to the {@link ObjectService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultOverlayIndexService extends AbstractService implements
+	OverlayIndexService
+{
+
+	@Parameter
+	private ObjectService objectService;
+
+	private final RTree<Overlay> index = new RTree<>();
+
+	// -- OverlayIndexService methods --
+
+	@Override
+	public synchronized List<Overlay> query(final double minX,
+		final double minY, final double maxX, final double maxY)
+	{
+		return index.search(minX, minY, maxX, maxY);
+	}
+
+	@Override
+	public List<Overlay> hitTest(final double x, final double y) {
+		final List<Overlay> hits = new ArrayList<>();
+		double[] point = { x, y };
+		for (final Overlay overlay : query(x, y, x, y)) {
+			final RegionOfInterest roi = overlay.getRegionOfInterest();
+			if (roi == null) {
+				hits.add(overlay);
+				continue;
+			}
+			final int n = overlay.numDimensions();
+			if (point.length != n) point = new double[n];
+			point[0] = x;
+			point[1] = y;
+			for (int d = 2; d < n; d++) {
+				point[d] = overlay.realMin(d);
+			}
+			if (roi.contains(point)) hits.add(overlay);
+		}
+		return hits;
+	}
+
+	@Override
+	public synchronized void update(final Overlay overlay) {
+		if (overlay.numDimensions() < 2) return;
+		index.put(overlay, overlay.realMin(0), overlay.realMin(1), overlay.realMax(
+			0), overlay.realMax(1));
+	}
+
+	@Override
+	public synchronized void remove(final Overlay overlay) {
+		index.remove(overlay);
+	}
+
+	@Override
+	public synchronized int size() {
+		return index.size();
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		for (final Overlay overlay : objectService.getObjects(Overlay.class)) {
+			update(overlay);
+		}
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final ObjectCreatedEvent evt) {
+		if (evt.getObject() instanceof Overlay) update((Overlay) evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final ObjectDeletedEvent evt) {
+		if (evt.getObject() instanceof Overlay) remove((Overlay) evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final OverlayUpdatedEvent evt) {
+		update(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final OverlayRestructuredEvent evt) {
+		update(evt.getObject());
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.spatial;
+
+import java.util.List;
+
+import net.imagej.ImageJService;
+import net.imagej.overlay.Overlay;
+import net.imglib2.RealInterval;
+
+/**
+ * Indexes the bounding boxes of all overlays in X and Y with an
+ * {@link RTree}, so that viewport queries and hit-tests take logarithmic
+ * rather than linear time in the number of overlays.
+ * <p>
+ * The index is kept up to date incrementally from overlay events: overlays
+ * are added when created, moved when updated or restructured, and removed
+ * when deleted. Code changing an overlay's shape without publishing an event
+ * should call {@link #update} afterwards.
+ * </p>
+ */
+public interface OverlayIndexService extends ImageJService {
+
+	/**
+	 * Gets the overlays whose bounding boxes intersect the given rectangle,
+	 * e.g. a viewport to render, borders included.
+	 */
+	List<Overlay> query(double minX, double minY, double maxX, double maxY);
+
+	/** Gets the overlays whose bounding boxes intersect an interval in XY. */
+	default List<Overlay> query(final RealInterval interval) {
+		return query(interval.realMin(0), interval.realMin(1), interval.realMax(
+			0), interval.realMax(1));
+	}
+
+	/**
+	 * Gets the overlays containing a point, in no particular order: those
+	 * whose bounding box contains it and whose region of interest, if any,
+	 * does too. Overlays with more than two dimensions are tested at the
+	 * minimum of their other dimensions.
+	 */
+	List<Overlay> hitTest(double x, double y);
+
+	/** Adds an overlay to the index, or moves it to its current bounds. */
+	void update(Overlay overlay);
+
+	/** Removes an overlay from the index. */
+	void remove(Overlay overlay);
+
+	/** Gets the number of indexed overlays. */
+	int size();
+
+}
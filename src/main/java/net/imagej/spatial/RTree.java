@@ -0,0 +1,332 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.spatial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A two-dimensional R-tree of items with axis-aligned bounding boxes.
+ * <p>
+ * Items are inserted, moved and removed incrementally, each in time
+ * logarithmic in the number of items, and so are the queries for items whose
+ * boxes intersect a rectangle. Nodes hold up to {@link #MAX_ENTRIES}
+ * children; overflowing nodes are split in half along the axis in which
+ * their children's centers spread most, and underfull nodes left by removals
+ * are dissolved and their items reinserted, as in Guttman's R-tree.
+ * </p>
+ * <p>
+ * Items are compared by identity. This class is not thread-safe.
+ * </p>
+ */
+public class RTree<T> {
+
+	/** Maximum number of children per node. */
+	public static final int MAX_ENTRIES = 16;
+
+	/** Minimum number of children per node, except the root. */
+	public static final int MIN_ENTRIES = 6;
+
+	private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+	private Node root = new Node(true);
+
+	// -- RTree methods --
+
+	/** Adds an item, or moves it if it is already in the tree. */
+	public void put(final T item, final double minX, final double minY,
+		final double maxX, final double maxY)
+	{
+		remove(item);
+		final Entry<T> entry = new Entry<>(item);
+		entry.set(minX, minY, maxX, maxY);
+		entries.put(item, entry);
+		insert(entry);
+	}
+
+	/** Removes an item; returns false if it was not in the tree. */
+	public boolean remove(final T item) {
+		final Entry<T> entry = entries.remove(item);
+		if (entry == null) return false;
+		final Node leaf = entry.leaf;
+		leaf.children.remove(entry);
+		condense(leaf);
+		return true;
+	}
+
+	/** Gets whether an item is in the tree. */
+	public boolean contains(final T item) {
+		return entries.containsKey(item);
+	}
+
+	/** Gets the number of items. */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Removes all items. */
+	public void clear() {
+		entries.clear();
+		root = new Node(true);
+	}
+
+	/** Gets the number of levels of nodes. */
+	public int height() {
+		int height = 1;
+		for (Node node = root; !node.leaf; node = (Node) node.children.get(0)) {
+			height++;
+		}
+		return height;
+	}
+
+	/**
+	 * Passes each item whose box intersects the given rectangle, borders
+	 * included, to the consumer.
+	 */
+	@SuppressWarnings("unchecked")
+	public void search(final double minX, final double minY, final double maxX,
+		final double maxY, final Consumer<? super T> consumer)
+	{
+		final List<Node> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			final Node node = stack.remove(stack.size() - 1);
+			for (final Box child : node.children) {
+				if (!child.intersects(minX, minY, maxX, maxY)) continue;
+				if (node.leaf) consumer.accept(((Entry<T>) child).item);
+				else stack.add((Node) child);
+			}
+		}
+	}
+
+	/** Gets the items whose boxes intersect the given rectangle. */
+	public List<T> search(final double minX, final double minY,
+		final double maxX, final double maxY)
+	{
+		final List<T> result = new ArrayList<>();
+		search(minX, minY, maxX, maxY, result::add);
+		return result;
+	}
+
+	// -- Helper methods --
+
+	private void insert(final Entry<T> entry) {
+		// descend to the leaf whose box grows least
+		Node node = root;
+		while (!node.leaf) {
+			Node best = null;
+			double bestGrowth = Double.POSITIVE_INFINITY;
+			double bestArea = Double.POSITIVE_INFINITY;
+			for (final Box child : node.children) {
+				final double area = child.area();
+				final double growth = child.unionArea(entry) - area;
+				if (growth < bestGrowth || growth == bestGrowth && area < bestArea) {
+					best = (Node) child;
+					bestGrowth = growth;
+					bestArea = area;
+				}
+			}
+			node = best;
+		}
+		node.add(entry);
+
+		// split overflowing nodes and widen boxes on the way up
+		while (node != null) {
+			if (node.children.size() > MAX_ENTRIES) {
+				final Node sibling = node.split();
+				if (node == root) {
+					root = new Node(false);
+					root.add(node);
+					root.add(sibling);
+					root.fit();
+				}
+				else node.parent.add(sibling);
+			}
+			else node.include(entry);
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Dissolves the underfull nodes from a leaf up, reinserting their items,
+	 * and shrinks the boxes on the way.
+	 */
+	private void condense(final Node leaf) {
+		final List<Entry<T>> orphans = new ArrayList<>();
+		Node node = leaf;
+		while (node != root) {
+			final Node parent = node.parent;
+			if (node.children.size() < MIN_ENTRIES) {
+				parent.children.remove(node);
+				collect(node, orphans);
+			}
+			else node.fit();
+			node = parent;
+		}
+		root.fit();
+		while (!root.leaf && root.children.size() == 1) {
+			root = (Node) root.children.get(0);
+			root.parent = null;
+		}
+		if (root.children.isEmpty()) root = new Node(true);
+		for (final Entry<T> orphan : orphans) {
+			insert(orphan);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collect(final Node node, final List<Entry<T>> result) {
+		for (final Box child : node.children) {
+			if (node.leaf) result.add((Entry<T>) child);
+			else collect((Node) child, result);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** An axis-aligned rectangle. */
+	private static class Box {
+
+		protected double minX = Double.POSITIVE_INFINITY;
+		protected double minY = Double.POSITIVE_INFINITY;
+		protected double maxX = Double.NEGATIVE_INFINITY;
+		protected double maxY = Double.NEGATIVE_INFINITY;
+
+		public void set(final double x0, final double y0, final double x1,
+			final double y1)
+		{
+			minX = x0;
+			minY = y0;
+			maxX = x1;
+			maxY = y1;
+		}
+
+		public void include(final Box b) {
+			if (b.minX < minX) minX = b.minX;
+			if (b.minY < minY) minY = b.minY;
+			if (b.maxX > maxX) maxX = b.maxX;
+			if (b.maxY > maxY) maxY = b.maxY;
+		}
+
+		public boolean intersects(final double x0, final double y0,
+			final double x1, final double y1)
+		{
+			return minX <= x1 && x0 <= maxX && minY <= y1 && y0 <= maxY;
+		}
+
+		public double area() {
+			return maxX < minX ? 0 : (maxX - minX) * (maxY - minY);
+		}
+
+		public double unionArea(final Box b) {
+			return (Math.max(maxX, b.maxX) - Math.min(minX, b.minX)) * (Math.max(
+				maxY, b.maxY) - Math.min(minY, b.minY));
+		}
+
+		public double centerX() {
+			return (minX + maxX) / 2;
+		}
+
+		public double centerY() {
+			return (minY + maxY) / 2;
+		}
+	}
+
+	/** An item and its box, in a leaf. */
+	private static class Entry<T> extends Box {
+
+		private final T item;
+		private Node leaf;
+
+		public Entry(final T item) {
+			this.item = item;
+		}
+	}
+
+	/** A node, holding entries if it is a leaf and nodes otherwise. */
+	private static class Node extends Box {
+
+		private final boolean leaf;
+		private final List<Box> children = new ArrayList<>(MAX_ENTRIES + 1);
+		private Node parent;
+
+		public Node(final boolean leaf) {
+			this.leaf = leaf;
+		}
+
+		public void add(final Box child) {
+			children.add(child);
+			if (child instanceof Node) ((Node) child).parent = this;
+			else ((Entry<?>) child).leaf = this;
+			include(child);
+		}
+
+		/** Recomputes the box from the children. */
+		public void fit() {
+			set(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+			for (final Box child : children) {
+				include(child);
+			}
+		}
+
+		/** Moves half of the children into a new sibling node. */
+		public Node split() {
+			double minCX = Double.POSITIVE_INFINITY;
+			double minCY = Double.POSITIVE_INFINITY;
+			double maxCX = Double.NEGATIVE_INFINITY;
+			double maxCY = Double.NEGATIVE_INFINITY;
+			for (final Box child : children) {
+				minCX = Math.min(minCX, child.centerX());
+				maxCX = Math.max(maxCX, child.centerX());
+				minCY = Math.min(minCY, child.centerY());
+				maxCY = Math.max(maxCY, child.centerY());
+			}
+			children.sort(maxCX - minCX >= maxCY - minCY ? Comparator
+				.comparingDouble(Box::centerX) : Comparator.comparingDouble(
+					Box::centerY));
+			final Node sibling = new Node(leaf);
+			final List<Box> moved = children.subList(children.size() / 2, children
+				.size());
+			for (final Box child : moved) {
+				sibling.add(child);
+			}
+			moved.clear();
+			fit();
+			return sibling;
+		}
+	}
+
+}
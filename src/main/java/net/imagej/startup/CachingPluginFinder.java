@@ -0,0 +1,394 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.startup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.scijava.plugin.DefaultPluginFinder;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginFinder;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+
+/**
+ * A {@link PluginFinder} which keeps the annotation index of all plugins on the
+ * class path in a single binary cache file.
+ * <p>
+ * Normally, plugin discovery asks the class loader for the plugin index
+ * resource of every JAR file and directory on the class path, which opens
+ * every JAR and reads its central directory, so startup time grows with the
+ * number of JARs. This finder instead memory-maps one cache file, keyed by a
+ * fingerprint of the class path: the path, size and modification time of each
+ * entry, which take one file system lookup per entry, but no reads. If the
+ * fingerprint no longer matches, or the cache is missing or unreadable, the
+ * class path is scanned in full and the cache is rewritten. A JAR replaced by
+ * another of the very same size and modification time goes unnoticed; deleting
+ * the cache file forces a scan.
+ * </p>
+ * <p>
+ * The cache holds the concatenated index resources as they are, not parsed
+ * {@link PluginInfo}s: what it saves is opening each class path entry, while
+ * the index is still parsed on every startup. {@code PluginDiscoveryBenchmark}
+ * and the {@code coldCachedPlugins} gateway benchmark measure the difference.
+ * </p>
+ * <p>
+ * {@link net.imagej.ImageJ} uses this finder when the {@value #CACHE_PROPERTY}
+ * system property is set to the location of the cache file.
+ * </p>
+ */
+public class CachingPluginFinder implements PluginFinder {
+
+	/** System property giving the location of the plugin index cache file. */
+	public static final String CACHE_PROPERTY = "imagej.plugin.cache";
+
+	/** Class path resource holding the plugin annotation index. */
+	private static final String INDEX_RESOURCE = //
+		"META-INF/json/" + Plugin.class.getName();
+
+	/** Identifies plugin index cache files: "IJPI" in ASCII. */
+	private static final int MAGIC = 0x494a5049;
+
+	/** Version of the cache file layout. */
+	private static final int VERSION = 1;
+
+	/** Size of the header: magic, version, fingerprint and payload length. */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+	private final File cacheFile;
+	private final ClassLoader classLoader;
+
+	private boolean cacheHit;
+
+	// -- Constructors --
+
+	public CachingPluginFinder(final File cacheFile) {
+		this(cacheFile, defaultClassLoader());
+	}
+
+	public CachingPluginFinder(final File cacheFile,
+		final ClassLoader classLoader)
+	{
+		this.cacheFile = cacheFile;
+		this.classLoader = classLoader;
+	}
+
+	// -- CachingPluginFinder methods --
+
+	/**
+	 * Creates a plugin index which uses a cache at the location given by the
+	 * {@value #CACHE_PROPERTY} system property, or a regular plugin index if the
+	 * property is not set.
+	 */
+	public static PluginIndex createPluginIndex() {
+		final String path = System.getProperty(CACHE_PROPERTY);
+		if (path == null || path.isEmpty()) return new PluginIndex();
+		return new PluginIndex(new CachingPluginFinder(new File(path)));
+	}
+
+	/** Gets the location of the cache file. */
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Gets whether the last call to {@link #findPlugins} was served from the
+	 * cache, rather than from a full class path scan.
+	 */
+	public boolean isCacheHit() {
+		return cacheHit;
+	}
+
+	/**
+	 * Computes the fingerprint of the current class path, from the metadata of
+	 * its entries only.
+	 */
+	public long fingerprint() {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, VERSION);
+		for (final File entry : classPath()) {
+			hash = hash(hash, entry.getAbsolutePath());
+			// NB: For directories, the index resource is what changes when plugins
+			// are added or removed; the directory's own time stamp may not.
+			final File file = entry.isDirectory() ? //
+				new File(entry, INDEX_RESOURCE) : entry;
+			hash = hash(hash, file.length());
+			hash = hash(hash, file.lastModified());
+		}
+		return hash;
+	}
+
+	// -- PluginFinder methods --
+
+	@Override
+	public HashMap<String, Throwable> findPlugins(
+		final List<PluginInfo<?>> plugins)
+	{
+		final long fingerprint = fingerprint();
+		ByteBuffer index = readCache(fingerprint);
+		cacheHit = index != null;
+		if (index == null) {
+			final byte[] scanned = scan();
+			writeCache(fingerprint, scanned);
+			index = ByteBuffer.wrap(scanned);
+		}
+		final ClassLoader indexLoader = new IndexClassLoader(classLoader, index);
+		return new DefaultPluginFinder(indexLoader).findPlugins(plugins);
+	}
+
+	// -- Helper methods --
+
+	private static ClassLoader defaultClassLoader() {
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return loader != null ? loader : CachingPluginFinder.class
+			.getClassLoader();
+	}
+
+	/** Gets the JAR files and directories making up the class path. */
+	private Set<File> classPath() {
+		final Set<File> entries = new LinkedHashSet<>();
+		for (ClassLoader l = classLoader; l != null; l = l.getParent()) {
+			if (!(l instanceof URLClassLoader)) continue;
+			for (final URL url : ((URLClassLoader) l).getURLs()) {
+				if ("file".equals(url.getProtocol())) {
+					entries.add(new File(url.getPath()));
+				}
+			}
+		}
+		final String classPath = System.getProperty("java.class.path", "");
+		for (final String entry : classPath.split(File.pathSeparator)) {
+			if (!entry.isEmpty()) entries.add(new File(entry));
+		}
+		return entries;
+	}
+
+	/**
+	 * Reads the plugin index of every class path entry, concatenated into a
+	 * single index.
+	 */
+	private byte[] scan() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			final Enumeration<URL> urls = classLoader.getResources(INDEX_RESOURCE);
+			final byte[] buf = new byte[8192];
+			while (urls.hasMoreElements()) {
+				try (final InputStream in = urls.nextElement().openStream()) {
+					while (true) {
+						final int r = in.read(buf);
+						if (r < 0) break;
+						out.write(buf, 0, r);
+					}
+				}
+			}
+		}
+		catch (final IOException exc) {
+			// NB: Fall back to whatever was read; DefaultPluginFinder would
+			// likewise skip unreadable index resources.
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Memory-maps the cache file, returning its payload, or null if the cache
+	 * is absent, corrupt or was built for a different class path.
+	 */
+	private ByteBuffer readCache(final long fingerprint) {
+		if (!cacheFile.isFile()) return null;
+		try (final FileChannel channel = FileChannel.open(cacheFile.toPath(),
+			StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+			final ByteBuffer buffer = //
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt() != MAGIC) return null;
+			if (buffer.getInt() != VERSION) return null;
+			if (buffer.getLong() != fingerprint) return null;
+			final int length = buffer.getInt();
+			if (length != size - HEADER_SIZE) return null;
+			return buffer.slice();
+		}
+		catch (final IOException exc) {
+			return null;
+		}
+	}
+
+	/** Writes the cache file atomically; failures leave no cache behind. */
+	private void writeCache(final long fingerprint, final byte[] index) {
+		final File dir = cacheFile.getAbsoluteFile().getParentFile();
+		if (dir == null || !dir.isDirectory() && !dir.mkdirs()) return;
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(dir.toPath(), cacheFile.getName(), ".tmp");
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(fingerprint);
+			header.putInt(index.length).flip();
+			try (final FileChannel channel = FileChannel.open(tmp,
+				StandardOpenOption.WRITE))
+			{
+				channel.write(header);
+				channel.write(ByteBuffer.wrap(index));
+			}
+			try {
+				Files.move(tmp, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (final IOException exc) {
+				Files.move(tmp, cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (final IOException exc) {
+			if (tmp != null) tmp.toFile().delete();
+		}
+	}
+
+	private static long hash(long hash, final String s) {
+		for (final byte b : s.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static long hash(long hash, final long value) {
+		for (int i = 0; i < 8; i++) {
+			hash = (hash ^ ((value >>> (8 * i)) & 0xff)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A class loader which serves the plugin index from the cache, and
+	 * delegates everything else to its parent.
+	 */
+	private static class IndexClassLoader extends ClassLoader {
+
+		private final URL indexURL;
+
+		public IndexClassLoader(final ClassLoader parent, final ByteBuffer index) {
+			super(parent);
+			try {
+				indexURL = new URL(null, "imagej-plugin-cache:" + INDEX_RESOURCE,
+					new IndexStreamHandler(index));
+			}
+			catch (final IOException exc) {
+				throw new IllegalStateException(exc);
+			}
+		}
+
+		@Override
+		public Enumeration<URL> getResources(final String name)
+			throws IOException
+		{
+			if (INDEX_RESOURCE.equals(name)) {
+				return Collections.enumeration(Collections.singletonList(indexURL));
+			}
+			return super.getResources(name);
+		}
+	}
+
+	/** Opens streams over the (memory-mapped) index buffer. */
+	private static class IndexStreamHandler extends URLStreamHandler {
+
+		private final ByteBuffer index;
+
+		public IndexStreamHandler(final ByteBuffer index) {
+			this.index = index;
+		}
+
+		@Override
+		protected URLConnection openConnection(final URL url) {
+			return new URLConnection(url) {
+
+				@Override
+				public void connect() {
+					connected = true;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					return new ByteBufferInputStream(index.duplicate());
+				}
+			};
+		}
+	}
+
+	/** An input stream reading the remaining bytes of a buffer. */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if (len == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+}
@@ -0,0 +1,452 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.startup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.Context;
+import org.scijava.InstantiableException;
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.log.StderrLogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.Service;
+
+/**
+ * Brings up the services of a {@link Context} concurrently.
+ * <p>
+ * The services to create are chosen as by {@link Context#Context(Collection)}:
+ * every service plugin compatible with one of the requested classes, plus all
+ * services those depend on via {@link Parameter} fields. The services are then
+ * arranged into layers of the dependency graph, such that every service
+ * depends only on services of earlier layers. Within a layer, services are
+ * instantiated, injected and registered with the context one by one, in
+ * priority order, and their {@link Service#initialize()} methods then run
+ * concurrently on a bounded pool. As with
+ * {@link org.scijava.service.ServiceHelper}, every service is thus registered
+ * before any is initialized, so that a service may look up others of its
+ * layer during initialization.
+ * </p>
+ * <p>
+ * With a single thread, or for services caught in a dependency cycle, the
+ * same steps run sequentially in a deterministic order instead.
+ * </p>
+ */
+public class ParallelServiceInitializer {
+
+	/**
+	 * System property enabling parallel initialization for new
+	 * {@link net.imagej.ImageJ} gateways. The value is the number of threads to
+	 * use, or {@code true} for one per available processor.
+	 */
+	public static final String PARALLEL_PROPERTY = "imagej.context.parallel";
+
+	private final Context context;
+	private final int threads;
+
+	// -- Constructors --
+
+	/**
+	 * Creates an initializer for the given context, which should have been
+	 * created without services, e.g. via {@link #createContext}.
+	 */
+	public ParallelServiceInitializer(final Context context, final int threads) {
+		this.context = context;
+		this.threads = Math.max(1, threads);
+	}
+
+	// -- ParallelServiceInitializer methods --
+
+	/**
+	 * Gets the number of threads requested by the {@value #PARALLEL_PROPERTY}
+	 * system property, or 0 if parallel initialization is disabled.
+	 */
+	public static int threadsFromProperty() {
+		final String value = System.getProperty(PARALLEL_PROPERTY);
+		if (value == null || value.isEmpty() || value.equals("false")) return 0;
+		if (value.equals("true")) return Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(0, Integer.parseInt(value));
+		}
+		catch (final NumberFormatException exc) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Creates a context with the given plugin index and services, initializing
+	 * the services with the given number of threads.
+	 */
+	public static Context createContext(
+		final Collection<Class<? extends Service>> serviceClasses,
+		final PluginIndex pluginIndex, final int threads)
+	{
+		final Context context = new Context(Collections
+			.<Class<? extends Service>> emptyList(), pluginIndex);
+		new ParallelServiceInitializer(context, threads).initialize(serviceClasses);
+		return context;
+	}
+
+	/** Gets the number of threads used to initialize services. */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Creates, initializes and registers all services compatible with the given
+	 * classes, together with their dependencies.
+	 * 
+	 * @return The newly created services, in the order they were registered.
+	 */
+	public List<Service> initialize(
+		final Collection<Class<? extends Service>> serviceClasses)
+	{
+		final Map<Class<? extends Service>, PluginInfo<Service>> pool = pool();
+		final Map<Class<? extends Service>, Set<Class<? extends Service>>> deps =
+			resolve(serviceClasses, pool);
+		final List<List<Class<? extends Service>>> layers = layers(deps);
+
+		final List<Service> services = new ArrayList<>();
+		final ExecutorService executor = threads > 1 ? //
+			Executors.newFixedThreadPool(threads, new InitThreadFactory()) : null;
+		try {
+			for (final List<Class<? extends Service>> layer : layers) {
+				services.addAll(initializeLayer(layer, pool, executor));
+			}
+		}
+		finally {
+			if (executor != null) executor.shutdown();
+		}
+		return services;
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Initializes one service. This is the unit of work which runs concurrently
+	 * within a layer; subclasses may override it to observe each service.
+	 */
+	protected void initializeService(final Service service) {
+		service.initialize();
+	}
+
+	// -- Helper methods --
+
+	/** Gets all available service classes, in priority order. */
+	private Map<Class<? extends Service>, PluginInfo<Service>> pool() {
+		final Map<Class<? extends Service>, PluginInfo<Service>> pool =
+			new LinkedHashMap<>();
+		for (final PluginInfo<Service> info : context.getPluginIndex().getPlugins(
+			Service.class))
+		{
+			try {
+				pool.put(info.loadClass(), info);
+			}
+			catch (final InstantiableException exc) {
+				log().error("Invalid service: " + info.getClassName(), exc);
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Determines which services to create, and the services each one depends
+	 * on.
+	 */
+	private Map<Class<? extends Service>, Set<Class<? extends Service>>>
+		resolve(final Collection<Class<? extends Service>> serviceClasses,
+			final Map<Class<? extends Service>, PluginInfo<Service>> pool)
+	{
+		// select the requested services, in priority order
+		final Set<Class<? extends Service>> selected = new LinkedHashSet<>();
+		for (final Class<? extends Service> c : pool.keySet()) {
+			// NB: Like the ServiceHelper, skip a service which an earlier one
+			// already provides, e.g. a default one extended at higher priority.
+			if (provided(c, selected)) continue;
+			for (final Class<? extends Service> requested : serviceClasses) {
+				if (requested.isAssignableFrom(c)) selected.add(c);
+			}
+		}
+
+		// add the services they depend on, until nothing new is needed
+		final List<Class<? extends Service>> queue = new ArrayList<>(selected);
+		final Map<Class<? extends Service>, Set<Class<? extends Service>>> deps =
+			new LinkedHashMap<>();
+		for (int i = 0; i < queue.size(); i++) {
+			final Class<? extends Service> c = queue.get(i);
+			final Set<Class<? extends Service>> cDeps = new LinkedHashSet<>();
+			for (final Field f : serviceFields(c)) {
+				final Class<? extends Service> type = serviceType(f);
+				if (context.getService(type) != null) continue; // already present
+				boolean found = false;
+				for (final Class<? extends Service> candidate : selected) {
+					if (type.isAssignableFrom(candidate)) found = true;
+				}
+				if (!found) {
+					for (final Class<? extends Service> candidate : pool.keySet()) {
+						if (!type.isAssignableFrom(candidate)) continue;
+						// NB: Like the ServiceHelper, only the best match is added.
+						selected.add(candidate);
+						queue.add(candidate);
+						break;
+					}
+				}
+				// NB: Depend on every compatible service, so that the highest
+				// priority one is registered by the time the field is injected.
+				for (final Class<? extends Service> candidate : selected) {
+					if (type.isAssignableFrom(candidate) && candidate != c) {
+						cDeps.add(candidate);
+					}
+				}
+			}
+			deps.put(c, cDeps);
+		}
+
+		// services subscribe to events when registered; so the event service
+		// must come before everything except its own dependencies
+		final Set<Class<? extends Service>> eventServices = new LinkedHashSet<>();
+		for (final Class<? extends Service> c : selected) {
+			if (EventService.class.isAssignableFrom(c)) eventServices.add(c);
+		}
+		final Set<Class<? extends Service>> eventDeps = new HashSet<>();
+		for (final Class<? extends Service> c : eventServices) {
+			closure(c, deps, eventDeps);
+		}
+		for (final Class<? extends Service> c : selected) {
+			if (eventDeps.contains(c)) continue;
+			deps.get(c).addAll(eventServices);
+		}
+		return deps;
+	}
+
+	/** Gets whether one of the given services is also a service of class c. */
+	private static boolean provided(final Class<? extends Service> c,
+		final Set<Class<? extends Service>> services)
+	{
+		for (final Class<? extends Service> s : services) {
+			if (c.isAssignableFrom(s)) return true;
+		}
+		return false;
+	}
+
+	/** Adds the transitive dependencies of the given service to the set. */
+	private void closure(final Class<? extends Service> c,
+		final Map<Class<? extends Service>, Set<Class<? extends Service>>> deps,
+		final Set<Class<? extends Service>> result)
+	{
+		if (!result.add(c)) return;
+		for (final Class<? extends Service> dep : deps.get(c)) {
+			closure(dep, deps, result);
+		}
+	}
+
+	/**
+	 * Sorts the services into layers, each depending only on earlier ones.
+	 * Services in a dependency cycle end up together in a final layer, which is
+	 * initialized sequentially.
+	 */
+	private List<List<Class<? extends Service>>> layers(
+		final Map<Class<? extends Service>, Set<Class<? extends Service>>> deps)
+	{
+		final List<List<Class<? extends Service>>> layers = new ArrayList<>();
+		final Set<Class<? extends Service>> done = new HashSet<>();
+		final List<Class<? extends Service>> remaining =
+			new ArrayList<>(deps.keySet());
+		while (!remaining.isEmpty()) {
+			final List<Class<? extends Service>> layer = new ArrayList<>();
+			for (final Class<? extends Service> c : remaining) {
+				if (done.containsAll(deps.get(c))) layer.add(c);
+			}
+			if (layer.isEmpty()) {
+				// dependency cycle; fall back to priority order
+				log().warn("Service dependency cycle among: " + remaining);
+				for (final Class<? extends Service> c : remaining) {
+					layers.add(Collections.<Class<? extends Service>> singletonList(c));
+				}
+				break;
+			}
+			layers.add(layer);
+			done.addAll(layer);
+			remaining.removeAll(layer);
+		}
+		return layers;
+	}
+
+	private List<Service> initializeLayer(
+		final List<Class<? extends Service>> layer,
+		final Map<Class<? extends Service>, PluginInfo<Service>> pool,
+		final ExecutorService executor)
+	{
+		// instantiate, inject and register sequentially, in priority order
+		final List<Service> created = new ArrayList<>();
+		for (final Class<? extends Service> c : layer) {
+			final Service service = create(c, pool.get(c));
+			if (service == null) continue;
+			context.getServiceIndex().add(service);
+			created.add(service);
+		}
+
+		// initialize concurrently
+		final List<Service> initialized = new ArrayList<>();
+		if (executor == null || created.size() < 2) {
+			for (final Service service : created) {
+				if (initialize(service)) initialized.add(service);
+			}
+		}
+		else {
+			final Map<Service, Future<Boolean>> futures = new LinkedHashMap<>();
+			for (final Service service : created) {
+				futures.put(service, executor.submit(() -> initialize(service)));
+			}
+			for (final Map.Entry<Service, Future<Boolean>> entry : futures
+				.entrySet())
+			{
+				try {
+					if (entry.getValue().get()) initialized.add(entry.getKey());
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(exc);
+				}
+				catch (final ExecutionException exc) {
+					log().error("Invalid service: " + //
+						entry.getKey().getClass().getName(), exc.getCause());
+				}
+			}
+		}
+
+		// drop the services which failed, and let the others subscribe to events
+		for (final Service service : created) {
+			if (initialized.contains(service)) service.registerEventHandlers();
+			else context.getServiceIndex().remove(service);
+		}
+		return initialized;
+	}
+
+	private Service create(final Class<? extends Service> c,
+		final PluginInfo<Service> info)
+	{
+		try {
+			final Service service = c.getDeclaredConstructor().newInstance();
+			service.setContext(context);
+			if (info != null) {
+				service.setInfo(info);
+				service.setPriority(info.getPriority());
+			}
+			for (final Field f : serviceFields(c)) {
+				final Service dep = context.getService(serviceType(f));
+				if (dep == null && f.getAnnotation(Parameter.class).required()) {
+					throw new IllegalArgumentException("Required service is missing: " +
+						f.getType().getName());
+				}
+				f.setAccessible(true);
+				f.set(service, dep);
+			}
+			return service;
+		}
+		catch (final ReflectiveOperationException | RuntimeException exc) {
+			log().error("Invalid service: " + c.getName(), exc);
+			return null;
+		}
+	}
+
+	private boolean initialize(final Service service) {
+		try {
+			initializeService(service);
+			return true;
+		}
+		catch (final RuntimeException exc) {
+			log().error("Invalid service: " + service.getClass().getName(), exc);
+			return false;
+		}
+	}
+
+	private List<Field> serviceFields(final Class<?> c) {
+		final List<Field> fields = new ArrayList<>();
+		for (Class<?> t = c; t != null && t != Object.class; t = t.getSuperclass()) {
+			for (final Field f : t.getDeclaredFields()) {
+				if (f.getAnnotation(Parameter.class) == null) continue;
+				if (!Service.class.isAssignableFrom(f.getType())) continue;
+				if (Modifier.isStatic(f.getModifiers())) continue;
+				if (Modifier.isFinal(f.getModifiers())) continue;
+				fields.add(f);
+			}
+		}
+		return fields;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Class<? extends Service> serviceType(final Field f) {
+		return (Class<? extends Service>) f.getType();
+	}
+
+	private LogService log() {
+		final LogService log = context.getService(LogService.class);
+		if (log != null) return log;
+		// NB: No log service yet; fall back to a throwaway one.
+		return new StderrLogService();
+	}
+
+	// -- Helper classes --
+
+	/** Creates named daemon threads for service initialization. */
+	private static class InitThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread t = new Thread(r, "ServiceInit-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imagej.parallel.ParallelOpService;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link StreamingStatsService}, running one worker
+ * per thread of the {@link ParallelOpService}'s parallelism.
+ */
+@Plugin(type = Service.class)
+public class DefaultStreamingStatsService extends AbstractService implements
+	StreamingStatsService
+{
+
+	@Parameter
+	private ParallelOpService parallelOpService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	// -- StreamingStatsService methods --
+
+	@Override
+	public StreamingStatistics compute(final RandomAccessibleInterval<?> image,
+		final int bins)
+	{
+		final Object first = Views.iterable(image).firstElement();
+		if (!(first instanceof RealType)) {
+			throw new IllegalArgumentException("Not a real-valued image");
+		}
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<? extends RealType<?>> real =
+			(RandomAccessibleInterval<? extends RealType<?>>) image;
+		final double minBinWidth = first instanceof IntegerType ? 1
+			: Double.MIN_NORMAL;
+
+		final List<Interval> tiles = tiles(image);
+		final int workers = Math.min(tiles.size(), parallelOpService
+			.getParallelism());
+		final AtomicInteger next = new AtomicInteger();
+		final List<Future<StreamingStatistics>> futures = new ArrayList<>();
+		for (int w = 0; w < workers; w++) {
+			futures.add(threadService.run(() -> {
+				final StreamingStatistics stats = new StreamingStatistics(bins,
+					minBinWidth);
+				int t;
+				while ((t = next.getAndIncrement()) < tiles.size()) {
+					stats.addAll(Views.flatIterable(Views.interval(real, tiles.get(t))));
+				}
+				return stats;
+			}));
+		}
+
+		final StreamingStatistics stats = new StreamingStatistics(bins,
+			minBinWidth);
+		try {
+			for (final Future<StreamingStatistics> future : futures) {
+				stats.merge(future.get());
+			}
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exc);
+		}
+		catch (final ExecutionException exc) {
+			throw new IllegalStateException(exc.getCause());
+		}
+		return stats;
+	}
+
+	@Override
+	public List<Interval> tiles(final RandomAccessibleInterval<?> image) {
+		Object img = image;
+		if (img instanceof Dataset) img = ((Dataset) img).getImgPlus();
+		if (img instanceof ImgPlus) img = ((ImgPlus<?>) img).getImg();
+		if (!(img instanceof AbstractCellImg)) {
+			return parallelOpService.split(image);
+		}
+
+		final CellGrid grid = ((AbstractCellImg<?, ?, ?, ?>) img).getCellGrid();
+		final int n = grid.numDimensions();
+		final long[] gridDims = grid.getGridDimensions();
+		final long[] position = new long[n];
+		final long[] cellMin = new long[n];
+		final int[] cellDims = new int[n];
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		final long cellCount = Intervals.numElements(gridDims);
+		final List<Interval> tiles = new ArrayList<>();
+		for (long i = 0; i < cellCount; i++) {
+			IntervalIndexer.indexToPosition(i, gridDims, position);
+			grid.getCellDimensions(position, cellMin, cellDims);
+			for (int d = 0; d < n; d++) {
+				min[d] = image.min(d) + cellMin[d];
+				max[d] = min[d] + cellDims[d] - 1;
+			}
+			tiles.add(new FinalInterval(min, max));
+		}
+		return tiles;
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.stats;
+
+import java.util.Arrays;
+
+/**
+ * A histogram which grows to fit the values added to it, so that it needs no
+ * range up front and can be computed in a single pass.
+ * <p>
+ * Bins have a width which is a power of two, and start at multiples of it.
+ * When a value falls outside the bins, they are moved to include it if the
+ * values counted so far leave enough room; otherwise the width is doubled,
+ * combining neighboring bins, until it fits. Since all histograms share this grid,
+ * histograms of parts of an image can be {@link #merge merged} exactly, into
+ * the histogram of the whole.
+ * </p>
+ */
+public class Histogram {
+
+	/** Initial bin width when the first value is zero. */
+	private static final double ZERO_SEED_WIDTH = Math.scalb(1.0, -24);
+
+	private final long[] counts;
+	private final double minWidth;
+	private double width;
+	private double origin;
+	private long total;
+
+	/**
+	 * Creates an empty histogram.
+	 * 
+	 * @param bins The number of bins.
+	 * @param minWidth The smallest bin width, a power of two; e.g. 1 for
+	 *          integer data, so that each bin holds whole values.
+	 */
+	public Histogram(final int bins, final double minWidth) {
+		if (bins < 1) throw new IllegalArgumentException("Invalid bins: " + bins);
+		if (!(minWidth > 0) || Math.scalb(1.0, Math.getExponent(
+			minWidth)) != minWidth)
+		{
+			throw new IllegalArgumentException("Not a power of two: " + minWidth);
+		}
+		counts = new long[bins];
+		this.minWidth = minWidth;
+	}
+
+	// -- Histogram methods --
+
+	/** Counts a value; infinite and NaN values are ignored. */
+	public void add(final double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) return;
+		if (width == 0) seed(value);
+		if (value < origin || value >= getMax()) fit(value, value);
+		counts[bin(value)]++;
+		total++;
+	}
+
+	/** Adds the counts of another histogram to this one. */
+	public void merge(final Histogram other) {
+		if (other.total == 0) return;
+		if (width == 0) seed(other.origin);
+		while (width < other.width) {
+			grow();
+		}
+		int first = 0, last = other.counts.length - 1;
+		while (other.counts[first] == 0) first++;
+		while (other.counts[last] == 0) last--;
+		fit(other.binMin(first), other.binMin(last));
+		for (int i = first; i <= last; i++) {
+			counts[bin(other.binMin(i))] += other.counts[i];
+		}
+		total += other.total;
+	}
+
+	/** Gets the number of bins. */
+	public int getBinCount() {
+		return counts.length;
+	}
+
+	/** Gets the width of each bin, or 0 if no value has been added. */
+	public double getBinWidth() {
+		return width;
+	}
+
+	/** Gets the lower bound of the first bin. */
+	public double getMin() {
+		return origin;
+	}
+
+	/** Gets the upper bound of the last bin, exclusive. */
+	public double getMax() {
+		return origin + counts.length * width;
+	}
+
+	/** Gets the lower bound of a bin. */
+	public double binMin(final int bin) {
+		return origin + bin * width;
+	}
+
+	/** Gets the number of values in a bin. */
+	public long getCount(final int bin) {
+		return counts[bin];
+	}
+
+	/** Gets the number of values in all bins. */
+	public long getTotal() {
+		return total;
+	}
+
+	/** Gets a copy of the counts of all bins. */
+	public long[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Estimates a percentile, interpolating linearly within its bin.
+	 * 
+	 * @param percent The percentile, from 0 to 100.
+	 * @return The estimate, or NaN if the histogram is empty.
+	 */
+	public double percentile(final double percent) {
+		if (total == 0) return Double.NaN;
+		final double target = Math.min(Math.max(percent, 0), 100) / 100 * total;
+		long before = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0 && before + counts[i] >= target) {
+				return binMin(i) + width * (target - before) / counts[i];
+			}
+			before += counts[i];
+		}
+		return getMax();
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "[" + getMin() + ", " + getMax() + "): " + Arrays.toString(counts);
+	}
+
+	// -- Helper methods --
+
+	/** Places the first bins around a value, with a width fitting its size. */
+	private void seed(final double value) {
+		final int log2Bins = 31 - Integer.numberOfLeadingZeros(counts.length);
+		final double w = value == 0 ? ZERO_SEED_WIDTH : Math.scalb(1.0, Math
+			.getExponent(value) - log2Bins);
+		width = Math.max(w, minWidth);
+		origin = (Math.floor(value / width) - counts.length / 2) * width;
+	}
+
+	/**
+	 * Moves the bins, and widens them as needed, so that they cover the values
+	 * from {@code lo} to {@code hi} as well as all counted values.
+	 */
+	private void fit(final double lo, final double hi) {
+		final int n = counts.length;
+		while (true) {
+			// bin indices on the grid of multiples of the width
+			double start = Math.floor(lo / width);
+			double end = Math.floor(hi / width);
+			final double originIndex = origin / width;
+			if (total > 0) {
+				int first = 0, last = n - 1;
+				while (counts[first] == 0) first++;
+				while (counts[last] == 0) last--;
+				start = Math.min(start, originIndex + first);
+				end = Math.max(end, originIndex + last);
+			}
+			if (end - start < n) {
+				// shift the bins, leaving the same room on both sides
+				final double room = Math.floor((n - 1 - (end - start)) / 2);
+				final double newIndex = start - room;
+				shift((int) (originIndex - newIndex));
+				origin = newIndex * width;
+				return;
+			}
+			grow();
+		}
+	}
+
+	/** Moves the counts by the given number of bins, towards the end. */
+	private void shift(final int bins) {
+		if (bins == 0) return;
+		final long[] old = counts.clone();
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < old.length; i++) {
+			if (old[i] != 0) counts[i + bins] = old[i];
+		}
+	}
+
+	/** Doubles the bin width, combining pairs of neighboring bins. */
+	private void grow() {
+		final double w = 2 * width;
+		final double o = Math.floor(origin / w) * w;
+		final int offset = origin == o ? 0 : 1;
+		final long[] old = counts.clone();
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < old.length; i++) {
+			counts[(i + offset) / 2] += old[i];
+		}
+		width = w;
+		origin = o;
+	}
+
+	private int bin(final double value) {
+		final int bin = (int) Math.floor((value - origin) / width);
+		return Math.min(Math.max(bin, 0), counts.length - 1);
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.stats;
+
+import net.imagej.autoscale.DataRange;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Statistics of a stream of values, computed in a single pass: count,
+ * minimum, maximum, sum, the central moments up to the fourth and a
+ * {@link Histogram}.
+ * <p>
+ * Statistics of disjoint parts of an image, e.g. its tiles, can be computed
+ * independently, in parallel, and then {@link #merge merged} into the
+ * statistics of the whole. The moments are updated and merged with the
+ * pairwise formulas of Chan et al. and Pébay, which are numerically stable.
+ * </p>
+ */
+public class StreamingStatistics {
+
+	private final Histogram histogram;
+	private long count;
+	private long nanCount;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+	private double mean;
+	private double m2, m3, m4;
+
+	/**
+	 * Creates empty statistics.
+	 * 
+	 * @param bins The number of histogram bins.
+	 * @param minBinWidth The smallest histogram bin width.
+	 * @see Histogram#Histogram(int, double)
+	 */
+	public StreamingStatistics(final int bins, final double minBinWidth) {
+		histogram = new Histogram(bins, minBinWidth);
+	}
+
+	// -- StreamingStatistics methods --
+
+	/** Adds a value. NaN values are only counted by {@link #getNaNCount()}. */
+	public void add(final double value) {
+		if (Double.isNaN(value)) {
+			nanCount++;
+			return;
+		}
+		if (value < min) min = value;
+		if (value > max) max = value;
+		sum += value;
+
+		final long n1 = count++;
+		final double delta = value - mean;
+		final double deltaN = delta / count;
+		final double deltaN2 = deltaN * deltaN;
+		final double term1 = delta * deltaN * n1;
+		mean += deltaN;
+		m4 += term1 * deltaN2 * ((double) count * count - 3 * count + 3) + 6 *
+			deltaN2 * m2 - 4 * deltaN * m3;
+		m3 += term1 * deltaN * (count - 2) - 3 * deltaN * m2;
+		m2 += term1;
+
+		histogram.add(value);
+	}
+
+	/** Adds all values of an image, or part of one. */
+	public void addAll(final Iterable<? extends RealType<?>> values) {
+		for (final RealType<?> t : values) {
+			add(t.getRealDouble());
+		}
+	}
+
+	/** Adds the values counted by other statistics to these. */
+	public void merge(final StreamingStatistics other) {
+		nanCount += other.nanCount;
+		if (other.count == 0) return;
+		if (count == 0) {
+			count = other.count;
+			min = other.min;
+			max = other.max;
+			sum = other.sum;
+			mean = other.mean;
+			m2 = other.m2;
+			m3 = other.m3;
+			m4 = other.m4;
+			histogram.merge(other.histogram);
+			return;
+		}
+		final double na = count, nb = other.count, n = na + nb;
+		final double delta = other.mean - mean;
+		final double delta2 = delta * delta;
+		final double mergedM4 = m4 + other.m4 + delta2 * delta2 * na * nb * (na *
+			na - na * nb + nb * nb) / (n * n * n) + 6 * delta2 * (na * na * other.m2 +
+				nb * nb * m2) / (n * n) + 4 * delta * (na * other.m3 - nb * m3) / n;
+		final double mergedM3 = m3 + other.m3 + delta2 * delta * na * nb * (na -
+			nb) / (n * n) + 3 * delta * (na * other.m2 - nb * m2) / n;
+		m2 += other.m2 + delta2 * na * nb / n;
+		m3 = mergedM3;
+		m4 = mergedM4;
+		mean += delta * nb / n;
+		count += other.count;
+		sum += other.sum;
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+		histogram.merge(other.histogram);
+	}
+
+	/** Gets the number of values, excluding NaNs. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Gets the number of NaN values. */
+	public long getNaNCount() {
+		return nanCount;
+	}
+
+	/** Gets the smallest value, or NaN if there are no values. */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the largest value, or NaN if there are no values. */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/** Gets the sum of the values. */
+	public double getSum() {
+		return sum;
+	}
+
+	/** Gets the mean, or NaN if there are no values. */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/** Gets the sample variance, or NaN if there are fewer than two values. */
+	public double getVariance() {
+		return count < 2 ? Double.NaN : m2 / (count - 1);
+	}
+
+	/** Gets the sample standard deviation. */
+	public double getStdDev() {
+		return Math.sqrt(getVariance());
+	}
+
+	/** Gets the skewness, or NaN if it is undefined. */
+	public double getSkewness() {
+		return count == 0 || m2 == 0 ? Double.NaN : Math.sqrt(count) * m3 / Math
+			.pow(m2, 1.5);
+	}
+
+	/** Gets the excess kurtosis, or NaN if it is undefined. */
+	public double getKurtosis() {
+		return count == 0 || m2 == 0 ? Double.NaN : count * m4 / (m2 * m2) - 3;
+	}
+
+	/** Gets the histogram of the finite values. */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * Gets a display range, as for autoscaling: the range between the
+	 * percentiles which leave out the given percentage of values, half on
+	 * either side. With a saturation of 0, this is the exact minimum and
+	 * maximum.
+	 * 
+	 * @param saturation The percentage of values to leave out, from 0 to 100.
+	 */
+	public DataRange getRange(final double saturation) {
+		if (saturation <= 0) return new DataRange(getMin(), getMax());
+		final double lo = histogram.percentile(saturation / 2);
+		final double hi = histogram.percentile(100 - saturation / 2);
+		return new DataRange(Math.max(lo, getMin()), Math.min(hi, getMax()));
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", min=" + getMin() + ", max=" + getMax() +
+			", mean=" + getMean() + ", stdDev=" + getStdDev();
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.stats;
+
+import java.util.List;
+
+import net.imagej.ImageJService;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Computes {@link StreamingStatistics} of images in a single parallel pass
+ * over their tiles.
+ * <p>
+ * Each worker thread takes tiles from a shared list, accumulates their
+ * statistics, and the workers' statistics are merged at the end. Tiles of
+ * cell images, such as {@link net.imagej.tile.TiledImg}s,
+ * {@link net.imagej.chunk.ChunkedImg}s and
+ * {@link net.imagej.mmap.MappedCellImg}s, are their cells, so each cell is
+ * loaded once and images need not fit in memory; other images are split by
+ * the {@link net.imagej.parallel.ParallelOpService}.
+ * </p>
+ */
+public interface StreamingStatsService extends ImageJService {
+
+	/** Default number of histogram bins. */
+	int DEFAULT_BINS = 256;
+
+	/**
+	 * Computes the statistics of a real-valued image, with
+	 * {@link #DEFAULT_BINS} histogram bins.
+	 */
+	default StreamingStatistics compute(final RandomAccessibleInterval<?> image) {
+		return compute(image, DEFAULT_BINS);
+	}
+
+	/**
+	 * Computes the statistics of a real-valued image. Histograms of integer
+	 * images have bins of whole values.
+	 * 
+	 * @throws IllegalArgumentException if the image is not real-valued.
+	 */
+	StreamingStatistics compute(RandomAccessibleInterval<?> image, int bins);
+
+	/**
+	 * Gets the tiles over which statistics of an image are computed, in the
+	 * coordinates of the image.
+	 */
+	List<Interval> tiles(RandomAccessibleInterval<?> image);
+
+}
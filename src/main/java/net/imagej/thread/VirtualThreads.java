@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.thread;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Utility methods for running the gateway's tasks on virtual threads.
+ * <p>
+ * Virtual threads are cheap enough to use one per task, so fanning out
+ * thousands of small, mostly blocking tasks (reading tiles, running scripts)
+ * does not balloon the number of platform threads. They need Java 21 or newer;
+ * since ImageJ itself targets Java 8, the API is accessed reflectively, and
+ * {@link #isSupported()} reports whether the running JVM offers it. Java 19
+ * and 20 have the API only as a preview feature, which fails at runtime unless
+ * enabled, so support is probed by actually building a thread factory.
+ * </p>
+ * <p>
+ * Gateways created via {@link net.imagej.ImageJ#ImageJ()} switch their
+ * {@link ThreadService} to virtual threads when the {@value #PROPERTY} system
+ * property is {@code true}, which {@link net.imagej.Main} sets for the
+ * {@value #FLAG} flag.
+ * </p>
+ */
+public final class VirtualThreads {
+
+	/** System property selecting virtual threads for new gateways. */
+	public static final String PROPERTY = "imagej.threads.virtual";
+
+	/** Command line flag selecting virtual threads. */
+	public static final String FLAG = "--virtual-threads";
+
+	/** Whether a virtual thread factory could be built in this JVM. */
+	private static final boolean SUPPORTED = probe();
+
+	private VirtualThreads() {
+		// prevent instantiation of utility class
+	}
+
+	/** Gets whether the running JVM supports virtual threads. */
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/** Gets whether the {@value #PROPERTY} system property is set. */
+	public static boolean isRequested() {
+		return Boolean.getBoolean(PROPERTY);
+	}
+
+	/**
+	 * Creates an executor which starts a new virtual thread for each task.
+	 * 
+	 * @throws UnsupportedOperationException if the JVM lacks virtual threads.
+	 */
+	public static ExecutorService newExecutor() {
+		try {
+			final Method m = //
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		}
+		catch (final NoSuchMethodException | IllegalAccessException exc) {
+			throw unsupported(exc);
+		}
+		catch (final InvocationTargetException exc) {
+			throw failed(exc);
+		}
+	}
+
+	/**
+	 * Creates a factory for virtual threads named with the given prefix and a
+	 * running number.
+	 * 
+	 * @throws UnsupportedOperationException if the JVM lacks virtual threads.
+	 */
+	public static ThreadFactory newThreadFactory(final String prefix) {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Object named = builderClass.getMethod("name", String.class,
+				long.class).invoke(builder, prefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(named);
+		}
+		catch (final ClassNotFoundException | NoSuchMethodException
+				| IllegalAccessException exc)
+		{
+			throw unsupported(exc);
+		}
+		catch (final InvocationTargetException exc) {
+			throw failed(exc);
+		}
+	}
+
+	/**
+	 * Makes the given thread service run its tasks on virtual threads, if the
+	 * JVM supports them. Otherwise, the thread service keeps using platform
+	 * threads.
+	 * 
+	 * @return True if virtual threads are now in use.
+	 */
+	public static boolean install(final ThreadService threadService) {
+		if (!isSupported()) return fallBack(threadService, null);
+		final ExecutorService executor;
+		try {
+			executor = newExecutor();
+		}
+		catch (final RuntimeException exc) {
+			return fallBack(threadService, exc);
+		}
+		threadService.setExecutorService(executor);
+		return true;
+	}
+
+	// -- Helper methods --
+
+	/** Checks that a virtual thread factory can actually be built. */
+	private static boolean probe() {
+		try {
+			newThreadFactory("probe-");
+			return true;
+		}
+		catch (final RuntimeException exc) {
+			return false;
+		}
+	}
+
+	private static boolean fallBack(final ThreadService threadService,
+		final Exception cause)
+	{
+		final LogService log = //
+			threadService.getContext().getService(LogService.class);
+		if (log != null) {
+			log.warn("Virtual threads need Java 21 or newer; " +
+				"using platform threads", cause);
+		}
+		return false;
+	}
+
+	/**
+	 * Converts a failed reflective call into an exception. A preview API which
+	 * has not been enabled throws {@link UnsupportedOperationException}.
+	 */
+	private static RuntimeException failed(final InvocationTargetException exc) {
+		final Throwable cause = exc.getCause();
+		if (cause instanceof UnsupportedOperationException) {
+			return unsupported((Exception) cause);
+		}
+		return new IllegalStateException(cause);
+	}
+
+	private static UnsupportedOperationException unsupported(
+		final Exception cause)
+	{
+		return new UnsupportedOperationException(
+			"Virtual threads need Java 21 or newer", cause);
+	}
+
+}
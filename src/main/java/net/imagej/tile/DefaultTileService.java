@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import io.scif.FormatException;
+import io.scif.Reader;
+import io.scif.services.InitializeService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.cache.LRUCache;
+import net.imagej.metrics.Counter;
+import net.imagej.metrics.MetricsService;
+import net.imglib2.img.cell.Cell;
+
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link TileService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultTileService extends AbstractService implements
+	TileService
+{
+
+	@Parameter
+	private InitializeService initializeService;
+
+	@Parameter
+	private DatasetService datasetService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	private final LRUCache<TileKey, Cell<?>> cache = new LRUCache<>(
+		cacheSizeFromProperty(), (key, tile) -> key.getBytes());
+
+	private Prefetcher prefetcher;
+	private Counter bytesRead;
+
+	/** Images not closed yet, to be closed along with the service. */
+	private final Map<TiledImg<?>, Boolean> open = Collections.synchronizedMap(
+		new WeakHashMap<TiledImg<?>, Boolean>());
+
+	// -- TileService methods --
+
+	@Override
+	public Dataset open(final String source) throws IOException {
+		return open(source, 0);
+	}
+
+	@Override
+	public Dataset open(final String source, final int imageIndex)
+		throws IOException
+	{
+		return open(source, imageIndex, 0, 0);
+	}
+
+	@Override
+	public Dataset open(final String source, final int imageIndex,
+		final int tileWidth, final int tileHeight) throws IOException
+	{
+		final Reader reader = initializeReader(source);
+		if (imageIndex < 0 || imageIndex >= reader.getImageCount()) {
+			reader.close();
+			throw new IllegalArgumentException("Invalid image index " +
+				imageIndex + " for " + source);
+		}
+		final TiledImg<?> img = TiledImg.create(reader, imageIndex, tileWidth,
+			tileHeight, cache, getPrefetcher());
+		img.setBytesRead(bytesRead);
+		open.put(img, Boolean.TRUE);
+		return wrap(img, reader.getMetadata().getDatasetName());
+	}
+
+	@Override
+	public int getImageCount(final String source) throws IOException {
+		final Reader reader = initializeReader(source);
+		try {
+			return reader.getImageCount();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Override
+	public LRUCache<TileKey, Cell<?>> getCache() {
+		return cache;
+	}
+
+	@Override
+	public synchronized Prefetcher getPrefetcher() {
+		if (prefetcher == null) {
+			prefetcher = new Prefetcher(cache, threadService, 2, intProperty(
+				PREFETCH_PROPERTY, Prefetcher.DEFAULT_DEPTH));
+		}
+		return prefetcher;
+	}
+
+	// -- Initializable methods --
+
+	@Override
+	public void initialize() {
+		if (metricsService == null) return;
+		bytesRead = metricsService.counter("tile.bytesRead");
+		metricsService.cacheGauges("tile.cache", this::getStats);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		synchronized (this) {
+			if (prefetcher != null) prefetcher.shutdown();
+		}
+		final List<TiledImg<?>> imgs;
+		synchronized (open) {
+			imgs = new ArrayList<>(open.keySet());
+			open.clear();
+		}
+		for (final TiledImg<?> img : imgs) {
+			try {
+				img.close();
+			}
+			catch (final IOException exc) {
+				log.warn(exc);
+			}
+		}
+		cache.invalidateAll();
+	}
+
+	// -- Helper methods --
+
+	private Reader initializeReader(final String source) throws IOException {
+		try {
+			return initializeService.initializeReader(source);
+		}
+		catch (final FormatException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Dataset wrap(final TiledImg img, final String name) {
+		final List<CalibratedAxis> axes = img.getAxes();
+		return datasetService.create(new ImgPlus(img, name, axes.toArray(
+			new CalibratedAxis[axes.size()])));
+	}
+
+	private static long cacheSizeFromProperty() {
+		return (long) intProperty(CACHE_PROPERTY, (int) DEFAULT_CACHE_MB) << 20;
+	}
+
+	private static int intProperty(final String key, final int defaultValue) {
+		final String value = System.getProperty(key);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (final NumberFormatException exc) {
+				// fall back to the default
+			}
+		}
+		return defaultValue;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+/**
+ * A snapshot of the counters of a {@link Prefetcher}.
+ */
+public class PrefetchStats {
+
+	private final long issued;
+	private final long completed;
+	private final long failed;
+	private final long dropped;
+	private final long used;
+	private final long wasted;
+	private final long hiddenNanos;
+
+	public PrefetchStats(final long issued, final long completed,
+		final long failed, final long dropped, final long used, final long wasted,
+		final long hiddenNanos)
+	{
+		this.issued = issued;
+		this.completed = completed;
+		this.failed = failed;
+		this.dropped = dropped;
+		this.used = used;
+		this.wasted = wasted;
+		this.hiddenNanos = hiddenNanos;
+	}
+
+	/** Gets the number of tile reads queued. */
+	public long getIssued() {
+		return issued;
+	}
+
+	/** Gets the number of tiles read ahead successfully. */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/** Gets the number of tile reads which failed. */
+	public long getFailed() {
+		return failed;
+	}
+
+	/** Gets the number of tile reads dropped because the queue was full. */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/** Gets the number of prefetched tiles which were then accessed. */
+	public long getUsed() {
+		return used;
+	}
+
+	/** Gets the number of prefetched tiles evicted before being accessed. */
+	public long getWasted() {
+		return wasted;
+	}
+
+	/**
+	 * Gets the read time of the used prefetched tiles, in nanoseconds: the
+	 * latency hidden from the threads accessing them.
+	 */
+	public long getHiddenNanos() {
+		return hiddenNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "issued=" + issued + ", completed=" + completed + ", failed=" +
+			failed + ", dropped=" + dropped + ", used=" + used + ", wasted=" +
+			wasted + ", hiddenMillis=" + hiddenNanos / 1000000;
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imagej.cache.LRUCache;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * Reads tiles of {@link TiledImg}s ahead of time, when planes are accessed in
+ * sequence, e.g. when an animation or a script steps through Z or T.
+ * <p>
+ * The prefetcher watches which plane each tile access falls into. Once two
+ * consecutive plane changes of an image have the same stride, it reads the
+ * same tile of the next planes along that stride, up to the
+ * {@link #getDepth() read-ahead depth}, on background threads and into the
+ * tile cache. Random access patterns do not trigger any reads.
+ * </p>
+ * <p>
+ * The counters in {@link #getStats()} show how many prefetched tiles were
+ * used before being evicted, and how much read time they saved the accessing
+ * threads.
+ * </p>
+ */
+public class Prefetcher {
+
+	/** Default number of planes to read ahead. */
+	public static final int DEFAULT_DEPTH = 4;
+
+	/** Maximum number of queued reads; more are dropped. */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	private final LRUCache<TileKey, Cell<?>> cache;
+	private final ThreadPoolExecutor executor;
+	private volatile int depth;
+
+	private final Map<TiledImg<?>, Pattern> patterns = new WeakHashMap<>();
+	private final Map<TileKey, Prefetch> prefetched = new ConcurrentHashMap<>();
+
+	private final AtomicLong issued = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong used = new AtomicLong();
+	private final AtomicLong wasted = new AtomicLong();
+	private final AtomicLong hiddenNanos = new AtomicLong();
+
+	/**
+	 * @param cache The tile cache to read into.
+	 * @param threadFactory The factory of the reading threads.
+	 * @param threads The number of reading threads.
+	 * @param depth The number of planes to read ahead; 0 disables prefetching.
+	 */
+	public Prefetcher(final LRUCache<TileKey, Cell<?>> cache,
+		final ThreadFactory threadFactory, final int threads, final int depth)
+	{
+		this.cache = cache;
+		setDepth(depth);
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), r -> {
+				final Thread t = threadFactory.newThread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	// -- Prefetcher methods --
+
+	/** Gets the number of planes to read ahead. */
+	public int getDepth() {
+		return depth;
+	}
+
+	/** Sets the number of planes to read ahead; 0 disables prefetching. */
+	public void setDepth(final int depth) {
+		if (depth < 0) throw new IllegalArgumentException("Invalid depth");
+		this.depth = depth;
+	}
+
+	/** Gets a snapshot of the prefetcher's counters. */
+	public PrefetchStats getStats() {
+		return new PrefetchStats(issued.get(), completed.get(), failed.get(),
+			dropped.get(), used.get(), wasted.get(), hiddenNanos.get());
+	}
+
+	/**
+	 * Notes an access to a tile of an image, and reads ahead if the image's
+	 * planes are being accessed in sequence. Called by {@link TiledImg} on
+	 * every tile access.
+	 */
+	public void accessed(final TiledImg<?> img, final long index) {
+		final Prefetch hit = prefetched.remove(img.key(index));
+		if (hit != null) used(hit);
+
+		final int ahead = depth;
+		if (ahead == 0) return;
+		final long tiles = img.getTilesPerPlane();
+		final long plane = index / tiles;
+		final Pattern pattern;
+		synchronized (patterns) {
+			pattern = patterns.computeIfAbsent(img, k -> new Pattern());
+		}
+		final long stride = pattern.step(plane);
+		if (stride == 0) return;
+
+		final long planeCount = img.getPlaneCount();
+		final long tile = index % tiles;
+		for (int k = 1; k <= ahead; k++) {
+			final long target = plane + k * stride;
+			if (target < 0 || target >= planeCount) break;
+			submit(img, target * tiles + tile);
+		}
+	}
+
+	/** Stops the reading threads. */
+	public void shutdown() {
+		executor.shutdownNow();
+		prefetched.clear();
+	}
+
+	// -- Helper methods --
+
+	private void used(final Prefetch prefetch) {
+		final long start = prefetch.start;
+		// NB: A read which has not started yet saved nothing.
+		if (start == 0) return;
+		used.incrementAndGet();
+		final long nanos = prefetch.nanos;
+		hiddenNanos.addAndGet(nanos >= 0 ? nanos : System.nanoTime() - start);
+	}
+
+	private void submit(final TiledImg<?> img, final long index) {
+		final TileKey key = img.key(index);
+		if (cache.containsKey(key) || cache.isLoading(key)) return;
+		final Prefetch prefetch = new Prefetch();
+		if (prefetched.putIfAbsent(key, prefetch) != null) return;
+		if (prefetched.size() > QUEUE_CAPACITY) sweep();
+		try {
+			executor.execute(() -> read(img, index, key, prefetch));
+			issued.incrementAndGet();
+		}
+		catch (final RejectedExecutionException exc) {
+			prefetched.remove(key, prefetch);
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void read(final TiledImg<?> img, final long index,
+		final TileKey key, final Prefetch prefetch)
+	{
+		// skip tiles accessed while queued
+		if (prefetched.get(key) != prefetch) return;
+		prefetch.start = System.nanoTime();
+		try {
+			img.fetch(index);
+			prefetch.nanos = System.nanoTime() - prefetch.start;
+			completed.incrementAndGet();
+		}
+		catch (final RuntimeException exc) {
+			prefetched.remove(key, prefetch);
+			failed.incrementAndGet();
+		}
+	}
+
+	/** Forgets prefetched tiles which were evicted before being used. */
+	private void sweep() {
+		for (final Map.Entry<TileKey, Prefetch> entry : prefetched.entrySet()) {
+			final TileKey key = entry.getKey();
+			if (entry.getValue().nanos < 0 || cache.containsKey(key)) continue;
+			if (prefetched.remove(key, entry.getValue())) wasted.incrementAndGet();
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A tile read ahead of time. */
+	private static class Prefetch {
+
+		private volatile long start;
+		private volatile long nanos = -1;
+	}
+
+	/** The recent plane changes of an image. */
+	private static class Pattern {
+
+		private long last = -1;
+		private long stride;
+		private int run;
+
+		/** Records an access, returning the stride if it is sequential, or 0. */
+		public synchronized long step(final long plane) {
+			if (plane != last) {
+				if (last >= 0) {
+					final long delta = plane - last;
+					if (delta == stride) run++;
+					else {
+						stride = delta;
+						run = 1;
+					}
+				}
+				last = plane;
+			}
+			return run >= 2 ? stride : 0;
+		}
+	}
+
+}
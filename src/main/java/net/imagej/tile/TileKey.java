@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifies a tile of a lazily read image, such as a {@link TiledImg}, in the
+ * tile cache, and records its size in bytes as its weight.
+ */
+public final class TileKey {
+
+	private static final AtomicLong NEXT_OWNER = new AtomicLong();
+
+	private final long owner;
+	private final long index;
+	private final long bytes;
+
+	public TileKey(final long owner, final long index, final long bytes) {
+		this.owner = owner;
+		this.index = index;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Allocates a new image ID, unique among all images sharing a tile cache.
+	 */
+	public static long nextOwner() {
+		return NEXT_OWNER.getAndIncrement();
+	}
+
+	/** Gets the ID of the image the tile belongs to. */
+	public long getOwner() {
+		return owner;
+	}
+
+	/** Gets the flat index of the tile in its image's cell grid. */
+	public long getIndex() {
+		return index;
+	}
+
+	/** Gets the size of the tile's pixels, in bytes. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof TileKey)) return false;
+		final TileKey other = (TileKey) o;
+		return owner == other.owner && index == other.index;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(owner) * 31 + Long.hashCode(index);
+	}
+
+	@Override
+	public String toString() {
+		return "tile " + index + " of image " + owner;
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+import net.imagej.cache.CacheStats;
+import net.imagej.cache.LRUCache;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * Opens images lazily through SCIFIO, reading tiles only when their pixels are
+ * accessed, instead of reading whole planes up front. Tiles of all images
+ * opened by this service share one cache, bounded in bytes, and are read
+ * ahead when planes are accessed in sequence.
+ * 
+ * @see TiledImg
+ */
+public interface TileService extends ImageJService {
+
+	/**
+	 * System property setting the initial size of the tile cache, in
+	 * megabytes.
+	 */
+	String CACHE_PROPERTY = "imagej.tile.cache";
+
+	/** Default size of the tile cache, in megabytes. */
+	long DEFAULT_CACHE_MB = 256;
+
+	/**
+	 * System property setting the initial read-ahead depth of the
+	 * {@link Prefetcher}, in planes.
+	 */
+	String PREFETCH_PROPERTY = "imagej.tile.prefetch";
+
+	/** Opens the first image of the given file, with default tile sizes. */
+	Dataset open(String source) throws IOException;
+
+	/** Opens the given image (series) of a file, with default tile sizes. */
+	Dataset open(String source, int imageIndex) throws IOException;
+
+	/**
+	 * Opens the given image (series) of a file.
+	 * 
+	 * @param tileWidth The width of the tiles, or 0 for the reader's optimal
+	 *          tile width.
+	 * @param tileHeight The height of the tiles, or 0 for the reader's optimal
+	 *          tile height.
+	 */
+	Dataset open(String source, int imageIndex, int tileWidth, int tileHeight)
+		throws IOException;
+
+	/** Gets the number of images (series) in the given file. */
+	int getImageCount(String source) throws IOException;
+
+	/** Gets the tile cache. */
+	LRUCache<TileKey, Cell<?>> getCache();
+
+	/** Gets a snapshot of the tile cache's counters. */
+	default CacheStats getStats() {
+		return getCache().getStats();
+	}
+
+	/** Sets the maximum size of the tile cache, in bytes. */
+	default void setCacheSize(final long bytes) {
+		getCache().setMaxWeight(bytes);
+	}
+
+	/** Gets the prefetcher reading tiles ahead for sequential plane access. */
+	Prefetcher getPrefetcher();
+
+	/** Sets the number of planes to read ahead; 0 disables prefetching. */
+	default void setPrefetchDepth(final int depth) {
+		getPrefetcher().setDepth(depth);
+	}
+
+}
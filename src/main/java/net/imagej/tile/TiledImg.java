@@ -0,0 +1,415 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import io.scif.FormatException;
+import io.scif.ImageMetadata;
+import io.scif.Plane;
+import io.scif.Reader;
+import io.scif.util.FormatTools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.cache.LRUCache;
+import net.imagej.metrics.Counter;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.scijava.util.Bytes;
+
+/**
+ * An image read lazily, tile by tile, through a SCIFIO {@link Reader}.
+ * <p>
+ * The image is divided into tiles spanning a block of X and Y and one plane.
+ * A tile is read from the file the first time one of its pixels is accessed,
+ * and kept in a shared {@link LRUCache} bounded in bytes, so accessing a small
+ * region of a huge image only reads the tiles overlapping it. Tiles evicted
+ * from the cache are read again when needed; changes to pixels are not written
+ * back to the file, and are lost when their tile is evicted.
+ * </p>
+ * <p>
+ * The axes are in the order of the reader's metadata: planar axes first, as
+ * with {@link io.scif.img.ImgOpener}.
+ * </p>
+ */
+public class TiledImg<T extends RealType<T> & NativeType<T>> extends
+	LazyCellImg<T, ArrayDataAccess<?>> implements Closeable
+{
+
+	private final TileLoader<T> loader;
+
+	private TiledImg(final TileLoader<T> loader) {
+		super(loader.grid, loader.type, loader);
+		this.loader = loader;
+		loader.img = this;
+	}
+
+	// -- TiledImg methods --
+
+	/**
+	 * Creates a tiled image of one image (series) of an initialized reader. The
+	 * reader is closed along with the image.
+	 * 
+	 * @param reader The reader of the file.
+	 * @param imageIndex The index of the image within the file.
+	 * @param tileWidth The width of the tiles, or 0 for the reader's optimal
+	 *          tile width.
+	 * @param tileHeight The height of the tiles, or 0 for the reader's optimal
+	 *          tile height.
+	 * @param cache The cache holding the tiles.
+	 */
+	public static TiledImg<?> create(final Reader reader, final int imageIndex,
+		final int tileWidth, final int tileHeight,
+		final LRUCache<TileKey, Cell<?>> cache)
+	{
+		return create(reader, imageIndex, tileWidth, tileHeight, cache, null);
+	}
+
+	/**
+	 * Creates a tiled image of one image (series) of an initialized reader,
+	 * whose tiles are read ahead by the given prefetcher when planes are
+	 * accessed in sequence.
+	 * 
+	 * @see #create(Reader, int, int, int, LRUCache)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static TiledImg<?> create(final Reader reader, final int imageIndex,
+		final int tileWidth, final int tileHeight,
+		final LRUCache<TileKey, Cell<?>> cache, final Prefetcher prefetcher)
+	{
+		final TileLoader loader = new TileLoader(reader, imageIndex, tileWidth,
+			tileHeight, cache);
+		loader.prefetcher = prefetcher;
+		return new TiledImg(loader);
+	}
+
+	/** Gets the reader of this image. */
+	public Reader getReader() {
+		return loader.reader;
+	}
+
+	/** Gets the index of this image within its file. */
+	public int getImageIndex() {
+		return loader.imageIndex;
+	}
+
+	/** Gets the metadata of this image. */
+	public ImageMetadata getImageMetadata() {
+		return loader.meta;
+	}
+
+	/** Gets the axes of this image, as read from its metadata. */
+	public List<CalibratedAxis> getAxes() {
+		return loader.meta.getAxes();
+	}
+
+	/** Gets the cache holding the tiles. */
+	public LRUCache<TileKey, Cell<?>> getCache() {
+		return loader.cache;
+	}
+
+	/** Gets the cache key of the tile with the given flat index. */
+	public TileKey key(final long index) {
+		return loader.key(index);
+	}
+
+	/** Gets the number of tiles per plane. */
+	public long getTilesPerPlane() {
+		return loader.tilesPerPlane;
+	}
+
+	/** Gets the number of planes. */
+	public long getPlaneCount() {
+		return loader.grid.getNumCells() / loader.tilesPerPlane;
+	}
+
+	/** Gets whether the tile with the given flat index is cached. */
+	public boolean isCached(final long index) {
+		return loader.cache.containsKey(loader.key(index));
+	}
+
+	/**
+	 * Gets the tile with the given flat index, reading it if it is not cached,
+	 * without notifying the prefetcher.
+	 */
+	Cell<ArrayDataAccess<?>> fetch(final long index) {
+		return loader.fetch(index);
+	}
+
+	/** Gets the unique ID of this image, used in its tiles' keys. */
+	long getId() {
+		return loader.id;
+	}
+
+	/** Sets the counter of the bytes read from the file, or null for none. */
+	void setBytesRead(final Counter bytesRead) {
+		loader.bytesRead = bytesRead;
+	}
+
+	// -- Closeable methods --
+
+	/** Closes the reader and drops this image's tiles from the cache. */
+	@Override
+	public void close() throws IOException {
+		final long id = loader.id;
+		loader.cache.invalidateIf(key -> key.getOwner() == id);
+		synchronized (loader.reader) {
+			loader.reader.close();
+		}
+	}
+
+	// -- Img methods --
+
+	/** Gets a factory for in-memory images with the same tiling. */
+	@Override
+	public CellImgFactory<T> factory() {
+		final int[] cellDims = new int[numDimensions()];
+		loader.grid.cellDimensions(cellDims);
+		return new CellImgFactory<>(loader.type.createVariable(), cellDims);
+	}
+
+	/** Reads the whole image into an in-memory copy with the same tiling. */
+	@Override
+	public Img<T> copy() {
+		final long[] dims = new long[numDimensions()];
+		dimensions(dims);
+		final Img<T> copy = factory().create(dims);
+		// NB: Same cell grid, hence the same iteration order.
+		final Cursor<T> in = cursor();
+		final Cursor<T> out = copy.cursor();
+		while (in.hasNext()) {
+			out.next().set(in.next());
+		}
+		return copy;
+	}
+
+	// -- Helper classes --
+
+	/** Reads tiles from the file, via the cache. */
+	private static class TileLoader<T extends RealType<T> & NativeType<T>>
+		implements LazyCellImg.Get<Cell<ArrayDataAccess<?>>>
+	{
+
+		private final long id = TileKey.nextOwner();
+		private final Reader reader;
+		private final int imageIndex;
+		private final ImageMetadata meta;
+		private final T type;
+		private final CellGrid grid;
+		private final LRUCache<TileKey, Cell<?>> cache;
+		private final int planarCount;
+		private final long[] nonPlanarLengths;
+		private final long tilesPerPlane;
+		private final int bytesPerPixel;
+		private final boolean floatingPoint;
+		private final boolean littleEndian;
+		private TiledImg<T> img;
+		private Prefetcher prefetcher;
+		private volatile Counter bytesRead;
+
+		public TileLoader(final Reader reader, final int imageIndex,
+			final int tileWidth, final int tileHeight,
+			final LRUCache<TileKey, Cell<?>> cache)
+		{
+			this.reader = reader;
+			this.imageIndex = imageIndex;
+			this.cache = cache;
+			meta = reader.getMetadata().get(imageIndex);
+			type = createType(meta.getPixelType());
+			bytesPerPixel = FormatTools.getBytesPerPixel(meta.getPixelType());
+			floatingPoint = FormatTools.isFloatingPoint(meta.getPixelType());
+			littleEndian = meta.isLittleEndian();
+			planarCount = meta.getPlanarAxisCount();
+			nonPlanarLengths = meta.getAxesLengthsNonPlanar();
+
+			final long[] dims = meta.getAxesLengths();
+			final List<CalibratedAxis> axes = meta.getAxes();
+			final int tileW = tileWidth > 0 ? tileWidth : //
+				Math.max(256, (int) reader.getOptimalTileWidth(imageIndex));
+			final int tileH = tileHeight > 0 ? tileHeight : //
+				Math.max(256, (int) reader.getOptimalTileHeight(imageIndex));
+			final int[] cellDims = new int[dims.length];
+			for (int d = 0; d < dims.length; d++) {
+				if (d >= planarCount) cellDims[d] = 1;
+				else {
+					final AxisType axis = axes.get(d).type();
+					final long tile = axis == Axes.X ? tileW : //
+						axis == Axes.Y ? tileH : dims[d];
+					cellDims[d] = (int) Math.min(tile, dims[d]);
+				}
+			}
+			grid = new CellGrid(dims, cellDims);
+			final long[] gridDims = grid.getGridDimensions();
+			long tiles = 1;
+			for (int d = 0; d < planarCount; d++) {
+				tiles *= gridDims[d];
+			}
+			tilesPerPlane = tiles;
+		}
+
+		// -- Get methods --
+
+		@Override
+		public Cell<ArrayDataAccess<?>> get(final long index) {
+			if (prefetcher != null) prefetcher.accessed(img, index);
+			return fetch(index);
+		}
+
+		// -- Helper methods --
+
+		private Cell<ArrayDataAccess<?>> fetch(final long index) {
+			try {
+				@SuppressWarnings("unchecked")
+				final Cell<ArrayDataAccess<?>> cell = (Cell<ArrayDataAccess<?>>) cache
+					.get(key(index), key -> read(index));
+				return cell;
+			}
+			catch (final ExecutionException exc) {
+				final Throwable cause = exc.getCause();
+				if (cause instanceof IOException) {
+					throw new UncheckedIOException((IOException) cause);
+				}
+				throw new IllegalStateException("Cannot read " + key(index) + " of " +
+					meta.getName(), cause);
+			}
+		}
+
+		private TileKey key(final long index) {
+			final int[] cellDims = new int[grid.numDimensions()];
+			grid.getCellDimensions(index, new long[cellDims.length], cellDims);
+			long pixels = 1;
+			for (final int d : cellDims) {
+				pixels *= d;
+			}
+			return new TileKey(id, index, pixels * bytesPerPixel);
+		}
+
+		private Cell<ArrayDataAccess<?>> read(final long index)
+			throws FormatException, IOException
+		{
+			final int n = grid.numDimensions();
+			final long[] min = new long[n];
+			final int[] dims = new int[n];
+			grid.getCellDimensions(index, min, dims);
+
+			final long[] planeMin = new long[planarCount];
+			final long[] planeLengths = new long[planarCount];
+			for (int d = 0; d < planarCount; d++) {
+				planeMin[d] = min[d];
+				planeLengths[d] = dims[d];
+			}
+			final long[] position = new long[n - planarCount];
+			for (int d = planarCount; d < n; d++) {
+				position[d - planarCount] = min[d];
+			}
+			final long planeIndex = position.length == 0 ? 0 : FormatTools
+				.positionToRaster(nonPlanarLengths, position);
+
+			final Plane plane;
+			synchronized (reader) {
+				plane = reader.openPlane(imageIndex, planeIndex, planeMin,
+					planeLengths);
+			}
+			final Counter counter = bytesRead;
+			if (counter != null) counter.add(plane.getBytes().length);
+			final Object array = Bytes.makeArray(plane.getBytes(), bytesPerPixel,
+				floatingPoint, littleEndian);
+			return new Cell<>(dims, min, toAccess(array));
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T extends RealType<T> & NativeType<T>> T createType(
+			final int pixelType)
+		{
+			switch (pixelType) {
+				case FormatTools.INT8:
+					return (T) new ByteType();
+				case FormatTools.UINT8:
+					return (T) new UnsignedByteType();
+				case FormatTools.INT16:
+					return (T) new ShortType();
+				case FormatTools.UINT16:
+					return (T) new UnsignedShortType();
+				case FormatTools.INT32:
+					return (T) new IntType();
+				case FormatTools.UINT32:
+					return (T) new UnsignedIntType();
+				case FormatTools.FLOAT:
+					return (T) new FloatType();
+				case FormatTools.DOUBLE:
+					return (T) new DoubleType();
+				default:
+					throw new IllegalArgumentException("Unsupported pixel type: " +
+						FormatTools.getPixelTypeString(pixelType));
+			}
+		}
+
+		private static ArrayDataAccess<?> toAccess(final Object array) {
+			if (array instanceof byte[]) return new ByteArray((byte[]) array);
+			if (array instanceof short[]) return new ShortArray((short[]) array);
+			if (array instanceof int[]) return new IntArray((int[]) array);
+			if (array instanceof long[]) return new LongArray((long[]) array);
+			if (array instanceof float[]) return new FloatArray((float[]) array);
+			if (array instanceof double[]) return new DoubleArray((double[]) array);
+			throw new IllegalArgumentException("Unsupported array: " + array);
+		}
+	}
+
+}
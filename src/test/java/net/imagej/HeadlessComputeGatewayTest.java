@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.scif.services.DatasetIOService;
+import io.scif.services.FormatService;
+import io.scif.services.InitializeService;
+import io.scif.services.TranslatorService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.imagej.animation.AnimationService;
+import net.imagej.display.ImageDisplayService;
+import net.imagej.display.OverlayService;
+import net.imagej.display.WindowService;
+import net.imagej.ops.OpService;
+import net.imagej.updater.UpdateService;
+import net.imagej.updater.UploaderService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.display.DisplayService;
+import org.scijava.service.Service;
+
+/**
+ * Tests that {@link HeadlessComputeGateway} has exactly the services of its
+ * profile.
+ */
+public class HeadlessComputeGatewayTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new HeadlessComputeGateway();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testServices() {
+		final Context ctx = ij.getContext();
+		final ArrayList<Class<? extends Service>> services = new ArrayList<>();
+		services.add(net.imagej.DefaultDatasetService.class);
+		services.add(net.imagej.ops.DefaultNamespaceService.class);
+		services.add(net.imagej.ops.DefaultOpMatchingService.class);
+		services.add(net.imagej.ops.DefaultOpService.class);
+		for (final Class<? extends Service> c : services) {
+			final Service s = ctx.service(c);
+			assertSame(c, s.getClass());
+		}
+		assertNotNull(ctx.getService(DatasetIOService.class));
+		assertNotNull(ctx.getService(FormatService.class));
+		assertNotNull(ctx.getService(InitializeService.class));
+		assertNotNull(ctx.getService(TranslatorService.class));
+		assertSame(ctx.getService(OpService.class), ij.op());
+	}
+
+	@Test
+	public void testExactImageJServices() {
+		// NB: The SciJava and SCIFIO services below these depend on the versions
+		// of those libraries; the ImageJ ones are what the profile controls.
+		final Set<String> expected = new HashSet<>(Arrays.asList(
+			"net.imagej.DefaultDatasetService",
+			"net.imagej.ops.DefaultNamespaceService",
+			"net.imagej.ops.DefaultOpMatchingService",
+			"net.imagej.ops.DefaultOpService"));
+		final Set<String> actual = new HashSet<>();
+		for (final Service s : ij.getContext().getServiceIndex().getAll()) {
+			final String name = s.getClass().getName();
+			if (name.startsWith("net.imagej.")) actual.add(name);
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testExcludedServices() {
+		final Context ctx = ij.getContext();
+		final ArrayList<Class<? extends Service>> excluded = new ArrayList<>();
+		excluded.add(AnimationService.class);
+		excluded.add(DisplayService.class);
+		excluded.add(ImageDisplayService.class);
+		excluded.add(OverlayService.class);
+		excluded.add(UpdateService.class);
+		excluded.add(UploaderService.class);
+		excluded.add(WindowService.class);
+		for (final Class<? extends Service> c : excluded) {
+			assertNull(c.getName(), ctx.getService(c));
+		}
+	}
+
+}
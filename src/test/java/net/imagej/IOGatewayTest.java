@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.scif.services.DatasetIOService;
+import io.scif.services.FormatService;
+import io.scif.services.InitializeService;
+import io.scif.services.TranslatorService;
+
+import java.util.ArrayList;
+
+import net.imagej.animation.AnimationService;
+import net.imagej.display.ImageDisplayService;
+import net.imagej.display.OverlayService;
+import net.imagej.display.WindowService;
+import net.imagej.ops.OpService;
+import net.imagej.updater.UpdateService;
+import net.imagej.updater.UploaderService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.display.DisplayService;
+import org.scijava.io.IOService;
+import org.scijava.service.Service;
+
+/**
+ * Tests that {@link IOGateway} has exactly the services of its profile.
+ */
+public class IOGatewayTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new IOGateway();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testServices() {
+		final Context ctx = ij.getContext();
+		final Service s = ctx.service(net.imagej.DefaultDatasetService.class);
+		assertSame(net.imagej.DefaultDatasetService.class, s.getClass());
+		assertNotNull(ctx.getService(DatasetIOService.class));
+		assertNotNull(ctx.getService(FormatService.class));
+		assertNotNull(ctx.getService(InitializeService.class));
+		assertNotNull(ctx.getService(TranslatorService.class));
+		assertNotNull(ctx.getService(IOService.class));
+		assertSame(ctx.getService(DatasetIOService.class), //
+			ij.scifio().datasetIO());
+	}
+
+	@Test
+	public void testExcludedServices() {
+		final Context ctx = ij.getContext();
+		final ArrayList<Class<? extends Service>> excluded = new ArrayList<>();
+		excluded.add(AnimationService.class);
+		excluded.add(DisplayService.class);
+		excluded.add(ImageDisplayService.class);
+		excluded.add(OpService.class);
+		excluded.add(OverlayService.class);
+		excluded.add(UpdateService.class);
+		excluded.add(UploaderService.class);
+		excluded.add(WindowService.class);
+		for (final Class<? extends Service> c : excluded) {
+			assertNull(c.getName(), ctx.getService(c));
+		}
+	}
+
+}
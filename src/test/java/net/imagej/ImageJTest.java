@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.services.DatasetIOService;
+
+import java.util.Arrays;
+
+import net.imagej.app.ToplevelImageJApp;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+import net.imagej.ops.OpService;
+
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.display.DisplayService;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceIndex;
+import org.scijava.ui.UIService;
+
+/**
+ * Tests {@link ImageJ}.
+ */
+public class ImageJTest {
+
+	/** Tests that a lazy gateway creates services only when requested. */
+	@Test
+	public void testLazyServices() {
+		final ImageJ ij = new ImageJ(true);
+		try {
+			assertTrue(ij.isLazy());
+			final ServiceIndex index = ij.getContext().getServiceIndex();
+			assertNull(index.getService(OpService.class));
+			assertNull(index.getService(DatasetService.class));
+
+			final OpService op = ij.op();
+			assertNotNull(op);
+			assertSame(op, index.getService(OpService.class));
+			assertSame(op, ij.op());
+
+			assertNotNull(ij.dataset());
+			assertNotNull(ij.scifio().datasetIO());
+			assertSame(ij.scifio().datasetIO(), ij.get(DatasetIOService.class));
+			assertSame(ToplevelImageJApp.class, ij.app().getApp().getClass());
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	/** Tests that a lazy gateway starts up without the heavyweight services. */
+	@Test
+	public void testLazyStartup() {
+		final ImageJ lazy = new ImageJ(true);
+		final ImageJ eager = new ImageJ();
+		try {
+			final ServiceIndex lazyIndex = lazy.getContext().getServiceIndex();
+			final ServiceIndex eagerIndex = eager.getContext().getServiceIndex();
+			assertNotNull(lazyIndex.getService(EventService.class));
+			for (final Class<? extends Service> c : Arrays.asList(OpService.class,
+				DatasetService.class, DisplayService.class, UIService.class,
+				DatasetIOService.class))
+			{
+				assertNull(c.getName(), lazyIndex.getService(c));
+				assertNotNull(c.getName(), eagerIndex.getService(c));
+			}
+			assertTrue(lazyIndex.size() < eagerIndex.size());
+		}
+		finally {
+			lazy.getContext().dispose();
+			eager.getContext().dispose();
+		}
+	}
+
+	/**
+	 * Tests that an op with a required service parameter runs against a lazy
+	 * gateway, which creates the service when the op is injected.
+	 */
+	@Test
+	public void testLazyInjection() {
+		final ImageJ ij = new ImageJ(true);
+		try {
+			final ServiceIndex index = ij.getContext().getServiceIndex();
+			assertNull(index.getService(DatasetService.class));
+
+			final Object result = ij.op().run("test.datasets");
+			assertNotNull(result);
+			assertSame(index.getService(DatasetService.class), result);
+			assertSame(ij.dataset(), result);
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	// -- Helper classes --
+
+	/** An op which returns its injected {@link DatasetService}. */
+	@Plugin(type = Op.class, name = "test.datasets")
+	public static class DatasetsOp extends AbstractOp {
+
+		@Parameter
+		private DatasetService datasetService;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private DatasetService out;
+
+		@Override
+		public void run() {
+			out = datasetService;
+		}
+	}
+
+}
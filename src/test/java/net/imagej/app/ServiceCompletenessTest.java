@@ -79,23 +79,35 @@ public void testServices() {
 		services.add(net.imagej.DefaultImgPlusService.class);
 		services.add(net.imagej.animation.DefaultAnimationService.class);
 		services.add(net.imagej.autoscale.DefaultAutoscaleService.class);
+		services.add(net.imagej.chunk.DefaultChunkService.class);
+		services.add(net.imagej.dispatch.DefaultOpDispatchService.class);
 		services.add(net.imagej.display.DefaultImageDisplayService.class);
 		services.add(net.imagej.display.DefaultOverlayService.class);
 		services.add(net.imagej.display.DefaultWindowService.class);
 		services.add(net.imagej.display.DefaultZoomService.class);
 		services.add(net.imagej.display.DummyScreenCaptureService.class);
+		services.add(net.imagej.frame.DefaultFrameRenderService.class);
+		services.add(net.imagej.kernel.DefaultPixelKernelService.class);
 //		services.add(net.imagej.legacy.LegacyService.class);
 		services.add(net.imagej.legacy.display.LegacyImageDisplayService.class);
 		services.add(net.imagej.lut.DefaultLUTService.class);
 		services.add(net.imagej.measure.DefaultMeasurementService.class);
 		services.add(net.imagej.measure.DefaultStatisticsService.class);
+		services.add(net.imagej.memo.DefaultMemoService.class);
+		services.add(net.imagej.metrics.DefaultMetricsService.class);
+		services.add(net.imagej.mmap.DefaultMappedDatasetService.class);
 		services.add(net.imagej.operator.DefaultCalculatorService.class);
 		services.add(net.imagej.ops.DefaultNamespaceService.class);
 		services.add(net.imagej.ops.DefaultOpMatchingService.class);
 		services.add(net.imagej.ops.DefaultOpService.class);
+		services.add(net.imagej.parallel.DefaultParallelOpService.class);
+		services.add(net.imagej.pyramid.DefaultPyramidService.class);
 		services.add(net.imagej.render.DummyRenderingService.class);
 		services.add(net.imagej.sampler.DefaultSamplerService.class);
+		services.add(net.imagej.spatial.DefaultOverlayIndexService.class);
+		services.add(net.imagej.stats.DefaultStreamingStatsService.class);
 		services.add(net.imagej.threshold.DefaultThresholdService.class);
+		services.add(net.imagej.tile.DefaultTileService.class);
 		services.add(net.imagej.types.DefaultDataTypeService.class);
 		services.add(net.imagej.ui.DefaultImageJUIService.class);
 		services.add(net.imagej.ui.awt.AWTRenderingService.class);
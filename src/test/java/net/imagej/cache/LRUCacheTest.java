@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link LRUCache}.
+ */
+public class LRUCacheTest {
+
+	@Test
+	public void testHitsAndMisses() throws ExecutionException {
+		final LRUCache<String, String> cache = new LRUCache<>(10);
+		final AtomicInteger loads = new AtomicInteger();
+		final LRUCache.Loader<String, String> loader = key -> {
+			loads.incrementAndGet();
+			return key.toUpperCase();
+		};
+		assertEquals("A", cache.get("a", loader));
+		assertEquals("A", cache.get("a", loader));
+		assertEquals("B", cache.get("b", loader));
+		assertEquals(2, loads.get());
+
+		final CacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(2, stats.getLoads());
+		assertEquals(2, stats.getSize());
+		assertEquals(1.0 / 3, stats.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testEviction() throws ExecutionException {
+		final LRUCache<Integer, byte[]> cache = new LRUCache<>(100, (key,
+			value) -> value.length);
+		final LRUCache.Loader<Integer, byte[]> loader = key -> new byte[40];
+		cache.get(1, loader);
+		cache.get(2, loader);
+		cache.get(1, loader); // 1 is now more recently used than 2
+		cache.get(3, loader);
+
+		assertTrue(cache.containsKey(1));
+		assertFalse(cache.containsKey(2));
+		assertTrue(cache.containsKey(3));
+		assertEquals(80, cache.getWeight());
+		assertEquals(1, cache.getStats().getEvictions());
+
+		cache.setMaxWeight(40);
+		assertEquals(1, cache.size());
+		assertTrue(cache.containsKey(3));
+	}
+
+	@Test
+	public void testInvalidate() {
+		final LRUCache<Integer, String> cache = new LRUCache<>(10);
+		for (int i = 0; i < 6; i++) {
+			cache.put(i, "" + i);
+		}
+		cache.invalidate(0);
+		assertNull(cache.getIfPresent(0));
+		cache.invalidateIf(key -> key % 2 == 0);
+		assertEquals(3, cache.size());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testLoadFailure() {
+		final LRUCache<String, String> cache = new LRUCache<>(10);
+		try {
+			cache.get("x", key -> {
+				throw new IOException("broken");
+			});
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IOException);
+		}
+		assertFalse(cache.containsKey("x"));
+		assertEquals(1, cache.getStats().getLoadFailures());
+	}
+
+}
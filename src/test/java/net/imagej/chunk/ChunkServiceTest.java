@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ChunkService}.
+ */
+public class ChunkServiceTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final Dataset dataset = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 50, 40, 6 }, "volume", axes);
+		fill(dataset);
+		final File dir = new File(folder.getRoot(), "volume.chunks");
+		ij.chunk().save(dataset, dir, new int[] { 16, 16, 4 });
+
+		assertTrue(new File(dir, ChunkedMetadata.ATTRIBUTES_FILE).exists());
+		// 4 x 3 x 2 chunks, each in its own file
+		assertTrue(new File(dir, "3/2/1").isFile());
+
+		final Dataset opened = ij.chunk().open(dir);
+		assertEquals("volume", opened.getName());
+		assertEquals(Axes.Z, opened.axis(2).type());
+		assertTrue(opened.getType() instanceof UnsignedShortType);
+		final long[] dims = new long[3];
+		opened.dimensions(dims);
+		assertArrayEquals(new long[] { 50, 40, 6 }, dims);
+
+		final Cursor<? extends RealType<?>> c = opened.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			assertEquals(value(c.getLongPosition(0), c.getLongPosition(1), c
+				.getLongPosition(2)), c.get().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testLazyAndSparse() throws IOException {
+		final Dataset dataset = ij.dataset().create(new FloatType(), new long[] {
+			64, 64, 4 }, "sparse", axes);
+		final RandomAccess<? extends RealType<?>> ra = dataset.randomAccess();
+		ra.setPosition(new long[] { 40, 50, 3 });
+		ra.get().setReal(2.5);
+		final File dir = new File(folder.getRoot(), "sparse.chunks");
+		ij.chunk().setCompressionLevel(0);
+		ij.chunk().save(dataset, dir, new int[] { 32, 32, 1 });
+
+		// all-zero chunks are not written
+		assertFalse(new File(dir, "0/0/0").exists());
+		assertTrue(new File(dir, "1/1/3").isFile());
+		assertEquals(32 * 32 * 4, new File(dir, "1/1/3").length());
+
+		ij.tile().getCache().resetStats();
+		final Dataset opened = ij.chunk().open(dir);
+		final RandomAccess<? extends RealType<?>> in = opened.randomAccess();
+		in.setPosition(new long[] { 40, 50, 3 });
+		assertEquals(2.5, in.get().getRealDouble(), 0);
+		in.setPosition(new long[] { 41, 50, 3 });
+		assertEquals(0, in.get().getRealDouble(), 0);
+		// only the accessed chunk was read
+		assertEquals(1, ij.tile().getStats().getLoads());
+	}
+
+	@Test
+	public void testOverwriteSmaller() throws IOException {
+		final File dir = new File(folder.getRoot(), "volume.chunks");
+		final Dataset large = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 50, 40, 6 }, "large", axes);
+		fill(large);
+		ij.chunk().save(large, dir, new int[] { 16, 16, 4 });
+		assertTrue(new File(dir, "3/2/1").isFile());
+
+		final Dataset small = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 20, 20, 4 }, "small", axes);
+		fill(small);
+		ij.chunk().save(small, dir, new int[] { 16, 16, 4 });
+
+		// chunks outside the new 2 x 2 x 1 grid are gone
+		assertTrue(new File(dir, "1/1/0").isFile());
+		assertFalse(new File(dir, "3").exists());
+		assertFalse(new File(dir, "0/2").exists());
+		assertFalse(new File(dir, "0/0/1").exists());
+		assertTrue(new File(dir, ChunkedMetadata.ATTRIBUTES_FILE).exists());
+	}
+
+	@Test
+	public void testCorruptChunk() throws IOException {
+		final Dataset dataset = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 50, 40, 6 }, "volume", axes);
+		fill(dataset);
+		final File dir = new File(folder.getRoot(), "volume.chunks");
+		ij.chunk().save(dataset, dir, new int[] { 16, 16, 4 });
+
+		final File chunk = new File(dir, "3/2/1");
+		final byte[] stored = Files.readAllBytes(chunk.toPath());
+		Files.write(chunk.toPath(), Arrays.copyOf(stored, stored.length / 2));
+
+		final Dataset opened = ij.chunk().open(dir);
+		final RandomAccess<? extends RealType<?>> ra = opened.randomAccess();
+		ra.setPosition(new long[] { 0, 0, 0 });
+		assertEquals(value(0, 0, 0), ra.get().getRealDouble(), 0);
+		ra.setPosition(new long[] { 48, 32, 4 });
+		try {
+			ra.get().getRealDouble();
+			fail("A truncated chunk should not read as zeros");
+		}
+		catch (final UncheckedIOException exc) {
+			// expected
+		}
+	}
+
+	// -- Helper methods --
+
+	private static double value(final long x, final long y, final long z) {
+		return (x * 7 + y * 13 + z * 1000) % 65536;
+	}
+
+	private void fill(final Dataset dataset) {
+		final Cursor<? extends RealType<?>> c = dataset.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(value(c.getLongPosition(0), c.getLongPosition(1), c
+				.getLongPosition(2)));
+		}
+	}
+
+}
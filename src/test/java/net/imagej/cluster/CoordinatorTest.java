@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link Coordinator}, with real worker processes on this host.
+ */
+public class CoordinatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Coordinator coordinator;
+
+	@Before
+	public void setUp() {
+		coordinator = new Coordinator(2);
+	}
+
+	@After
+	public void tearDown() {
+		coordinator.close();
+	}
+
+	@Test
+	public void testRun() throws InterruptedException {
+		final List<Task> tasks = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			tasks.add(Task.op("math.add", i, 100));
+		}
+		final List<TaskResult> results = coordinator.run(tasks);
+		assertEquals(tasks.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			final TaskResult result = results.get(i);
+			assertTrue(result.toString(), result.isSuccess());
+			assertEquals(String.valueOf(i + 100), result.getOutput());
+			assertEquals(1, result.getAttempts());
+		}
+
+		// workers stay warm across runs
+		final int starts = coordinator.getStartCount();
+		assertTrue(coordinator.run(Arrays.asList(Task.op("math.add", 1, 2))).get(
+			0).isSuccess());
+		assertEquals(starts, coordinator.getStartCount());
+	}
+
+	@Test
+	public void testTaskErrorIsNotRetried() throws InterruptedException {
+		final TaskResult result = coordinator.run(Arrays.asList(Task.op(
+			"no.such.op", 1))).get(0);
+		assertFalse(result.isSuccess());
+		assertEquals(1, result.getAttempts());
+	}
+
+	@Test
+	public void testRecoversFromWorkerFailure() throws IOException,
+		InterruptedException
+	{
+		final File marker = new File(folder.getRoot(), "crashed");
+		final List<Task> tasks = new ArrayList<>();
+		tasks.add(Task.op("test.crashOnce", marker.getPath()));
+		for (int i = 0; i < 4; i++) {
+			tasks.add(Task.op("math.add", i, i));
+		}
+		final List<TaskResult> results = coordinator.run(tasks);
+
+		assertTrue(marker.exists());
+		assertTrue(results.get(0).toString(), results.get(0).isSuccess());
+		assertEquals("recovered", results.get(0).getOutput());
+		assertEquals(2, results.get(0).getAttempts());
+		for (int i = 1; i < results.size(); i++) {
+			assertEquals(String.valueOf(2 * (i - 1)), results.get(i).getOutput());
+		}
+		assertTrue(coordinator.getStartCount() > 1);
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() throws InterruptedException {
+		coordinator.setMaxAttempts(2);
+		final List<TaskResult> results = coordinator.run(Arrays.asList(Task.op(
+			"test.crash"), Task.op("math.add", 1, 1)));
+		assertFalse(results.get(0).isSuccess());
+		assertEquals(2, results.get(0).getAttempts());
+		assertEquals("2", results.get(1).getOutput());
+	}
+
+	@Test
+	public void testTaskTimeout() throws InterruptedException {
+		coordinator.setMaxAttempts(1);
+		coordinator.setTaskTimeout(2000);
+		final TaskResult result = coordinator.run(Arrays.asList(Task.op(
+			"test.hang"))).get(0);
+		assertFalse(result.isSuccess());
+		assertTrue(result.getError(), result.getError().startsWith(
+			"Worker failed"));
+	}
+
+	@Test
+	public void testTiles() {
+		final List<Task> tasks = Task.forTiles("py", "#@ int x\n#@ int y", 250,
+			100, 100, 100);
+		assertEquals(3, tasks.size());
+		assertEquals("SCRIPT py 2 x=200 y=0 width=50 height=100\n" +
+			"#@ int x\n#@ int y", tasks.get(2).getRequest());
+	}
+
+	@Test
+	public void testFiles() {
+		final List<Task> tasks = Task.forFiles("py", "print(input)", "input",
+			Arrays.asList(new File("a b.tif")));
+		assertEquals("SCRIPT py 1 \"input=a b.tif\"\nprint(input)", tasks.get(0)
+			.getRequest());
+	}
+
+	// -- Helper classes --
+
+	/** Kills its worker, unless the marker file shows it did so before. */
+	@Plugin(type = Op.class, name = "test.crashOnce")
+	public static class CrashOnce extends AbstractOp {
+
+		@Parameter
+		private String marker;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private String result;
+
+		@Override
+		public void run() {
+			try {
+				if (new File(marker).createNewFile()) Runtime.getRuntime().halt(1);
+			}
+			catch (final IOException exc) {
+				throw new IllegalStateException(exc);
+			}
+			result = "recovered";
+		}
+	}
+
+	/** Kills its worker. */
+	@Plugin(type = Op.class, name = "test.crash")
+	public static class Crash extends AbstractOp {
+
+		@Override
+		public void run() {
+			Runtime.getRuntime().halt(1);
+		}
+	}
+
+	/** Never finishes. */
+	@Plugin(type = Op.class, name = "test.hang")
+	public static class Hang extends AbstractOp {
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					Thread.sleep(1000);
+				}
+				catch (final InterruptedException exc) {
+					// keep hanging
+				}
+			}
+		}
+	}
+
+}
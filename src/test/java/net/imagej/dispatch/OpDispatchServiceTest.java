@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.dispatch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import net.imagej.ImageJ;
+import net.imagej.cache.CacheStats;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.event.PluginsAddedEvent;
+
+/**
+ * Tests {@link OpDispatchService}.
+ */
+public class OpDispatchServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testCachedResolution() {
+		assertEquals(5, ((Number) ij.opDispatch().run("math.add", 2, 3))
+			.intValue());
+		assertEquals(9, ((Number) ij.opDispatch().run("math.add", 4, 5))
+			.intValue());
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(new byte[] { 1,
+			2, 3, 6 }, 2, 2);
+		assertEquals(3, ((RealType<?>) ij.opDispatch().run("stats.mean", img))
+			.getRealDouble(), 0);
+		assertEquals(3, ((RealType<?>) ij.opDispatch().run("stats.mean", img))
+			.getRealDouble(), 0);
+
+		final CacheStats stats = ij.opDispatch().getStats();
+		assertEquals(2, stats.getHits());
+		assertEquals(2, stats.getSize());
+	}
+
+	@Test
+	public void testSignatures() {
+		ij.opDispatch().run("math.add", 2, 3);
+		// different argument types resolve separately
+		assertEquals(2.5, ((Number) ij.opDispatch().run("math.add", 1.0, 1.5))
+			.doubleValue(), 0);
+		assertEquals(2, ij.opDispatch().getStats().getSize());
+	}
+
+	@Test
+	public void testElementTypes() {
+		final Img<UnsignedByteType> bytes = ArrayImgs.unsignedBytes(new byte[] {
+			1, 2, 3, 6 }, 2, 2);
+		final Img<FloatType> floats = ArrayImgs.floats(new float[] { 0.5f, 1, 1,
+			1.5f }, 2, 2);
+		assertEquals(3, ((RealType<?>) ij.opDispatch().run("stats.mean", bytes))
+			.getRealDouble(), 0);
+		// same image class, different element type: resolved separately
+		assertEquals(1, ((RealType<?>) ij.opDispatch().run("stats.mean", floats))
+			.getRealDouble(), 0);
+		assertEquals(0, ij.opDispatch().getStats().getHits());
+		assertEquals(2, ij.opDispatch().getStats().getSize());
+	}
+
+	/** Tests that cached ops still pad an omitted optional input. */
+	@Test
+	public void testOmittedOptional() {
+		assertEquals("a", ij.opDispatch().run("test.optional", "a"));
+		assertEquals("b", ij.opDispatch().run("test.optional", "b"));
+		assertEquals(1, ij.opDispatch().getStats().getHits());
+
+		assertEquals("xa", ij.opDispatch().run("test.optional", "x", "a"));
+		assertEquals("yb", ij.opDispatch().run("test.optional", "y", "b"));
+		assertEquals(2, ij.opDispatch().getStats().getHits());
+		assertEquals(2, ij.opDispatch().getStats().getSize());
+	}
+
+	@Test
+	public void testInvalidation() {
+		ij.opDispatch().run("math.add", 2, 3);
+		assertEquals(1, ij.opDispatch().getStats().getSize());
+		ij.event().publish(new PluginsAddedEvent(Collections
+			.<PluginInfo<?>> emptyList()));
+		assertEquals(0, ij.opDispatch().getStats().getSize());
+	}
+
+	// -- Helper classes --
+
+	/** An op whose optional input comes before its required one. */
+	@Plugin(type = Op.class, name = "test.optional")
+	public static class OptionalOp extends AbstractOp {
+
+		@Parameter(required = false)
+		private String prefix;
+
+		@Parameter
+		private String text;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private String out;
+
+		@Override
+		public void run() {
+			out = prefix == null ? text : prefix + text;
+		}
+	}
+
+}
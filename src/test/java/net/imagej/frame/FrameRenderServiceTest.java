@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.frame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import net.imagej.ImageJ;
+import net.imglib2.Cursor;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link FrameRenderService}.
+ */
+public class FrameRenderServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testGrayscale() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(new byte[] { 0,
+			(byte) 255, (byte) 128 }, 3, 1);
+		final FrameRenderer renderer = ij.frameRender().createRenderer(img);
+		assertTrue(renderer.isDirect());
+		final int[] frame = renderer.render(0, 0);
+		assertEquals(0xff000000, frame[0]);
+		assertEquals(0xffffffff, frame[1]);
+		assertEquals(0xff808080, frame[2]);
+		renderer.release(frame);
+	}
+
+	@Test
+	public void testDirectMatchesGeneric() {
+		final Img<UnsignedShortType> planar = PlanarImgs.unsignedShorts(20, 10, 3,
+			4);
+		final Img<UnsignedShortType> cells = new CellImgFactory<>(
+			new UnsignedShortType(), 7).create(planar);
+		int v = 0;
+		final Cursor<UnsignedShortType> c = Views.flatIterable(cells).cursor();
+		for (final UnsignedShortType t : Views.flatIterable(planar)) {
+			t.set(v++ * 97 % 4000);
+			c.next().set(t);
+		}
+		final FrameRenderer direct = ij.frameRender().createRenderer(planar, 2);
+		final FrameRenderer generic = ij.frameRender().createRenderer(cells, 2);
+		assertTrue(direct.isDirect());
+		assertFalse(generic.isDirect());
+		assertEquals(3, direct.getChannelCount());
+
+		final ColorTable8 red = new ColorTable8(ramp(), new byte[256],
+			new byte[256]);
+		for (final FrameRenderer renderer : new FrameRenderer[] { direct,
+			generic })
+		{
+			renderer.setChannel(0, red, 0, 4000);
+			renderer.setChannel(1, new ColorTable8(), 100, 3000);
+		}
+		for (long t = 0; t < 4; t++) {
+			final long[] pos = { 0, 0, 0, t };
+			final int[] expected = new int[200];
+			final int[] actual = new int[200];
+			generic.render(pos, expected);
+			direct.render(pos, actual);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testDefaultTablesShared() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(4, 4, 2);
+		final FrameRenderer first = ij.frameRender().createRenderer(img, 2);
+		final FrameRenderer second = ij.frameRender().createRenderer(img, 2);
+		assertSame(first.getTable(0), first.getTable(1));
+		assertSame(first.getTable(0), second.getTable(0));
+	}
+
+	@Test
+	public void testPool() {
+		final FrameRenderer renderer = ij.frameRender().createRenderer(ArrayImgs
+			.floats(16, 16, 5));
+		final ArgbBufferPool pool = ij.frameRender().getBufferPool();
+		for (long z = 0; z < 5; z++) {
+			renderer.release(renderer.render(0, 0, z));
+		}
+		assertEquals(1, pool.getAllocations());
+		assertEquals(4, pool.getReuses());
+	}
+
+	@Test
+	public void testSteadyStateAllocatesNothing() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		final FrameRenderer renderer = ij.frameRender().createRenderer(PlanarImgs
+			.unsignedBytes(64, 64, 2, 10), 2);
+		final long[] pos = new long[4];
+		for (int i = 0; i < 100; i++) {
+			pos[3] = i % 10;
+			renderer.release(renderer.render(pos));
+		}
+
+		final int frames = 1000;
+		final long id = Thread.currentThread().getId();
+		final long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < frames; i++) {
+			pos[3] = i % 10;
+			renderer.release(renderer.render(pos));
+		}
+		final long allocated = threads.getThreadAllocatedBytes(id) - before;
+		assertEquals("bytes per frame", 0, allocated / frames);
+	}
+
+	// -- Helper methods --
+
+	private static byte[] ramp() {
+		final byte[] ramp = new byte[256];
+		for (int i = 0; i < ramp.length; i++) {
+			ramp[i] = (byte) i;
+		}
+		return ramp;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link PixelKernelService}.
+ */
+public class PixelKernelServiceTest {
+
+	private ImageJ ij;
+	private PixelKernelService kernels;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		kernels = ij.pixelKernel();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testAccelerated() {
+		assertTrue(kernels.isAccelerated(ArrayImgs.unsignedBytes(4, 4)));
+		assertTrue(kernels.isAccelerated(ArrayImgs.unsignedShorts(4, 4)));
+		assertTrue(kernels.isAccelerated(PlanarImgs.floats(4, 4, 3)));
+		assertTrue(kernels.isAccelerated(ArrayImgs.doubles(4, 4)));
+		assertFalse(kernels.isAccelerated(ArrayImgs.ints(4, 4)));
+		assertFalse(kernels.isAccelerated(Views.interval(ArrayImgs.floats(4, 4),
+			new long[] { 1, 1 }, new long[] { 2, 2 })));
+		assertFalse(kernels.isAccelerated(cellCopy(ArrayImgs.floats(4, 4))));
+
+		final Dataset dataset = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 4, 4 }, "test", new AxisType[] { Axes.X, Axes.Y });
+		assertTrue(kernels.isAccelerated(dataset));
+	}
+
+	@Test
+	public void testArithmetic() {
+		final Img<UnsignedByteType> in = ArrayImgs.unsignedBytes(17, 13, 3);
+		int v = 0;
+		for (final UnsignedByteType t : in) {
+			t.set(v++ % 256);
+		}
+		for (final PixelKernelService.Arithmetic op : PixelKernelService.Arithmetic
+			.values())
+		{
+			final Img<UnsignedByteType> fast = ArrayImgs.unsignedBytes(17, 13, 3);
+			kernels.arithmetic(op, in, 2.6, fast);
+			final Img<UnsignedByteType> generic = cellCopy(fast);
+			kernels.arithmetic(op, cellCopy(in), 2.6, generic);
+			assertSameValues(fast, generic);
+		}
+
+		// saturates instead of wrapping around
+		final Img<UnsignedByteType> out = ArrayImgs.unsignedBytes(17, 13, 3);
+		kernels.add(in, 100, out);
+		final Cursor<UnsignedByteType> c = Views.flatIterable(out).cursor();
+		c.jumpFwd(201);
+		assertEquals(255, c.get().get());
+	}
+
+	@Test
+	public void testConvert() {
+		final Img<FloatType> in = ArrayImgs.floats(new float[] { -10.5f, 0.4f,
+			0.5f, 254.5f, 300.7f, Float.NaN }, 6);
+		final Img<UnsignedByteType> fast = ArrayImgs.unsignedBytes(6);
+		kernels.convert(in, fast);
+		final Img<UnsignedByteType> generic = cellCopy(fast);
+		kernels.convert(cellCopy(in), generic);
+		assertSameValues(fast, generic);
+
+		final int[] expected = { 0, 0, 1, 255, 255, 0 };
+		final Cursor<UnsignedByteType> c = fast.cursor();
+		for (final int e : expected) {
+			assertEquals(e, c.next().get());
+		}
+	}
+
+	@Test
+	public void testStatistics() {
+		final Img<DoubleType> in = PlanarImgs.doubles(31, 7, 5);
+		double v = 0;
+		for (final DoubleType t : Views.flatIterable(in)) {
+			t.set(Math.sin(v++) * 100);
+		}
+		final PixelStatistics fast = kernels.statistics(in);
+		final PixelStatistics generic = kernels.statistics(cellCopy(in));
+		assertEquals(31 * 7 * 5, fast.getCount());
+		assertEquals(generic.getMin(), fast.getMin(), 0);
+		assertEquals(generic.getMax(), fast.getMax(), 0);
+		assertEquals(generic.getSum(), fast.getSum(), 0);
+		assertEquals(generic.getVariance(), fast.getVariance(), 0);
+
+		final PixelStatistics small = kernels.statistics(ArrayImgs.floats(
+			new float[] { 1, 2, 3, 6 }, 2, 2));
+		assertEquals(1, small.getMin(), 0);
+		assertEquals(6, small.getMax(), 0);
+		assertEquals(3, small.getMean(), 0);
+		assertEquals(14.0 / 3, small.getVariance(), 1e-12);
+	}
+
+	@Test
+	public void testConvolve() {
+		final Img<UnsignedShortType> in = PlanarImgs.unsignedShorts(23, 11, 4);
+		int v = 0;
+		for (final UnsignedShortType t : Views.flatIterable(in)) {
+			t.set(v++ * 37 % 65536);
+		}
+		final double[] kernel = { 0.25, 0.5, 0.25 };
+		for (int d = 0; d < in.numDimensions(); d++) {
+			final Img<FloatType> fast = PlanarImgs.floats(23, 11, 4);
+			kernels.convolve(in, kernel, d, fast);
+			final Img<FloatType> generic = cellCopy(fast);
+			kernels.convolve(cellCopy(in), kernel, d, generic);
+			assertSameValues(fast, generic);
+		}
+
+		// border pixels are repeated
+		final Img<FloatType> line = ArrayImgs.floats(new float[] { 4, 8, 0 }, 3);
+		final Img<FloatType> out = ArrayImgs.floats(3);
+		kernels.convolve(line, kernel, 0, out);
+		final Cursor<FloatType> c = out.cursor();
+		assertEquals(5, c.next().get(), 0);
+		assertEquals(5, c.next().get(), 0);
+		assertEquals(2, c.next().get(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShapeMismatch() {
+		kernels.convert(ArrayImgs.floats(4, 4), ArrayImgs.floats(4, 5));
+	}
+
+	// -- Helper methods --
+
+	/** Copies an image into a cell image, which is not accelerated. */
+	private static <T extends NativeType<T>> Img<T> cellCopy(final Img<T> img) {
+		final Img<T> copy = new CellImgFactory<>(img.firstElement()
+			.createVariable(), 5).create(img);
+		final Cursor<T> c = Views.flatIterable(copy).cursor();
+		for (final T t : Views.flatIterable(img)) {
+			c.next().set(t);
+		}
+		return copy;
+	}
+
+	private static void assertSameValues(
+		final RandomAccessibleInterval<? extends RealType<?>> expected,
+		final RandomAccessibleInterval<? extends RealType<?>> actual)
+	{
+		final Cursor<? extends RealType<?>> e = Views.flatIterable(expected)
+			.cursor();
+		final Cursor<? extends RealType<?>> a = Views.flatIterable(actual)
+			.cursor();
+		while (e.hasNext()) {
+			assertEquals(e.next().getRealDouble(), a.next().getRealDouble(), 0);
+		}
+	}
+
+}
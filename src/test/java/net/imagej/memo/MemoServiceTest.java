@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.memo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.cache.CacheStats;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link MemoService}.
+ */
+public class MemoServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testImage() {
+		final Img<FloatType> img = ArrayImgs.floats(new float[] { 1, 2, 3, 4 },
+			2, 2);
+		final Object mean = ij.memo().run("stats.mean", img);
+		assertSame(mean, ij.memo().run("stats.mean", img));
+		// an equal image hits, too
+		assertSame(mean, ij.memo().run("stats.mean", ArrayImgs.floats(
+			new float[] { 1, 2, 3, 4 }, 2, 2)));
+
+		img.firstElement().set(5);
+		final Object changed = ij.memo().run("stats.mean", img);
+		assertNotSame(mean, changed);
+		assertEquals(3.5, ((RealType<?>) changed).getRealDouble(), 1e-9);
+
+		final CacheStats stats = ij.memo().getStats();
+		assertEquals(2, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(0.5, stats.getHitRate(), 0);
+	}
+
+	@Test
+	public void testParameters() {
+		final Object sum = ij.memo().run("math.add", 1, 2);
+		assertSame(sum, ij.memo().run("math.add", 1, 2));
+		assertNotSame(sum, ij.memo().run("math.add", 1, 3));
+		assertNotSame(sum, ij.memo().run("math.subtract", 1, 2));
+	}
+
+	@Test
+	public void testDatasetVersion() {
+		final Dataset dataset = ij.dataset().create(new FloatType(), new long[] {
+			4, 4 }, "memo", new AxisType[] { Axes.X, Axes.Y });
+		final Object mean = ij.memo().run("stats.mean", dataset);
+		assertSame(mean, ij.memo().run("stats.mean", dataset));
+
+		// publishes a DatasetUpdatedEvent
+		dataset.update();
+		assertNotSame(mean, ij.memo().run("stats.mean", dataset));
+
+		final Object again = ij.memo().run("stats.mean", dataset);
+		ij.memo().touch(dataset);
+		assertNotSame(again, ij.memo().run("stats.mean", dataset));
+	}
+
+	@Test
+	public void testIdentity() {
+		final List<String> list = new ArrayList<>();
+		final Object result = ij.memo().run("test.wrap", list);
+		assertSame(result, ij.memo().run("test.wrap", list));
+		// an equal but distinct object is not the same input
+		assertNotSame(result, ij.memo().run("test.wrap", new ArrayList<String>()));
+	}
+
+	@Test
+	public void testDisabled() {
+		ij.memo().setEnabled(false);
+		final Img<FloatType> img = ArrayImgs.floats(2, 2);
+		assertNotSame(ij.memo().run("stats.mean", img), ij.memo().run(
+			"stats.mean", img));
+		assertEquals(0, ij.memo().getStats().getMisses());
+	}
+
+	// -- Helper classes --
+
+	/** Wraps its input into a new array. */
+	@Plugin(type = Op.class, name = "test.wrap")
+	public static class Wrap extends AbstractOp {
+
+		@Parameter
+		private List<?> input;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private Object[] result;
+
+		@Override
+		public void run() {
+			result = new Object[] { input };
+		}
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link MetricsService}.
+ */
+public class MetricsServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private MetricsService metrics;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		metrics = ij.metrics();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testCounter() throws InterruptedException {
+		final Counter counter = metrics.counter("test.events");
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					metrics.counter("test.events").increment();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, counter.get());
+		assertEquals(40000, metrics.snapshot().get("test.events"), 0);
+	}
+
+	@Test
+	public void testHistogram() {
+		final LatencyHistogram histogram = metrics.histogram("test.latency");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(), 0);
+		assertEquals(1000, histogram.getMax());
+		// NB: Percentiles are accurate to within one bucket, i.e. 12.5%.
+		assertEquals(500, histogram.getPercentile(50), 500 / 8);
+		assertEquals(990, histogram.getPercentile(99), 990 / 8);
+		assertEquals(1000, histogram.getPercentile(100));
+
+		final Map<String, Double> snapshot = metrics.snapshot();
+		assertEquals(1000, snapshot.get("test.latency.count"), 0);
+		assertEquals(1000, snapshot.get("test.latency.max"), 0);
+		assertTrue(snapshot.containsKey("test.latency.p99"));
+	}
+
+	@Test
+	public void testGauge() {
+		final double[] value = { 1 };
+		metrics.gauge("test.gauge", () -> value[0]);
+		assertEquals(1, metrics.snapshot().get("test.gauge"), 0);
+		value[0] = 2;
+		assertEquals(2, metrics.snapshot().get("test.gauge"), 0);
+		assertTrue(metrics.remove("test.gauge"));
+		assertFalse(metrics.getNames().contains("test.gauge"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKindConflict() {
+		metrics.counter("test.metric");
+		metrics.histogram("test.metric");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidName() {
+		metrics.counter("test metric");
+	}
+
+	@Test
+	public void testFormat() {
+		metrics.counter("test.events").add(3);
+		metrics.histogram("test.latency").record(100);
+		final String text = metrics.format();
+		assertTrue(text, text.contains("# TYPE imagej_test_events counter\n" +
+			"imagej_test_events 3\n"));
+		assertTrue(text, text.contains("imagej_test_latency{quantile=\"0.5\"} 100"));
+		assertTrue(text, text.contains("imagej_test_latency_count 1\n"));
+		assertTrue(text, text.contains("# TYPE imagej_jvm_heap_used gauge\n"));
+	}
+
+	@Test
+	public void testEndpoint() throws IOException {
+		metrics.counter("test.events").add(5);
+		final int port = metrics.startEndpoint(0);
+		assertEquals(port, metrics.getEndpointPort());
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+			"http://127.0.0.1:" + port + MetricsService.ENDPOINT_PATH)
+				.openConnection();
+		assertEquals(200, connection.getResponseCode());
+		final String body;
+		try (final InputStream in = connection.getInputStream()) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+		assertTrue(body, body.contains("imagej_test_events 5\n"));
+		metrics.stopEndpoint();
+		assertEquals(-1, metrics.getEndpointPort());
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		metrics.counter("test.events").add(7);
+		assertNotNull(metrics.getObjectName());
+		final Object value = ManagementFactory.getPlatformMBeanServer()
+			.getAttribute(metrics.getObjectName(), "test.events");
+		assertEquals(7.0, value);
+	}
+
+	@Test
+	public void testOpMetering() {
+		// ops are metered only on request
+		assertFalse(ij.op() instanceof MeteredOpService);
+		ij.op().run("math.add", 1, 2);
+		assertFalse(metrics.getNames().contains("ops.latency"));
+
+		System.setProperty(MeteredOpService.PROPERTY, "true");
+		final ImageJ metered;
+		try {
+			metered = new ImageJ();
+		}
+		finally {
+			System.clearProperty(MeteredOpService.PROPERTY);
+		}
+		try {
+			assertTrue(metered.op() instanceof MeteredOpService);
+			final MetricsService m = metered.metrics();
+			final LatencyHistogram latency = m.histogram("ops.latency");
+			final long before = latency.getCount();
+			metered.opDispatch().run("math.add", 1, 2);
+			assertEquals(before + 1, latency.getCount());
+			metered.op().run("math.add", 1, 2);
+			assertEquals(before + 2, latency.getCount());
+			// an op run by another op is part of the outer op's latency
+			assertEquals(3, ((Number) metered.op().run("test.nested", 1))
+				.intValue());
+			assertEquals(before + 3, latency.getCount());
+
+			final long failures = m.counter("ops.failures").get();
+			try {
+				metered.op().run("test.fail");
+				fail("The op should have failed");
+			}
+			catch (final IllegalStateException exc) {
+				// expected
+			}
+			assertEquals(failures + 1, m.counter("ops.failures").get());
+		}
+		finally {
+			metered.getContext().dispose();
+		}
+	}
+
+	@Test
+	public void testServicesPublish() throws IOException {
+		assertTrue(metrics.getNames().contains("ops.dispatch.cache.hitRate"));
+		assertTrue(metrics.getNames().contains("tile.cache.hitRate"));
+		assertTrue(metrics.getNames().contains("memo.cache.hitRate"));
+
+		final Dataset dataset = ij.dataset().create(new UnsignedByteType(),
+			new long[] { 64, 64 }, "ramp", new AxisType[] { Axes.X, Axes.Y });
+		dataset.getImgPlus().forEach(t -> t.setReal(1));
+		final File dir = new File(folder.getRoot(), "ramp");
+		ij.chunk().save(dataset, dir);
+		assertTrue(metrics.counter("chunk.bytesWritten").get() > 0);
+		ij.chunk().open(dir).getImgPlus().firstElement();
+		assertTrue(metrics.counter("chunk.bytesRead").get() > 0);
+		assertTrue(metrics.snapshot().containsKey("datasets.bytes"));
+	}
+
+	// -- Helper classes --
+
+	/** Adds 2 to a number, via another op. */
+	@Plugin(type = Op.class, name = "test.nested")
+	public static class Nested extends AbstractOp {
+
+		@Parameter
+		private int value;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private int out;
+
+		@Override
+		public void run() {
+			out = ((Number) ops().run("math.add", value, 2)).intValue();
+		}
+	}
+
+	/** Always fails. */
+	@Plugin(type = Op.class, name = "test.fail")
+	public static class Fail extends AbstractOp {
+
+		@Override
+		public void run() {
+			throw new IllegalStateException("failing on purpose");
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.mmap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link MappedDatasetService} and {@link MappedCellImg}.
+ */
+public class MappedDatasetServiceTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		ij.mappedDataset().setDirectory(folder.getRoot());
+		// small cells, to span several mappings
+		ij.mappedDataset().setCellBytes(1000);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testCellDimensions() {
+		assertArrayEquals(new int[] { 100, 100, 1 }, MappedCellImg.cellDimensions(
+			new long[] { 100, 100, 50 }, 15000));
+		assertArrayEquals(new int[] { 100, 100, 3 }, MappedCellImg.cellDimensions(
+			new long[] { 100, 100, 50 }, 30000));
+		assertArrayEquals(new int[] { 100, 5, 1 }, MappedCellImg.cellDimensions(
+			new long[] { 100, 100, 50 }, 500));
+		assertArrayEquals(new int[] { 7, 1, 1 }, MappedCellImg.cellDimensions(
+			new long[] { 100, 100, 50 }, 7));
+
+		// a mapping holds at most 2 GB, whatever the pixel size
+		assertEquals(Integer.MAX_VALUE / 8, MappedCellImg.maxCellPixels(
+			4L << 30, 8));
+		assertEquals(125, MappedCellImg.maxCellPixels(1000, 8));
+		assertEquals(1, MappedCellImg.maxCellPixels(1, 8));
+	}
+
+	@Test
+	public void testCreateAndReopen() throws IOException {
+		final File file = new File(folder.getRoot(), "volume.raw");
+		final long[] dims = { 30, 20, 5 };
+		final Dataset dataset = ij.mappedDataset().create(file,
+			new UnsignedShortType(), dims, "volume", axes);
+		final MappedCellImg<?> img = (MappedCellImg<?>) dataset.getImgPlus()
+			.getImg();
+		assertTrue(img.getCellGrid().getNumCells() > 1);
+		assertEquals(2 * 30 * 20 * 5, file.length());
+
+		fill(dataset);
+		img.flush();
+
+		final Dataset reopened = ij.mappedDataset().open(file,
+			new UnsignedShortType(), dims, "volume", axes);
+		final RandomAccess<? extends RealType<?>> ra = reopened.randomAccess();
+		ra.setPosition(new long[] { 7, 11, 3 });
+		assertEquals(7 + 30 * (11 + 20 * 3), ra.get().getRealDouble(), 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testOpenWrongSize() throws IOException {
+		final File file = folder.newFile("short.raw");
+		ij.mappedDataset().open(file, new FloatType(), new long[] { 10, 10 },
+			"short", axes);
+	}
+
+	@Test
+	public void testOps() throws IOException {
+		final Dataset dataset = ij.mappedDataset().create(new FloatType(),
+			new long[] { 40, 30, 4 }, "ops", axes);
+		fill(dataset);
+
+		final double n = 40 * 30 * 4;
+		final RealType<?> mean = (RealType<?>) ij.op().run("stats.mean", dataset
+			.getImgPlus());
+		assertEquals((n - 1) / 2, mean.getRealDouble(), 1e-3);
+
+		final Img<?> copy = dataset.getImgPlus().getImg().copy();
+		assertTrue(copy instanceof MappedCellImg);
+		final File copyFile = ((MappedCellImg<?>) copy).getFile();
+		assertEquals(folder.getRoot(), copyFile.getParentFile());
+		assertEquals(4 * (long) n, copyFile.length());
+	}
+
+	// -- Helper methods --
+
+	private void fill(final Dataset dataset) {
+		final Cursor<? extends RealType<?>> c = dataset.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			final long x = c.getLongPosition(0), y = c.getLongPosition(1), z = c
+				.getLongPosition(2);
+			c.get().setReal(x + dataset.dimension(0) * (y + dataset.dimension(1) *
+				z));
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import net.imagej.ImageJ;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ParallelOpService}.
+ */
+public class ParallelOpServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		ij.parallelOp().setParallelism(3);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testSplit() {
+		ij.parallelOp().setGrainSize(100);
+		final Interval interval = new FinalInterval(new long[] { 5, -3 },
+			new long[] { 104, 33 });
+		final List<Interval> chunks = ij.parallelOp().split(interval);
+		assertTrue(chunks.size() > 1);
+
+		// the chunks cover each pixel exactly once
+		final int[][] hits = new int[100][37];
+		for (final Interval chunk : chunks) {
+			assertTrue(Intervals.numElements(chunk) <= 100);
+			for (long x = chunk.min(0); x <= chunk.max(0); x++) {
+				for (long y = chunk.min(1); y <= chunk.max(1); y++) {
+					hits[(int) x - 5][(int) y + 3]++;
+				}
+			}
+		}
+		for (final int[] column : hits) {
+			for (final int h : column) {
+				assertEquals(1, h);
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsSequential() {
+		final Img<FloatType> in = ArrayImgs.floats(101, 37, 3);
+		float v = 0;
+		for (final FloatType t : in) {
+			t.set(v++ * 0.25f);
+		}
+		final Img<FloatType> sequential = ArrayImgs.floats(101, 37, 3);
+		ij.op().run("math.add", sequential, in, new FloatType(1.5f));
+
+		ij.parallelOp().setGrainSize(500);
+		final Img<FloatType> parallel = ArrayImgs.floats(101, 37, 3);
+		ij.parallelOp().compute("math.add", parallel, in, new FloatType(1.5f));
+
+		final Cursor<FloatType> s = sequential.cursor();
+		final Cursor<FloatType> p = parallel.cursor();
+		while (s.hasNext()) {
+			assertEquals(s.next().get(), p.next().get(), 0);
+		}
+		assertEquals(1.5f, parallel.firstElement().get(), 0);
+	}
+
+	/** Tests that image arguments are split along with the input. */
+	@Test
+	public void testImageArgument() {
+		final Img<FloatType> in = ArrayImgs.floats(101, 37);
+		final Img<FloatType> other = ArrayImgs.floats(101, 37);
+		float v = 0;
+		final Cursor<FloatType> o = other.cursor();
+		for (final FloatType t : in) {
+			t.set(v++);
+			o.next().set(1000 - v);
+		}
+		final Img<FloatType> sequential = ArrayImgs.floats(101, 37);
+		ij.op().run("math.add", sequential, in, other);
+
+		ij.parallelOp().setGrainSize(500);
+		final Img<FloatType> parallel = ArrayImgs.floats(101, 37);
+		ij.parallelOp().compute("math.add", parallel, in, other);
+
+		final Cursor<FloatType> s = sequential.cursor();
+		final Cursor<FloatType> p = parallel.cursor();
+		while (s.hasNext()) {
+			assertEquals(s.next().get(), p.next().get(), 0);
+		}
+		assertEquals(999, parallel.firstElement().get(), 0);
+
+		try {
+			ij.parallelOp().compute("math.add", parallel, in, ArrayImgs.floats(
+				100, 37));
+			fail("Argument images must match the input");
+		}
+		catch (final IllegalArgumentException exc) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRejectsNeighborhoodOps() {
+		final Img<FloatType> in = ArrayImgs.floats(64, 64);
+		in.firstElement().set(100);
+		final Img<FloatType> out = ArrayImgs.floats(64, 64);
+		ij.parallelOp().setGrainSize(256);
+		try {
+			// chunked, the blur would not cross chunk borders
+			ij.parallelOp().compute("filter.gauss", out, in, 2.0);
+			fail("Neighborhood filters must not be run in chunks");
+		}
+		catch (final IllegalArgumentException exc) {
+			// expected
+		}
+		for (final FloatType t : out) {
+			assertEquals(0, t.get(), 0);
+		}
+
+		assertTrue(ij.parallelOp().isPixelWise("math.add"));
+		assertTrue(ij.parallelOp().isPixelWise("threshold.apply"));
+		assertFalse(ij.parallelOp().isPixelWise("filter.gauss"));
+		assertFalse(ij.parallelOp().isPixelWise("threshold.otsu"));
+		assertFalse(ij.parallelOp().isPixelWise("convert.normalizeScale"));
+		assertFalse(ij.parallelOp().isPixelWise("math.randomUniform"));
+		assertFalse(ij.parallelOp().isPixelWise("math.randomGaussian"));
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link Pipeline}.
+ */
+public class PipelineTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private File inputDir;
+
+	@Before
+	public void setUp() throws IOException {
+		ij = new ImageJ();
+		inputDir = folder.newFolder("in");
+		for (int i = 0; i < 3; i++) {
+			final Dataset dataset = ij.dataset().create(new long[] { 16, 16 },
+				"image" + i, new AxisType[] { Axes.X, Axes.Y }, 8, false, false);
+			ij.scifio().datasetIO().save(dataset, new File(inputDir, "image" + i +
+				".tif").getPath());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		final File outputDir = new File(folder.getRoot(), "out");
+		final PipelineResult result = ij.pipeline() //
+			.directory(inputDir, "*.tif") //
+			.open(2) //
+			.map("fill", 2, dataset -> {
+				for (final RealType<?> t : dataset) {
+					t.setReal(7);
+				}
+				return dataset;
+			}) //
+			.save(outputDir, 2) //
+			.build().run();
+
+		assertEquals(3, result.getInputCount());
+		assertEquals(3, result.getCompletedCount());
+		assertTrue(result.getFailures().isEmpty());
+		assertEquals(3, result.getOutputs().size());
+		assertEquals(3, result.getStageNanos().size());
+		for (final File output : result.getOutputs()) {
+			assertTrue(output.exists());
+			final Dataset saved = ij.scifio().datasetIO().open(output.getPath());
+			assertEquals(7, saved.firstElement().getRealDouble(), 0);
+		}
+	}
+
+	/** Tests that stages of the same name keep their own stage times. */
+	@Test
+	public void testSameStageNames() throws Exception {
+		final Pipeline pipeline = ij.pipeline() //
+			.directory(inputDir, "*.tif") //
+			.open(1) //
+			.map("pause", 1, dataset -> pause(dataset, 20)) //
+			.map("pause", 1, dataset -> pause(dataset, 40)) //
+			.build();
+		final String open = pipeline.getStageNames().get(0);
+		final PipelineResult result = pipeline.run();
+
+		assertEquals(3, result.getCompletedCount());
+		final Map<String, Long> stageNanos = result.getStageNanos();
+		assertEquals(Arrays.asList(open, "pause#1", "pause#2"), new ArrayList<>(
+			stageNanos.keySet()));
+		assertTrue(stageNanos.get("pause#1") >= 60000000L);
+		assertTrue(stageNanos.get("pause#2") >= 120000000L);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		final PipelineResult result = ij.pipeline() //
+			.directory(inputDir, "*.tif") //
+			.open(1) //
+			.map("check", 2, dataset -> {
+				if (dataset.getName().startsWith("image1")) {
+					throw new IllegalStateException("bad image");
+				}
+				return dataset;
+			}) //
+			.queueCapacity(1) //
+			.build().run();
+
+		assertEquals(2, result.getCompletedCount());
+		assertEquals(1, result.getFailures().size());
+		final PipelineResult.Failure failure = result.getFailures().get(0);
+		assertEquals("image1.tif", failure.getSource().getName());
+		assertEquals("check", failure.getStage());
+	}
+
+	@Test(timeout = 60000)
+	public void testError() throws Exception {
+		final PipelineResult result = ij.pipeline() //
+			.directory(inputDir, "*.tif") //
+			.open(1) //
+			.map("check", 1, dataset -> {
+				throw new AssertionError("broken stage");
+			}) //
+			.queueCapacity(1) //
+			.build().run();
+
+		// the stage's only worker dies, but the pipeline still ends
+		assertEquals(0, result.getCompletedCount());
+		assertEquals(1, result.getFailures().size());
+		assertTrue(result.getFailures().get(0)
+			.getError() instanceof AssertionError);
+	}
+
+	@Test
+	public void testOutputName() throws Exception {
+		final File input = new File(inputDir, "image0.tif");
+		final File renamed = new File(inputDir, "cells.v2.tif");
+		assertTrue(input.renameTo(renamed));
+		final File outputDir = new File(folder.getRoot(), "out");
+		final PipelineResult result = ij.pipeline() //
+			.files(renamed) //
+			.open(1) //
+			.save(outputDir, "ome.tif", 1) //
+			.build().run();
+
+		assertEquals(1, result.getOutputs().size());
+		assertEquals("cells.v2.ome.tif", result.getOutputs().get(0).getName());
+	}
+
+	// -- Helper methods --
+
+	private static Dataset pause(final Dataset dataset, final long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		return dataset;
+	}
+
+}
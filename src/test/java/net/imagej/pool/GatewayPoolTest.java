@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.scif.formats.ICSFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.ImageJ;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.object.ObjectService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link GatewayPool} and {@link ChildContext}.
+ */
+public class GatewayPoolTest {
+
+	private ImageJ parent;
+
+	@Before
+	public void setUp() {
+		parent = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		parent.getContext().dispose();
+	}
+
+	@Test
+	public void testChildContext() {
+		final ImageJ child = parent.createChild();
+		assertTrue(child.getContext() instanceof ChildContext);
+		assertSame(parent.getContext().getPluginIndex(), child.getContext()
+			.getPluginIndex());
+		assertSame(parent.scifio().format(), child.scifio().format());
+		assertNotSame(parent.op(), child.op());
+		assertNotSame(parent.dataset(), child.dataset());
+		assertNotSame(parent.object(), child.object());
+
+		// ops run via the child see the child's services, not the parent's
+		assertSame(child.object(), child.op().run("test.objects"));
+		assertSame(parent.object(), parent.op().run("test.objects"));
+
+		child.getContext().dispose();
+		// the shared services must survive the child
+		assertNotNull(parent.scifio().format().getFormatFromClass(
+			ICSFormat.class));
+		assertEquals(3, ((Number) parent.op().run("math.add", 1, 2)).intValue());
+	}
+
+	@Test
+	public void testBorrowAndRelease() throws InterruptedException {
+		try (final GatewayPool pool = GatewayPool.children(parent, 1, 2)) {
+			assertEquals(1, pool.getCreatedCount());
+			assertEquals(1, pool.getIdleCount());
+
+			final ImageJ first = pool.borrow();
+			final ImageJ second = pool.borrow();
+			assertNotNull(first);
+			assertNotNull(second);
+			assertNotSame(first, second);
+			assertEquals(2, pool.getCreatedCount());
+			assertEquals(2, pool.getActiveCount());
+
+			// the pool is exhausted
+			assertNull(pool.borrow(10, TimeUnit.MILLISECONDS));
+			assertEquals(1, pool.getWaitCount());
+			assertTrue(pool.getWaitNanos() > 0);
+
+			pool.release(first);
+			assertSame(first, pool.borrow(10, TimeUnit.MILLISECONDS));
+			assertEquals(2, pool.getCreatedCount());
+			assertEquals(3, pool.getBorrowCount());
+
+			pool.invalidate(second);
+			assertEquals(1, pool.getSize());
+			pool.release(first);
+		}
+	}
+
+	@Test
+	public void testInvalidateWakesBorrower() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (final GatewayPool pool = GatewayPool.children(parent, 0, 1)) {
+			final ImageJ first = pool.borrow();
+			final Future<ImageJ> waiting = executor.submit(() -> pool.borrow());
+			Thread.sleep(50);
+			assertFalse(waiting.isDone());
+
+			// invalidating makes room for a fresh gateway
+			pool.invalidate(first);
+			final ImageJ second = waiting.get(10, TimeUnit.SECONDS);
+			assertNotSame(first, second);
+			assertEquals(1, pool.getSize());
+			pool.release(second);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCloseWakesBorrower() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final GatewayPool pool = GatewayPool.children(parent, 0, 1);
+			final ImageJ first = pool.borrow();
+			final Future<ImageJ> waiting = executor.submit(() -> pool.borrow());
+			Thread.sleep(50);
+			pool.close();
+			try {
+				waiting.get(10, TimeUnit.SECONDS);
+				fail("Borrowing from a closed pool should fail");
+			}
+			catch (final ExecutionException exc) {
+				assertTrue(exc.getCause() instanceof IllegalStateException);
+			}
+			pool.release(first);
+			assertEquals(0, pool.getSize());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReleaseUnknown() throws InterruptedException {
+		try (final GatewayPool pool = GatewayPool.children(parent, 0, 2)) {
+			final ImageJ ij = pool.borrow();
+			pool.release(ij);
+			try {
+				pool.release(ij);
+				fail("Double release should fail");
+			}
+			catch (final IllegalArgumentException exc) {
+				// expected
+			}
+			try {
+				pool.invalidate(parent);
+				fail("Invalidating a foreign gateway should fail");
+			}
+			catch (final IllegalArgumentException exc) {
+				// expected
+			}
+			assertEquals(1, pool.getIdleCount());
+			assertEquals(1, pool.getSize());
+		}
+	}
+
+	@Test
+	public void testFailedPrefill() {
+		final List<ImageJ> created = new ArrayList<>();
+		final AtomicInteger disposed = new AtomicInteger();
+		try {
+			new GatewayPool(() -> {
+				if (created.size() == 2) throw new IllegalStateException("boom");
+				final ChildContext context = new ChildContext(parent.getContext()) {
+
+					@Override
+					public void dispose() {
+						disposed.incrementAndGet();
+						super.dispose();
+					}
+				};
+				final ImageJ ij = new ImageJ(context);
+				created.add(ij);
+				return ij;
+			}, 3, 3);
+			fail("Pool creation should fail");
+		}
+		catch (final IllegalStateException exc) {
+			assertEquals("boom", exc.getMessage());
+		}
+		// the gateways built before the failure must not leak
+		assertEquals(2, created.size());
+		assertEquals(2, disposed.get());
+	}
+
+	// -- Helper classes --
+
+	/** Returns the object service it was injected with. */
+	@Plugin(type = Op.class, name = "test.objects")
+	public static class Objects extends AbstractOp {
+
+		@Parameter
+		private ObjectService objectService;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private ObjectService result;
+
+		@Override
+		public void run() {
+			result = objectService;
+		}
+	}
+
+}
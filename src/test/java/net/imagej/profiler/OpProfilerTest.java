@@ -0,0 +1,253 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.imagej.ImageJ;
+import net.imagej.metrics.MeteredOpService;
+import net.imagej.ops.AbstractOp;
+import net.imagej.ops.Op;
+import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
+import net.imagej.profiler.OpProfiler.Entry;
+import net.imagej.profiler.OpProfiler.Metric;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link OpProfiler}.
+ */
+public class OpProfilerTest {
+
+	private static final String OUTER = "op:test.outer[OpProfilerTest$Outer]";
+	private static final String SPIN = "op:test.spin[OpProfilerTest$Spin]";
+	private static final String SPIN_COMPUTER =
+		"op:test.spinComputer[OpProfilerTest$SpinComputer]";
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testNestedOps() {
+		try (final OpProfiler profiler = new OpProfiler(1000)) {
+			profiler.start();
+			ij.op().run("test.outer", 300);
+			profiler.stop();
+
+			final List<Entry> entries = profiler.getEntries();
+			final Entry outer = entry(entries, OUTER);
+			final Entry spin = entry(entries, SPIN);
+			assertTrue(spin.toString(), spin.getWallNanos() > 150000000L);
+			assertTrue(outer.getWallNanos() >= spin.getWallNanos());
+			assertTrue(spin.getSelfWallNanos() > outer.getSelfWallNanos());
+			if (ThreadStats.isAllocationSupported()) {
+				assertTrue(spin.toString(), spin.getAllocatedBytes() > 0);
+			}
+
+			final String collapsed = profiler.toCollapsed(Metric.WALL);
+			assertTrue(collapsed, collapsed.contains(OUTER + ";" + SPIN + " "));
+			for (final String line : collapsed.split("\n")) {
+				assertTrue(line, line.matches("op:[^ ].* [0-9]+"));
+			}
+			assertTrue(profiler.getPause() > 0);
+			assertTrue(profiler.getPause() < 1);
+		}
+	}
+
+	/**
+	 * Tests that a computer op shows up as its own class only, not as the
+	 * interfaces and abstract bases whose methods run it.
+	 */
+	@Test
+	public void testComputerOp() {
+		try (final OpProfiler profiler = new OpProfiler(1000)) {
+			profiler.start();
+			ij.op().run("test.spinComputer", new long[1], 200);
+			profiler.stop();
+
+			entry(profiler.getEntries(), SPIN_COMPUTER);
+			final String collapsed = profiler.toCollapsed(Metric.WALL);
+			for (final String line : collapsed.split("\n")) {
+				assertTrue(line, line.startsWith(SPIN_COMPUTER + " "));
+			}
+		}
+	}
+
+	/** Tests the profiler mode of a gateway, which measures each invocation. */
+	@Test
+	public void testInvocations() {
+		System.setProperty(OpProfiler.PROPERTY, "true");
+		final ImageJ profiled;
+		try {
+			profiled = new ImageJ();
+		}
+		finally {
+			System.clearProperty(OpProfiler.PROPERTY);
+		}
+		try {
+			final OpProfiler profiler = profiled.profiler();
+			assertTrue(profiler.isRunning());
+			assertTrue(profiled.op() instanceof MeteredOpService);
+			profiled.op().run("test.outer", 100);
+			profiled.op().run("test.spin", 10);
+			assertSame(profiler, profiled.stopProfiler());
+			assertFalse(profiler.isRunning());
+			assertNull(profiled.profiler());
+
+			final List<Entry> invocations = profiler.getInvocations();
+			final Entry outer = entry(invocations, OUTER);
+			final Entry spin = entry(invocations, SPIN);
+			assertEquals(1, outer.getInvocations());
+			assertEquals(2, spin.getInvocations());
+			assertTrue(spin.toString(), spin.getWallNanos() >= 110000000L);
+			assertTrue(outer.getWallNanos() >= 100000000L);
+			assertTrue(outer.getSelfWallNanos() < spin.getSelfWallNanos());
+			if (ThreadStats.isAllocationSupported()) {
+				assertTrue(spin.toString(), spin.getAllocatedBytes() > 0);
+			}
+
+			// stopped, the profiler measures no more invocations
+			profiled.op().run("test.spin", 10);
+			assertEquals(2, entry(profiler.getInvocations(), SPIN)
+				.getInvocations());
+		}
+		finally {
+			profiled.getContext().dispose();
+		}
+	}
+
+	@Test
+	public void testIdleThreadsAreNotRecorded() {
+		final OpProfiler profiler = new OpProfiler();
+		profiler.sample();
+		assertTrue(profiler.getEntries().isEmpty());
+		assertEquals("", profiler.toCollapsed(Metric.CPU));
+	}
+
+	@Test
+	public void testReset() {
+		try (final OpProfiler profiler = new OpProfiler(1000)) {
+			profiler.start();
+			ij.op().run("test.spin", 50);
+			profiler.stop();
+			entry(profiler.getEntries(), SPIN);
+			profiler.reset();
+			assertTrue(profiler.getEntries().isEmpty());
+			assertEquals(0, profiler.getOverhead(), 0);
+		}
+	}
+
+	// -- Helper methods --
+
+	private static Entry entry(final List<Entry> entries, final String name) {
+		for (final Entry entry : entries) {
+			if (entry.getName().equals(name)) return entry;
+		}
+		throw new AssertionError("No " + name + " in " + entries);
+	}
+
+	// -- Helper classes --
+
+	/** Keeps the CPU busy and allocates for the given time. */
+	@Plugin(type = Op.class, name = "test.spin")
+	public static class Spin extends AbstractOp {
+
+		@Parameter
+		private int millis;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private long result;
+
+		private long[] garbage;
+
+		@Override
+		public void run() {
+			final long end = System.nanoTime() + millis * 1000000L;
+			while (System.nanoTime() < end) {
+				garbage = new long[64];
+				result += garbage.length;
+			}
+		}
+	}
+
+	/** Keeps the CPU busy for the given time, as a computer op. */
+	@Plugin(type = Op.class, name = "test.spinComputer")
+	public static class SpinComputer extends
+		AbstractUnaryComputerOp<Integer, long[]>
+	{
+
+		@Override
+		public void compute(final Integer millis, final long[] out) {
+			final long end = System.nanoTime() + millis * 1000000L;
+			while (System.nanoTime() < end) {
+				out[0]++;
+			}
+		}
+	}
+
+	/** Runs {@link Spin} as a nested op. */
+	@Plugin(type = Op.class, name = "test.outer")
+	public static class Outer extends AbstractOp {
+
+		@Parameter
+		private int millis;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private Object result;
+
+		@Override
+		public void run() {
+			result = ops().run("test.spin", millis);
+		}
+	}
+
+}
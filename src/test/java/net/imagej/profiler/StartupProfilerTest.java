@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.profiler;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.ImageJService;
+import net.imagej.ops.OpService;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.service.Service;
+
+/**
+ * Tests {@link StartupProfiler}.
+ */
+public class StartupProfilerTest {
+
+	@Test
+	public void testContextProfile() {
+		final StartupProfiler profiler = new StartupProfiler();
+		final List<Class<? extends Service>> serviceClasses = //
+			Collections.singletonList(ImageJService.class);
+		final Context context = profiler.createContext(serviceClasses, 2);
+		try {
+			assertNotNull(context.getService(OpService.class));
+			assertTrue(names(profiler.getRecords(StartupProfiler.PHASE)).contains(
+				"plugin-discovery"));
+			assertTrue(names(profiler.getRecords(StartupProfiler.PHASE)).contains(
+				"services"));
+			final String services = names(profiler.getRecords(
+				StartupProfiler.SERVICE));
+			assertTrue(services.contains("net.imagej.ops.DefaultOpService"));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	@Test
+	public void testServiceHelperProfile() {
+		final StartupProfiler profiler = new StartupProfiler();
+		final List<Class<? extends Service>> serviceClasses = //
+			Collections.singletonList(ImageJService.class);
+		// NB: No threads means the regular Context constructor, as ImageJ uses.
+		final Context context = profiler.createContext(serviceClasses, 0);
+		try {
+			assertNotNull(context.getService(OpService.class));
+			assertTrue(names(profiler.getRecords(StartupProfiler.PHASE)).contains(
+				"services"));
+			assertFalse(profiler.getRecords(StartupProfiler.SERVICE).isEmpty());
+			for (final StartupProfiler.Record r : profiler.getRecords(
+				StartupProfiler.SERVICE))
+			{
+				assertTrue(r.getWallNanos() > 0);
+			}
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	@Test
+	public void testJSON() {
+		final StartupProfiler profiler = new StartupProfiler();
+		try (final StartupProfiler.Timer t = profiler.phase("say \"hi\"")) {
+			// nothing to do
+		}
+		final String json = profiler.toJSON();
+		assertTrue(json.contains("\"phases\": ["));
+		assertTrue(json.contains("\"name\": \"say \\\"hi\\\"\""));
+		assertTrue(json.contains("\"services\": []"));
+	}
+
+	@Test
+	public void testFlag() {
+		assertTrue(StartupProfiler.isRequested("--headless", "--profile-startup"));
+		assertTrue(StartupProfiler.isRequested("--profile-startup=out.json"));
+		assertFalse(StartupProfiler.isRequested("--headless"));
+	}
+
+	// -- Helper methods --
+
+	private String names(final List<StartupProfiler.Record> records) {
+		final StringBuilder sb = new StringBuilder();
+		for (final StartupProfiler.Record r : records) {
+			sb.append(r.getName()).append("\n");
+		}
+		return sb.toString();
+	}
+
+}
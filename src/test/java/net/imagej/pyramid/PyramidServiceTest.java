@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pyramid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link PyramidService}.
+ */
+public class PyramidServiceTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testBuildAndOpen() throws Exception {
+		final Dataset dataset = createDataset();
+		final File source = folder.newFile("big.raw");
+		try (final OutputStream out = new FileOutputStream(source)) {
+			out.write(new byte[100]);
+		}
+		dataset.setSource(source.getPath());
+
+		final Pyramid pyramid = ij.pyramid().build(dataset).get();
+		assertSame(pyramid, ij.pyramid().getPyramid(dataset));
+		assertEquals(new File(source.getPath() + PyramidService.SUFFIX), pyramid
+			.getDirectory());
+		assertEquals(3, pyramid.getLevelCount());
+		assertSame(dataset, pyramid.getLevel(0));
+		assertEquals(500, pyramid.getLevel(1).dimension(0));
+		assertEquals(300, pyramid.getLevel(1).dimension(1));
+		assertEquals(250, pyramid.getLevel(2).dimension(0));
+		assertEquals(150, pyramid.getLevel(2).dimension(1));
+		assertEquals(2, pyramid.getLevel(1).axis(0).averageScale(0, 1), 0);
+
+		// each level pixel is the mean of a 2x2 block of the level below
+		assertEquals(value(3, 7), get(pyramid.getLevel(1), 3, 7), 0);
+		assertEquals(value(499, 299), get(pyramid.getLevel(1), 499, 299), 0);
+		final double mean = (value(2, 4) + value(3, 4) + value(2, 5) + value(3,
+			5)) / 4.0;
+		assertEquals(Math.round(mean), get(pyramid.getLevel(2), 1, 2), 0);
+
+		final Pyramid reopened = ij.pyramid().open(dataset);
+		assertNotNull(reopened);
+		assertEquals(3, reopened.getLevelCount());
+		assertEquals(value(10, 20), get(reopened.getLevel(1), 10, 20), 0);
+
+		// changes to the source invalidate the pyramid
+		assertTrue(source.setLastModified(source.lastModified() - 60000));
+		assertNull(ij.pyramid().open(dataset));
+	}
+
+	@Test
+	public void testLevelFor() throws Exception {
+		final Dataset dataset = createDataset();
+		final Pyramid pyramid = ij.pyramid().build(dataset, folder.newFolder(
+			"pyramid")).get();
+		assertEquals(0, pyramid.levelFor(2));
+		assertEquals(0, pyramid.levelFor(1));
+		assertEquals(0, pyramid.levelFor(0.75));
+		assertEquals(1, pyramid.levelFor(0.5));
+		assertEquals(1, pyramid.levelFor(0.3));
+		assertEquals(2, pyramid.levelFor(0.25));
+		assertEquals(2, pyramid.levelFor(0.01));
+		assertEquals(250, pyramid.getRenderer(0.1).getWidth());
+		assertEquals(1000, pyramid.getRenderer(1.0).getWidth());
+	}
+
+	/** Tests that changing the thread count does not disturb a running build. */
+	@Test
+	public void testSetThreadsDuringBuild() throws Exception {
+		final Future<Pyramid> future = ij.pyramid().build(createDataset(), folder
+			.newFolder("pyramid"));
+		ij.pyramid().setThreads(1);
+		ij.pyramid().setThreads(2);
+		assertEquals(3, future.get().getLevelCount());
+		assertEquals(2, ij.pyramid().getThreads());
+	}
+
+	/** Tests that a failed build leaves no partial levels behind. */
+	@Test
+	public void testFailedBuild() throws Exception {
+		final File dir = folder.newFolder("pyramid");
+		// a file where level 2 belongs makes writing that level fail
+		assertTrue(new File(dir, "2").createNewFile());
+		try {
+			ij.pyramid().build(createDataset(), dir).get();
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IOException);
+		}
+		assertFalse(new File(dir, "1").exists());
+		assertFalse(new File(dir,
+			DefaultPyramidService.PROPERTIES_FILE).exists());
+		assertNull(ij.pyramid().open(createDataset(), dir));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoSourceFile() {
+		ij.pyramid().build(createDataset());
+	}
+
+	@Test
+	public void testMissing() throws IOException {
+		assertNull(ij.pyramid().open(createDataset(), folder.newFolder("none")));
+	}
+
+	// -- Helper methods --
+
+	private Dataset createDataset() {
+		final Dataset dataset = ij.dataset().create(new UnsignedByteType(),
+			new long[] { 1000, 600 }, "big", new AxisType[] { Axes.X, Axes.Y });
+		final Cursor<RealType<?>> c = dataset.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(value(c.getLongPosition(0) / 2, c.getLongPosition(1) /
+				2));
+		}
+		return dataset;
+	}
+
+	/** The value of the pixels in the given 2x2 block of the dataset. */
+	private static int value(final long bx, final long by) {
+		return (int) ((bx * 3 + by * 5) % 256);
+	}
+
+	private static double get(final Dataset dataset, final long x,
+		final long y)
+	{
+		final RandomAccess<RealType<?>> ra = dataset.randomAccess();
+		ra.setPosition(new long[] { x, y });
+		return ra.get().getRealDouble();
+	}
+
+}
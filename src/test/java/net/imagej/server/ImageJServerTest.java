@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+
+import net.imagej.ImageJ;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.plugin.Plugin;
+import org.scijava.script.AbstractScriptLanguage;
+import org.scijava.script.ScriptLanguage;
+
+/**
+ * Tests {@link ImageJServer}.
+ */
+public class ImageJServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private ImageJServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		ij = new ImageJ();
+		server = new ImageJServer(ij, 0, 4);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testRequests() throws IOException {
+		try (final Client client = new Client(server)) {
+			assertEquals("OK pong", client.request("PING"));
+			assertEquals("OK 5", client.request("OP math.add 2 3"));
+			assertTrue(client.request("BOGUS").startsWith("ERR "));
+		}
+		assertEquals(1, server.getJobCount());
+	}
+
+	@Test
+	public void testRequiresToken() throws IOException {
+		try (final Client client = new Client(server.getPort())) {
+			assertEquals("ERR Not authenticated", client.request("PING"));
+			assertNull(client.read());
+		}
+		try (final Client client = new Client(server.getPort())) {
+			assertEquals("ERR Not authenticated", client.request("AUTH guess"));
+			assertNull(client.read());
+		}
+		// NB: What a browser would send.
+		try (final Client client = new Client(server.getPort())) {
+			assertEquals("ERR Not authenticated", client.request(
+				"POST / HTTP/1.1"));
+		}
+		assertEquals(0, server.getJobCount());
+	}
+
+	@Test
+	public void testTokenFile() throws IOException {
+		final File file = new File(folder.getRoot(), "dir/server.token");
+		server.writeToken(file);
+		assertEquals(server.getToken(), new String(Files.readAllBytes(file
+			.toPath()), StandardCharsets.UTF_8));
+		assertNotEquals(server.getToken(), new ImageJServer(ij, 0, 1).getToken());
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains(
+			"posix"))
+		{
+			assertEquals(PosixFilePermissions.fromString("rw-------"), Files
+				.getPosixFilePermissions(file.toPath()));
+		}
+	}
+
+	@Test
+	public void testInvalidLineCount() throws IOException {
+		try (final Client client = new Client(server)) {
+			assertTrue(client.request("SCRIPT greet x").startsWith("ERR "));
+			// NB: The connection is closed, since the script lines are unknown.
+			assertNull(client.read());
+		}
+	}
+
+	@Test
+	public void testConcurrentClients() throws Exception {
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				final int n = i;
+				results.add(pool.submit((Callable<String>) () -> {
+					try (final Client client = new Client(server)) {
+						return client.request("OP math.add " + n + " 1");
+					}
+				}));
+			}
+			for (int i = 0; i < 8; i++) {
+				assertEquals("OK " + (i + 1), results.get(i).get());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+		assertEquals(8, server.getJobCount());
+	}
+
+	@Test
+	public void testScriptInputs() throws IOException {
+		try (final Client client = new Client(server)) {
+			final String response = client.request(
+				"SCRIPT greet 2 \"name=big world\"\n" + //
+					"#@ String name\n" + //
+					"#@output String greeting");
+			assertTrue(response, response.startsWith("OK "));
+			assertTrue(response, response.contains("greeting=hello big world"));
+			assertTrue(client.request("SCRIPT greet 0 name").startsWith("ERR "));
+		}
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		try (final Client client = new Client(server)) {
+			assertEquals("OK bye", client.request("SHUTDOWN"));
+		}
+		server.awaitShutdown();
+		// the server stops, but the warm context stays usable
+		assertEquals(3, ((Number) ij.op().run("math.add", 1, 2)).intValue());
+	}
+
+	// -- Helper classes --
+
+	/** A script language whose scripts greet their {@code name} input. */
+	@Plugin(type = ScriptLanguage.class, name = "Greet")
+	public static class GreetLanguage extends AbstractScriptLanguage {
+
+		@Override
+		public List<String> getExtensions() {
+			return Collections.singletonList("greet");
+		}
+
+		@Override
+		public ScriptEngine getScriptEngine() {
+			return new AbstractScriptEngine() {
+
+				@Override
+				public Object eval(final String script, final ScriptContext context) {
+					final Bindings bindings = context.getBindings(
+						ScriptContext.ENGINE_SCOPE);
+					bindings.put("greeting", "hello " + bindings.get("name"));
+					return null;
+				}
+
+				@Override
+				public Object eval(final Reader reader, final ScriptContext context) {
+					return eval("", context);
+				}
+
+				@Override
+				public Bindings createBindings() {
+					return new SimpleBindings();
+				}
+
+				@Override
+				public ScriptEngineFactory getFactory() {
+					return GreetLanguage.this;
+				}
+			};
+		}
+	}
+
+	private static class Client implements AutoCloseable {
+
+		private final Socket socket;
+		private final BufferedReader in;
+		private final PrintWriter out;
+
+		public Client(final ImageJServer server) throws IOException {
+			this(server.getPort());
+			assertEquals("OK authenticated", request("AUTH " + server.getToken()));
+		}
+
+		public Client(final int port) throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+				StandardCharsets.UTF_8));
+			out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+				StandardCharsets.UTF_8), true);
+		}
+
+		public String request(final String line) throws IOException {
+			out.println(line);
+			return read();
+		}
+
+		public String read() throws IOException {
+			return in.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.imagej.ImageJ;
+import net.imagej.overlay.EllipseOverlay;
+import net.imagej.overlay.Overlay;
+import net.imagej.overlay.RectangleOverlay;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.roi.RectangleRegionOfInterest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link OverlayIndexService}.
+ */
+public class OverlayIndexServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testQueryAndHitTest() {
+		final OverlayIndexService index = ij.overlayIndex();
+		final RectangleOverlay rect = new RectangleOverlay(ij.getContext());
+		rect.setOrigin(10, 0);
+		rect.setOrigin(10, 1);
+		rect.setExtent(20, 0);
+		rect.setExtent(20, 1);
+		final EllipseOverlay ellipse = new EllipseOverlay(ij.getContext());
+		ellipse.setOrigin(100, 0);
+		ellipse.setOrigin(100, 1);
+		ellipse.setRadius(10, 0);
+		ellipse.setRadius(10, 1);
+		index.update(rect);
+		index.update(ellipse);
+		assertEquals(2, index.size());
+
+		final List<Overlay> inView = index.query(new FinalRealInterval(
+			new double[] { 0, 0 }, new double[] { 50, 50 }));
+		assertEquals(1, inView.size());
+		assertSame(rect, inView.get(0));
+		assertEquals(2, index.query(0, 0, 200, 200).size());
+
+		assertEquals(1, index.hitTest(15, 15).size());
+		assertSame(ellipse, index.hitTest(100, 100).get(0));
+		// inside the ellipse's bounding box, but outside the ellipse
+		assertTrue(index.hitTest(91, 91).isEmpty());
+
+		// moved overlays are found at their new place
+		rect.setOrigin(500, 0);
+		index.update(rect);
+		assertTrue(index.hitTest(15, 15).isEmpty());
+		assertSame(rect, index.hitTest(510, 15).get(0));
+
+		index.remove(rect);
+		assertEquals(1, index.size());
+		assertTrue(index.hitTest(510, 15).isEmpty());
+	}
+
+	@Test
+	public void testHitTestVolume() {
+		final OverlayIndexService index = ij.overlayIndex();
+		final RectangleOverlay box = new RectangleOverlay(ij.getContext(),
+			new RectangleRegionOfInterest(new double[] { 10, 10, 2 },
+				new double[] { 20, 20, 3 }));
+		index.update(box);
+		assertSame(box, index.hitTest(15, 15).get(0));
+		assertTrue(index.hitTest(5, 15).isEmpty());
+	}
+
+}
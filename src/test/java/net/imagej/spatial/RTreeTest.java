@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link RTree}.
+ */
+public class RTreeTest {
+
+	@Test
+	public void testMatchesLinearScan() {
+		final Random random = new Random(13);
+		final RTree<Integer> tree = new RTree<>();
+		final double[][] boxes = new double[5000][];
+		final List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < boxes.length; i++) {
+			items.add(i);
+			boxes[i] = randomBox(random);
+			put(tree, items.get(i), boxes[i]);
+		}
+		assertEquals(boxes.length, tree.size());
+		assertTrue(tree.height() > 2);
+
+		// move some, remove others
+		for (int i = 0; i < boxes.length; i += 3) {
+			boxes[i] = randomBox(random);
+			put(tree, items.get(i), boxes[i]);
+		}
+		for (int i = 1; i < boxes.length; i += 3) {
+			assertTrue(tree.remove(items.get(i)));
+			boxes[i] = null;
+		}
+		assertFalse(tree.remove(items.get(1)));
+		assertEquals(boxes.length - (boxes.length + 1) / 3, tree.size());
+
+		for (int q = 0; q < 200; q++) {
+			final double[] query = randomBox(random);
+			final Set<Integer> expected = new HashSet<>();
+			for (int i = 0; i < boxes.length; i++) {
+				if (boxes[i] != null && intersects(boxes[i], query)) {
+					expected.add(items.get(i));
+				}
+			}
+			final List<Integer> actual = tree.search(query[0], query[1], query[2],
+				query[3]);
+			assertEquals(expected.size(), actual.size());
+			assertEquals(expected, new HashSet<>(actual));
+		}
+	}
+
+	@Test
+	public void testRemoveAll() {
+		final RTree<String> tree = new RTree<>();
+		final List<String> items = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			final String item = "item" + i;
+			items.add(item);
+			tree.put(item, i, i, i + 1, i + 1);
+		}
+		for (final String item : items) {
+			assertTrue(tree.remove(item));
+		}
+		assertEquals(0, tree.size());
+		assertEquals(1, tree.height());
+		assertTrue(tree.search(-1e9, -1e9, 1e9, 1e9).isEmpty());
+
+		tree.put("again", 0, 0, 1, 1);
+		assertEquals(1, tree.search(0.5, 0.5, 0.5, 0.5).size());
+	}
+
+	// -- Helper methods --
+
+	private static double[] randomBox(final Random random) {
+		final double x = random.nextDouble() * 1000;
+		final double y = random.nextDouble() * 1000;
+		return new double[] { x, y, x + random.nextDouble() * 20, y + random
+			.nextDouble() * 20 };
+	}
+
+	private static void put(final RTree<Integer> tree, final Integer item,
+		final double[] box)
+	{
+		tree.put(item, box[0], box[1], box[2], box[3]);
+	}
+
+	private static boolean intersects(final double[] a, final double[] b) {
+		return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+	}
+
+}
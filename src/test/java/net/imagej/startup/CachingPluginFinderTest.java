@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+
+/**
+ * Tests {@link CachingPluginFinder}.
+ */
+public class CachingPluginFinderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that the cached index matches a full class path scan. */
+	@Test
+	public void testCacheRoundTrip() throws IOException {
+		final File cacheFile = new File(folder.getRoot(), "plugins.cache");
+
+		final CachingPluginFinder first = new CachingPluginFinder(cacheFile);
+		final Set<String> scanned = discover(first);
+		assertFalse(first.isCacheHit());
+		assertTrue(cacheFile.isFile());
+
+		final CachingPluginFinder second = new CachingPluginFinder(cacheFile);
+		final Set<String> cached = discover(second);
+		assertTrue(second.isCacheHit());
+
+		final PluginIndex reference = new PluginIndex();
+		reference.discover();
+		final Set<String> expected = classNames(reference);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, scanned);
+		assertEquals(expected, cached);
+	}
+
+	/** Tests that a stale fingerprint triggers a full scan. */
+	@Test
+	public void testStaleFingerprint() throws IOException {
+		final File cacheFile = new File(folder.getRoot(), "plugins.cache");
+		final CachingPluginFinder finder = new CachingPluginFinder(cacheFile);
+		discover(finder);
+
+		// overwrite the fingerprint, which follows the magic and version fields
+		try (final RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+			raf.seek(8);
+			raf.writeLong(finder.fingerprint() + 1);
+		}
+
+		final CachingPluginFinder stale = new CachingPluginFinder(cacheFile);
+		final Set<String> rescanned = discover(stale);
+		assertFalse(stale.isCacheHit());
+		assertFalse(rescanned.isEmpty());
+
+		final CachingPluginFinder fresh = new CachingPluginFinder(cacheFile);
+		assertEquals(rescanned, discover(fresh));
+		assertTrue(fresh.isCacheHit());
+	}
+
+	/**
+	 * Tests that the fingerprint follows the size and time stamp of the JARs,
+	 * without reading them.
+	 */
+	@Test
+	public void testFingerprintJarMetadata() throws IOException {
+		final File jar = new File(folder.getRoot(), "plugins.jar");
+		writeJar(jar, "a.txt");
+		final long time = jar.lastModified();
+
+		try (final URLClassLoader loader = new URLClassLoader(new URL[] { jar
+			.toURI().toURL() }, null))
+		{
+			final CachingPluginFinder finder = new CachingPluginFinder(new File(
+				folder.getRoot(), "plugins.cache"), loader);
+			final long before = finder.fingerprint();
+			assertEquals(before, finder.fingerprint());
+
+			assertTrue(jar.setLastModified(time - 60000));
+			final long touched = finder.fingerprint();
+			assertNotEquals(before, touched);
+
+			// not a valid JAR, but only its size is looked at
+			Files.write(jar.toPath(), new byte[] { 1, 2, 3 });
+			assertTrue(jar.setLastModified(time - 60000));
+			assertNotEquals(touched, finder.fingerprint());
+		}
+	}
+
+	// -- Helper methods --
+
+	private void writeJar(final File file, final String entry)
+		throws IOException
+	{
+		try (final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+			file)))
+		{
+			out.putNextEntry(new ZipEntry(entry));
+			out.write("plugin".getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+		}
+	}
+
+	private Set<String> discover(final CachingPluginFinder finder) {
+		final PluginIndex pluginIndex = new PluginIndex(finder);
+		pluginIndex.discover();
+		return classNames(pluginIndex);
+	}
+
+	private Set<String> classNames(final PluginIndex pluginIndex) {
+		final Set<String> classNames = new HashSet<>();
+		for (final PluginInfo<?> info : pluginIndex.getAll()) {
+			classNames.add(info.getClassName());
+		}
+		return classNames;
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.imagej.ImageJService;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Tests {@link ParallelServiceInitializer}.
+ */
+public class ParallelServiceInitializerTest {
+
+	/** Tests that parallel initialization yields the expected services. */
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testServices() {
+		final Context ctx = create(4);
+		try {
+			final ArrayList<Class<? extends Service>> services = new ArrayList<>();
+			services.add(net.imagej.DefaultDatasetService.class);
+			services.add(net.imagej.DefaultImgPlusService.class);
+			services.add(net.imagej.animation.DefaultAnimationService.class);
+			services.add(net.imagej.autoscale.DefaultAutoscaleService.class);
+			services.add(net.imagej.display.DefaultImageDisplayService.class);
+			services.add(net.imagej.display.DefaultOverlayService.class);
+			services.add(net.imagej.display.DefaultWindowService.class);
+			services.add(net.imagej.display.DefaultZoomService.class);
+			services.add(net.imagej.display.DummyScreenCaptureService.class);
+			services.add(net.imagej.legacy.display.LegacyImageDisplayService.class);
+			services.add(net.imagej.lut.DefaultLUTService.class);
+			services.add(net.imagej.measure.DefaultMeasurementService.class);
+			services.add(net.imagej.measure.DefaultStatisticsService.class);
+			services.add(net.imagej.operator.DefaultCalculatorService.class);
+			services.add(net.imagej.ops.DefaultNamespaceService.class);
+			services.add(net.imagej.ops.DefaultOpMatchingService.class);
+			services.add(net.imagej.ops.DefaultOpService.class);
+			services.add(net.imagej.render.DummyRenderingService.class);
+			services.add(net.imagej.sampler.DefaultSamplerService.class);
+			services.add(net.imagej.threshold.DefaultThresholdService.class);
+			services.add(net.imagej.types.DefaultDataTypeService.class);
+			services.add(net.imagej.ui.DefaultImageJUIService.class);
+			services.add(net.imagej.ui.awt.AWTRenderingService.class);
+			services.add(net.imagej.ui.awt.AWTScreenCaptureService.class);
+			services.add(net.imagej.ui.swing.overlay.JHotDrawService.class);
+			services.add(net.imagej.updater.DefaultUpdateService.class);
+			services.add(net.imagej.updater.DefaultUploaderService.class);
+			for (final Class<? extends Service> c : services) {
+				final Service s = ctx.service(c);
+				assertSame(c, s.getClass());
+			}
+		}
+		finally {
+			ctx.dispose();
+		}
+	}
+
+	/**
+	 * Tests that parallel and sequential initialization create the same services
+	 * as the regular {@link Context} constructor.
+	 */
+	@Test
+	public void testSameServices() {
+		final Context reference = new Context(ImageJService.class);
+		final Context parallel = create(4);
+		final Context sequential = create(1);
+		try {
+			final Set<Class<?>> expected = serviceClasses(reference);
+			assertEquals(expected, serviceClasses(parallel));
+			assertEquals(expected, serviceClasses(sequential));
+		}
+		finally {
+			reference.dispose();
+			parallel.dispose();
+			sequential.dispose();
+		}
+	}
+
+	/**
+	 * Tests that services of the same layer can look each other up while
+	 * initializing, as with the regular {@link Context} constructor.
+	 */
+	@Test
+	public void testSameLayerLookup() {
+		// NB: The test services are not plugins, lest every context create them.
+		final PluginIndex pluginIndex = new PluginIndex();
+		pluginIndex.add(new PluginInfo<>(FirstService.class, Service.class));
+		pluginIndex.add(new PluginInfo<>(SecondService.class, Service.class));
+		final Context ctx = ParallelServiceInitializer.createContext(Arrays
+			.<Class<? extends Service>> asList(FirstService.class,
+				SecondService.class), pluginIndex, 4);
+		try {
+			final FirstService first = ctx.getService(FirstService.class);
+			final SecondService second = ctx.getService(SecondService.class);
+			assertSame(second, first.other);
+			assertSame(first, second.other);
+		}
+		finally {
+			ctx.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	private Context create(final int threads) {
+		final List<Class<? extends Service>> serviceClasses = //
+			Collections.singletonList(ImageJService.class);
+		return ParallelServiceInitializer.createContext(serviceClasses,
+			new PluginIndex(), threads);
+	}
+
+	private Set<Class<?>> serviceClasses(final Context ctx) {
+		final Set<Class<?>> classes = new HashSet<>();
+		for (final Service s : ctx.getServiceIndex().getAll()) {
+			classes.add(s.getClass());
+		}
+		return classes;
+	}
+
+	// -- Helper classes --
+
+	/** Looks up {@link SecondService} while initializing. */
+	public static class FirstService extends AbstractService {
+
+		private Service other;
+
+		@Override
+		public void initialize() {
+			other = getContext().getService(SecondService.class);
+		}
+	}
+
+	/** Looks up {@link FirstService} while initializing. */
+	public static class SecondService extends AbstractService {
+
+		private Service other;
+
+		@Override
+		public void initialize() {
+			other = getContext().getService(FirstService.class);
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imagej.ImageJ;
+import net.imagej.autoscale.DataRange;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link StreamingStatsService}, {@link StreamingStatistics} and
+ * {@link Histogram}.
+ */
+public class StreamingStatsServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		ij.parallelOp().setParallelism(4);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testMatchesTwoPass() {
+		final Img<DoubleType> img = ArrayImgs.doubles(97, 61, 3);
+		final Random random = new Random(42);
+		for (final DoubleType t : img) {
+			t.set(random.nextGaussian() * 10 + random.nextDouble() * 50 + 1000);
+		}
+		ij.parallelOp().setGrainSize(500);
+		assertTrue(ij.streamingStats().tiles(img).size() > 4);
+		final StreamingStatistics stats = ij.streamingStats().compute(img);
+		assertTwoPass(img, stats);
+	}
+
+	@Test
+	public void testCellTiles() {
+		final Img<UnsignedByteType> img = new CellImgFactory<>(
+			new UnsignedByteType(), 32, 32).create(100, 70);
+		int v = 0;
+		for (final UnsignedByteType t : img) {
+			t.set(v++ * 7 % 256);
+		}
+		assertEquals(4 * 3, ij.streamingStats().tiles(img).size());
+		final StreamingStatistics stats = ij.streamingStats().compute(img);
+		assertTwoPass(img, stats);
+
+		// integer histograms have bins of whole values
+		final Histogram histogram = stats.getHistogram();
+		assertEquals(1, histogram.getBinWidth(), 0);
+		assertEquals(0, histogram.getMin(), 0);
+		long total = 0;
+		for (int i = 0; i < histogram.getBinCount(); i++) {
+			total += histogram.getCount(i);
+		}
+		assertEquals(100 * 70, total);
+	}
+
+	@Test
+	public void testMerge() {
+		final Random random = new Random(7);
+		final StreamingStatistics all = new StreamingStatistics(64,
+			Double.MIN_NORMAL);
+		final StreamingStatistics a = new StreamingStatistics(64,
+			Double.MIN_NORMAL);
+		final StreamingStatistics b = new StreamingStatistics(64,
+			Double.MIN_NORMAL);
+		for (int i = 0; i < 10000; i++) {
+			final double v = i < 5000 ? random.nextDouble() : 100 + random
+				.nextDouble() * 3;
+			all.add(v);
+			(i < 5000 ? a : b).add(v);
+		}
+		a.merge(b);
+		assertEquals(all.getCount(), a.getCount());
+		assertEquals(all.getMin(), a.getMin(), 0);
+		assertEquals(all.getMax(), a.getMax(), 0);
+		assertEquals(all.getMean(), a.getMean(), 1e-9);
+		assertEquals(all.getVariance(), a.getVariance(), 1e-6);
+		assertEquals(all.getSkewness(), a.getSkewness(), 1e-6);
+		assertEquals(all.getKurtosis(), a.getKurtosis(), 1e-6);
+		assertEquals(10000, a.getHistogram().getTotal());
+		assertEquals(all.getHistogram().getBinWidth(), a.getHistogram()
+			.getBinWidth(), 0);
+		assertEquals(all.getHistogram().percentile(50), a.getHistogram()
+			.percentile(50), a.getHistogram().getBinWidth());
+	}
+
+	@Test
+	public void testHistogramGrows() {
+		final Histogram histogram = new Histogram(16, 1);
+		histogram.add(5);
+		histogram.add(-3);
+		histogram.add(10);
+		assertEquals(1, histogram.getBinWidth(), 0);
+		histogram.add(40);
+		assertEquals(4, histogram.getBinWidth(), 0);
+		histogram.add(Double.NaN);
+		assertEquals(4, histogram.getTotal());
+		long total = 0;
+		for (final long count : histogram.getCounts()) {
+			total += count;
+		}
+		assertEquals(4, total);
+		assertTrue(histogram.getMin() <= -3);
+		assertTrue(histogram.getMax() > 40);
+	}
+
+	@Test
+	public void testRange() {
+		final StreamingStatistics stats = new StreamingStatistics(256, 1);
+		for (int i = 0; i < 1000; i++) {
+			stats.add(i);
+		}
+		final DataRange full = stats.getRange(0);
+		assertEquals(0, full.getMin(), 0);
+		assertEquals(999, full.getMax(), 0);
+		final DataRange saturated = stats.getRange(2);
+		assertEquals(10, saturated.getMin(), 4);
+		assertEquals(990, saturated.getMax(), 4);
+	}
+
+	// -- Helper methods --
+
+	private static void assertTwoPass(
+		final Iterable<? extends RealType<?>> values,
+		final StreamingStatistics stats)
+	{
+		long count = 0;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		for (final RealType<?> t : values) {
+			final double v = t.getRealDouble();
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+			sum += v;
+			count++;
+		}
+		final double mean = sum / count;
+		double squares = 0;
+		for (final RealType<?> t : values) {
+			final double d = t.getRealDouble() - mean;
+			squares += d * d;
+		}
+		assertEquals(count, stats.getCount());
+		assertEquals(min, stats.getMin(), 0);
+		assertEquals(max, stats.getMax(), 0);
+		assertEquals(mean, stats.getMean(), 1e-9 * Math.abs(mean));
+		assertEquals(squares / (count - 1), stats.getVariance(), 1e-9 * squares /
+			(count - 1));
+		assertEquals(count, stats.getHistogram().getTotal());
+	}
+
+}
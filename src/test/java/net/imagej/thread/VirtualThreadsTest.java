@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+
+import net.imagej.ImageJ;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link VirtualThreads}.
+ */
+public class VirtualThreadsTest {
+
+	@Test
+	public void testInstall() throws Exception {
+		final ImageJ ij = new ImageJ(true);
+		try {
+			final boolean installed = VirtualThreads.install(ij.thread());
+			assertEquals(VirtualThreads.isSupported(), installed);
+			final Boolean virtual = ij.thread().run(VirtualThreadsTest::isVirtual)
+				.get();
+			assertEquals(installed, virtual);
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	@Test
+	public void testExecutor() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		final ExecutorService executor = VirtualThreads.newExecutor();
+		try {
+			assertTrue(executor.submit(VirtualThreadsTest::isVirtual).get());
+		}
+		finally {
+			executor.shutdown();
+		}
+		final Thread t = VirtualThreads.newThreadFactory("test-").newThread(
+			() -> {});
+		assertEquals("test-0", t.getName());
+	}
+
+	@Test
+	public void testUnsupported() {
+		assumeTrue(!VirtualThreads.isSupported());
+		assertFalse(VirtualThreads.isRequested());
+		try {
+			VirtualThreads.newExecutor();
+		}
+		catch (final UnsupportedOperationException exc) {
+			return;
+		}
+		throw new AssertionError("Expected UnsupportedOperationException");
+	}
+
+	// -- Helper methods --
+
+	private static Boolean isVirtual() throws Exception {
+		if (!VirtualThreads.isSupported()) return false;
+		return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread
+			.currentThread());
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2020 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.cache.CacheStats;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link TileService} and {@link TiledImg}.
+ */
+public class TileServiceTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private String source;
+
+	@Before
+	public void setUp() throws IOException {
+		ij = new ImageJ();
+		final Dataset dataset = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 100, 80 }, "tiles", new AxisType[] { Axes.X, Axes.Y });
+		final Cursor<? extends RealType<?>> c = dataset.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(c.getLongPosition(0) + 100 * c.getLongPosition(1));
+		}
+		source = new File(folder.getRoot(), "tiles.tif").getPath();
+		ij.scifio().datasetIO().save(dataset, source);
+		ij.tile().getCache().invalidateAll();
+		ij.tile().getCache().resetStats();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testLazyRead() throws IOException {
+		final Dataset dataset = open();
+		assertEquals(100, dataset.dimension(0));
+		assertEquals(80, dataset.dimension(1));
+		// nothing is read up front
+		assertEquals(0, ij.tile().getStats().getLoads());
+
+		final RandomAccess<? extends RealType<?>> ra = dataset.randomAccess();
+		ra.setPosition(new long[] { 40, 50 });
+		assertEquals(40 + 100 * 50, ra.get().getRealDouble(), 0);
+		ra.setPosition(new long[] { 41, 51 });
+		assertEquals(41 + 100 * 51, ra.get().getRealDouble(), 0);
+
+		// both pixels are in the same tile
+		final CacheStats stats = ij.tile().getStats();
+		assertEquals(1, stats.getLoads());
+		assertEquals(32 * 32 * 2, stats.getWeight());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		// room for two 32x32 tiles of 16-bit pixels
+		ij.tile().setCacheSize(2 * 32 * 32 * 2);
+		final Dataset dataset = open();
+		double sum = 0;
+		for (final RealType<?> t : dataset) {
+			sum += t.getRealDouble();
+		}
+		final double n = 100 * 80;
+		assertEquals(n * (n - 1) / 2, sum, 0);
+
+		final CacheStats stats = ij.tile().getStats();
+		// 4 x 3 tiles
+		assertTrue(stats.getLoads() >= 12);
+		assertTrue(stats.getEvictions() >= 10);
+		assertTrue(stats.getSize() <= 2);
+	}
+
+	@Test
+	public void testCopy() throws IOException {
+		final Dataset dataset = open();
+		final TiledImg<?> img = (TiledImg<?>) dataset.getImgPlus().getImg();
+		final RandomAccess<? extends RealType<?>> ra = img.copy().randomAccess();
+		ra.setPosition(new long[] { 99, 79 });
+		assertEquals(99 + 100 * 79, ra.get().getRealDouble(), 0);
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		final Dataset volume = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 64, 64, 12 }, "volume", new AxisType[] { Axes.X, Axes.Y,
+				Axes.Z });
+		final String path = new File(folder.getRoot(), "volume.tif").getPath();
+		ij.scifio().datasetIO().save(volume, path);
+		ij.tile().setPrefetchDepth(3);
+
+		final Dataset dataset = ij.tile().open(path, 0, 32, 32);
+		assertEquals(12, ((TiledImg<?>) dataset.getImgPlus().getImg())
+			.getPlaneCount());
+		final RandomAccess<? extends RealType<?>> ra = dataset.randomAccess();
+		final long[] pos = new long[dataset.numDimensions()];
+		for (int z = 0; z < 3; z++) {
+			pos[2] = z;
+			ra.setPosition(pos);
+			ra.get().getRealDouble();
+		}
+		// planes 3 to 5 are now read ahead
+		final Prefetcher prefetcher = ij.tile().getPrefetcher();
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (prefetcher.getStats().getCompleted() < 3 && System
+			.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(3, prefetcher.getStats().getCompleted());
+
+		pos[2] = 3;
+		ra.setPosition(pos);
+		ra.get().getRealDouble();
+		final PrefetchStats stats = prefetcher.getStats();
+		assertEquals(1, stats.getUsed());
+		assertTrue(stats.getHiddenNanos() > 0);
+	}
+
+	// -- Helper methods --
+
+	private Dataset open() throws IOException {
+		return ij.tile().open(source, 0, 32, 32);
+	}
+
+}